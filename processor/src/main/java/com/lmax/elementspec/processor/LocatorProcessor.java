@@ -0,0 +1,733 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec.processor;
+
+import com.lmax.elementspec.ElementSpecification;
+import com.sun.source.tree.BinaryTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.ImportTree;
+import com.sun.source.tree.LiteralTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.NewArrayTree;
+import com.sun.source.tree.ParenthesizedTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.UnaryTree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.Trees;
+import org.openqa.selenium.By;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a {@code Locators} class for each class annotated with {@link com.lmax.elementspec.PrecomputeLocators}, holding the rendered locator of each of its
+ * {@code static final ElementSpecification} fields.
+ *
+ * <p>Field initializers are read with the compiler tree API and evaluated by replaying their calls against {@link ElementSpecification}, so the generated locators
+ * are exactly what the runtime would have rendered.</p>
+ */
+@SupportedAnnotationTypes(LocatorProcessor.ANNOTATION)
+public final class LocatorProcessor extends AbstractProcessor
+{
+    static final String ANNOTATION = "com.lmax.elementspec.PrecomputeLocators";
+    private static final String SPECIFICATION = ElementSpecification.class.getName();
+
+    // Marks a field whose initializer is being evaluated, to detect fields defined in terms of themselves.
+    private static final Object EVALUATING = new Object();
+
+    private Trees trees;
+    private Types types;
+    private TypeMirror specificationType;
+    private String generatedAnnotation;
+    private final Map<VariableElement, Object> fieldValues = new IdentityHashMap<>();
+
+    @Override
+    public synchronized void init(final ProcessingEnvironment processingEnv)
+    {
+        super.init(processingEnv);
+        trees = Trees.instance(processingEnv);
+        types = processingEnv.getTypeUtils();
+        specificationType = processingEnv.getElementUtils().getTypeElement(SPECIFICATION).asType();
+        generatedAnnotation = generatedAnnotation(processingEnv);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv)
+    {
+        for (final TypeElement annotation : annotations)
+        {
+            for (final Element annotated : roundEnv.getElementsAnnotatedWith(annotation))
+            {
+                if (annotated.getKind().isClass())
+                {
+                    generate((TypeElement)annotated);
+                }
+            }
+        }
+        return true;
+    }
+
+    private void generate(final TypeElement pageObject)
+    {
+        final String packageName = ((PackageElement)enclosingPackage(pageObject)).getQualifiedName().toString();
+        final String className = locatorsClassName(pageObject);
+
+        final StringBuilder fields = new StringBuilder();
+        final StringBuilder factories = new StringBuilder();
+        boolean failed = false;
+        for (final Element member : pageObject.getEnclosedElements())
+        {
+            if (!isPrecomputable(member))
+            {
+                continue;
+            }
+
+            final VariableElement field = (VariableElement)member;
+            final ElementSpecification specification;
+            try
+            {
+                specification = (ElementSpecification)evaluateField(field);
+            }
+            catch (final EvaluationException e)
+            {
+                report(e, field);
+                failed = true;
+                continue;
+            }
+            if (!specification.isValid())
+            {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, field.getSimpleName() + " is not a valid element specification", field);
+                failed = true;
+                continue;
+            }
+
+            final String locator = specification.asSeleniumLocator();
+            final String by = byExpression(specification);
+            if (by == null)
+            {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, field.getSimpleName() + " does not render as an id, CSS selector or XPath", field);
+                failed = true;
+                continue;
+            }
+            final String name = field.getSimpleName().toString();
+            fields.append("    public static final String ").append(name).append(" = ").append(quote(locator)).append(";\n");
+            factories.append("\n")
+                     .append("    public static By ").append(factoryName(name)).append("()\n")
+                     .append("    {\n")
+                     .append("        return ").append(by).append(";\n")
+                     .append("    }\n");
+        }
+        if (failed)
+        {
+            return;
+        }
+
+        final String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, pageObject).openWriter())
+        {
+            if (!packageName.isEmpty())
+            {
+                writer.write("package " + packageName + ";\n\n");
+            }
+            writer.write("import org.openqa.selenium.By;\n\n");
+            writer.write("/**\n * Locators precomputed from {@link " + pageObject.getQualifiedName() + "}.\n */\n");
+            if (generatedAnnotation != null)
+            {
+                writer.write("@" + generatedAnnotation + "(\"" + getClass().getName() + "\")\n");
+            }
+            writer.write("public final class " + className + "\n{\n");
+            writer.write(fields.toString());
+            writer.write("\n    private " + className + "()\n    {\n    }\n");
+            writer.write(factories.toString());
+            writer.write("}\n");
+        }
+        catch (final IOException e)
+        {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write " + qualifiedName + ": " + e.getMessage(), pageObject);
+        }
+    }
+
+    /**
+     * @return the {@code Generated} annotation available to the code being compiled, which moved in Java 9, or {@code null} if there isn't one.
+     */
+    private static String generatedAnnotation(final ProcessingEnvironment processingEnv)
+    {
+        for (final String annotation : new String[] {"javax.annotation.processing.Generated", "javax.annotation.Generated"})
+        {
+            if (processingEnv.getElementUtils().getTypeElement(annotation) != null)
+            {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    private void report(final EvaluationException e, final VariableElement field)
+    {
+        if (e.path != null)
+        {
+            trees.printMessage(Diagnostic.Kind.ERROR, e.getMessage(), e.path.getLeaf(), e.path.getCompilationUnit());
+        }
+        else
+        {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), e.element != null ? e.element : field);
+        }
+    }
+
+    private Object evaluateField(final VariableElement field) throws EvaluationException
+    {
+        final Object value = fieldValues.get(field);
+        if (value == EVALUATING)
+        {
+            throw new EvaluationException(field.getSimpleName() + " is defined in terms of itself", field);
+        }
+        if (value != null)
+        {
+            return value;
+        }
+
+        final TreePath path = trees.getPath(field);
+        if (path == null || ((VariableTree)path.getLeaf()).getInitializer() == null)
+        {
+            throw new EvaluationException(field.getSimpleName() + " must be initialized where it is declared to be precomputed", field);
+        }
+
+        fieldValues.put(field, EVALUATING);
+        try
+        {
+            final Object evaluated = evaluate(path, ((VariableTree)path.getLeaf()).getInitializer());
+            fieldValues.put(field, evaluated);
+            return evaluated;
+        }
+        finally
+        {
+            if (fieldValues.get(field) == EVALUATING)
+            {
+                fieldValues.remove(field);
+            }
+        }
+    }
+
+    private Object evaluate(final TreePath parent, final ExpressionTree expression) throws EvaluationException
+    {
+        final TreePath path = new TreePath(parent, expression);
+        switch (expression.getKind())
+        {
+            case PARENTHESIZED:
+                return evaluate(path, ((ParenthesizedTree)expression).getExpression());
+
+            case STRING_LITERAL:
+            case INT_LITERAL:
+                return ((LiteralTree)expression).getValue();
+
+            case UNARY_MINUS:
+                final Object operand = evaluate(path, ((UnaryTree)expression).getExpression());
+                if (operand instanceof Integer)
+                {
+                    return -(Integer)operand;
+                }
+                break;
+
+            case PLUS:
+                final BinaryTree binary = (BinaryTree)expression;
+                final Object left = evaluate(path, binary.getLeftOperand());
+                final Object right = evaluate(path, binary.getRightOperand());
+                if (left instanceof Integer && right instanceof Integer)
+                {
+                    return (Integer)left + (Integer)right;
+                }
+                if (left instanceof String || right instanceof String)
+                {
+                    return String.valueOf(left) + right;
+                }
+                break;
+
+            case NEW_ARRAY:
+                final List<? extends ExpressionTree> initializers = ((NewArrayTree)expression).getInitializers();
+                if (initializers == null)
+                {
+                    break;
+                }
+                final String[] array = new String[initializers.size()];
+                for (int i = 0; i < array.length; i++)
+                {
+                    final Object element = evaluate(path, initializers.get(i));
+                    if (!(element instanceof String))
+                    {
+                        throw new EvaluationException(initializers.get(i) + " is not a constant String", path);
+                    }
+                    array[i] = (String)element;
+                }
+                return array;
+
+            case IDENTIFIER:
+            case MEMBER_SELECT:
+                return evaluateReference(path, expression);
+
+            case METHOD_INVOCATION:
+                return evaluateInvocation(path, (MethodInvocationTree)expression);
+
+            default:
+                break;
+        }
+        throw new EvaluationException("Unable to evaluate " + expression + " at compile time", path);
+    }
+
+    private Object evaluateReference(final TreePath path, final ExpressionTree expression) throws EvaluationException
+    {
+        final VariableElement field = resolveField(path, expression);
+        if (field != null)
+        {
+            if (field.getConstantValue() != null)
+            {
+                return field.getConstantValue();
+            }
+            if (isPrecomputable(field))
+            {
+                return evaluateField(field);
+            }
+        }
+        throw new EvaluationException(expression + " is not a compile time constant", path);
+    }
+
+    private Object evaluateInvocation(final TreePath path, final MethodInvocationTree invocation) throws EvaluationException
+    {
+        // Trees aren't attributed while annotations are processed, so names are resolved here much as javac would.
+        final ExpressionTree select = invocation.getMethodSelect();
+        final String name;
+        Object receiver = null;
+        if (select.getKind() == Tree.Kind.MEMBER_SELECT)
+        {
+            final MemberSelectTree member = (MemberSelectTree)select;
+            name = member.getIdentifier().toString();
+            final TypeElement type = resolveField(path, member.getExpression()) == null ? resolveType(path, member.getExpression()) : null;
+            if (type == null)
+            {
+                receiver = evaluate(new TreePath(path, select), member.getExpression());
+            }
+            else if (!type.getQualifiedName().contentEquals(SPECIFICATION))
+            {
+                throw new EvaluationException("Only calls to " + SPECIFICATION + " can be evaluated at compile time, not " + select, path);
+            }
+        }
+        else if (select.getKind() == Tree.Kind.IDENTIFIER && isStaticallyImported(path.getCompilationUnit(), ((IdentifierTree)select).getName().toString()))
+        {
+            name = ((IdentifierTree)select).getName().toString();
+        }
+        else
+        {
+            throw new EvaluationException("Only calls to " + SPECIFICATION + " can be evaluated at compile time, not " + select, path);
+        }
+        if (receiver != null && !(receiver instanceof ElementSpecification))
+        {
+            throw new EvaluationException("Unable to evaluate " + invocation + " at compile time", path);
+        }
+
+        final Object[] arguments = new Object[invocation.getArguments().size()];
+        for (int i = 0; i < arguments.length; i++)
+        {
+            arguments[i] = evaluate(path, invocation.getArguments().get(i));
+        }
+
+        for (final Method method : ElementSpecification.class.getMethods())
+        {
+            if (method.getName().equals(name) && java.lang.reflect.Modifier.isStatic(method.getModifiers()) == (receiver == null))
+            {
+                final Object[] parameters = match(method, arguments);
+                if (parameters != null)
+                {
+                    try
+                    {
+                        return method.invoke(receiver, parameters);
+                    }
+                    catch (final InvocationTargetException e)
+                    {
+                        throw new EvaluationException(invocation + " failed: " + e.getCause(), path);
+                    }
+                    catch (final ReflectiveOperationException e)
+                    {
+                        throw new EvaluationException("Unable to evaluate " + invocation + " at compile time: " + e, path);
+                    }
+                }
+            }
+        }
+        throw new EvaluationException("Unable to evaluate " + invocation + " at compile time", path);
+    }
+
+    private static Object[] match(final Method method, final Object[] arguments)
+    {
+        final Class<?>[] parameterTypes = method.getParameterTypes();
+        Object[] parameters = arguments;
+        if (method.isVarArgs() && !(arguments.length == parameterTypes.length && arguments[arguments.length - 1] instanceof String[]))
+        {
+            final int fixed = parameterTypes.length - 1;
+            if (arguments.length < fixed)
+            {
+                return null;
+            }
+            final String[] varargs = new String[arguments.length - fixed];
+            for (int i = 0; i < varargs.length; i++)
+            {
+                if (!(arguments[fixed + i] instanceof String))
+                {
+                    return null;
+                }
+                varargs[i] = (String)arguments[fixed + i];
+            }
+            parameters = Arrays.copyOf(arguments, parameterTypes.length);
+            parameters[fixed] = varargs;
+        }
+        if (parameters.length != parameterTypes.length)
+        {
+            return null;
+        }
+        for (int i = 0; i < parameters.length; i++)
+        {
+            final Class<?> type = parameterTypes[i] == int.class ? Integer.class : parameterTypes[i];
+            if (!type.isInstance(parameters[i]))
+            {
+                return null;
+            }
+        }
+        return parameters;
+    }
+
+    private boolean isPrecomputable(final Element member)
+    {
+        return member.getKind() == ElementKind.FIELD && member.getModifiers().contains(Modifier.STATIC) && member.getModifiers().contains(Modifier.FINAL) &&
+               types.isSameType(member.asType(), specificationType);
+    }
+
+    private static boolean isStaticallyImported(final CompilationUnitTree unit, final String methodName)
+    {
+        for (final ImportTree importTree : unit.getImports())
+        {
+            final String imported = importTree.getQualifiedIdentifier().toString();
+            if (importTree.isStatic() && (imported.equals(SPECIFICATION + "." + methodName) || imported.equals(SPECIFICATION + ".*")))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private VariableElement resolveField(final TreePath path, final ExpressionTree expression)
+    {
+        if (expression.getKind() == Tree.Kind.MEMBER_SELECT)
+        {
+            final MemberSelectTree member = (MemberSelectTree)expression;
+            final TypeElement type = resolveType(path, member.getExpression());
+            return type == null ? null : field(type, member.getIdentifier().toString());
+        }
+        if (expression.getKind() != Tree.Kind.IDENTIFIER)
+        {
+            return null;
+        }
+
+        final String name = ((IdentifierTree)expression).getName().toString();
+        for (TypeElement type = enclosingType(path); type != null; type = outerType(type))
+        {
+            final VariableElement field = field(type, name);
+            if (field != null)
+            {
+                return field;
+            }
+        }
+        for (final ImportTree importTree : path.getCompilationUnit().getImports())
+        {
+            final String imported = importTree.getQualifiedIdentifier().toString();
+            final String owner = imported.substring(0, Math.max(imported.lastIndexOf('.'), 0));
+            if (importTree.isStatic() && (imported.endsWith("." + name) || imported.endsWith(".*")) && processingEnv.getElementUtils().getTypeElement(owner) != null)
+            {
+                final VariableElement field = field(processingEnv.getElementUtils().getTypeElement(owner), name);
+                if (field != null)
+                {
+                    return field;
+                }
+            }
+        }
+        return null;
+    }
+
+    private TypeElement resolveType(final TreePath path, final ExpressionTree expression)
+    {
+        if (expression.getKind() == Tree.Kind.MEMBER_SELECT)
+        {
+            final TypeElement qualified = processingEnv.getElementUtils().getTypeElement(expression.toString());
+            if (qualified != null)
+            {
+                return qualified;
+            }
+            final TypeElement outer = resolveType(path, ((MemberSelectTree)expression).getExpression());
+            return outer == null ? null : memberType(outer, ((MemberSelectTree)expression).getIdentifier().toString());
+        }
+        if (expression.getKind() != Tree.Kind.IDENTIFIER)
+        {
+            return null;
+        }
+
+        final String name = ((IdentifierTree)expression).getName().toString();
+        for (TypeElement type = enclosingType(path); type != null; type = outerType(type))
+        {
+            if (type.getSimpleName().contentEquals(name))
+            {
+                return type;
+            }
+            final TypeElement member = memberType(type, name);
+            if (member != null)
+            {
+                return member;
+            }
+        }
+
+        final CompilationUnitTree unit = path.getCompilationUnit();
+        final List<String> candidates = new ArrayList<>();
+        for (final ImportTree importTree : unit.getImports())
+        {
+            final String imported = importTree.getQualifiedIdentifier().toString();
+            if (!importTree.isStatic() && imported.endsWith("." + name))
+            {
+                candidates.add(0, imported);
+            }
+            else if (!importTree.isStatic() && imported.endsWith(".*"))
+            {
+                candidates.add(imported.substring(0, imported.length() - 1) + name);
+            }
+        }
+        candidates.add(unit.getPackageName() == null ? name : unit.getPackageName() + "." + name);
+        candidates.add("java.lang." + name);
+        for (final String candidate : candidates)
+        {
+            final TypeElement type = processingEnv.getElementUtils().getTypeElement(candidate);
+            if (type != null)
+            {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    private TypeElement enclosingType(final TreePath path)
+    {
+        for (TreePath enclosing = path; enclosing != null; enclosing = enclosing.getParentPath())
+        {
+            if (enclosing.getLeaf() instanceof ClassTree)
+            {
+                return (TypeElement)trees.getElement(enclosing);
+            }
+        }
+        return null;
+    }
+
+    private static TypeElement outerType(final TypeElement type)
+    {
+        return type.getEnclosingElement() instanceof TypeElement ? (TypeElement)type.getEnclosingElement() : null;
+    }
+
+    private VariableElement field(final TypeElement type, final String name)
+    {
+        for (final Element member : processingEnv.getElementUtils().getAllMembers(type))
+        {
+            if (member.getKind() == ElementKind.FIELD && member.getSimpleName().contentEquals(name))
+            {
+                return (VariableElement)member;
+            }
+        }
+        return null;
+    }
+
+    private TypeElement memberType(final TypeElement type, final String name)
+    {
+        for (final Element member : processingEnv.getElementUtils().getAllMembers(type))
+        {
+            if ((member.getKind().isClass() || member.getKind().isInterface()) && member.getSimpleName().contentEquals(name))
+            {
+                return (TypeElement)member;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The format is taken from the {@code By} the specification renders as rather than guessed from its Selenium locator, which needn't start with a recognisable
+     * prefix, e.g. an optimised {@code id('grid')//td}.
+     *
+     * @param specification a valid specification.
+     * @return Java source creating the {@code By} {@code specification} renders as, or null if it isn't an id, CSS selector or XPath.
+     */
+    static String byExpression(final ElementSpecification specification)
+    {
+        final By by = specification.asWebDriverLocator();
+        final String locator = specification.asSeleniumLocator();
+        if (by instanceof By.ById)
+        {
+            return "By.id(" + quote(locator) + ")";
+        }
+        if (by instanceof By.ByCssSelector)
+        {
+            return "By.cssSelector(" + quote(withoutPrefix(locator, "css=")) + ")";
+        }
+        if (by instanceof By.ByXPath)
+        {
+            return "By.xpath(" + quote(withoutPrefix(locator, "xpath=")) + ")";
+        }
+        return null;
+    }
+
+    private static String withoutPrefix(final String locator, final String prefix)
+    {
+        return locator.startsWith(prefix) ? locator.substring(prefix.length()) : locator;
+    }
+
+    /**
+     * @param fieldName a field name, usually in upper case with underscores.
+     * @return the name in camel case, e.g. {@code loginButton} for {@code LOGIN_BUTTON}.
+     */
+    static String factoryName(final String fieldName)
+    {
+        if (!fieldName.equals(fieldName.toUpperCase()))
+        {
+            return fieldName;
+        }
+        final StringBuilder name = new StringBuilder(fieldName.length());
+        boolean upper = false;
+        for (int i = 0; i < fieldName.length(); i++)
+        {
+            final char c = fieldName.charAt(i);
+            if (c == '_')
+            {
+                upper = name.length() > 0;
+            }
+            else
+            {
+                name.append(upper ? c : Character.toLowerCase(c));
+                upper = false;
+            }
+        }
+        return name.length() > 0 ? name.toString() : fieldName;
+    }
+
+    private static String quote(final String value)
+    {
+        final StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++)
+        {
+            final char c = value.charAt(i);
+            switch (c)
+            {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                default:
+                    if (c < ' ' || c > '~')
+                    {
+                        quoted.append(String.format("\\u%04x", (int)c));
+                    }
+                    else
+                    {
+                        quoted.append(c);
+                    }
+                    break;
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static Element enclosingPackage(final Element element)
+    {
+        Element enclosing = element;
+        while (enclosing.getKind() != ElementKind.PACKAGE)
+        {
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return enclosing;
+    }
+
+    private static String locatorsClassName(final TypeElement pageObject)
+    {
+        final StringBuilder name = new StringBuilder(pageObject.getSimpleName());
+        for (Element enclosing = pageObject.getEnclosingElement(); enclosing.getKind() != ElementKind.PACKAGE; enclosing = enclosing.getEnclosingElement())
+        {
+            name.insert(0, '_').insert(0, enclosing.getSimpleName());
+        }
+        return name.append("Locators").toString();
+    }
+
+    private static final class EvaluationException extends Exception
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Element element;
+        private final transient TreePath path;
+
+        private EvaluationException(final String message, final Element element)
+        {
+            super(message);
+            this.element = element;
+            this.path = null;
+        }
+
+        private EvaluationException(final String message, final TreePath path)
+        {
+            super(message);
+            this.element = null;
+            this.path = path;
+        }
+    }
+}
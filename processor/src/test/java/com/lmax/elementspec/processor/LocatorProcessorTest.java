@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec.processor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import static com.lmax.elementspec.ElementSpecification.anElementWithId;
+import static com.lmax.elementspec.ElementSpecification.fromOldStyleSeleniumLocator;
+
+public class LocatorProcessorTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+    @Test
+    public void shouldGenerateLocatorConstantsAndByFactories() throws Exception
+    {
+        final String generated = compileAndRead("pages.LoginPage",
+                "package pages;\n" +
+                "import com.lmax.elementspec.ElementSpecification;\n" +
+                "import com.lmax.elementspec.PrecomputeLocators;\n" +
+                "import static com.lmax.elementspec.ElementSpecification.anElementWithId;\n" +
+                "@PrecomputeLocators\n" +
+                "public class LoginPage {\n" +
+                "    private static final String GRID_ID = \"grid\";\n" +
+                "    public static final ElementSpecification LOGIN_BUTTON = anElementWithId(\"login\");\n" +
+                "    public static final ElementSpecification GRID_ROW = anElementWithId(GRID_ID).thatContainsA(\"tr\").withClass(\"row\").inPosition(-(-2));\n" +
+                "    public static final ElementSpecification PRICE = GRID_ROW.thatContainsAChildOfType(\"td\").withAnyOfTheseClasses(\"bid\", \"ask\");\n" +
+                "    public static final ElementSpecification TITLE = ElementSpecification.anElementOfType(\"h1\").withAttributeValue(\"title\", \"Say \\\"\" + 1 + \"\\\"\");\n" +
+                "    public final ElementSpecification notStatic = anElementWithId(\"ignored\");\n" +
+                "}\n",
+                "pages/LoginPageLocators.java");
+
+        assertThat(generated, containsString("public static final String LOGIN_BUTTON = \"login\";"));
+        assertThat(generated, containsString("public static final String GRID_ROW = \"css=#grid tr.row:nth-child(2)\";"));
+        assertThat(generated, containsString("public static final String PRICE = \"//*[@id='grid']//tr[contains(concat(' ', @class, ' '), ' row ')][2]/td["));
+        assertThat(generated, containsString("public static final String TITLE = \"css=h1[title=\\\"Say \\\\\\\"1\\\\\\\"\\\"]\";"));
+        assertThat(generated, containsString("public static By loginButton()\n    {\n        return By.id(\"login\");"));
+        assertThat(generated, containsString("public static By gridRow()\n    {\n        return By.cssSelector(\"#grid tr.row:nth-child(2)\");"));
+        assertThat(generated, containsString("public static By price()\n    {\n        return By.xpath(\"//*[@id='grid']"));
+        assertThat(generated.contains("notStatic"), is(false));
+        assertThat(generated, containsString("Generated(\"com.lmax.elementspec.processor.LocatorProcessor\")\npublic final class LoginPageLocators"));
+    }
+
+    @Test
+    public void shouldCreateAnXPathFactoryForOptimisedLocatorsStartingWithTheIdFunction() throws Exception
+    {
+        final String generated = compileAndRead("pages.GridPage",
+                "package pages;\n" +
+                "import com.lmax.elementspec.ElementSpecification;\n" +
+                "@com.lmax.elementspec.PrecomputeLocators\n" +
+                "public class GridPage {\n" +
+                "    static final ElementSpecification CELL = ElementSpecification.anElementWithId(\"grid\").thatContainsA(\"td\").withAnyOfTheseClasses(\"a\", \"b\").optimised();\n" +
+                "}\n",
+                "pages/GridPageLocators.java");
+
+        assertThat(generated, containsString("public static final String CELL = \"xpath=id('grid')//td["));
+        assertThat(generated, containsString("public static By cell()\n    {\n        return By.xpath(\"id('grid')//td["));
+    }
+
+    @Test
+    public void shouldReportInvalidSpecificationsAsCompileErrors() throws Exception
+    {
+        compile("pages.BadPage",
+                "package pages;\n" +
+                "import com.lmax.elementspec.ElementSpecification;\n" +
+                "@com.lmax.elementspec.PrecomputeLocators\n" +
+                "public class BadPage {\n" +
+                "    static final ElementSpecification CHECKED_TEXT = ElementSpecification.anElement().withAnyOfTheseClasses(\"a\").thatIsChecked();\n" +
+                "}\n");
+
+        assertThat(errors(), containsString("CHECKED_TEXT is not a valid element specification"));
+    }
+
+    @Test
+    public void shouldReportInitializersThatCannotBeEvaluated() throws Exception
+    {
+        compile("pages.DynamicPage",
+                "package pages;\n" +
+                "import com.lmax.elementspec.ElementSpecification;\n" +
+                "@com.lmax.elementspec.PrecomputeLocators\n" +
+                "public class DynamicPage {\n" +
+                "    static final ElementSpecification ROW = ElementSpecification.anElementWithId(System.getProperty(\"grid\"));\n" +
+                "    static final ElementSpecification CELL = DynamicPage.PRICE.withClass(\"cell\");\n" +
+                "    static final ElementSpecification PRICE = CELL.withClass(\"price\");\n" +
+                "}\n");
+
+        assertThat(errors(), containsString("Only calls to com.lmax.elementspec.ElementSpecification can be evaluated at compile time, not System.getProperty"));
+        assertThat(errors(), containsString("CELL is defined in terms of itself"));
+    }
+
+    @Test
+    public void shouldNameFactoriesInCamelCase()
+    {
+        assertThat(LocatorProcessor.factoryName("LOGIN_BUTTON"), is("loginButton"));
+        assertThat(LocatorProcessor.factoryName("_ROW_2"), is("row2"));
+        assertThat(LocatorProcessor.factoryName("loginButton"), is("loginButton"));
+    }
+
+    @Test
+    public void shouldCreateTheByForEachLocatorFormat()
+    {
+        assertThat(LocatorProcessor.byExpression(anElementWithId("login")), is("By.id(\"login\")"));
+        assertThat(LocatorProcessor.byExpression(fromOldStyleSeleniumLocator("css=td[title=\"\u00e9\"]")), is("By.cssSelector(\"td[title=\\\"\\u00e9\\\"]\")"));
+        assertThat(LocatorProcessor.byExpression(fromOldStyleSeleniumLocator("xpath=//td[text() = 'x'][2]")), is("By.xpath(\"//td[text() = 'x'][2]\")"));
+        assertThat(LocatorProcessor.byExpression(fromOldStyleSeleniumLocator("(//td)[2]")), is("By.xpath(\"(//td)[2]\")"));
+        assertThat(LocatorProcessor.byExpression(anElementWithId("grid").thatContainsA("td").withText("x").optimised()), is("By.xpath(\"id('grid')//td[text() = 'x']\")"));
+    }
+
+    private String compileAndRead(final String className, final String source, final String generatedPath) throws Exception
+    {
+        final File generated = compile(className, source);
+        assertThat(errors(), is(""));
+        return new String(Files.readAllBytes(new File(generated, generatedPath).toPath()), StandardCharsets.UTF_8);
+    }
+
+    private File compile(final String className, final String source) throws Exception
+    {
+        final File generated = folder.newFolder("generated");
+        final File classes = folder.newFolder("classes");
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/') + ".java"), JavaFileObject.Kind.SOURCE)
+        {
+            @Override
+            public CharSequence getCharContent(final boolean ignoreEncodingErrors)
+            {
+                return source;
+            }
+        };
+
+        final JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics,
+                Arrays.asList("-classpath", System.getProperty("java.class.path"), "-s", generated.getPath(), "-d", classes.getPath()),
+                null, Collections.singletonList(file));
+        task.setProcessors(Collections.singletonList(new LocatorProcessor()));
+        task.call();
+        return generated;
+    }
+
+    private String errors()
+    {
+        final StringBuilder errors = new StringBuilder();
+        for (final Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics())
+        {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR)
+            {
+                errors.append(diagnostic.getMessage(null)).append('\n');
+            }
+        }
+        return errors.toString();
+    }
+}
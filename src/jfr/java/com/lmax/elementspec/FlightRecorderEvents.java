@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The Flight Recorder events behind {@link SpecificationEvents}. Only {@code SpecificationEvents} may refer to this class, and only once it has checked Flight
+ * Recorder is available.
+ */
+final class FlightRecorderEvents implements SpecificationEvents.Recorder
+{
+    private static final String CATEGORY = "Element Specification";
+
+    FlightRecorderEvents()
+    {
+    }
+
+    @Override
+    public Object beginRender()
+    {
+        final RenderEvent event = new RenderEvent();
+        if (!event.isEnabled())
+        {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endRender(final Object handle, final ElementSpecification rendered, final int formats, final int depth)
+    {
+        final RenderEvent event = (RenderEvent)handle;
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.locator = rendered.asSeleniumLocator();
+            event.format = LocatorFormat.of(rendered).name();
+            event.formats = SpecificationEvents.describe(formats);
+            event.depth = depth;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void formatSelected(final int candidates, final LocatorFormat chosen, final double cost, final int depth)
+    {
+        final FormatSelectionEvent event = new FormatSelectionEvent();
+        if (event.shouldCommit())
+        {
+            event.candidates = SpecificationEvents.describe(candidates);
+            event.format = chosen.name();
+            event.cost = cost;
+            event.depth = depth;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void formatsDropped(final Operation operation, final int before, final int after)
+    {
+        final FormatsDroppedEvent event = new FormatsDroppedEvent();
+        if (event.shouldCommit())
+        {
+            event.operation = operation.type.name();
+            event.argument = operation.argument;
+            event.dropped = SpecificationEvents.describe(before & ~after);
+            event.remaining = SpecificationEvents.describe(after);
+            event.depth = operation.length;
+            event.commit();
+        }
+    }
+
+    @Name("com.lmax.elementspec.Render")
+    @Label("Specification Rendered")
+    @Description("A specification was built in the formats able to represent it and the cheapest was kept to render")
+    @Category(CATEGORY)
+    @Enabled(false)
+    static final class RenderEvent extends Event
+    {
+        @Label("Locator")
+        String locator;
+
+        @Label("Format")
+        String format;
+
+        @Label("Candidate Formats")
+        String formats;
+
+        @Label("Depth")
+        @Description("The number of operations in the specification")
+        int depth;
+    }
+
+    @Name("com.lmax.elementspec.FormatSelection")
+    @Label("Format Selected")
+    @Description("The selector cost model chose between formats able to represent a specification")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class FormatSelectionEvent extends Event
+    {
+        @Label("Candidate Formats")
+        String candidates;
+
+        @Label("Chosen Format")
+        String format;
+
+        @Label("Cost")
+        double cost;
+
+        @Label("Depth")
+        @Description("The number of operations in the specification")
+        int depth;
+    }
+
+    @Name("com.lmax.elementspec.FormatsDropped")
+    @Label("Formats Dropped")
+    @Description("A refinement couldn't be represented in every format the specification could be rendered in")
+    @Category(CATEGORY)
+    @Enabled(false)
+    static final class FormatsDroppedEvent extends Event
+    {
+        @Label("Operation")
+        String operation;
+
+        @Label("Argument")
+        String argument;
+
+        @Label("Dropped Formats")
+        String dropped;
+
+        @Label("Remaining Formats")
+        @Description("Empty if the specification is now invalid")
+        String remaining;
+
+        @Label("Depth")
+        @Description("The number of operations in the specification")
+        int depth;
+    }
+}
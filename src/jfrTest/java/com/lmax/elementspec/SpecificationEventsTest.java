@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import static com.lmax.elementspec.ElementSpecification.anElementOfType;
+import static com.lmax.elementspec.ElementSpecification.anElementWithId;
+
+public class SpecificationEventsTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final Recording recording = new Recording();
+
+    @Before
+    public void setUp()
+    {
+        recording.enable("com.lmax.elementspec.Render");
+        recording.enable("com.lmax.elementspec.FormatSelection");
+        recording.enable("com.lmax.elementspec.FormatsDropped");
+        recording.start();
+    }
+
+    @After
+    public void tearDown()
+    {
+        recording.close();
+    }
+
+    @Test
+    public void shouldRecordTheRenderedLocatorAndFormat() throws Exception
+    {
+        anElementWithId("recorded-grid").thatContainsA("tr").withClass("row").asSeleniumLocator();
+
+        final List<RecordedEvent> events = events("com.lmax.elementspec.Render");
+        assertThat(events.size(), is(1));
+        assertThat(events.get(0).getString("locator"), is("css=#recorded-grid tr.row"));
+        assertThat(events.get(0).getString("format"), is("CSS"));
+        assertThat(events.get(0).getString("formats"), is("CSS,XPATH"));
+        assertThat(events.get(0).getInt("depth"), is(3));
+    }
+
+    @Test
+    public void shouldRecordTheFormatChosenByTheCostModel() throws Exception
+    {
+        anElementOfType("td").withClass("recorded-price").asWebDriverLocator();
+
+        final List<RecordedEvent> events = events("com.lmax.elementspec.FormatSelection");
+        assertThat(events.size(), is(1));
+        assertThat(events.get(0).getString("candidates"), is("CSS,XPATH"));
+        assertThat(events.get(0).getString("format"), is("CSS"));
+        assertThat(events.get(0).getInt("depth"), is(2));
+    }
+
+    @Test
+    public void shouldRecordTheOperationThatDroppedFormats() throws Exception
+    {
+        anElementOfType("td").withText("1.1").thatIsChecked();
+
+        final List<RecordedEvent> events = events("com.lmax.elementspec.FormatsDropped");
+        assertThat(events.size(), is(2));
+        assertThat(events.get(0).getString("operation"), is("WITH_TEXT"));
+        assertThat(events.get(0).getString("argument"), is("1.1"));
+        assertThat(events.get(0).getString("dropped"), is("CSS"));
+        assertThat(events.get(0).getString("remaining"), is("XPATH"));
+        assertThat(events.get(1).getString("operation"), is("THAT_IS_CHECKED"));
+        assertThat(events.get(1).getString("remaining"), is(""));
+        assertThat(events.get(1).getInt("depth"), is(3));
+    }
+
+    private List<RecordedEvent> events(final String name) throws Exception
+    {
+        recording.stop();
+        final Path file = folder.newFile("recording.jfr").toPath();
+        recording.dump(file);
+
+        final List<RecordedEvent> events = new ArrayList<>();
+        for (final RecordedEvent event : RecordingFile.readAllEvents(file))
+        {
+            if (event.getEventType().getName().equals(name))
+            {
+                events.add(event);
+            }
+        }
+        events.sort((a, b) -> a.getStartTime().compareTo(b.getStartTime()));
+        return events;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building and rendering a single {@link CssToken} with several classes, pseudo classes and attribute conditions. Run with {@code -prof gc} to compare allocation per token.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CssTokenBenchmark
+{
+    private CssToken prebuilt;
+
+    @Setup
+    public void setUp()
+    {
+        prebuilt = buildToken();
+    }
+
+    @Benchmark
+    public CssToken buildToken()
+    {
+        return CssToken.AN_ELEMENT
+                .withTagName("tr")
+                .withId("row-7")
+                .withClass("row")
+                .withClass("selected")
+                .withClass("even")
+                .withPseudoClass(":nth-child(7)")
+                .withPseudoClass(":not(.disabled)")
+                .withAttributeCondition("data-instrument=\"EURUSD\"")
+                .withAttributeCondition("data-side");
+    }
+
+    @Benchmark
+    public String renderToken()
+    {
+        return prebuilt.toString();
+    }
+
+    @Benchmark
+    public String buildAndRenderToken()
+    {
+        return buildToken().toString();
+    }
+}
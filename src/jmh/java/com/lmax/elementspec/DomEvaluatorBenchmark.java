@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluating specifications against a generated grid with {@link DomEvaluator}, compared with evaluating the equivalent XPath with {@code javax.xml.xpath}.
+ * Each row holds six elements so the largest grid has around 120,000 elements.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DomEvaluatorBenchmark
+{
+    @Param({"1000", "20000"})
+    public int rows;
+
+    private Document document;
+    private DomSnapshot snapshot;
+    private ElementSpecification cellsInRow;
+    private ElementSpecification selectedRows;
+    private ElementSpecification rowsForInstrument;
+    private XPath xpath;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        final Element html = document.createElement("html");
+        final Element table = document.createElement("table");
+        document.appendChild(html);
+        html.appendChild(table);
+        table.setAttribute("id", "grid");
+        for (int row = 0; row < rows; row++)
+        {
+            final Element tr = document.createElement("tr");
+            tr.setAttribute("id", "row-" + row);
+            tr.setAttribute("class", row % 100 == 0 ? "row selected" : "row");
+            tr.setAttribute("data-instrument", row % 500 == 0 ? "EURUSD" : "GBPUSD");
+            table.appendChild(tr);
+            for (int cell = 0; cell < 4; cell++)
+            {
+                final Element td = document.createElement("td");
+                td.setTextContent(Integer.toString(cell));
+                tr.appendChild(td);
+            }
+            tr.appendChild(document.createElement("span"));
+        }
+
+        snapshot = DomSnapshot.of(document);
+        cellsInRow = ElementSpecification.anElementWithId("row-" + rows / 2).thatContainsA("td");
+        selectedRows = ElementSpecification.anElementWithClass("selected");
+        rowsForInstrument = ElementSpecification.anElementOfType("tr").withAttributeValue("data-instrument", "EURUSD").thatContainsA("td").inPosition(2);
+        xpath = XPathFactory.newInstance().newXPath();
+    }
+
+    @Benchmark
+    public DomSnapshot takeSnapshot()
+    {
+        return DomSnapshot.of(document);
+    }
+
+    @Benchmark
+    public List<Element> cellsInRow()
+    {
+        return DomEvaluator.findElements(snapshot, cellsInRow);
+    }
+
+    @Benchmark
+    public List<Element> selectedRows()
+    {
+        return DomEvaluator.findElements(snapshot, selectedRows);
+    }
+
+    @Benchmark
+    public List<Element> rowsForInstrument()
+    {
+        return DomEvaluator.findElements(snapshot, rowsForInstrument);
+    }
+
+    @Benchmark
+    public NodeList cellsInRowWithXPath() throws Exception
+    {
+        return (NodeList)xpath.evaluate("//*[@id='row-" + rows / 2 + "']//td", document, XPathConstants.NODESET);
+    }
+}
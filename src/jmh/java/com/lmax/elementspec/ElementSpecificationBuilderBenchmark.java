@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.By;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a throwaway locator for each row of a grid with the fluent API and with a reused {@link ElementSpecificationBuilder}. Run with {@code -prof gc} to compare
+ * allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ElementSpecificationBuilderBenchmark
+{
+    private final ElementSpecificationBuilder builder = new ElementSpecificationBuilder();
+    private int row;
+
+    @Benchmark
+    public String fluentAsSeleniumLocator()
+    {
+        return ElementSpecification.anElementWithId("grid").thatContainsA("tr").inPosition(nextRow()).thatContainsAChildOfType("td").withClass("price").asSeleniumLocator();
+    }
+
+    @Benchmark
+    public String builderAsSeleniumLocator()
+    {
+        return builder.anElementWithId("grid").thatContainsA("tr").inPosition(nextRow()).thatContainsAChildOfType("td").withClass("price").asSeleniumLocator();
+    }
+
+    @Benchmark
+    public By builderAsWebDriverLocator()
+    {
+        return builder.anElementWithId("grid").thatContainsA("tr").inPosition(nextRow()).thatContainsAChildOfType("td").withClass("price").asWebDriverLocator();
+    }
+
+    @Benchmark
+    public ElementSpecificationBuilder builderBuildOnly()
+    {
+        return builder.anElementWithId("grid").thatContainsA("tr").inPosition(nextRow()).thatContainsAChildOfType("td").withClass("price");
+    }
+
+    private int nextRow()
+    {
+        row = row == 100 ? 1 : row + 1;
+        return row;
+    }
+}
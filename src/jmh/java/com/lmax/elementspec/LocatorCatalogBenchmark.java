@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Making a catalog of grid locators available to a process, either by building every specification up front as a class initializer would or by opening a
+ * {@link LocatorCatalog} and looking up the handful a test actually uses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LocatorCatalogBenchmark
+{
+    private static final int CATALOG_SIZE = 20000;
+    private static final int USED = 50;
+
+    private Path path;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        path = Files.createTempFile("locators", ".catalog");
+        LocatorCatalog.write(path, buildAll());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        Files.delete(path);
+    }
+
+    @Benchmark
+    public Map<String, ElementSpecification> buildAll()
+    {
+        final Map<String, ElementSpecification> specifications = new LinkedHashMap<>();
+        for (int i = 0; i < CATALOG_SIZE; i++)
+        {
+            specifications.put("locator." + i, SpecificationChains.refine(ElementSpecification.anElementWithId("grid" + i), 1 + i % 10));
+        }
+        return specifications;
+    }
+
+    @Benchmark
+    public ElementSpecification openAndLookUpUsed() throws IOException
+    {
+        final LocatorCatalog catalog = LocatorCatalog.open(path);
+        ElementSpecification specification = null;
+        for (int i = 0; i < USED; i++)
+        {
+            specification = catalog.get("locator." + i * (CATALOG_SIZE / USED));
+        }
+        return specification;
+    }
+}
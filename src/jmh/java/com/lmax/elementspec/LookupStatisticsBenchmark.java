@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost {@link LookupStatistics} adds to each lookup, with every thread recording lookups of the same few locators as a parallel suite would.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class LookupStatisticsBenchmark
+{
+    private static final String[] LOCATORS = {"css=#grid tr.row", "css=#grid td.price", "login", "//td[text()='1.1']"};
+
+    @State(Scope.Benchmark)
+    public static class Shared
+    {
+        private final LookupStatistics statistics = new LookupStatistics();
+    }
+
+    @State(Scope.Thread)
+    public static class Lookups
+    {
+        private int lookup;
+    }
+
+    @Benchmark
+    public void recordLookup(final Shared shared, final Lookups lookups)
+    {
+        final int lookup = lookups.lookup++;
+        shared.statistics.onLookup(LOCATORS[lookup & 3], 1_000 + (lookup & 0xFFFF), 1, null);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+final class SpecificationChains
+{
+    private SpecificationChains()
+    {
+    }
+
+    /**
+     * Refine {@code start} with {@code depth} steps that look like a typical grid locator, cycling through descending into rows and cells and adding conditions to them.
+     * Every step is supported by both the CSS and XPath formats so chains stay valid regardless of the implementation under test.
+     */
+    static ElementSpecification refine(final ElementSpecification start, final int depth)
+    {
+        ElementSpecification spec = start;
+        for (int step = 0; step < depth; step++)
+        {
+            switch (step % 5)
+            {
+                case 0:
+                    spec = spec.thatContainsA("tr");
+                    break;
+                case 1:
+                    spec = spec.withClass("row");
+                    break;
+                case 2:
+                    spec = spec.withAttributeValue("data-instrument", "EURUSD");
+                    break;
+                case 3:
+                    spec = spec.thatContainsAChildOfType("td");
+                    break;
+                default:
+                    spec = spec.inPosition(step);
+                    break;
+            }
+        }
+        return spec;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.By;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.lmax.elementspec.SpecificationChains.refine;
+
+/**
+ * Building and rendering chains of increasing depth directly through {@link XPathElementSpecification}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class XPathElementSpecificationBenchmark
+{
+    @Param({"1", "5", "10", "20", "50"})
+    public int depth;
+
+    private ElementSpecification prebuilt;
+
+    @Setup
+    public void setUp()
+    {
+        prebuilt = refine(XPathElementSpecification.anElementOfType("table"), depth);
+    }
+
+    @Benchmark
+    public String anElementWithIdChainAsSeleniumLocator()
+    {
+        return refine(XPathElementSpecification.anElement().withId("grid"), depth).asSeleniumLocator();
+    }
+
+    @Benchmark
+    public By anElementOfTypeChainAsWebDriverLocator()
+    {
+        return refine(XPathElementSpecification.anElementOfType("table"), depth).asWebDriverLocator();
+    }
+
+    @Benchmark
+    public String oldStyleLocatorChainAsSeleniumLocator()
+    {
+        return refine(XPathElementSpecification.fromOldStyleSeleniumXPathLocator("//div[@id='grid']//table"), depth).asSeleniumLocator();
+    }
+
+    @Benchmark
+    public ElementSpecification buildOnly()
+    {
+        return refine(XPathElementSpecification.anElementOfType("table"), depth);
+    }
+
+    @Benchmark
+    public String renderOnly()
+    {
+        return prebuilt.asSeleniumLocator();
+    }
+}
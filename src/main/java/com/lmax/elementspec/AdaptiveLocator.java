@@ -0,0 +1,336 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.elementspec;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.HasCapabilities;
+import org.openqa.selenium.InvalidSelectorException;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.WrapsDriver;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiFunction;
+
+/**
+ * A locator that holds a rendering of its specification in every format that can represent it, cheapest first. When the browser rejects a rendering's syntax the
+ * lookup is retried with the next one, and the browser remembers which renderings it rejected and how long the ones it accepted took, so later lookups go straight to
+ * the quickest rendering that works. The other renderings are still tried occasionally so a quicker one can take over. Browsers are told apart by name and
+ * version, so an older browser in a grid can fall back to XPath while the others keep using CSS.
+ *
+ * <p>Only syntax errors cause a retry. A valid rendering that finds nothing is equivalent to every other rendering finding nothing.</p>
+ */
+final class AdaptiveLocator extends By
+{
+    // Messages browsers use for syntax they don't support when their driver doesn't report it as an InvalidSelectorException.
+    private static final String[] UNSUPPORTED_SYNTAX_MESSAGES =
+    {
+        "invalid selector",
+        "syntaxerror",
+        "not a valid selector",
+        "illegal string",
+        "not a legal expression"
+    };
+
+    private final LocatorFormat[] formats;
+    private final By[] locators;
+    private final String description;
+    private final ConcurrentMap<String, Preference> preferences = new ConcurrentHashMap<>();
+
+    private AdaptiveLocator(final ElementSpecification[] renderings)
+    {
+        formats = new LocatorFormat[renderings.length];
+        locators = new By[renderings.length];
+        final StringBuilder description = new StringBuilder();
+        for (int i = 0; i < renderings.length; i++)
+        {
+            formats[i] = LocatorFormat.of(renderings[i]);
+            locators[i] = renderings[i].asWebDriverLocator();
+            description.append(i == 0 ? "" : ", ").append(renderings[i].asSeleniumLocator());
+        }
+        this.description = description.toString();
+    }
+
+    /**
+     * @param operations the chain to locate.
+     * @param formats the formats able to represent {@code operations}.
+     * @param optimise whether each rendering should be optimised.
+     * @return a locator that tries each format in order of cost.
+     */
+    static AdaptiveLocator compile(final Operation operations, final int formats, final boolean optimise)
+    {
+        return new AdaptiveLocator(LocatorFormat.ranked(operations, formats, SelectorCostModel.registered(), optimise));
+    }
+
+    @Override
+    public List<WebElement> findElements(final SearchContext context)
+    {
+        return find(context, (searchContext, locator) -> searchContext.findElements(locator));
+    }
+
+    @Override
+    public WebElement findElement(final SearchContext context)
+    {
+        return find(context, (searchContext, locator) -> searchContext.findElement(locator));
+    }
+
+    @Override
+    public String toString()
+    {
+        return "By.adaptive: " + description;
+    }
+
+    /**
+     * @param browser the browser, as identified by {@link #browserOf(SearchContext)}.
+     * @return the format {@code browser} has found quickest, or {@code null} if it hasn't accepted any yet.
+     */
+    LocatorFormat preferredFormat(final String browser)
+    {
+        final Preference preference = preferences.get(browser);
+        return preference == null || preference.preferred < 0 ? null : formats[preference.preferred];
+    }
+
+    /**
+     * @param browser the browser, as identified by {@link #browserOf(SearchContext)}.
+     * @param format the format to check.
+     * @return true if {@code browser} has rejected the syntax of the rendering in {@code format}.
+     */
+    boolean isUnsupported(final String browser, final LocatorFormat format)
+    {
+        final Preference preference = preferences.get(browser);
+        return preference != null && (preference.unsupported & 1 << indexOf(format)) != 0;
+    }
+
+    /**
+     * @param browser the browser, as identified by {@link #browserOf(SearchContext)}.
+     * @param format the format to check.
+     * @return the mean time in nanoseconds {@code browser} took to look up the rendering in {@code format}, or -1 if it hasn't been used successfully.
+     */
+    long averageNanos(final String browser, final LocatorFormat format)
+    {
+        final Preference preference = preferences.get(browser);
+        return preference == null ? -1 : preference.averageNanos(indexOf(format));
+    }
+
+    /**
+     * @return the name and version of the browser {@code context} belongs to, or the class of its driver if the driver doesn't describe its capabilities.
+     */
+    static String browserOf(final SearchContext context)
+    {
+        final Object driver = context instanceof WrapsDriver ? ((WrapsDriver)context).getWrappedDriver() : context;
+        if (driver instanceof HasCapabilities)
+        {
+            return ((HasCapabilities)driver).getCapabilities().getBrowserName() + " " + ((HasCapabilities)driver).getCapabilities().getVersion();
+        }
+        return driver.getClass().getName();
+    }
+
+    private <T> T find(final SearchContext context, final BiFunction<SearchContext, By, T> lookup)
+    {
+        final Preference preference = preferences.computeIfAbsent(browserOf(context), browser -> new Preference(locators.length));
+        WebDriverException rejected = null;
+        for (final int candidate : preference.order())
+        {
+            final long start = System.nanoTime();
+            try
+            {
+                final T found = lookup.apply(context, locators[candidate]);
+                // An empty result may have waited out an implicit wait, so says nothing about how quick the rendering is.
+                final boolean timed = !(found instanceof List) || !((List<?>)found).isEmpty();
+                preference.accepted(candidate, timed ? System.nanoTime() - start : -1);
+                return found;
+            }
+            catch (final WebDriverException e)
+            {
+                if (!isUnsupportedSyntax(e))
+                {
+                    if (e instanceof NoSuchElementException)
+                    {
+                        preference.accepted(candidate, -1);
+                    }
+                    throw e;
+                }
+                preference.rejected(candidate);
+                rejected = e;
+            }
+        }
+        throw rejected;
+    }
+
+    private int indexOf(final LocatorFormat format)
+    {
+        for (int i = 0; i < formats.length; i++)
+        {
+            if (formats[i] == format)
+            {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(format + " is not one of " + description);
+    }
+
+    private static boolean isUnsupportedSyntax(final WebDriverException e)
+    {
+        // Selenium 2 makes an invalid selector a kind of missing element, so it must be checked for first.
+        if (e instanceof InvalidSelectorException)
+        {
+            return true;
+        }
+        if (e instanceof NoSuchElementException || e.getMessage() == null)
+        {
+            return false;
+        }
+        final String message = e.getMessage().toLowerCase(Locale.ROOT);
+        for (final String unsupported : UNSUPPORTED_SYNTAX_MESSAGES)
+        {
+            if (message.contains(unsupported))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * What one browser has learnt about each rendering, indexed by their position in the cost order. Lookups use the quickest rendering the browser has accepted, but
+     * every {@link #SAMPLE_INTERVAL}th lookup tries one of the others first so their speed can be compared.
+     */
+    private static final class Preference
+    {
+        private static final int SAMPLE_INTERVAL = 32;
+
+        private final AtomicLongArray totalNanos;
+        private final AtomicLongArray samples;
+        private final AtomicLong lookups = new AtomicLong();
+        private volatile int unsupported;
+        private volatile int preferred = -1;
+
+        private Preference(final int candidates)
+        {
+            totalNanos = new AtomicLongArray(candidates);
+            samples = new AtomicLongArray(candidates);
+        }
+
+        /**
+         * @return the renderings to try in turn: the one being sampled, the preferred one, the rest in order of cost and finally any the browser has rejected in case
+         * it was mistaken.
+         */
+        private int[] order()
+        {
+            final int[] order = new int[samples.length()];
+            final int rejected = unsupported;
+            final int first = preferred;
+            final int sampled = first < 0 ? -1 : sampled(lookups.getAndIncrement(), first, rejected);
+            int count = 0;
+            if (sampled >= 0)
+            {
+                order[count++] = sampled;
+            }
+            if (first >= 0)
+            {
+                order[count++] = first;
+            }
+            for (int i = 0; i < order.length; i++)
+            {
+                if (i != first && i != sampled && (rejected & 1 << i) == 0)
+                {
+                    order[count++] = i;
+                }
+            }
+            for (int i = 0; i < order.length; i++)
+            {
+                if (i != first && i != sampled && (rejected & 1 << i) != 0)
+                {
+                    order[count++] = i;
+                }
+            }
+            return order;
+        }
+
+        /**
+         * @return the rendering to try before the preferred one for lookup number {@code lookup}, or -1 to go straight to the preferred one.
+         */
+        private int sampled(final long lookup, final int first, final int rejected)
+        {
+            if (lookup % SAMPLE_INTERVAL != SAMPLE_INTERVAL - 1)
+            {
+                return -1;
+            }
+            final int candidates = samples.length();
+            final int start = (int)(lookup / SAMPLE_INTERVAL % candidates);
+            for (int i = 0; i < candidates; i++)
+            {
+                final int candidate = (start + i) % candidates;
+                if (candidate != first && (rejected & 1 << candidate) == 0)
+                {
+                    return candidate;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @param nanos how long the lookup took, or -1 if it found nothing and its time isn't representative.
+         */
+        private void accepted(final int candidate, final long nanos)
+        {
+            if (nanos >= 0)
+            {
+                totalNanos.addAndGet(candidate, nanos);
+                samples.incrementAndGet(candidate);
+            }
+            synchronized (this)
+            {
+                unsupported &= ~(1 << candidate);
+                int quickest = preferred < 0 ? candidate : preferred;
+                for (int i = 0; i < samples.length(); i++)
+                {
+                    final long average = averageNanos(i);
+                    if (average >= 0 && (unsupported & 1 << i) == 0 && (averageNanos(quickest) < 0 || average < averageNanos(quickest)))
+                    {
+                        quickest = i;
+                    }
+                }
+                preferred = quickest;
+            }
+        }
+
+        private void rejected(final int candidate)
+        {
+            synchronized (this)
+            {
+                unsupported |= 1 << candidate;
+                if (preferred == candidate)
+                {
+                    preferred = -1;
+                }
+            }
+        }
+
+        private long averageNanos(final int candidate)
+        {
+            final long count = samples.get(candidate);
+            return count == 0 ? -1 : totalNanos.get(candidate) / count;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the elements for many {@link ElementSpecification}s in a single round trip to the browser by running one script that evaluates every locator, rather than
+ * calling {@code findElements} once for each.
+ *
+ * <p>CSS selectors are evaluated with {@code querySelectorAll}, XPath expressions with {@code document.evaluate} and IDs with an {@code [id="..."]} attribute
+ * selector, so that, like {@code By.id}, every element sharing a duplicated ID is found. A locator the browser can't evaluate in the script, e.g. because it's
+ * invalid, is retried with the driver's own {@code findElements} so the driver reports the failure in its usual way. Drivers that can't execute JavaScript have every specification found individually.</p>
+ */
+public final class BatchLocator
+{
+    static final String SCRIPT =
+            "var queries = arguments[0], results = [];\n" +
+            "for (var i = 0; i < queries.length; i += 2) {\n" +
+            "  var format = queries[i], selector = queries[i + 1], found = [];\n" +
+            "  try {\n" +
+            "    if (format === 'ID' || format === 'CSS') {\n" +
+            "      var matches = document.querySelectorAll(format === 'ID' ? '[id=\"' + CSS.escape(selector) + '\"]' : selector);\n" +
+            "      for (var j = 0; j < matches.length; j++) { found.push(matches[j]); }\n" +
+            "    } else {\n" +
+            "      var snapshot = document.evaluate(selector, document, null, XPathResult.ORDERED_NODE_SNAPSHOT_TYPE, null);\n" +
+            "      for (var k = 0; k < snapshot.snapshotLength; k++) {\n" +
+            "        if (snapshot.snapshotItem(k).nodeType === 1) { found.push(snapshot.snapshotItem(k)); }\n" +
+            "      }\n" +
+            "    }\n" +
+            "  } catch (e) {\n" +
+            "    found = null;\n" +
+            "  }\n" +
+            "  results.push(found);\n" +
+            "}\n" +
+            "return results;";
+
+    private BatchLocator()
+    {
+    }
+
+    /**
+     * Find the elements matching each of {@code specifications}.
+     *
+     * @param driver the driver to search with. A single script is executed if it implements {@link JavascriptExecutor}.
+     * @param specifications the specifications to find.
+     * @return the elements found for each distinct specification, in the order the specifications were given.
+     * @throws IllegalStateException if any of the specifications is invalid.
+     */
+    public static Map<ElementSpecification, List<WebElement>> findAll(final WebDriver driver, final Collection<? extends ElementSpecification> specifications)
+    {
+        final Map<ElementSpecification, List<WebElement>> results = new LinkedHashMap<>();
+        final List<ElementSpecification> distinct = new ArrayList<>();
+        final List<String> queries = new ArrayList<>();
+        for (final ElementSpecification specification : specifications)
+        {
+            if (!results.containsKey(specification))
+            {
+                final LocatorFormat format = LocatorFormat.of(specification);
+                results.put(specification, Collections.<WebElement>emptyList());
+                distinct.add(specification);
+                queries.add(format.name());
+                queries.add(format.selector(specification));
+            }
+        }
+
+        final List<?> found = distinct.isEmpty() || !(driver instanceof JavascriptExecutor) ? null : executeScript((JavascriptExecutor)driver, queries);
+        for (int i = 0; i < distinct.size(); i++)
+        {
+            final ElementSpecification specification = distinct.get(i);
+            final Object elements = found == null || i >= found.size() ? null : found.get(i);
+            results.put(specification, elements instanceof List ? toWebElements((List<?>)elements) : driver.findElements(specification.asWebDriverLocator()));
+        }
+        return results;
+    }
+
+    private static List<?> executeScript(final JavascriptExecutor executor, final List<String> queries)
+    {
+        final Object result = executor.executeScript(SCRIPT, queries);
+        return result instanceof List ? (List<?>)result : null;
+    }
+
+    private static List<WebElement> toWebElements(final List<?> elements)
+    {
+        final List<WebElement> webElements = new ArrayList<>(elements.size());
+        for (final Object element : elements)
+        {
+            webElements.add((WebElement)element);
+        }
+        return webElements;
+    }
+}
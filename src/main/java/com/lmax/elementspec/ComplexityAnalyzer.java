@@ -0,0 +1,352 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates how expensive specifications are for a browser to evaluate and warns about the constructs that make them so, without a browser.
+ *
+ * <p>The cost is the registered {@link SelectorCostModel}'s estimate for the rendered locator. Warnings come from walking the specification's steps, so they
+ * point at the refinement responsible rather than the rendered locator. Use {@link ElementSpecification#analyseComplexity()} for a single specification, or the
+ * batch methods here to check a whole catalog of locators, e.g. in a unit test or build step:</p>
+ *
+ * <pre>
+ * java com.lmax.elementspec.ComplexityAnalyzer --max-cost 40 --allow NEGATION_STACK locators.catalog
+ * </pre>
+ */
+public final class ComplexityAnalyzer
+{
+    private ComplexityAnalyzer()
+    {
+    }
+
+    /**
+     * @param args {@code [--max-cost n] [--allow WARNING,...] catalog...}, where each catalog was written by {@link LocatorCatalog#write}.
+     * @throws IOException if a catalog can't be read.
+     */
+    public static void main(final String[] args) throws IOException
+    {
+        double maxCost = Double.POSITIVE_INFINITY;
+        final List<ComplexityWarning> allowed = new ArrayList<>();
+        final List<String> catalogs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++)
+        {
+            if ("--max-cost".equals(args[i]) && i + 1 < args.length)
+            {
+                maxCost = Double.parseDouble(args[++i]);
+            }
+            else if ("--allow".equals(args[i]) && i + 1 < args.length)
+            {
+                for (final String warning : args[++i].split(","))
+                {
+                    allowed.add(ComplexityWarning.valueOf(warning.trim()));
+                }
+            }
+            else
+            {
+                catalogs.add(args[i]);
+            }
+        }
+
+        // SUPPRESS CHECKSTYLE RegexpSinglelineJava
+        final PrintWriter console = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), true);
+        if (catalogs.isEmpty())
+        {
+            console.println("Usage: ComplexityAnalyzer [--max-cost n] [--allow WARNING,...] catalog...");
+            return;
+        }
+
+        final ComplexityBudget budget = ComplexityBudget.maxCost(maxCost).allowing(allowed.toArray(new ComplexityWarning[allowed.size()]));
+        int overBudget = 0;
+        for (final String catalog : catalogs)
+        {
+            for (final Map.Entry<String, ComplexityReport> entry : overBudget(LocatorCatalog.open(Paths.get(catalog)), budget).entrySet())
+            {
+                console.println(catalog + ":" + entry.getKey() + " " + entry.getValue().getLocator() + " cost " + entry.getValue().getCost());
+                for (final String violation : entry.getValue().getViolations(budget))
+                {
+                    console.println("  " + violation);
+                }
+                overBudget++;
+            }
+        }
+        console.println(overBudget + " locator(s) over budget (" + budget + ")");
+        if (overBudget > 0)
+        {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param specification the specification to analyse.
+     * @return its estimated cost and warnings.
+     */
+    public static ComplexityReport analyse(final ElementSpecification specification)
+    {
+        if (!specification.isValid())
+        {
+            final List<ComplexityReport.Warning> warnings = new ArrayList<>();
+            warnings.add(new ComplexityReport.Warning(ComplexityWarning.INVALID, "no format can represent every refinement"));
+            // Invalid specifications can't be rendered, so are described by their refinements instead.
+            final String description = specification instanceof MultiFormatElementSpecification ?
+                    describeChain(((MultiFormatElementSpecification)specification).operations()) : specification.toString();
+            return new ComplexityReport(description, null, Double.POSITIVE_INFINITY, warnings);
+        }
+
+        final LocatorFormat format = LocatorFormat.of(specification);
+        final double cost = SelectorCostModel.registered().cost(format, format.selector(specification));
+        final List<ComplexityReport.Warning> warnings = new ArrayList<>();
+        if (specification instanceof MultiFormatElementSpecification)
+        {
+            final MultiFormatElementSpecification multiFormat = (MultiFormatElementSpecification)specification;
+            new StepWalker(warnings).walk(multiFormat.operations(), true);
+            if (multiFormat.formats() == LocatorFormat.XPATH.mask)
+            {
+                warnXPathOnly(multiFormat.operations(), warnings);
+            }
+        }
+        return new ComplexityReport(specification.asSeleniumLocator(), format, cost, warnings);
+    }
+
+    /**
+     * @param specifications the specifications to analyse, by key.
+     * @param budget the budget to check each against.
+     * @return the reports of the specifications that exceed {@code budget}, by key, in the order of {@code specifications}.
+     */
+    public static Map<String, ComplexityReport> overBudget(final Map<String, ? extends ElementSpecification> specifications, final ComplexityBudget budget)
+    {
+        final Map<String, ComplexityReport> overBudget = new LinkedHashMap<>();
+        for (final Map.Entry<String, ? extends ElementSpecification> entry : specifications.entrySet())
+        {
+            final ComplexityReport report = analyse(entry.getValue());
+            if (!report.isWithin(budget))
+            {
+                overBudget.put(entry.getKey(), report);
+            }
+        }
+        return overBudget;
+    }
+
+    /**
+     * @param catalog the catalog to analyse. Every specification in it is decoded.
+     * @param budget the budget to check each against.
+     * @return the reports of the specifications that exceed {@code budget}, by key, in the order of {@link LocatorCatalog#keys()}.
+     */
+    public static Map<String, ComplexityReport> overBudget(final LocatorCatalog catalog, final ComplexityBudget budget)
+    {
+        final Map<String, ElementSpecification> specifications = new LinkedHashMap<>();
+        for (final String key : catalog.keys())
+        {
+            specifications.put(key, catalog.get(key));
+        }
+        return overBudget(specifications, budget);
+    }
+
+    private static void warnXPathOnly(final Operation chain, final List<ComplexityReport.Warning> warnings)
+    {
+        for (final Operation operation : chain.toArray())
+        {
+            if (operation.subSpecification != null)
+            {
+                warnXPathOnly(operation.subSpecification, warnings);
+            }
+            else if ((operation.type.supportedFormats & LocatorFormat.CSS.mask) == 0 && operation.type != OperationType.XPATH_EXPRESSION)
+            {
+                warnings.add(new ComplexityReport.Warning(ComplexityWarning.XPATH_ONLY, describe(operation) + " can't be represented in CSS, so the locator is XPath"));
+            }
+        }
+    }
+
+    private static String describeChain(final Operation chain)
+    {
+        final StringBuilder description = new StringBuilder();
+        for (final Operation operation : chain.toArray())
+        {
+            if (description.length() > 0)
+            {
+                description.append('.');
+            }
+            description.append(operation.subSpecification != null ? "addSubSpecification(" + describeChain(operation.subSpecification) + ")" : describe(operation));
+        }
+        return description.toString();
+    }
+
+    private static String describe(final Operation operation)
+    {
+        final StringBuilder method = new StringBuilder();
+        boolean upper = false;
+        for (final char c : operation.type.name().toCharArray())
+        {
+            if (c == '_')
+            {
+                upper = true;
+            }
+            else
+            {
+                method.append(upper ? c : Character.toLowerCase(c));
+                upper = false;
+            }
+        }
+        method.append('(');
+        if (operation.argument != null)
+        {
+            method.append('"').append(operation.argument).append('"');
+            if (operation.secondArgument != null)
+            {
+                method.append(", \"").append(operation.secondArgument).append('"');
+            }
+        }
+        else if (operation.arguments != null)
+        {
+            method.append('"').append(String.join("\", \"", operation.arguments)).append('"');
+        }
+        else if (operation.type == OperationType.IN_POSITION || operation.type == OperationType.IN_POSITION_OF_TYPE)
+        {
+            method.append(operation.position);
+        }
+        return method.append(')').toString();
+    }
+
+    /**
+     * Walks the steps of a chain, tracking what narrows the current step.
+     */
+    private static final class StepWalker
+    {
+        private final List<ComplexityReport.Warning> warnings;
+        private int step;
+        private Operation stepStart;
+        private boolean leading;
+        private boolean universal;
+        private boolean anchored;
+        private boolean narrowed;
+        private int negations;
+        private int anyElementRun;
+
+        private StepWalker(final List<ComplexityReport.Warning> warnings)
+        {
+            this.warnings = warnings;
+        }
+
+        private void walk(final Operation chain, final boolean leadingChain)
+        {
+            final Operation[] operations = chain.toArray();
+            for (int i = 0; i < operations.length; i++)
+            {
+                final Operation operation = operations[i];
+                switch (operation.type)
+                {
+                    case AN_ELEMENT:
+                        beginStep(operation, leadingChain && i == 0, true);
+                        break;
+                    case AN_ELEMENT_OF_TYPE:
+                    case THAT_CONTAINS_A:
+                    case THAT_CONTAINS_A_CHILD_OF_TYPE:
+                        beginStep(operation, leadingChain && i == 0, "*".equals(operation.argument));
+                        break;
+                    case AN_ELEMENT_WITH_ID:
+                        beginStep(operation, leadingChain && i == 0, true);
+                        anchored = true;
+                        break;
+                    case CSS_SELECTOR:
+                    case XPATH_EXPRESSION:
+                        beginStep(operation, leadingChain && i == 0, operation.argument.startsWith("*") || operation.argument.startsWith("//*"));
+                        // Anything after the leading wildcard may narrow it, so only a bare wildcard is reported.
+                        anchored = !"*".equals(operation.argument) && !"//*".equals(operation.argument);
+                        break;
+                    case SCOPE:
+                        // The element searched from, which is already found.
+                        beginStep(operation, false, false);
+                        break;
+                    case THAT_CONTAINS_ANY_ELEMENT:
+                        final int run = anyElementRun + 1;
+                        beginStep(operation, false, true);
+                        anyElementRun = run;
+                        if (anyElementRun == 2)
+                        {
+                            warn(ComplexityWarning.DEEP_ANY_ELEMENT_CHAIN, "thatContainsAnyElement() follows another, multiplying the elements examined");
+                        }
+                        break;
+                    case ADD_SUB_SPECIFICATION:
+                        walk(operation.subSpecification, false);
+                        break;
+                    case WITH_ID:
+                        anchored = true;
+                        break;
+                    case WITHOUT_CLASS:
+                    case WITHOUT_ATTRIBUTE:
+                        negations++;
+                        if (negations == 2)
+                        {
+                            warn(ComplexityWarning.NEGATION_STACK, describe(operation) + " is the second negated condition on one step");
+                        }
+                        break;
+                    case WITH_TEXT:
+                    case WITH_TEXT_CONTAINING:
+                        if (universal && !anchored && !narrowed)
+                        {
+                            warn(ComplexityWarning.TEXT_SEARCH_ON_LARGE_SCOPE, describe(operation) + " examines the text of every element in scope");
+                        }
+                        break;
+                    default:
+                        narrowed = true;
+                        break;
+                }
+            }
+            if (leadingChain)
+            {
+                endStep();
+            }
+        }
+
+        private void beginStep(final Operation operation, final boolean leadingStep, final boolean universalStep)
+        {
+            endStep();
+            step++;
+            stepStart = operation;
+            leading = leadingStep;
+            universal = universalStep;
+            anchored = false;
+            narrowed = false;
+            negations = 0;
+            anyElementRun = 0;
+        }
+
+        private void endStep()
+        {
+            if (stepStart != null && universal && !anchored && (leading || stepStart.type == OperationType.THAT_CONTAINS_ANY_ELEMENT))
+            {
+                warn(ComplexityWarning.UNANCHORED_DESCENDANT, describe(stepStart) + (leading ? " starts by examining every element in the document" :
+                                                                                    " examines every descendant without an id to narrow it"));
+            }
+            stepStart = null;
+        }
+
+        private void warn(final ComplexityWarning kind, final String detail)
+        {
+            warnings.add(new ComplexityReport.Warning(kind, "step " + step + ": " + detail));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The most expensive specification a test or build will accept: a maximum {@link SelectorCostModel cost} and the {@link ComplexityWarning warnings} it tolerates.
+ * Budgets are immutable.
+ *
+ * <pre>
+ * private static final ComplexityBudget GRID_BUDGET = ComplexityBudget.maxCost(40).allowing(ComplexityWarning.NEGATION_STACK);
+ *
+ * ROW.analyseComplexity().requireWithin(GRID_BUDGET);
+ * </pre>
+ */
+public final class ComplexityBudget
+{
+    private final double maxCost;
+    private final Set<ComplexityWarning> allowedWarnings;
+
+    private ComplexityBudget(final double maxCost, final Set<ComplexityWarning> allowedWarnings)
+    {
+        this.maxCost = maxCost;
+        this.allowedWarnings = allowedWarnings;
+    }
+
+    /**
+     * @param maxCost the highest cost, as estimated by the registered {@link SelectorCostModel}, to accept.
+     * @return a budget of {@code maxCost} that tolerates no warnings.
+     */
+    public static ComplexityBudget maxCost(final double maxCost)
+    {
+        return new ComplexityBudget(maxCost, EnumSet.noneOf(ComplexityWarning.class));
+    }
+
+    /**
+     * @param warnings warnings to tolerate.
+     * @return a copy of this budget that also tolerates {@code warnings}.
+     */
+    public ComplexityBudget allowing(final ComplexityWarning... warnings)
+    {
+        final Set<ComplexityWarning> allowed = EnumSet.noneOf(ComplexityWarning.class);
+        allowed.addAll(allowedWarnings);
+        allowed.addAll(Arrays.asList(warnings));
+        return new ComplexityBudget(maxCost, allowed);
+    }
+
+    public double getMaxCost()
+    {
+        return maxCost;
+    }
+
+    public boolean allows(final ComplexityWarning warning)
+    {
+        return allowedWarnings.contains(warning);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "cost <= " + maxCost + (allowedWarnings.isEmpty() ? "" : " allowing " + allowedWarnings);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The estimated cost of a specification's locator and the expensive constructs it uses, as found by {@link ComplexityAnalyzer}.
+ */
+public final class ComplexityReport
+{
+    private final String locator;
+    private final LocatorFormat format;
+    private final double cost;
+    private final List<Warning> warnings;
+
+    ComplexityReport(final String locator, final LocatorFormat format, final double cost, final List<Warning> warnings)
+    {
+        this.locator = locator;
+        this.format = format;
+        this.cost = cost;
+        this.warnings = Collections.unmodifiableList(warnings);
+    }
+
+    /**
+     * @return the locator as rendered by {@link ElementSpecification#asSeleniumLocator()}.
+     */
+    public String getLocator()
+    {
+        return locator;
+    }
+
+    /**
+     * @return the format the specification is rendered in, or null if it is invalid.
+     */
+    public LocatorFormat getFormat()
+    {
+        return format;
+    }
+
+    /**
+     * @return the cost of the rendered locator estimated by the registered {@link SelectorCostModel}, or infinity if the specification is invalid.
+     */
+    public double getCost()
+    {
+        return cost;
+    }
+
+    public List<Warning> getWarnings()
+    {
+        return warnings;
+    }
+
+    /**
+     * @param budget the budget to check against.
+     * @return a description of each way the specification exceeds {@code budget}, empty if it is within budget.
+     */
+    public List<String> getViolations(final ComplexityBudget budget)
+    {
+        final List<String> violations = new ArrayList<>();
+        if (!(cost <= budget.getMaxCost()))
+        {
+            violations.add("cost " + cost + " exceeds " + budget.getMaxCost());
+        }
+        for (final Warning warning : warnings)
+        {
+            if (!budget.allows(warning.getKind()))
+            {
+                violations.add(warning.toString());
+            }
+        }
+        return violations;
+    }
+
+    public boolean isWithin(final ComplexityBudget budget)
+    {
+        return getViolations(budget).isEmpty();
+    }
+
+    /**
+     * Fail fast, e.g. in a unit test or build step, if the specification is too expensive.
+     *
+     * @param budget the budget to check against.
+     * @return this report.
+     * @throws IllegalStateException if the specification exceeds {@code budget}, listing each violation.
+     */
+    public ComplexityReport requireWithin(final ComplexityBudget budget)
+    {
+        final List<String> violations = getViolations(budget);
+        if (!violations.isEmpty())
+        {
+            throw new IllegalStateException(locator + " exceeds its complexity budget (" + budget + "):\n  " + String.join("\n  ", violations));
+        }
+        return this;
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder text = new StringBuilder(locator).append(" cost ").append(cost);
+        for (final Warning warning : warnings)
+        {
+            text.append("\n  ").append(warning);
+        }
+        return text.toString();
+    }
+
+    /**
+     * One expensive construct in a specification.
+     */
+    public static final class Warning
+    {
+        private final ComplexityWarning kind;
+        private final String detail;
+
+        Warning(final ComplexityWarning kind, final String detail)
+        {
+            this.kind = kind;
+            this.detail = detail;
+        }
+
+        public ComplexityWarning getKind()
+        {
+            return kind;
+        }
+
+        /**
+         * @return where the construct is and why it is expensive.
+         */
+        public String getDetail()
+        {
+            return detail;
+        }
+
+        @Override
+        public String toString()
+        {
+            return kind + ": " + detail;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+/**
+ * The kinds of construct {@link ComplexityAnalyzer} warns about because browsers find them expensive to evaluate, especially in large documents such as grids
+ * with hundreds of elements per row.
+ */
+public enum ComplexityWarning
+{
+    /**
+     * A step that matches any element without an id to narrow it, e.g. a leading {@code *} or {@code //*}, so the browser examines every element in scope.
+     */
+    UNANCHORED_DESCENDANT,
+    /**
+     * Two or more {@link ElementSpecification#thatContainsAnyElement()} steps in a row, each multiplying the elements examined by the one before.
+     */
+    DEEP_ANY_ELEMENT_CHAIN,
+    /**
+     * A text condition on a step that matches any element, so the text of every element in scope is examined.
+     */
+    TEXT_SEARCH_ON_LARGE_SCOPE,
+    /**
+     * Two or more {@link ElementSpecification#withoutClass(String)} or {@link ElementSpecification#withoutAttribute(String)} conditions on one step, which only
+     * exclude elements so leave the rest of the step unselective.
+     */
+    NEGATION_STACK,
+    /**
+     * A refinement CSS can't represent, such as {@link ElementSpecification#withAnyOfTheseClasses(String...)}, forcing the specification onto the browser's much
+     * slower XPath engine.
+     */
+    XPATH_ONLY,
+    /**
+     * The specification is invalid, so can't be rendered at all.
+     */
+    INVALID
+}
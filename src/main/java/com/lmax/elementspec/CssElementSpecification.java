@@ -17,54 +17,57 @@ package com.lmax.elementspec;
 
 import org.openqa.selenium.By;
 
-import java.util.Optional;
 import java.util.function.UnaryOperator;
 
 import static com.lmax.elementspec.InvalidElementSpecification.INVALID;
-import static java.util.Optional.empty;
 
 final class CssElementSpecification implements ElementSpecification
 {
-    private final Optional<CssToken> currentToken;
-    private final String previousTokens;
-
-    private CssElementSpecification(final String previousTokens, final CssToken currentToken)
+    private static final String EMPTY = CssToken.value(OperationType.WITH_NO_CHILDREN, null, null, 0);
+    private static final String CHECKED = CssToken.value(OperationType.THAT_IS_CHECKED, null, null, 0);
+
+    // Each specification only holds its own segment and shares everything before it with the specification it was refined from.
+    // Segments are either a token that can still be refined or a complete selector (from an old style locator or sub specification).
+    private final CssElementSpecification previous;
+    private final CssToken currentToken;
+    private final String completeSelector;
+    private final boolean optimised;
+    private final int segmentCount;
+
+    // Rendered lazily using the racy single-check idiom. Both are immutable so at worst they are computed more than once.
+    private String css;
+    private String seleniumLocator;
+    private By webDriverLocator;
+
+    private CssElementSpecification(final CssElementSpecification previous, final CssToken currentToken, final String completeSelector, final boolean optimised)
     {
-        this(previousTokens, Optional.of(currentToken));
-    }
-
-    private CssElementSpecification(final String previousTokens, final Optional<CssToken> currentToken)
-    {
-        this.previousTokens = previousTokens;
+        this.previous = previous;
         this.currentToken = currentToken;
+        this.completeSelector = completeSelector;
+        this.optimised = optimised;
+        this.segmentCount = previous == null ? 1 : previous.segmentCount + 1;
     }
 
     public static CssElementSpecification fromOldStyleSeleniumCssLocator(final String oldStyleSeleniumCssLocator)
     {
-        return new CssElementSpecification(oldStyleSeleniumCssLocator, empty());
+        return new CssElementSpecification(null, null, oldStyleSeleniumCssLocator, false);
     }
 
     public static CssElementSpecification anElement()
     {
-        return new CssElementSpecification("", CssToken.AN_ELEMENT);
+        return new CssElementSpecification(null, CssToken.AN_ELEMENT, null, false);
     }
 
     public static CssElementSpecification anElementOfType(final String tagName)
     {
-        return new CssElementSpecification("", CssToken.AN_ELEMENT.withTagName(tagName));
+        return new CssElementSpecification(null, CssToken.AN_ELEMENT.withTagName(tagName), null, false);
     }
 
     @Override
     public ElementSpecification withId(final String id)
     {
-        if (!id.matches("^[A-Za-z\\-_]+$"))
-        {
-            return withAttributeValue("id", id);
-        }
-        else
-        {
-            return modifyCurrentToken(token -> token.withId(id));
-        }
+        final String escapedId = CssToken.value(OperationType.WITH_ID, id, null, 0);
+        return modifyCurrentToken(token -> token.withId(escapedId));
     }
 
     @Override
@@ -78,7 +81,7 @@ final class CssElementSpecification implements ElementSpecification
     {
         if (builder instanceof CssElementSpecification && builder.isValid())
         {
-            return new CssElementSpecification(getCurrentCss() + " " + ((CssElementSpecification)builder).getCurrentCss(), empty());
+            return new CssElementSpecification(this, null, ((CssElementSpecification)builder).getCurrentCss(), optimised);
         }
         return INVALID;
     }
@@ -92,25 +95,29 @@ final class CssElementSpecification implements ElementSpecification
     @Override
     public ElementSpecification withAttribute(final String attributeName)
     {
-        return modifyCurrentToken(token -> token.withAttributeCondition(attributeName));
+        final String condition = CssToken.value(OperationType.WITH_ATTRIBUTE, attributeName, null, 0);
+        return modifyCurrentToken(token -> token.withAttributeCondition(condition));
     }
 
     @Override
     public ElementSpecification withoutAttribute(final String attributeName)
     {
-        return modifyCurrentToken(token -> token.withPseudoClass(":not([" + attributeName + "])"));
+        final String pseudoClass = CssToken.value(OperationType.WITHOUT_ATTRIBUTE, attributeName, null, 0);
+        return modifyCurrentToken(token -> token.withPseudoClass(pseudoClass));
     }
 
     @Override
     public ElementSpecification withAttributeContaining(final String attributeName, final String expectedSubstring)
     {
-        return modifyCurrentToken(token -> token.withAttributeCondition(attributeName + "*=\"" + expectedSubstring + "\""));
+        final String condition = CssToken.value(OperationType.WITH_ATTRIBUTE_CONTAINING, attributeName, expectedSubstring, 0);
+        return modifyCurrentToken(token -> token.withAttributeCondition(condition));
     }
 
     @Override
     public ElementSpecification withAttributeValue(final String attributeName, final String value)
     {
-        return modifyCurrentToken(token -> token.withAttributeCondition(attributeName + "=\"" + value + "\""));
+        final String condition = CssToken.value(OperationType.WITH_ATTRIBUTE_VALUE, attributeName, value, 0);
+        return modifyCurrentToken(token -> token.withAttributeCondition(condition));
     }
 
     @Override
@@ -122,13 +129,14 @@ final class CssElementSpecification implements ElementSpecification
     @Override
     public ElementSpecification withNoChildren()
     {
-        return modifyCurrentToken(token -> token.withPseudoClass(":empty"));
+        return modifyCurrentToken(token -> token.withPseudoClass(EMPTY));
     }
 
     @Override
     public ElementSpecification withClass(final String classname)
     {
-        return modifyCurrentToken(token -> token.withClass(classname));
+        final String escapedClassname = CssToken.value(OperationType.WITH_CLASS, classname, null, 0);
+        return modifyCurrentToken(token -> token.withClass(escapedClassname));
     }
 
     @Override
@@ -140,13 +148,15 @@ final class CssElementSpecification implements ElementSpecification
     @Override
     public ElementSpecification inPosition(final int position)
     {
-        return modifyCurrentToken(token -> token.withPseudoClass(":nth-child(" + position + ")"));
+        final String pseudoClass = CssToken.value(OperationType.IN_POSITION, null, null, position);
+        return modifyCurrentToken(token -> token.withPseudoClass(pseudoClass));
     }
 
     @Override
     public ElementSpecification inPositionOfType(int position)
     {
-        return modifyCurrentToken(token -> token.withPseudoClass(":nth-of-type(" + position + ")"));
+        final String pseudoClass = CssToken.value(OperationType.IN_POSITION_OF_TYPE, null, null, position);
+        return modifyCurrentToken(token -> token.withPseudoClass(pseudoClass));
     }
 
     @Override
@@ -170,25 +180,44 @@ final class CssElementSpecification implements ElementSpecification
     @Override
     public ElementSpecification thatIsChecked()
     {
-        return modifyCurrentToken(token -> token.withPseudoClass(":checked"));
+        return modifyCurrentToken(token -> token.withPseudoClass(CHECKED));
     }
 
     @Override
     public ElementSpecification withoutClass(final String classname)
     {
-        return modifyCurrentToken(token -> token.withPseudoClass(":not(." + classname + ")"));
+        final String pseudoClass = CssToken.value(OperationType.WITHOUT_CLASS, classname, null, 0);
+        return modifyCurrentToken(token -> token.withPseudoClass(pseudoClass));
+    }
+
+    @Override
+    public ElementSpecification optimised()
+    {
+        return optimised ? this : new CssElementSpecification(previous, currentToken, completeSelector, true);
     }
 
     @Override
     public String asSeleniumLocator()
     {
-        return "css=" + getCurrentCss();
+        String locator = seleniumLocator;
+        if (locator == null)
+        {
+            locator = "css=" + getCurrentCss();
+            seleniumLocator = locator;
+        }
+        return locator;
     }
 
     @Override
     public By asWebDriverLocator()
     {
-        return By.cssSelector(getCurrentCss());
+        By locator = webDriverLocator;
+        if (locator == null)
+        {
+            locator = By.cssSelector(getCurrentCss());
+            webDriverLocator = locator;
+        }
+        return locator;
     }
 
     @Override
@@ -197,6 +226,18 @@ final class CssElementSpecification implements ElementSpecification
         return true;
     }
 
+    @Override
+    public boolean equals(final Object o)
+    {
+        return this == o || o instanceof CssElementSpecification && getCurrentCss().equals(((CssElementSpecification)o).getCurrentCss());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return getCurrentCss().hashCode();
+    }
+
     @Override
     public String toString()
     {
@@ -205,19 +246,46 @@ final class CssElementSpecification implements ElementSpecification
 
     private ElementSpecification modifyCurrentToken(final UnaryOperator<CssToken> operator)
     {
-        return new CssElementSpecification(previousTokens, operator.apply(currentToken.orElse(CssToken.AN_ELEMENT)));
+        if (currentToken == null)
+        {
+            return addNewToken(operator.apply(CssToken.AN_ELEMENT));
+        }
+        return new CssElementSpecification(previous, operator.apply(currentToken), null, optimised);
     }
 
     private ElementSpecification addNewToken(final CssToken cssToken)
     {
-        return new CssElementSpecification(getCurrentCss(), cssToken);
+        return new CssElementSpecification(this, cssToken, null, optimised);
     }
 
     private String getCurrentCss()
     {
-        return currentToken
-                .map(token -> previousTokens + " " + token.toString())
-                .map(String::trim)
-                .orElse(previousTokens);
+        String currentCss = css;
+        if (currentCss == null)
+        {
+            currentCss = render();
+            css = currentCss;
+        }
+        return currentCss;
+    }
+
+    private String render()
+    {
+        final CssElementSpecification[] segments = new CssElementSpecification[segmentCount];
+        for (CssElementSpecification segment = this; segment != null; segment = segment.previous)
+        {
+            segments[segment.segmentCount - 1] = segment;
+        }
+
+        final StringBuilder css = new StringBuilder();
+        for (final CssElementSpecification segment : segments)
+        {
+            if (css.length() > 0)
+            {
+                css.append(' ');
+            }
+            css.append(segment.currentToken != null ? segment.currentToken.render(optimised) : segment.completeSelector);
+        }
+        return css.toString().trim();
     }
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+/**
+ * Serializes identifiers and strings for use in CSS selectors following the CSSOM rules used by {@code CSS.escape}, so any id or class name can be used with the
+ * {@code #id} and {@code .class} forms that browsers resolve by lookup.
+ */
+final class CssEscaper
+{
+    private static final char REPLACEMENT_CHARACTER = '\uFFFD';
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // How each ASCII character is written in an identifier. Anything from U+0080 upwards is always written as is.
+    private static final byte LITERAL = 0;
+    private static final byte BACKSLASH = 1;
+    private static final byte CODE_POINT = 2;
+    private static final byte DIGIT = 3;
+    private static final byte HYPHEN = 4;
+
+    private static final byte[] IDENTIFIER_CHARACTERS = new byte[128];
+
+    static
+    {
+        for (int c = 0; c < IDENTIFIER_CHARACTERS.length; c++)
+        {
+            if (c < 0x20 || c == 0x7F)
+            {
+                IDENTIFIER_CHARACTERS[c] = CODE_POINT;
+            }
+            else if (c >= '0' && c <= '9')
+            {
+                IDENTIFIER_CHARACTERS[c] = DIGIT;
+            }
+            else if (c == '-')
+            {
+                IDENTIFIER_CHARACTERS[c] = HYPHEN;
+            }
+            else if (c == '_' || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z')
+            {
+                IDENTIFIER_CHARACTERS[c] = LITERAL;
+            }
+            else
+            {
+                IDENTIFIER_CHARACTERS[c] = BACKSLASH;
+            }
+        }
+    }
+
+    private CssEscaper()
+    {
+    }
+
+    /**
+     * Escape {@code value} so it can be used as a CSS identifier, e.g. an id or class name.
+     *
+     * @param value the raw identifier.
+     * @return the escaped identifier, which is {@code value} itself if no escaping is required.
+     */
+    static String escapeIdentifier(final String value)
+    {
+        final int firstEscape = firstCharacterToEscape(value);
+        if (firstEscape == value.length())
+        {
+            return value;
+        }
+
+        final StringBuilder escaped = new StringBuilder(value.length() + 8).append(value, 0, firstEscape);
+        for (int i = firstEscape; i < value.length(); i++)
+        {
+            final char c = value.charAt(i);
+            switch (identifierAction(value, i, c))
+            {
+                case LITERAL:
+                    escaped.append(c);
+                    break;
+                case BACKSLASH:
+                    escaped.append('\\').append(c);
+                    break;
+                default:
+                    appendCodePoint(escaped, c);
+                    break;
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Serialize {@code value} as a double quoted CSS string, e.g. for an attribute value.
+     *
+     * @param value the raw string.
+     * @return the quoted and escaped string.
+     */
+    static String quoteString(final String value)
+    {
+        final StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++)
+        {
+            final char c = value.charAt(i);
+            if (c == 0)
+            {
+                quoted.append(REPLACEMENT_CHARACTER);
+            }
+            else if (c < 0x20 || c == 0x7F)
+            {
+                appendCodePoint(quoted, c);
+            }
+            else if (c == '"' || c == '\\')
+            {
+                quoted.append('\\').append(c);
+            }
+            else
+            {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static int firstCharacterToEscape(final String value)
+    {
+        for (int i = 0; i < value.length(); i++)
+        {
+            if (identifierAction(value, i, value.charAt(i)) != LITERAL)
+            {
+                return i;
+            }
+        }
+        return value.length();
+    }
+
+    private static byte identifierAction(final String value, final int index, final char c)
+    {
+        if (c >= IDENTIFIER_CHARACTERS.length)
+        {
+            return LITERAL;
+        }
+        if (c == 0)
+        {
+            return CODE_POINT;
+        }
+
+        final byte action = IDENTIFIER_CHARACTERS[c];
+        if (action == DIGIT)
+        {
+            // Identifiers can't start with a digit or a hyphen followed by a digit.
+            return index == 0 || index == 1 && value.charAt(0) == '-' ? CODE_POINT : LITERAL;
+        }
+        if (action == HYPHEN)
+        {
+            return index == 0 && value.length() == 1 ? BACKSLASH : LITERAL;
+        }
+        return action;
+    }
+
+    private static void appendCodePoint(final StringBuilder builder, final char c)
+    {
+        if (c == 0)
+        {
+            builder.append(REPLACEMENT_CHARACTER);
+            return;
+        }
+
+        builder.append('\\');
+        if (c >= 0x10)
+        {
+            builder.append(HEX_DIGITS[c >> 4]);
+        }
+        builder.append(HEX_DIGITS[c & 0xF]).append(' ');
+    }
+}
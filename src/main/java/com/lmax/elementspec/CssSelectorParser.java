@@ -0,0 +1,506 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+/**
+ * Parses CSS selectors into the equivalent {@link ElementSpecification} steps, so that old style {@code css=} locators can be refined and rendered in any format like
+ * specifications built with the API.
+ *
+ * <p>The supported subset is what {@code ElementSpecification} itself can represent: type and universal selectors, {@code #id}, {@code .class}, {@code [attr]},
+ * {@code [attr=value]}, {@code [attr*=value]}, {@code [class~=value]}, {@code :not(.class)}, {@code :not([attr])}, {@code :nth-child(n)}, {@code :nth-of-type(n)},
+ * {@code :first-child}, {@code :first-of-type}, {@code :empty} and {@code :checked}, joined by descendant and child combinators. Identifiers and strings may use CSS
+ * escapes. Anything else, e.g. sibling combinators, selector lists or {@code :nth-child(2n+1)}, is reported as unsupported rather than approximated.</p>
+ *
+ * <p>The selector is scanned in place with a single cursor; nothing is allocated besides the identifiers and the specifications themselves.</p>
+ */
+final class CssSelectorParser
+{
+    private static final char REPLACEMENT_CHARACTER = '\uFFFD';
+
+    // Thrown to abandon parsing. It's shared and has no stack trace as unsupported selectors are expected and only ever reported as a null result.
+    private static final UnsupportedSelectorException UNSUPPORTED = new UnsupportedSelectorException();
+
+    private final String selector;
+    private int position;
+
+    private CssSelectorParser(final String selector)
+    {
+        this.selector = selector;
+    }
+
+    /**
+     * @param selector a CSS selector.
+     * @return the equivalent specification, or {@code null} if the selector uses anything outside the supported subset.
+     */
+    static ElementSpecification parse(final String selector)
+    {
+        try
+        {
+            return new CssSelectorParser(selector).parseSelector();
+        }
+        catch (final UnsupportedSelectorException e)
+        {
+            return null;
+        }
+    }
+
+    private ElementSpecification parseSelector()
+    {
+        skipWhitespace();
+        ElementSpecification spec = parseCompound(null, false);
+        while (true)
+        {
+            final boolean whitespace = skipWhitespace();
+            if (atEnd())
+            {
+                return spec;
+            }
+
+            final boolean child = peek() == '>';
+            if (child)
+            {
+                position++;
+                skipWhitespace();
+            }
+            else if (!whitespace)
+            {
+                throw UNSUPPORTED;
+            }
+            spec = parseCompound(spec, child);
+        }
+    }
+
+    private ElementSpecification parseCompound(final ElementSpecification previous, final boolean child)
+    {
+        String tagName = null;
+        if (!atEnd() && peek() == '*')
+        {
+            position++;
+            tagName = "*";
+        }
+        else if (startsIdentifier())
+        {
+            tagName = identifier();
+        }
+
+        ElementSpecification spec;
+        boolean empty = tagName == null;
+        if (previous == null)
+        {
+            if (tagName == null && !atEnd() && peek() == '#')
+            {
+                position++;
+                spec = ElementSpecification.anElementWithId(literal(identifier()));
+                empty = false;
+            }
+            else
+            {
+                spec = tagName == null || "*".equals(tagName) ? ElementSpecification.anElement() : ElementSpecification.anElementOfType(tagName);
+            }
+        }
+        else if (child)
+        {
+            spec = previous.thatContainsAChildOfType(tagName == null ? "*" : tagName);
+        }
+        else
+        {
+            spec = tagName == null || "*".equals(tagName) ? previous.thatContainsAnyElement() : previous.thatContainsA(tagName);
+        }
+
+        while (!atEnd())
+        {
+            final char c = peek();
+            if (c == '#')
+            {
+                position++;
+                spec = spec.withId(literal(identifier()));
+            }
+            else if (c == '.')
+            {
+                position++;
+                spec = spec.withClass(literal(identifier()));
+            }
+            else if (c == '[')
+            {
+                position++;
+                spec = parseAttribute(spec);
+            }
+            else if (c == ':')
+            {
+                position++;
+                spec = parsePseudoClass(spec);
+            }
+            else
+            {
+                break;
+            }
+            empty = false;
+        }
+
+        if (empty)
+        {
+            throw UNSUPPORTED;
+        }
+        return spec;
+    }
+
+    private ElementSpecification parseAttribute(final ElementSpecification spec)
+    {
+        skipWhitespace();
+        final String name = identifier();
+        skipWhitespace();
+        if (consume(']'))
+        {
+            return spec.withAttribute(name);
+        }
+
+        final char operator = next();
+        if (operator != '=' && !consume('='))
+        {
+            throw UNSUPPORTED;
+        }
+        skipWhitespace();
+        final String value = literal(peek() == '"' || peek() == '\'' ? string() : identifier());
+        skipWhitespace();
+        expect(']');
+
+        switch (operator)
+        {
+            case '=':
+                return spec.withAttributeValue(name, value);
+            case '*':
+                // [attr*=""] never matches but the XPath contains() it would become always does.
+                if (value.isEmpty())
+                {
+                    throw UNSUPPORTED;
+                }
+                return spec.withAttributeContaining(name, value);
+            case '~':
+                if (!"class".equals(name) || value.isEmpty() || containsWhitespace(value))
+                {
+                    throw UNSUPPORTED;
+                }
+                return spec.withClass(value);
+            default:
+                throw UNSUPPORTED;
+        }
+    }
+
+    private ElementSpecification parsePseudoClass(final ElementSpecification spec)
+    {
+        final String name = identifier();
+        if (!consume('('))
+        {
+            switch (name.toLowerCase())
+            {
+                case "checked":
+                    return spec.thatIsChecked();
+                case "empty":
+                    return spec.withNoChildren();
+                case "first-child":
+                    return spec.inPosition(1);
+                case "first-of-type":
+                    return spec.inPositionOfType(1);
+                default:
+                    throw UNSUPPORTED;
+            }
+        }
+
+        skipWhitespace();
+        final ElementSpecification result;
+        switch (name.toLowerCase())
+        {
+            case "nth-child":
+                result = spec.inPosition(integer());
+                break;
+            case "nth-of-type":
+                result = spec.inPositionOfType(integer());
+                break;
+            case "not":
+                result = parseNegation(spec);
+                break;
+            default:
+                throw UNSUPPORTED;
+        }
+        skipWhitespace();
+        expect(')');
+        return result;
+    }
+
+    private ElementSpecification parseNegation(final ElementSpecification spec)
+    {
+        if (consume('.'))
+        {
+            return spec.withoutClass(literal(identifier()));
+        }
+        expect('[');
+        skipWhitespace();
+        final String name = identifier();
+        skipWhitespace();
+        expect(']');
+        return spec.withoutAttribute(name);
+    }
+
+    private int integer()
+    {
+        final int start = position;
+        while (!atEnd() && peek() >= '0' && peek() <= '9' && position - start < 9)
+        {
+            position++;
+        }
+        if (position == start)
+        {
+            throw UNSUPPORTED;
+        }
+        return Integer.parseInt(selector.substring(start, position));
+    }
+
+    private boolean startsIdentifier()
+    {
+        if (atEnd())
+        {
+            return false;
+        }
+        final char c = peek();
+        if (c == '-')
+        {
+            return position + 1 < selector.length() && (isNameStart(selector.charAt(position + 1)) || selector.charAt(position + 1) == '-' || startsEscape(position + 1));
+        }
+        return isNameStart(c) || startsEscape(position);
+    }
+
+    private String identifier()
+    {
+        if (!startsIdentifier())
+        {
+            throw UNSUPPORTED;
+        }
+
+        // Most identifiers have no escapes and can be taken straight from the selector.
+        final int start = position;
+        while (!atEnd() && isNameCharacter(peek()))
+        {
+            position++;
+        }
+        if (atEnd() || peek() != '\\')
+        {
+            return selector.substring(start, position);
+        }
+
+        final StringBuilder identifier = new StringBuilder(selector.length() - start).append(selector, start, position);
+        while (!atEnd())
+        {
+            final char c = peek();
+            if (isNameCharacter(c))
+            {
+                identifier.append(c);
+                position++;
+            }
+            else if (startsEscape(position))
+            {
+                position++;
+                appendEscape(identifier);
+            }
+            else
+            {
+                break;
+            }
+        }
+        return identifier.toString();
+    }
+
+    /**
+     * XPath renders ids, classes and attribute values as single quoted literals, so a value containing an apostrophe is kept in a verbatim selector instead.
+     */
+    private static String literal(final String value)
+    {
+        if (value.indexOf('\'') >= 0)
+        {
+            throw UNSUPPORTED;
+        }
+        return value;
+    }
+
+    private String string()
+    {
+        final char quote = next();
+        final StringBuilder value = new StringBuilder();
+        while (true)
+        {
+            if (atEnd())
+            {
+                throw UNSUPPORTED;
+            }
+            final char c = next();
+            if (c == quote)
+            {
+                return value.toString();
+            }
+            if (c == '\n' || c == '\r' || c == '\f')
+            {
+                throw UNSUPPORTED;
+            }
+            if (c != '\\')
+            {
+                value.append(c);
+            }
+            else if (!atEnd() && isNewline(peek()))
+            {
+                // An escaped newline continues the string on the next line.
+                position += selector.startsWith("\r\n", position) ? 2 : 1;
+            }
+            else
+            {
+                appendEscape(value);
+            }
+        }
+    }
+
+    /**
+     * Append the character escaped at the current position, which follows a backslash.
+     */
+    private void appendEscape(final StringBuilder builder)
+    {
+        if (atEnd())
+        {
+            builder.append(REPLACEMENT_CHARACTER);
+            return;
+        }
+
+        final int start = position;
+        int codePoint = 0;
+        while (!atEnd() && position - start < 6 && Character.digit(peek(), 16) >= 0)
+        {
+            codePoint = codePoint * 16 + Character.digit(next(), 16);
+        }
+        if (position == start)
+        {
+            builder.append(next());
+            return;
+        }
+
+        // A single whitespace character (or CRLF) terminates a hex escape.
+        if (!atEnd() && isWhitespace(peek()))
+        {
+            position += selector.startsWith("\r\n", position) ? 2 : 1;
+        }
+        if (codePoint == 0 || codePoint > Character.MAX_CODE_POINT || codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)
+        {
+            builder.append(REPLACEMENT_CHARACTER);
+        }
+        else
+        {
+            builder.appendCodePoint(codePoint);
+        }
+    }
+
+    private boolean startsEscape(final int index)
+    {
+        return index < selector.length() && selector.charAt(index) == '\\' && (index + 1 == selector.length() || !isNewline(selector.charAt(index + 1)));
+    }
+
+    private boolean skipWhitespace()
+    {
+        final int start = position;
+        while (!atEnd() && isWhitespace(peek()))
+        {
+            position++;
+        }
+        return position != start;
+    }
+
+    private boolean consume(final char expected)
+    {
+        if (!atEnd() && peek() == expected)
+        {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(final char expected)
+    {
+        if (!consume(expected))
+        {
+            throw UNSUPPORTED;
+        }
+    }
+
+    private boolean atEnd()
+    {
+        return position >= selector.length();
+    }
+
+    private char peek()
+    {
+        if (atEnd())
+        {
+            throw UNSUPPORTED;
+        }
+        return selector.charAt(position);
+    }
+
+    private char next()
+    {
+        final char c = peek();
+        position++;
+        return c;
+    }
+
+    private static boolean isNameStart(final char c)
+    {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_' || c >= 0x80;
+    }
+
+    private static boolean isNameCharacter(final char c)
+    {
+        return isNameStart(c) || c >= '0' && c <= '9' || c == '-';
+    }
+
+    private static boolean isWhitespace(final char c)
+    {
+        return c == ' ' || c == '\t' || isNewline(c);
+    }
+
+    private static boolean isNewline(final char c)
+    {
+        return c == '\n' || c == '\r' || c == '\f';
+    }
+
+    private static boolean containsWhitespace(final String value)
+    {
+        for (int i = 0; i < value.length(); i++)
+        {
+            if (isWhitespace(value.charAt(i)))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class UnsupportedSelectorException extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        private UnsupportedSelectorException()
+        {
+            super("Unsupported CSS selector", null, false, false);
+        }
+    }
+}
@@ -16,29 +16,21 @@
 
 package com.lmax.elementspec;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-import java.util.Optional;
-
-
-import static java.util.Collections.emptyList;
-import static java.util.Optional.empty;
-import static java.util.stream.Collectors.joining;
+import static com.lmax.elementspec.CssEscaper.escapeIdentifier;
+import static com.lmax.elementspec.CssEscaper.quoteString;
 
 final class CssToken
 {
-    static final CssToken AN_ELEMENT = new CssToken(" ", empty(), empty(), emptyList(), emptyList(), emptyList());
+    static final CssToken AN_ELEMENT = new CssToken("", null, null, Item.NONE, Item.NONE, Item.NONE);
 
     private final String relationship;
-    private final Optional<String> tagName;
-    private final Optional<String> id;
-    private final Collection<String> classNames;
-    private final Collection<String> pseudoClasses;
-    private final Collection<String> attributeConditions;
-
-    private CssToken(final String relationship, final Optional<String> tagName, final Optional<String> id, final Collection<String> classNames, final Collection<String> pseudoClasses,
-                     final Collection<String> attributeConditions)
+    private final String tagName;
+    private final String id;
+    private final Item classNames;
+    private final Item pseudoClasses;
+    private final Item attributeConditions;
+
+    private CssToken(final String relationship, final String tagName, final String id, final Item classNames, final Item pseudoClasses, final Item attributeConditions)
     {
         this.relationship = relationship;
         this.tagName = tagName;
@@ -55,56 +47,188 @@ final class CssToken
 
     public CssToken withTagName(final String tagName)
     {
-        return new CssToken(relationship, Optional.of(tagName), id, classNames, pseudoClasses, attributeConditions);
+        return new CssToken(relationship, tagName, id, classNames, pseudoClasses, attributeConditions);
     }
 
     public CssToken withClass(final String classname)
     {
-        return new CssToken(relationship, tagName, id, addItem(classNames, classname), pseudoClasses, attributeConditions);
+        return new CssToken(relationship, tagName, id, classNames.add(classname), pseudoClasses, attributeConditions);
     }
 
     public CssToken withId(final String id)
     {
-        return new CssToken(relationship, tagName, Optional.of(id), classNames, pseudoClasses, attributeConditions);
+        return new CssToken(relationship, tagName, id, classNames, pseudoClasses, attributeConditions);
     }
 
     public CssToken withPseudoClass(final String pseudoClass)
     {
-        return new CssToken(relationship, tagName, id, classNames, addItem(pseudoClasses, pseudoClass), attributeConditions);
+        return new CssToken(relationship, tagName, id, classNames, pseudoClasses.add(pseudoClass), attributeConditions);
     }
 
     public CssToken withAttributeCondition(final String condition)
     {
-        return new CssToken(relationship, tagName, id, classNames, pseudoClasses, addItem(attributeConditions, condition));
+        return new CssToken(relationship, tagName, id, classNames, pseudoClasses, attributeConditions.add(condition));
     }
 
     public String toString()
+    {
+        return render(false);
+    }
+
+    /**
+     * Render this token. An optimised rendering drops the universal selector when the token is qualified by attribute conditions as {@code [name]} and
+     * {@code *[name]} are equivalent.
+     */
+    String render(final boolean optimise)
     {
         final StringBuilder token = new StringBuilder();
+        if (!relationship.isEmpty())
+        {
+            token.append(relationship).append(' ');
+        }
+        final int start = token.length();
 
-        tagName.ifPresent(token::append);
-        id.ifPresent(value -> token.append('#').append(value));
-        token.append(classNames.stream()
-                             .map(classname -> "." + classname)
-                             .collect(joining()));
-        token.append(pseudoClasses.stream().collect(joining()));
+        if (tagName != null)
+        {
+            token.append(tagName);
+        }
+        if (id != null)
+        {
+            token.append(Part.ID.prefix).append(id);
+        }
+        classNames.appendTo(token, Part.CLASS.prefix, Part.CLASS.suffix);
+        pseudoClasses.appendTo(token, Part.PSEUDO_CLASS.prefix, Part.PSEUDO_CLASS.suffix);
 
-        if (token.length() == 0)
+        if (token.length() == start && !(optimise && attributeConditions != Item.NONE))
         {
-            token.append("*");
+            token.append('*');
         }
 
-        token.append(attributeConditions.stream()
-                             .map(condition -> "[" + condition + "]")
-                             .collect(joining()));
+        attributeConditions.appendTo(token, Part.ATTRIBUTE_CONDITION.prefix, Part.ATTRIBUTE_CONDITION.suffix);
+        return token.toString();
+    }
+
+    /**
+     * @return the value a refinement adds to its {@link Part} of a token.
+     */
+    static String value(final OperationType type, final String argument, final String secondArgument, final int position)
+    {
+        return appendValue(new StringBuilder(), type, argument, secondArgument, position).toString();
+    }
 
-        return (relationship + " " + token.toString()).trim();
+    /**
+     * Append the value a refinement adds to its {@link Part} of a token, without the part's prefix and suffix. Shared with {@link ElementSpecificationBuilder} so
+     * both render the same selector.
+     *
+     * @param position the position, for {@link OperationType#IN_POSITION} and {@link OperationType#IN_POSITION_OF_TYPE}.
+     * @return {@code css}.
+     * @throws IllegalStateException if {@code type} isn't a refinement CSS can represent.
+     */
+    static StringBuilder appendValue(final StringBuilder css, final OperationType type, final String argument, final String secondArgument, final int position)
+    {
+        switch (type)
+        {
+            case WITH_ID:
+            case WITH_CLASS:
+            case WITH_ATTRIBUTE:
+                return css.append(escapeIdentifier(argument));
+            case WITHOUT_CLASS:
+                return css.append(":not(.").append(escapeIdentifier(argument)).append(')');
+            case WITHOUT_ATTRIBUTE:
+                return css.append(":not([").append(escapeIdentifier(argument)).append("])");
+            case WITH_ATTRIBUTE_CONTAINING:
+                return css.append(escapeIdentifier(argument)).append("*=").append(quoteString(secondArgument));
+            case WITH_ATTRIBUTE_VALUE:
+                return css.append(escapeIdentifier(argument)).append('=').append(quoteString(secondArgument));
+            case IN_POSITION:
+                return css.append(":nth-child(").append(position).append(')');
+            case IN_POSITION_OF_TYPE:
+                return css.append(":nth-of-type(").append(position).append(')');
+            case WITH_NO_CHILDREN:
+                return css.append(":empty");
+            case THAT_IS_CHECKED:
+                return css.append(":checked");
+            default:
+                throw new IllegalStateException("Unable to render " + type + " as CSS");
+        }
     }
 
-    private List<String> addItem(final Collection<String> existing, final String newValue)
+    /**
+     * The parts of a token refinements add to, in the order they're rendered after the tag name, and the text around each value.
+     */
+    enum Part
     {
-        final List<String> newValues = new ArrayList<>(existing);
-        newValues.add(newValue);
-        return newValues;
+        ID("#", ""),
+        CLASS(".", ""),
+        PSEUDO_CLASS("", ""),
+        ATTRIBUTE_CONDITION("[", "]");
+
+        final String prefix;
+        final String suffix;
+
+        Part(final String prefix, final String suffix)
+        {
+            this.prefix = prefix;
+            this.suffix = suffix;
+        }
+
+        /**
+         * @return the part {@code type} adds to, or null if it isn't a refinement CSS can represent.
+         */
+        static Part of(final OperationType type)
+        {
+            switch (type)
+            {
+                case WITH_ID:
+                    return ID;
+                case WITH_CLASS:
+                    return CLASS;
+                case WITHOUT_CLASS:
+                case WITHOUT_ATTRIBUTE:
+                case IN_POSITION:
+                case IN_POSITION_OF_TYPE:
+                case WITH_NO_CHILDREN:
+                case THAT_IS_CHECKED:
+                    return PSEUDO_CLASS;
+                case WITH_ATTRIBUTE:
+                case WITH_ATTRIBUTE_CONTAINING:
+                case WITH_ATTRIBUTE_VALUE:
+                    return ATTRIBUTE_CONDITION;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * A persistent list of values, most recently added first. All lists end in the shared {@link #NONE} sentinel so an empty list costs nothing and adding a value
+     * allocates a single object.
+     */
+    private static final class Item
+    {
+        private static final Item NONE = new Item(null, null);
+
+        private final Item previous;
+        private final String value;
+
+        private Item(final Item previous, final String value)
+        {
+            this.previous = previous;
+            this.value = value;
+        }
+
+        Item add(final String newValue)
+        {
+            return new Item(this, newValue);
+        }
+
+        void appendTo(final StringBuilder builder, final String prefix, final String suffix)
+        {
+            if (this != NONE)
+            {
+                previous.appendTo(builder, prefix, suffix);
+                builder.append(prefix).append(value).append(suffix);
+            }
+        }
     }
-}
\ No newline at end of file
+}
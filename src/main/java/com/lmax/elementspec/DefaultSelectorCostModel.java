@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+final class DefaultSelectorCostModel implements SelectorCostModel
+{
+    private static final double ID_COST = 1;
+    private static final double CSS_COST = 10;
+    private static final double XPATH_COST = 30;
+
+    private static final double UNIVERSAL_DESCENDANT_PENALTY = 10;
+    private static final double DESCENDANT_STEP_PENALTY = 2;
+    private static final double NEGATION_PENALTY = 3;
+    private static final double SUBSTRING_MATCH_PENALTY = 2;
+    private static final double CLASS_PREDICATE_PENALTY = 5;
+    private static final double TEXT_PREDICATE_PENALTY = 8;
+
+    @Override
+    public double cost(final LocatorFormat format, final String selector)
+    {
+        switch (format)
+        {
+            case ID:
+                return ID_COST;
+            case CSS:
+                return CSS_COST +
+                       (selector.startsWith("*") ? UNIVERSAL_DESCENDANT_PENALTY : 0) +
+                       DESCENDANT_STEP_PENALTY * descendantCombinators(selector) +
+                       NEGATION_PENALTY * occurrences(selector, ":not(") +
+                       SUBSTRING_MATCH_PENALTY * occurrences(selector, "*=");
+            case XPATH:
+                return XPATH_COST +
+                       (selector.startsWith("//*") ? UNIVERSAL_DESCENDANT_PENALTY : 0) +
+                       DESCENDANT_STEP_PENALTY * occurrences(selector, "//") +
+                       NEGATION_PENALTY * occurrences(selector, "not(") +
+                       SUBSTRING_MATCH_PENALTY * occurrences(selector, "contains(@") +
+                       CLASS_PREDICATE_PENALTY * occurrences(selector, "contains(concat(") +
+                       TEXT_PREDICATE_PENALTY * occurrences(selector, "text()");
+            default:
+                throw new IllegalArgumentException("Unknown format: " + format);
+        }
+    }
+
+    /**
+     * Count the whitespace that separates two steps, ignoring whitespace inside attribute conditions, strings, pseudo-class arguments and escapes and around the
+     * other combinators.
+     */
+    private static int descendantCombinators(final String selector)
+    {
+        int count = 0;
+        int depth = 0;
+        char quote = 0;
+        boolean pending = false;
+        for (int i = 0; i < selector.length(); i++)
+        {
+            final char c = selector.charAt(i);
+            if (quote != 0)
+            {
+                if (c == '\\')
+                {
+                    i++;
+                }
+                else if (c == quote)
+                {
+                    quote = 0;
+                }
+                continue;
+            }
+            if (depth == 0 && Character.isWhitespace(c))
+            {
+                pending = i > 0;
+                continue;
+            }
+            if (depth == 0 && (c == '>' || c == '+' || c == '~' || c == ','))
+            {
+                pending = false;
+                while (i + 1 < selector.length() && Character.isWhitespace(selector.charAt(i + 1)))
+                {
+                    i++;
+                }
+                continue;
+            }
+            if (pending)
+            {
+                count++;
+                pending = false;
+            }
+            if (c == '\\')
+            {
+                i = endOfEscape(selector, i + 1);
+            }
+            else if (c == '"' || c == '\'')
+            {
+                quote = c;
+            }
+            else if (c == '[' || c == '(')
+            {
+                depth++;
+            }
+            else if (c == ']' || c == ')')
+            {
+                depth--;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the index of the last character of the escape whose first character after the backslash is at {@code start}.
+     */
+    private static int endOfEscape(final String selector, final int start)
+    {
+        int end = start;
+        while (end < selector.length() && end - start < 6 && Character.digit(selector.charAt(end), 16) >= 0)
+        {
+            end++;
+        }
+        if (end == start)
+        {
+            return start;
+        }
+        return end < selector.length() && Character.isWhitespace(selector.charAt(end)) ? end : end - 1;
+    }
+
+    private static int occurrences(final String selector, final String construct)
+    {
+        int count = 0;
+        for (int index = selector.indexOf(construct); index >= 0; index = selector.indexOf(construct, index + construct.length()))
+        {
+            count++;
+        }
+        return count;
+    }
+}
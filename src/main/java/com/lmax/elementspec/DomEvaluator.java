@@ -0,0 +1,561 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Finds the elements an {@link ElementSpecification} matches in a DOM {@link Document}, e.g. one parsed from a saved page, without the round trip to a browser.
+ *
+ * <p>Specifications built from the static factories on {@code ElementSpecification} are evaluated directly from their recorded steps, using the semantics of the format
+ * they would be rendered in. In particular positions follow {@code :nth-child} and {@code :nth-of-type} when rendered as CSS and count the matching elements within each
+ * parent when rendered as XPath, and classes are split on whitespace in CSS but matched with {@code contains(concat(' ', @class, ' '), ' name ')} in XPath.
+ * Old style XPath locators that couldn't be parsed into steps are evaluated with {@link javax.xml.xpath}.</p>
+ *
+ * <p>Element and attribute names are matched exactly, using local names so that namespaced XHTML documents behave like HTML.</p>
+ */
+public final class DomEvaluator
+{
+    private static final ThreadLocal<XPath> XPATH = ThreadLocal.withInitial(() -> XPathFactory.newInstance().newXPath());
+
+    private static final int[] STOP = new int[0];
+
+    private DomEvaluator()
+    {
+    }
+
+    /**
+     * Find all elements in {@code document} that match {@code specification}. When evaluating many specifications against the same document take a {@link DomSnapshot}
+     * once and use {@link #findElements(DomSnapshot, ElementSpecification)} instead.
+     *
+     * @param document the document to search.
+     * @param specification the specification to evaluate.
+     * @return the matching elements in document order.
+     * @throws IllegalStateException if {@code specification} is not valid.
+     * @throws IllegalArgumentException if {@code specification} can only be evaluated by a browser, i.e. it was created from an old style CSS locator that couldn't be parsed.
+     */
+    public static List<Element> findElements(final Document document, final ElementSpecification specification)
+    {
+        return findElements(DomSnapshot.of(document), specification);
+    }
+
+    /**
+     * Find all elements in the document {@code snapshot} was taken from that match {@code specification}, using the snapshot's indexes to avoid walking the document.
+     *
+     * @param snapshot the snapshot of the document to search.
+     * @param specification the specification to evaluate.
+     * @return the matching elements in document order.
+     * @throws IllegalStateException if {@code specification} is not valid.
+     * @throws IllegalArgumentException if {@code specification} can only be evaluated by a browser, i.e. it was created from an old style CSS locator that couldn't be parsed.
+     */
+    public static List<Element> findElements(final DomSnapshot snapshot, final ElementSpecification specification)
+    {
+        if (!specification.isValid())
+        {
+            throw new IllegalStateException("Unable to build a valid element specification.");
+        }
+        if (specification instanceof MultiFormatElementSpecification)
+        {
+            final MultiFormatElementSpecification multiFormat = (MultiFormatElementSpecification)specification;
+            if (multiFormat.operations().uses(OperationType.XPATH_EXPRESSION))
+            {
+                // Refinements of a verbatim XPath locator are appended to it, so evaluate the whole expression.
+                return evaluateXPath(snapshot.getDocument(), LocatorFormat.XPATH.selector(multiFormat));
+            }
+            final Evaluation evaluation = new Evaluation(snapshot, multiFormat.renderedFormat() == LocatorFormat.XPATH);
+            return snapshot.toElements(evaluation.evaluate(multiFormat.operations(), null));
+        }
+        if (specification instanceof XPathElementSpecification)
+        {
+            return evaluateXPath(snapshot.getDocument(), ((XPathElementSpecification)specification).getCurrentXPath());
+        }
+        throw new IllegalArgumentException("Unable to evaluate " + specification + " without a browser.");
+    }
+
+    private static List<Element> evaluateXPath(final Document document, final String xpath)
+    {
+        final NodeList nodes;
+        try
+        {
+            nodes = (NodeList)XPATH.get().evaluate(xpath, document, XPathConstants.NODESET);
+        }
+        catch (final XPathExpressionException e)
+        {
+            throw new IllegalArgumentException("Unable to evaluate " + xpath, e);
+        }
+
+        final List<Element> elements = new ArrayList<>(nodes.getLength());
+        for (int i = 0; i < nodes.getLength(); i++)
+        {
+            if (nodes.item(i).getNodeType() == Node.ELEMENT_NODE)
+            {
+                elements.add((Element)nodes.item(i));
+            }
+        }
+        return elements;
+    }
+
+    /**
+     * Applies each operation in turn to a set of element indexes held in document order. Steps that descend replace the set and refinements filter it.
+     */
+    private static final class Evaluation
+    {
+        private final DomSnapshot snapshot;
+        private final boolean xpathSemantics;
+        private int[] positionCounts;
+
+        private Evaluation(final DomSnapshot snapshot, final boolean xpathSemantics)
+        {
+            this.snapshot = snapshot;
+            this.xpathSemantics = xpathSemantics;
+        }
+
+        /**
+         * @param chain the operations to apply.
+         * @param context the elements the chain is relative to, or {@code null} for the whole document.
+         */
+        int[] evaluate(final Operation chain, final int[] context)
+        {
+            final Operation[] operations = chain.toArray();
+            int[] nodes = context;
+            for (int i = 0; i < operations.length; i++)
+            {
+                final Operation operation = operations[i];
+                final String argument = operation.argument;
+                switch (operation.type)
+                {
+                    case AN_ELEMENT:
+                        nodes = descendants(context, null, operations, i + 1);
+                        break;
+                    case CSS_SELECTOR:
+                        throw new IllegalArgumentException("Unable to evaluate css=" + argument + " without a browser.");
+                    case AN_ELEMENT_OF_TYPE:
+                        nodes = descendants(context, argument, operations, i + 1);
+                        break;
+                    case AN_ELEMENT_WITH_ID:
+                        nodes = filter(descendants(context, null, operations, i), element -> hasAttributeValue(element, "id", argument));
+                        break;
+                    case THAT_CONTAINS_A:
+                        nodes = descendants(nodes, argument, operations, i + 1);
+                        break;
+                    case THAT_CONTAINS_A_CHILD_OF_TYPE:
+                        nodes = children(nodes, argument);
+                        break;
+                    case THAT_CONTAINS_ANY_ELEMENT:
+                        nodes = descendants(nodes, null, operations, i + 1);
+                        break;
+                    case ADD_SUB_SPECIFICATION:
+                        nodes = evaluate(operation.subSpecification, nodes);
+                        break;
+                    case WITH_ID:
+                        nodes = filter(nodes, element -> hasAttributeValue(element, "id", argument));
+                        break;
+                    case WITH_CLASS:
+                        nodes = filter(nodes, element -> hasClass(element, argument));
+                        break;
+                    case WITH_ANY_OF_THESE_CLASSES:
+                        nodes = filter(nodes, element -> Arrays.stream(operation.arguments).anyMatch(classname -> hasClass(element, classname)));
+                        break;
+                    case WITHOUT_CLASS:
+                        nodes = filter(nodes, element -> !hasClass(element, argument));
+                        break;
+                    case WITH_ATTRIBUTE:
+                        nodes = filter(nodes, element -> element.hasAttribute(argument));
+                        break;
+                    case WITHOUT_ATTRIBUTE:
+                        nodes = filter(nodes, element -> !element.hasAttribute(argument));
+                        break;
+                    case WITH_ATTRIBUTE_CONTAINING:
+                        nodes = filter(nodes, element -> hasAttributeContaining(element, argument, operation.secondArgument));
+                        break;
+                    case WITH_ATTRIBUTE_VALUE:
+                        nodes = filter(nodes, element -> hasAttributeValue(element, argument, operation.secondArgument));
+                        break;
+                    case IN_POSITION:
+                        nodes = xpathSemantics ? inStepPosition(nodes, operation.position) : filterIndexes(nodes, index -> snapshot.childPosition(index) == operation.position);
+                        break;
+                    case IN_POSITION_OF_TYPE:
+                        nodes = xpathSemantics ? inStepPosition(nodes, operation.position) : filterIndexes(nodes, index -> positionOfType(index) == operation.position);
+                        break;
+                    case WITH_TEXT:
+                        nodes = argument.isEmpty() ? filter(nodes, this::hasNoChildren) : filter(nodes, element -> hasTextNode(element, argument::equals));
+                        break;
+                    case WITH_TEXT_CONTAINING:
+                        nodes = filter(nodes, element -> hasTextNode(element, text -> text.contains(argument)));
+                        break;
+                    case WITH_NUMERICAL_CONTENT:
+                        nodes = filter(nodes, element -> !Double.isNaN(xpathNumber(element.getTextContent())));
+                        break;
+                    case WITH_NO_CHILDREN:
+                        nodes = filter(nodes, this::hasNoChildren);
+                        break;
+                    case THAT_IS_CHECKED:
+                        nodes = filter(nodes, DomEvaluator::isChecked);
+                        break;
+                    default:
+                        throw new IllegalStateException("Unable to evaluate " + operation.type);
+                }
+            }
+            return nodes;
+        }
+
+        /**
+         * Find the descendants of {@code context} with the tag name {@code tagName}, or any tag name if it's {@code null}. Rather than scanning every descendant the
+         * search starts from the smallest of the snapshot's indexes that the tag name or the refinements immediately following the step can use. Those refinements are
+         * still applied afterwards so the index only has to contain every match, not only matches.
+         *
+         * @param context the elements to search within, or {@code null} for the whole document.
+         * @param operations the chain being evaluated.
+         * @param refinements the index in {@code operations} of the first refinement to consider.
+         */
+        private int[] descendants(final int[] context, final String tagName, final Operation[] operations, final int refinements)
+        {
+            int[] candidates = tagName != null ? snapshot.elementsWithTagName(tagName) : null;
+            for (int i = refinements; i < operations.length; i++)
+            {
+                final int[] indexed = indexedCandidates(operations[i]);
+                if (indexed == STOP)
+                {
+                    break;
+                }
+                if (indexed != null && (candidates == null || indexed.length < candidates.length))
+                {
+                    candidates = indexed;
+                }
+            }
+
+            final IndexBuffer result = new IndexBuffer();
+            if (context == null)
+            {
+                addMatching(result, candidates, 0, snapshot.size(), tagName);
+            }
+            else
+            {
+                // Contexts are in document order so any context inside the previous subtree has already had its descendants added.
+                int covered = 0;
+                for (final int index : context)
+                {
+                    if (index >= covered)
+                    {
+                        covered = snapshot.subtreeEnd(index);
+                        addMatching(result, candidates, index + 1, covered, tagName);
+                    }
+                }
+            }
+            return result.toArray();
+        }
+
+        /**
+         * @return the indexed elements that could satisfy {@code operation}, {@code null} if it can't use an index or {@link #STOP} if refinements after it can't be
+         * used to narrow the step, e.g. because a position depends on the elements before it.
+         */
+        private int[] indexedCandidates(final Operation operation)
+        {
+            final String argument = operation.argument;
+            switch (operation.type)
+            {
+                case AN_ELEMENT_WITH_ID:
+                case WITH_ID:
+                    return snapshot.elementsWithId(argument);
+                case WITH_CLASS:
+                    // XPath matches any run of characters between spaces, which the whitespace separated class index only holds for plain class names.
+                    return containsWhitespace(argument) ? null : snapshot.elementsWithClass(argument);
+                case WITH_ATTRIBUTE:
+                case WITH_ATTRIBUTE_VALUE:
+                    return snapshot.elementsWithAttribute(argument);
+                case WITH_ATTRIBUTE_CONTAINING:
+                    return xpathSemantics && operation.secondArgument.isEmpty() ? null : snapshot.elementsWithAttribute(argument);
+                case WITH_ANY_OF_THESE_CLASSES:
+                case WITHOUT_CLASS:
+                case WITHOUT_ATTRIBUTE:
+                case WITH_TEXT:
+                case WITH_TEXT_CONTAINING:
+                case WITH_NUMERICAL_CONTENT:
+                case WITH_NO_CHILDREN:
+                case THAT_IS_CHECKED:
+                    return null;
+                default:
+                    return STOP;
+            }
+        }
+
+        private void addMatching(final IndexBuffer result, final int[] candidates, final int start, final int end, final String tagName)
+        {
+            if (candidates == null)
+            {
+                for (int index = start; index < end; index++)
+                {
+                    addIfTagMatches(result, index, tagName);
+                }
+            }
+            else
+            {
+                final int first = Arrays.binarySearch(candidates, start);
+                for (int i = first >= 0 ? first : -first - 1; i < candidates.length && candidates[i] < end; i++)
+                {
+                    addIfTagMatches(result, candidates[i], tagName);
+                }
+            }
+        }
+
+        private void addIfTagMatches(final IndexBuffer result, final int index, final String tagName)
+        {
+            if (tagName == null || tagName.equals(snapshot.tagName(index)))
+            {
+                result.add(index);
+            }
+        }
+
+        private int[] children(final int[] context, final String tagName)
+        {
+            final IndexBuffer result = new IndexBuffer();
+            for (final int parent : context)
+            {
+                for (int child = parent + 1; child < snapshot.subtreeEnd(parent); child = snapshot.subtreeEnd(child))
+                {
+                    if (tagName.equals(snapshot.tagName(child)))
+                    {
+                        result.add(child);
+                    }
+                }
+            }
+            // Children of nested contexts interleave with each other.
+            final int[] children = result.toArray();
+            Arrays.sort(children);
+            return children;
+        }
+
+        private int[] filter(final int[] nodes, final Predicate<Element> predicate)
+        {
+            return filterIndexes(nodes, index -> predicate.test(snapshot.element(index)));
+        }
+
+        private int[] filterIndexes(final int[] nodes, final IntPredicate predicate)
+        {
+            final IndexBuffer result = new IndexBuffer();
+            for (final int index : nodes)
+            {
+                if (predicate.test(index))
+                {
+                    result.add(index);
+                }
+            }
+            return result.toArray();
+        }
+
+        /**
+         * XPath numbers the elements selected by a step separately within each parent, counting only those that passed the predicates before the position.
+         */
+        private int[] inStepPosition(final int[] nodes, final int position)
+        {
+            if (positionCounts == null)
+            {
+                positionCounts = new int[snapshot.size() + 1];
+            }
+
+            final IndexBuffer result = new IndexBuffer();
+            for (final int index : nodes)
+            {
+                if (++positionCounts[snapshot.parent(index) + 1] == position)
+                {
+                    result.add(index);
+                }
+            }
+            for (final int index : nodes)
+            {
+                positionCounts[snapshot.parent(index) + 1] = 0;
+            }
+            return result.toArray();
+        }
+
+        private int positionOfType(final int index)
+        {
+            final int parent = snapshot.parent(index);
+            if (parent < 0)
+            {
+                return 1;
+            }
+            int position = 1;
+            for (int sibling = parent + 1; sibling < index; sibling = snapshot.subtreeEnd(sibling))
+            {
+                if (snapshot.tagName(sibling).equals(snapshot.tagName(index)))
+                {
+                    position++;
+                }
+            }
+            return position;
+        }
+
+        private boolean hasClass(final Element element, final String classname)
+        {
+            final String classes = element.getAttribute("class");
+            if (xpathSemantics)
+            {
+                return (' ' + classes + ' ').contains(' ' + classname + ' ');
+            }
+            for (final String token : classes.split("[ \t\n\f\r]+"))
+            {
+                if (token.equals(classname))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean hasAttributeContaining(final Element element, final String attributeName, final String expectedSubstring)
+        {
+            // XPath's contains() treats a missing attribute as an empty string while CSS never matches an empty substring.
+            if (xpathSemantics)
+            {
+                return element.getAttribute(attributeName).contains(expectedSubstring);
+            }
+            return !expectedSubstring.isEmpty() && element.hasAttribute(attributeName) && element.getAttribute(attributeName).contains(expectedSubstring);
+        }
+
+        private boolean hasNoChildren(final Element element)
+        {
+            // XPath's not(node()) rejects any child node while CSS's :empty ignores comments and processing instructions.
+            for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling())
+            {
+                if (xpathSemantics || child.getNodeType() == Node.ELEMENT_NODE || isText(child) && !child.getNodeValue().isEmpty())
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static boolean hasAttributeValue(final Element element, final String attributeName, final String value)
+    {
+        return element.hasAttribute(attributeName) && element.getAttribute(attributeName).equals(value);
+    }
+
+    private static boolean hasTextNode(final Element element, final Predicate<String> predicate)
+    {
+        // XPath has no adjacent text nodes so join any the DOM holds separately.
+        Node child = element.getFirstChild();
+        while (child != null)
+        {
+            if (isText(child))
+            {
+                final StringBuilder text = new StringBuilder(child.getNodeValue());
+                child = child.getNextSibling();
+                while (child != null && isText(child))
+                {
+                    text.append(child.getNodeValue());
+                    child = child.getNextSibling();
+                }
+                if (predicate.test(text.toString()))
+                {
+                    return true;
+                }
+            }
+            else
+            {
+                child = child.getNextSibling();
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsWhitespace(final String value)
+    {
+        for (int i = 0; i < value.length(); i++)
+        {
+            if (Character.isWhitespace(value.charAt(i)))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isText(final Node node)
+    {
+        return node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE;
+    }
+
+    private static boolean isChecked(final Element element)
+    {
+        final String tagName = element.getLocalName() != null ? element.getLocalName() : element.getTagName();
+        if ("option".equals(tagName))
+        {
+            return element.hasAttribute("selected");
+        }
+        final String type = element.getAttribute("type");
+        return "input".equals(tagName) && ("checkbox".equalsIgnoreCase(type) || "radio".equalsIgnoreCase(type)) && element.hasAttribute("checked");
+    }
+
+    /**
+     * Convert a string to a number following the XPath 1.0 {@code number()} function, which only accepts an optional minus sign followed by digits with an optional
+     * decimal point, surrounded by optional whitespace.
+     */
+    private static double xpathNumber(final String value)
+    {
+        int start = 0;
+        int end = value.length();
+        while (start < end && isXPathWhitespace(value.charAt(start)))
+        {
+            start++;
+        }
+        while (end > start && isXPathWhitespace(value.charAt(end - 1)))
+        {
+            end--;
+        }
+
+        int index = start < end && value.charAt(start) == '-' ? start + 1 : start;
+        boolean hasDigits = false;
+        boolean hasPoint = false;
+        for (; index < end; index++)
+        {
+            final char c = value.charAt(index);
+            if (c >= '0' && c <= '9')
+            {
+                hasDigits = true;
+            }
+            else if (c == '.' && !hasPoint)
+            {
+                hasPoint = true;
+            }
+            else
+            {
+                return Double.NaN;
+            }
+        }
+        return hasDigits ? Double.parseDouble(value.substring(start, end)) : Double.NaN;
+    }
+
+    private static boolean isXPathWhitespace(final char c)
+    {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read-only, indexed copy of the elements in a document for evaluating many specifications with {@link DomEvaluator} without walking the DOM for each one.
+ *
+ * <p>The elements are flattened into document order and identified by their index. Each subtree occupies a contiguous range of indexes, so node sets are held as sorted
+ * {@code int} arrays and descendants are found by range rather than by walking the tree. Elements are also indexed by id, tag name, class and attribute name, letting
+ * specifications such as {@code anElementWithId}, {@code anElementOfType} and {@code anElementWithClass} start from the matching elements alone.</p>
+ *
+ * <p>The snapshot does not track changes to the document; take a new snapshot after modifying it. Snapshots are immutable once created and safe to share between
+ * threads, although the DOM they refer to may not be.</p>
+ */
+public final class DomSnapshot
+{
+    private static final int NO_PARENT = -1;
+    private static final int[] NONE = new int[0];
+
+    // Rough sizes used to estimate the memory held by the snapshot, assuming compressed references.
+    private static final int OBJECT_HEADER_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+    private static final int MAP_ENTRY_BYTES = 32;
+
+    private final Document document;
+    private final long buildTimeNanos;
+
+    private Element[] elements = new Element[64];
+    private String[] tagNames = new String[64];
+    private int[] parents = new int[64];
+    private int[] subtreeEnds = new int[64];
+    private int[] childPositions = new int[64];
+    private int size;
+
+    private final Map<String, int[]> byId;
+    private final Map<String, int[]> byTagName;
+    private final Map<String, int[]> byClass;
+    private final Map<String, int[]> byAttributeName;
+
+    private DomSnapshot(final Document document)
+    {
+        final long start = System.nanoTime();
+        this.document = document;
+
+        final Map<String, IndexBuffer> ids = new HashMap<>();
+        final Map<String, IndexBuffer> tags = new HashMap<>();
+        final Map<String, IndexBuffer> classes = new HashMap<>();
+        final Map<String, IndexBuffer> attributeNames = new HashMap<>();
+        final Element root = document.getDocumentElement();
+        if (root != null)
+        {
+            flatten(root);
+        }
+        trimToSize();
+        for (int index = 0; index < size; index++)
+        {
+            indexElement(index, ids, tags, classes, attributeNames);
+        }
+        byId = toIndex(ids);
+        byTagName = toIndex(tags);
+        byClass = toIndex(classes);
+        byAttributeName = toIndex(attributeNames);
+
+        buildTimeNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Take a snapshot of the elements currently in {@code document}.
+     *
+     * @param document the document to index.
+     * @return the new snapshot.
+     */
+    public static DomSnapshot of(final Document document)
+    {
+        return new DomSnapshot(document);
+    }
+
+    /**
+     * @return the document this snapshot was taken from.
+     */
+    public Document getDocument()
+    {
+        return document;
+    }
+
+    /**
+     * @return the number of elements in the snapshot.
+     */
+    public int getElementCount()
+    {
+        return size;
+    }
+
+    /**
+     * @return how long it took to flatten and index the document, in nanoseconds.
+     */
+    public long getBuildTimeNanos()
+    {
+        return buildTimeNanos;
+    }
+
+    /**
+     * Estimate the memory held by the snapshot's arrays and indexes. The DOM itself is not included.
+     *
+     * @return the estimated size in bytes.
+     */
+    public long getEstimatedSizeInBytes()
+    {
+        long bytes = 2L * (OBJECT_HEADER_BYTES + (long)size * REFERENCE_BYTES) + 3L * (OBJECT_HEADER_BYTES + (long)size * Integer.BYTES);
+        for (final Map<String, int[]> index : Arrays.asList(byId, byTagName, byClass, byAttributeName))
+        {
+            bytes += OBJECT_HEADER_BYTES + (long)index.size() * REFERENCE_BYTES * 2;
+            for (final Map.Entry<String, int[]> entry : index.entrySet())
+            {
+                bytes += MAP_ENTRY_BYTES + OBJECT_HEADER_BYTES * 2 + (long)entry.getKey().length() * Character.BYTES + OBJECT_HEADER_BYTES + (long)entry.getValue().length * Integer.BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DomSnapshot{" +
+               "elements=" + size +
+               ", ids=" + byId.size() +
+               ", tagNames=" + byTagName.size() +
+               ", classes=" + byClass.size() +
+               ", attributeNames=" + byAttributeName.size() +
+               ", buildTimeNanos=" + buildTimeNanos +
+               ", estimatedSizeInBytes=" + getEstimatedSizeInBytes() +
+               '}';
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    Element element(final int index)
+    {
+        return elements[index];
+    }
+
+    String tagName(final int index)
+    {
+        return tagNames[index];
+    }
+
+    /**
+     * @return the index of the parent element, or -1 for the document element.
+     */
+    int parent(final int index)
+    {
+        return parents[index];
+    }
+
+    /**
+     * @return the index after the last descendant of the element.
+     */
+    int subtreeEnd(final int index)
+    {
+        return subtreeEnds[index];
+    }
+
+    /**
+     * @return the position of the element amongst its sibling elements, starting from 1.
+     */
+    int childPosition(final int index)
+    {
+        return childPositions[index];
+    }
+
+    /**
+     * @return the indexes of elements with the id {@code id}, in document order.
+     */
+    int[] elementsWithId(final String id)
+    {
+        return byId.getOrDefault(id, NONE);
+    }
+
+    int[] elementsWithTagName(final String tagName)
+    {
+        return byTagName.getOrDefault(tagName, NONE);
+    }
+
+    /**
+     * @return the indexes of elements with {@code classname} amongst the whitespace separated tokens of their class attribute, in document order.
+     */
+    int[] elementsWithClass(final String classname)
+    {
+        return byClass.getOrDefault(classname, NONE);
+    }
+
+    int[] elementsWithAttribute(final String attributeName)
+    {
+        return byAttributeName.getOrDefault(attributeName, NONE);
+    }
+
+    List<Element> toElements(final int[] indexes)
+    {
+        final List<Element> result = new ArrayList<>(indexes.length);
+        for (final int index : indexes)
+        {
+            result.add(elements[index]);
+        }
+        return result;
+    }
+
+    private void flatten(final Element root)
+    {
+        // Walk the tree iteratively so very deep documents can't overflow the stack.
+        int[] open = new int[16];
+        int[] openChildCounts = new int[16];
+        int depth = 0;
+
+        Node node = root;
+        while (node != null)
+        {
+            if (node.getNodeType() == Node.ELEMENT_NODE)
+            {
+                final int index = add((Element)node, depth == 0 ? NO_PARENT : open[depth - 1], depth == 0 ? 1 : ++openChildCounts[depth - 1]);
+                final Node firstChild = node.getFirstChild();
+                if (firstChild != null)
+                {
+                    if (depth == open.length)
+                    {
+                        open = Arrays.copyOf(open, depth * 2);
+                        openChildCounts = Arrays.copyOf(openChildCounts, depth * 2);
+                    }
+                    open[depth] = index;
+                    openChildCounts[depth] = 0;
+                    depth++;
+                    node = firstChild;
+                    continue;
+                }
+                subtreeEnds[index] = size;
+            }
+
+            while (depth > 0 && node.getNextSibling() == null)
+            {
+                node = node.getParentNode();
+                depth--;
+                subtreeEnds[open[depth]] = size;
+            }
+            node = depth == 0 ? null : node.getNextSibling();
+        }
+    }
+
+    private int add(final Element element, final int parent, final int childPosition)
+    {
+        if (size == elements.length)
+        {
+            resize(size * 2);
+        }
+        final int index = size++;
+        elements[index] = element;
+        // Match on local names so namespaced XHTML behaves like the HTML documents selectors are written for.
+        tagNames[index] = element.getLocalName() != null ? element.getLocalName() : element.getTagName();
+        parents[index] = parent;
+        childPositions[index] = childPosition;
+        return index;
+    }
+
+    private void trimToSize()
+    {
+        if (size != elements.length)
+        {
+            resize(size);
+        }
+    }
+
+    private void resize(final int capacity)
+    {
+        elements = Arrays.copyOf(elements, capacity);
+        tagNames = Arrays.copyOf(tagNames, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        subtreeEnds = Arrays.copyOf(subtreeEnds, capacity);
+        childPositions = Arrays.copyOf(childPositions, capacity);
+    }
+
+    private void indexElement(final int index, final Map<String, IndexBuffer> ids, final Map<String, IndexBuffer> tags, final Map<String, IndexBuffer> classes,
+                              final Map<String, IndexBuffer> attributeNames)
+    {
+        final Element element = elements[index];
+        addTo(tags, tagNames[index], index);
+
+        final NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++)
+        {
+            final Node attribute = attributes.item(i);
+            final String name = attribute.getNodeName();
+            addTo(attributeNames, name, index);
+            if ("id".equals(name))
+            {
+                addTo(ids, attribute.getNodeValue(), index);
+            }
+            else if ("class".equals(name))
+            {
+                for (final String classname : attribute.getNodeValue().split("[ \t\n\f\r]+"))
+                {
+                    if (!classname.isEmpty())
+                    {
+                        addTo(classes, classname, index);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void addTo(final Map<String, IndexBuffer> index, final String key, final int elementIndex)
+    {
+        final IndexBuffer indexes = index.computeIfAbsent(key, k -> new IndexBuffer(4));
+        // Elements are indexed in document order so a repeated class can only duplicate the last entry.
+        if (indexes.size() == 0 || indexes.last() != elementIndex)
+        {
+            indexes.add(elementIndex);
+        }
+    }
+
+    private static Map<String, int[]> toIndex(final Map<String, IndexBuffer> buffers)
+    {
+        final Map<String, int[]> index = new HashMap<>((int)(buffers.size() / 0.75f) + 1);
+        for (final Map.Entry<String, IndexBuffer> entry : buffers.entrySet())
+        {
+            index.put(entry.getKey(), entry.getValue().toArray());
+        }
+        return index;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.elementspec;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebElement;
+
+import java.util.List;
+
+/**
+ * A locator bound to the element it searches within. The search context it's given is ignored, so it can be passed to a driver as well as to the element itself.
+ */
+final class ElementScopedLocator extends By
+{
+    private final WebElement element;
+    private final By relative;
+
+    ElementScopedLocator(final WebElement element, final By relative)
+    {
+        this.element = element;
+        this.relative = relative;
+    }
+
+    @Override
+    public List<WebElement> findElements(final SearchContext context)
+    {
+        return element.findElements(relative);
+    }
+
+    @Override
+    public WebElement findElement(final SearchContext context)
+    {
+        return element.findElement(relative);
+    }
+
+    @Override
+    public boolean equals(final Object o)
+    {
+        return this == o || o instanceof ElementScopedLocator && element.equals(((ElementScopedLocator)o).element) && relative.equals(((ElementScopedLocator)o).relative);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * element.hashCode() + relative.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "By.within(" + element + "): " + relative;
+    }
+}
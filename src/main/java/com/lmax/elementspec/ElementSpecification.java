@@ -17,6 +17,7 @@
 package com.lmax.elementspec;
 
 import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
 
 /**
  * {@code ElementSpecification} is the entirety of the public API for creating selectors. It provides three categories of methods:
@@ -59,10 +60,7 @@ public interface ElementSpecification
      */
     static ElementSpecification anElementOfType(final String tagName)
     {
-        return new MultiFormatElementSpecification(
-                CssElementSpecification.anElementOfType(tagName),
-                XPathElementSpecification.anElementOfType(tagName)
-        );
+        return MultiFormatElementSpecification.anElementOfType(tagName);
     }
 
     /**
@@ -72,10 +70,7 @@ public interface ElementSpecification
      */
     static ElementSpecification anElement()
     {
-        return new MultiFormatElementSpecification(
-                CssElementSpecification.anElement(),
-                XPathElementSpecification.anElement()
-        );
+        return MultiFormatElementSpecification.anElement();
     }
 
     /**
@@ -86,11 +81,7 @@ public interface ElementSpecification
      */
     static ElementSpecification anElementWithId(final String id)
     {
-        return new MultiFormatElementSpecification(
-                IdElementSpecification.anElementWithId(id),
-                CssElementSpecification.anElement().withId(id),
-                XPathElementSpecification.anElement().withId(id)
-        );
+        return MultiFormatElementSpecification.anElementWithId(id);
     }
 
     /**
@@ -107,6 +98,12 @@ public interface ElementSpecification
     /**
      * Create an {@code ElementSpecification} from a selenium 1 style selector. i.e. CSS selectors are prefixed with {@code css=}, xpath selectors start with either {@code xpath=} or {@code //}.
      *
+     * <p>CSS selectors are parsed, so the result can be refined further and rendered in other formats just like a specification built with this API. Selectors that use
+     * anything {@code ElementSpecification} can't represent, e.g. sibling combinators, are kept verbatim and always render as CSS.</p>
+     *
+     * <p>XPath locators are parsed too when they only use the patterns the XPath format generates and have an exact CSS equivalent, so they can render as the faster
+     * CSS. Other XPath locators are kept verbatim and always render as XPath.</p>
+     *
      * @param oldStyleSeleniumLocator the selenium 1 selector to create an ElementSpecification from.
      * @return the new {@code ElementSpecification}.
      */
@@ -114,15 +111,15 @@ public interface ElementSpecification
     {
         if (oldStyleSeleniumLocator.startsWith("css="))
         {
-            return CssElementSpecification.fromOldStyleSeleniumCssLocator(oldStyleSeleniumLocator.substring("css=".length()));
+            return MultiFormatElementSpecification.fromCssSelector(oldStyleSeleniumLocator.substring("css=".length()));
         }
         else if (oldStyleSeleniumLocator.startsWith("xpath="))
         {
-            return XPathElementSpecification.fromOldStyleSeleniumXPathLocator(oldStyleSeleniumLocator.substring("xpath=".length()));
+            return MultiFormatElementSpecification.fromXPath(oldStyleSeleniumLocator.substring("xpath=".length()));
         }
         else if (oldStyleSeleniumLocator.startsWith("//") || oldStyleSeleniumLocator.startsWith("(//"))
         {
-            return XPathElementSpecification.fromOldStyleSeleniumXPathLocator(oldStyleSeleniumLocator);
+            return MultiFormatElementSpecification.fromXPath(oldStyleSeleniumLocator);
         }
         else
         {
@@ -346,6 +343,68 @@ public interface ElementSpecification
      */
     boolean isValid();
 
+    /**
+     * Render this specification relative to the element it's searched from rather than the document, e.g. {@code .//tr/td} in XPath and {@code :scope tr > td} in CSS.
+     * An absolute XPath expression searches the whole document even when it's passed to {@code WebElement.findElements}, and a CSS selector matches its earlier steps
+     * against ancestors outside the element, so a relative specification is needed for a search within an element to really be confined to it.
+     *
+     * <p>Searched from a driver, a relative specification matches the same elements as this one. Adding a relative specification with
+     * {@link #addSubSpecification(ElementSpecification)} continues the chain from the current element. Verbatim locators that can't be made relative, such as a CSS
+     * selector list, give an invalid specification.</p>
+     *
+     * @return the relative {@code ElementSpecification}.
+     */
+    default ElementSpecification relative()
+    {
+        return InvalidElementSpecification.INVALID;
+    }
+
+    /**
+     * Search for this specification only within the descendants of {@code element}, e.g. the cells of a row that has already been found.
+     *
+     * @param element the element to search within.
+     * @return a {@code By} locator that searches {@code element} using the {@link #relative()} form of this specification, whichever search context it's given.
+     */
+    default By within(final WebElement element)
+    {
+        return new ElementScopedLocator(element, relative().asWebDriverLocator());
+    }
+
+    /**
+     * Select this specification only within the descendants of elements matching {@code ancestor}.
+     *
+     * @param ancestor the specification of the element to search within.
+     * @return the new {@code ElementSpecification}, equivalent to {@code ancestor.addSubSpecification(this)}.
+     */
+    default ElementSpecification within(final ElementSpecification ancestor)
+    {
+        return ancestor.addSubSpecification(this);
+    }
+
+    /**
+     * Request that this specification is rendered as a cheaper but equivalent selector. For example XPath predicates on a step are merged and ordered so the most
+     * selective are tested first, a leading {@code //*[@id='x']} becomes {@code id('x')} and redundant universal selectors are dropped from CSS.
+     * Like {@code #id} in CSS, {@code id()} assumes ids are unique within the page.
+     *
+     * <p>Refinements made after calling this method are optimised too.</p>
+     *
+     * @return the optimised {@code ElementSpecification}.
+     */
+    default ElementSpecification optimised()
+    {
+        return this;
+    }
+
+    /**
+     * Estimate how expensive the browser will find this specification and warn about the refinements that make it so. See {@link ComplexityAnalyzer}.
+     *
+     * @return the analysis, which can be checked against a {@link ComplexityBudget}.
+     */
+    default ComplexityReport analyseComplexity()
+    {
+        return ComplexityAnalyzer.analyse(this);
+    }
+
     /**
      * Convert this specification into a selenium 1 locator.
      *
@@ -354,9 +413,54 @@ public interface ElementSpecification
     String asSeleniumLocator();
 
     /**
-     * Convert this specification into a WebDriver {@link By} locator.
+     * Convert this specification into a WebDriver {@link By} locator. While a {@link LookupListener} is registered the locator also times its lookups.
      *
      * @return the {@code By} locator equivalent to this {@code ElementSpecification}.
      */
     By asWebDriverLocator();
+
+    /**
+     * Convert this specification into a WebDriver {@link By} locator that runs as a script in the browser. Steps that CSS can represent are found with the browser's
+     * native CSS engine and only the refinements CSS can't represent, such as {@link #withText(String)}, are checked by script. This avoids the browser's XPath engine,
+     * which is typically much slower on large pages.
+     *
+     * <p>Specifications that can be represented as CSS, and search contexts that can't execute JavaScript, use {@link #asWebDriverLocator()} instead. As with CSS,
+     * positions are counted amongst all sibling elements, so a position that follows a text or class filter also uses {@link #asWebDriverLocator()}.</p>
+     *
+     * @return the {@code By} locator equivalent to this {@code ElementSpecification}.
+     */
+    default By asJavaScriptLocator()
+    {
+        return asWebDriverLocator();
+    }
+
+    /**
+     * Convert this specification into a WebDriver {@link By} locator that finds the element with the ID it starts with using {@code getElementById} and then searches
+     * for the rest of the specification within that element, rather than evaluating the whole selector against every element in the page. For example
+     * {@code anElementWithId("grid").thatContainsA("td")} finds {@code grid} and then searches it for {@code :scope td}. Both halves run in a single script.
+     *
+     * <p>Specifications that don't start with an ID followed by a step to a descendant use {@link #asWebDriverLocator()} instead. Search contexts that can't execute
+     * JavaScript find the element with {@code By.id} and search within it. Like {@code getElementById}, this assumes IDs are unique within the page.</p>
+     *
+     * @return the {@code By} locator equivalent to this {@code ElementSpecification}.
+     */
+    default By asIdAnchoredLocator()
+    {
+        return asWebDriverLocator();
+    }
+
+    /**
+     * Convert this specification into a WebDriver {@link By} locator that holds a rendering in every format able to represent it, cheapest first. If the browser
+     * rejects a rendering's syntax, e.g. a CSS pseudo-class an older browser doesn't support, the lookup is retried with the next rendering. Each browser, identified by
+     * name and version, remembers which renderings it rejected and how long the others took, so later lookups go straight to the quickest rendering that works. The
+     * other renderings are still tried every few lookups so a quicker one can take over.
+     *
+     * <p>Specifications that can only be represented in one format, or that are a plain ID, use {@link #asWebDriverLocator()} instead.</p>
+     *
+     * @return the {@code By} locator equivalent to this {@code ElementSpecification}.
+     */
+    default By asAdaptiveLocator()
+    {
+        return asWebDriverLocator();
+    }
 }
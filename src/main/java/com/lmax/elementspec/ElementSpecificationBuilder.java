@@ -0,0 +1,590 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.openqa.selenium.By;
+
+import java.util.Arrays;
+
+import static com.lmax.elementspec.InvalidElementSpecification.INVALID;
+import static com.lmax.elementspec.LocatorFormat.ALL_FORMATS;
+import static com.lmax.elementspec.LocatorFormat.CSS_OR_XPATH;
+
+/**
+ * A mutable, reusable alternative to the fluent {@link ElementSpecification} API for code that builds many throwaway locators, e.g. one per table row.
+ *
+ * <p>Each refinement records its operation in arrays that are reused once the builder is {@link #reset()}, so building a specification allocates nothing once the
+ * arrays have grown to the longest chain. The locator is rendered straight from the arrays in the same format, and to the same string, as the equivalent immutable
+ * specification; sub specifications are the exception and are rendered through the immutable API. Call {@link #toSpecification()} to keep the result as an immutable
+ * {@code ElementSpecification}.</p>
+ *
+ * <pre>
+ * private static final ThreadLocal&lt;ElementSpecificationBuilder&gt; BUILDER = ThreadLocal.withInitial(ElementSpecificationBuilder::new);
+ *
+ * By row(final int index)
+ * {
+ *     return BUILDER.get().anElementWithId("grid").thatContainsA("tr").inPosition(index).asWebDriverLocator();
+ * }
+ * </pre>
+ *
+ * <p>Builders are not thread safe. Starting a new specification with {@link #anElement()}, {@link #anElementOfType(String)} or {@link #anElementWithId(String)}
+ * resets the builder.</p>
+ */
+public final class ElementSpecificationBuilder
+{
+    private static final int INITIAL_CAPACITY = 16;
+
+    private OperationType[] types = new OperationType[INITIAL_CAPACITY];
+    private String[] arguments = new String[INITIAL_CAPACITY];
+    private String[] secondArguments = new String[INITIAL_CAPACITY];
+    private String[][] argumentLists = new String[INITIAL_CAPACITY][];
+    private int[] positions = new int[INITIAL_CAPACITY];
+    private Operation[] subSpecifications = new Operation[INITIAL_CAPACITY];
+    private int size;
+    private int formats;
+
+    private final StringBuilder rendered = new StringBuilder();
+    private LocatorFormat renderedFormat;
+
+    /**
+     * Start a specification that selects any element, discarding the current one.
+     *
+     * @return this builder.
+     */
+    public ElementSpecificationBuilder anElement()
+    {
+        return start(OperationType.AN_ELEMENT, null);
+    }
+
+    /**
+     * Start a specification that selects elements of type {@code tagName}, discarding the current one.
+     *
+     * @param tagName the tag name of the elements to select.
+     * @return this builder.
+     */
+    public ElementSpecificationBuilder anElementOfType(final String tagName)
+    {
+        return start(OperationType.AN_ELEMENT_OF_TYPE, tagName);
+    }
+
+    /**
+     * Start a specification that selects the element with ID {@code id}, discarding the current one.
+     *
+     * @param id the ID of the element to select.
+     * @return this builder.
+     */
+    public ElementSpecificationBuilder anElementWithId(final String id)
+    {
+        return start(OperationType.AN_ELEMENT_WITH_ID, id);
+    }
+
+    /**
+     * Discard the current specification, keeping the arrays it was recorded in for the next one.
+     *
+     * @return this builder.
+     */
+    public ElementSpecificationBuilder reset()
+    {
+        // Clear the references so a pooled builder doesn't keep the last specification's strings alive.
+        Arrays.fill(arguments, 0, size, null);
+        Arrays.fill(secondArguments, 0, size, null);
+        Arrays.fill(argumentLists, 0, size, null);
+        Arrays.fill(subSpecifications, 0, size, null);
+        size = 0;
+        formats = 0;
+        return this;
+    }
+
+    /**
+     * @see ElementSpecification#thatContainsA(String)
+     */
+    public ElementSpecificationBuilder thatContainsA(final String tagName)
+    {
+        return then(OperationType.THAT_CONTAINS_A, tagName, null);
+    }
+
+    /**
+     * @see ElementSpecification#thatContainsAChildOfType(String)
+     */
+    public ElementSpecificationBuilder thatContainsAChildOfType(final String tagName)
+    {
+        return then(OperationType.THAT_CONTAINS_A_CHILD_OF_TYPE, tagName, null);
+    }
+
+    /**
+     * @see ElementSpecification#thatContainsAnElementWithId(String)
+     */
+    public ElementSpecificationBuilder thatContainsAnElementWithId(final String id)
+    {
+        return thatContainsAnyElement().withId(id);
+    }
+
+    /**
+     * @see ElementSpecification#thatContainsAnElementWithClass(String)
+     */
+    public ElementSpecificationBuilder thatContainsAnElementWithClass(final String classname)
+    {
+        return thatContainsAnyElement().withClass(classname);
+    }
+
+    /**
+     * @see ElementSpecification#addSubSpecification(ElementSpecification)
+     */
+    public ElementSpecificationBuilder addSubSpecification(final ElementSpecification specification)
+    {
+        if (!(specification instanceof MultiFormatElementSpecification))
+        {
+            checkStarted();
+            formats = 0;
+            return this;
+        }
+        final MultiFormatElementSpecification subSpecification = (MultiFormatElementSpecification)specification;
+        if (then(OperationType.ADD_SUB_SPECIFICATION, null, null, subSpecification.formats() & CSS_OR_XPATH))
+        {
+            subSpecifications[size - 1] = subSpecification.operations();
+        }
+        return this;
+    }
+
+    /**
+     * @see ElementSpecification#thatContainsAnyElement()
+     */
+    public ElementSpecificationBuilder thatContainsAnyElement()
+    {
+        return then(OperationType.THAT_CONTAINS_ANY_ELEMENT, null, null);
+    }
+
+    /**
+     * @see ElementSpecification#withId(String)
+     */
+    public ElementSpecificationBuilder withId(final String id)
+    {
+        return then(OperationType.WITH_ID, id, null);
+    }
+
+    /**
+     * @see ElementSpecification#withClass(String)
+     */
+    public ElementSpecificationBuilder withClass(final String classname)
+    {
+        return then(OperationType.WITH_CLASS, classname, null);
+    }
+
+    /**
+     * @see ElementSpecification#withAnyOfTheseClasses(String...)
+     */
+    public ElementSpecificationBuilder withAnyOfTheseClasses(final String... classnames)
+    {
+        if (then(OperationType.WITH_ANY_OF_THESE_CLASSES, null, null, ALL_FORMATS))
+        {
+            argumentLists[size - 1] = classnames.clone();
+        }
+        return this;
+    }
+
+    /**
+     * @see ElementSpecification#withoutClass(String)
+     */
+    public ElementSpecificationBuilder withoutClass(final String classname)
+    {
+        return then(OperationType.WITHOUT_CLASS, classname, null);
+    }
+
+    /**
+     * @see ElementSpecification#withAttribute(String)
+     */
+    public ElementSpecificationBuilder withAttribute(final String attributeName)
+    {
+        return then(OperationType.WITH_ATTRIBUTE, attributeName, null);
+    }
+
+    /**
+     * @see ElementSpecification#withoutAttribute(String)
+     */
+    public ElementSpecificationBuilder withoutAttribute(final String attributeName)
+    {
+        return then(OperationType.WITHOUT_ATTRIBUTE, attributeName, null);
+    }
+
+    /**
+     * @see ElementSpecification#withAttributeContaining(String, String)
+     */
+    public ElementSpecificationBuilder withAttributeContaining(final String attributeName, final String expectedSubstring)
+    {
+        return then(OperationType.WITH_ATTRIBUTE_CONTAINING, attributeName, expectedSubstring);
+    }
+
+    /**
+     * @see ElementSpecification#withAttributeValue(String, String)
+     */
+    public ElementSpecificationBuilder withAttributeValue(final String attributeName, final String value)
+    {
+        return then(OperationType.WITH_ATTRIBUTE_VALUE, attributeName, value);
+    }
+
+    /**
+     * @see ElementSpecification#inPosition(int)
+     */
+    public ElementSpecificationBuilder inPosition(final int position)
+    {
+        if (then(OperationType.IN_POSITION, null, null, ALL_FORMATS))
+        {
+            positions[size - 1] = position;
+        }
+        return this;
+    }
+
+    /**
+     * @see ElementSpecification#inPositionOfType(int)
+     */
+    public ElementSpecificationBuilder inPositionOfType(final int position)
+    {
+        if (then(OperationType.IN_POSITION_OF_TYPE, null, null, ALL_FORMATS))
+        {
+            positions[size - 1] = position;
+        }
+        return this;
+    }
+
+    /**
+     * @see ElementSpecification#withText(String)
+     */
+    public ElementSpecificationBuilder withText(final String text)
+    {
+        return then(OperationType.WITH_TEXT, text, null);
+    }
+
+    /**
+     * @see ElementSpecification#withTextContaining(String)
+     */
+    public ElementSpecificationBuilder withTextContaining(final String text)
+    {
+        return then(OperationType.WITH_TEXT_CONTAINING, text, null);
+    }
+
+    /**
+     * @see ElementSpecification#withNumericalContent()
+     */
+    public ElementSpecificationBuilder withNumericalContent()
+    {
+        return then(OperationType.WITH_NUMERICAL_CONTENT, null, null);
+    }
+
+    /**
+     * @see ElementSpecification#withNoChildren()
+     */
+    public ElementSpecificationBuilder withNoChildren()
+    {
+        return then(OperationType.WITH_NO_CHILDREN, null, null);
+    }
+
+    /**
+     * @see ElementSpecification#thatIsChecked()
+     */
+    public ElementSpecificationBuilder thatIsChecked()
+    {
+        return then(OperationType.THAT_IS_CHECKED, null, null);
+    }
+
+    /**
+     * @return true if the current specification can be rendered in at least one format.
+     */
+    public boolean isValid()
+    {
+        return formats != 0;
+    }
+
+    /**
+     * @return the selenium 1 style locator the equivalent {@link ElementSpecification} renders as.
+     * @throws IllegalStateException if the specification is invalid.
+     */
+    public String asSeleniumLocator()
+    {
+        final String selector = renderCheapest();
+        return renderedFormat == LocatorFormat.CSS ? "css=" + selector : selector;
+    }
+
+    /**
+     * @return the WebDriver locator the equivalent {@link ElementSpecification} renders as, timed the same way while a {@link LookupListener} is registered.
+     * @throws IllegalStateException if the specification is invalid.
+     */
+    public By asWebDriverLocator()
+    {
+        final String selector = renderCheapest();
+        switch (renderedFormat)
+        {
+            case ID:
+                return TimedBy.timed(renderedFormat, selector, By.id(selector));
+            case CSS:
+                return TimedBy.timed(renderedFormat, selector, By.cssSelector(selector));
+            default:
+                return TimedBy.timed(renderedFormat, selector, By.xpath(selector));
+        }
+    }
+
+    /**
+     * Freeze the current specification. The builder is left unchanged and can still be refined or reset.
+     *
+     * @return an immutable specification equal to the one the fluent API would have built.
+     */
+    public ElementSpecification toSpecification()
+    {
+        checkStarted();
+        Operation operations = Operation.start(types[0], arguments[0]);
+        for (int i = 1; i < size; i++)
+        {
+            final OperationType type = types[i];
+            if (subSpecifications[i] != null)
+            {
+                operations = operations.then(type, subSpecifications[i]);
+            }
+            else if (argumentLists[i] != null)
+            {
+                operations = operations.then(type, argumentLists[i]);
+            }
+            else if (type == OperationType.IN_POSITION || type == OperationType.IN_POSITION_OF_TYPE)
+            {
+                operations = operations.then(type, positions[i]);
+            }
+            else
+            {
+                operations = operations.then(type, arguments[i], secondArguments[i]);
+            }
+        }
+        return MultiFormatElementSpecification.create(operations, formats);
+    }
+
+    @Override
+    public String toString()
+    {
+        return isValid() ? asSeleniumLocator() : INVALID.toString();
+    }
+
+    private ElementSpecificationBuilder start(final OperationType type, final String argument)
+    {
+        reset();
+        append(type, argument, null);
+        formats = type.supportedFormats;
+        return this;
+    }
+
+    private ElementSpecificationBuilder then(final OperationType type, final String argument, final String secondArgument)
+    {
+        then(type, argument, secondArgument, ALL_FORMATS);
+        return this;
+    }
+
+    /**
+     * @return true if the operation was recorded. Like the fluent API, nothing more is recorded once the specification is invalid.
+     */
+    private boolean then(final OperationType type, final String argument, final String secondArgument, final int additionalFormatRestriction)
+    {
+        checkStarted();
+        if (formats == 0)
+        {
+            return false;
+        }
+        append(type, argument, secondArgument);
+        formats &= type.supportedFormats & additionalFormatRestriction;
+        return true;
+    }
+
+    private void append(final OperationType type, final String argument, final String secondArgument)
+    {
+        if (size == types.length)
+        {
+            final int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            arguments = Arrays.copyOf(arguments, capacity);
+            secondArguments = Arrays.copyOf(secondArguments, capacity);
+            argumentLists = Arrays.copyOf(argumentLists, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+            subSpecifications = Arrays.copyOf(subSpecifications, capacity);
+        }
+        types[size] = type;
+        arguments[size] = argument;
+        secondArguments[size] = secondArgument;
+        size++;
+    }
+
+    private void checkStarted()
+    {
+        if (size == 0)
+        {
+            throw new IllegalStateException("Start the specification with anElement(), anElementOfType() or anElementWithId() first.");
+        }
+    }
+
+    /**
+     * Choose the format the same way {@link LocatorFormat#cheapest} does, only rendering candidates when there's more than one.
+     *
+     * @return the selector in the chosen format, which is left in {@link #renderedFormat}.
+     */
+    private String renderCheapest()
+    {
+        checkStarted();
+        if (Integer.bitCount(formats) <= 1)
+        {
+            renderedFormat = LocatorFormat.preferred(formats);
+            return render(renderedFormat);
+        }
+
+        final SelectorCostModel costModel = SelectorCostModel.registered();
+        String cheapest = null;
+        double cheapestCost = Double.POSITIVE_INFINITY;
+        for (int remaining = formats; remaining != 0; remaining &= remaining - 1)
+        {
+            final LocatorFormat format = LocatorFormat.preferred(remaining);
+            final String candidate = render(format);
+            final double cost = costModel.cost(format, candidate);
+            if (cheapest == null || cost < cheapestCost)
+            {
+                cheapest = candidate;
+                cheapestCost = cost;
+                renderedFormat = format;
+            }
+        }
+        return cheapest;
+    }
+
+    private String render(final LocatorFormat format)
+    {
+        rendered.setLength(0);
+        switch (format)
+        {
+            case ID:
+                renderId();
+                break;
+            case CSS:
+                renderCss();
+                break;
+            default:
+                renderXPath();
+                break;
+        }
+        return rendered.toString();
+    }
+
+    private void renderId()
+    {
+        // Only the ID operations are valid in this format and each replaces the last.
+        rendered.append(arguments[size - 1]);
+    }
+
+    /**
+     * Render the operations the way {@link CssElementSpecification} would: each step starts a token that gathers the refinements following it, and a sub specification
+     * is a complete segment whose refinements start a new token.
+     */
+    private void renderCss()
+    {
+        int tokenStart = 0;
+        while (tokenStart < size)
+        {
+            if (rendered.length() > 0)
+            {
+                rendered.append(' ');
+            }
+            if (types[tokenStart] == OperationType.ADD_SUB_SPECIFICATION)
+            {
+                rendered.append(LocatorFormat.CSS.selector(subSpecifications[tokenStart].replay(LocatorFormat.CSS)));
+                tokenStart++;
+                continue;
+            }
+
+            int tokenEnd = tokenStart + 1;
+            while (tokenEnd < size && !startsCssSegment(types[tokenEnd]))
+            {
+                tokenEnd++;
+            }
+            renderCssToken(tokenStart, tokenEnd);
+            tokenStart = tokenEnd;
+        }
+    }
+
+    private void renderCssToken(final int start, final int end)
+    {
+        final OperationType step = types[start];
+        if (step == OperationType.THAT_CONTAINS_A_CHILD_OF_TYPE)
+        {
+            rendered.append("> ");
+        }
+        final int tokenStart = rendered.length();
+        if (step == OperationType.AN_ELEMENT_OF_TYPE || step == OperationType.THAT_CONTAINS_A || step == OperationType.THAT_CONTAINS_A_CHILD_OF_TYPE)
+        {
+            rendered.append(arguments[start]);
+        }
+
+        // Like CssToken, a later id replaces an earlier one.
+        int id = -1;
+        for (int i = start; i < end; i++)
+        {
+            if (types[i] == OperationType.AN_ELEMENT_WITH_ID || types[i] == OperationType.WITH_ID)
+            {
+                id = i;
+            }
+        }
+        if (id != -1)
+        {
+            CssToken.appendValue(rendered.append(CssToken.Part.ID.prefix), OperationType.WITH_ID, arguments[id], null, 0);
+        }
+
+        appendCssPart(CssToken.Part.CLASS, start, end);
+        appendCssPart(CssToken.Part.PSEUDO_CLASS, start, end);
+        if (rendered.length() == tokenStart)
+        {
+            rendered.append('*');
+        }
+        appendCssPart(CssToken.Part.ATTRIBUTE_CONDITION, start, end);
+    }
+
+    private void appendCssPart(final CssToken.Part part, final int start, final int end)
+    {
+        for (int i = start; i < end; i++)
+        {
+            if (CssToken.Part.of(types[i]) == part)
+            {
+                CssToken.appendValue(rendered.append(part.prefix), types[i], arguments[i], secondArguments[i], positions[i]).append(part.suffix);
+            }
+        }
+    }
+
+    private static boolean startsCssSegment(final OperationType type)
+    {
+        return type == OperationType.THAT_CONTAINS_A ||
+               type == OperationType.THAT_CONTAINS_A_CHILD_OF_TYPE ||
+               type == OperationType.THAT_CONTAINS_ANY_ELEMENT ||
+               type == OperationType.ADD_SUB_SPECIFICATION;
+    }
+
+    /**
+     * Render the operations the way {@link XPathElementSpecification} would without optimisation: a step or predicate for each operation in turn.
+     */
+    private void renderXPath()
+    {
+        for (int i = 0; i < size; i++)
+        {
+            if (types[i] == OperationType.ADD_SUB_SPECIFICATION)
+            {
+                rendered.append(((XPathElementSpecification)subSpecifications[i].replay(LocatorFormat.XPATH)).getCurrentXPath());
+            }
+            else
+            {
+                XPathElementSpecification.appendSection(rendered, types[i], arguments[i], secondArguments[i], argumentLists[i], positions[i]);
+            }
+        }
+    }
+}
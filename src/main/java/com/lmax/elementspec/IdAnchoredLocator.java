@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.elementspec;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.WrapsDriver;
+
+import java.util.Collections;
+import java.util.List;
+
+import static com.lmax.elementspec.JavaScriptLocator.quote;
+import static com.lmax.elementspec.JavaScriptLocator.toWebElements;
+
+/**
+ * A locator for specifications that start at an element with an ID and continue into its descendants. The ID is resolved with {@code getElementById} and the rest of
+ * the specification is searched for relative to that element, so the browser only evaluates the expensive part of the locator within a small subtree instead of
+ * checking every element in the document against it. Both halves are resolved by a single script.
+ *
+ * <p>Search contexts that can't execute scripts find the element with {@code By.id} and then search within it. Like {@code getElementById}, the locator assumes IDs
+ * are unique within the page.</p>
+ */
+final class IdAnchoredLocator extends By
+{
+    private final String id;
+    private final By relative;
+    private final String script;
+    private final String description;
+
+    private IdAnchoredLocator(final String id, final ElementSpecification relative)
+    {
+        this.id = id;
+        this.relative = relative.asWebDriverLocator();
+        this.script = script(id, relative);
+        this.description = "id=" + id + " " + relative.asSeleniumLocator();
+    }
+
+    /**
+     * @param specification the specification to locate.
+     * @return a locator anchored on the ID {@code specification} starts with, or its usual locator if it doesn't start with an ID followed by a step to a descendant.
+     */
+    static By compile(final MultiFormatElementSpecification specification)
+    {
+        final Operation[] operations = specification.operations().toArray();
+        final int anchorLength = anchorLength(operations);
+        if (!specification.isValid() || anchorLength == 0 || anchorLength == operations.length || !isStep(operations[anchorLength]))
+        {
+            return specification.rendered().asWebDriverLocator();
+        }
+        return new IdAnchoredLocator(operations[anchorLength - 1].argument, specification.relativeFrom(anchorLength).rendered());
+    }
+
+    String getScript()
+    {
+        return script;
+    }
+
+    @Override
+    public List<WebElement> findElements(final SearchContext context)
+    {
+        if (context instanceof JavascriptExecutor)
+        {
+            return toWebElements(((JavascriptExecutor)context).executeScript(script));
+        }
+        if (context instanceof WebElement && context instanceof WrapsDriver)
+        {
+            final WebDriver driver = ((WrapsDriver)context).getWrappedDriver();
+            if (driver instanceof JavascriptExecutor)
+            {
+                return toWebElements(((JavascriptExecutor)driver).executeScript(script, context));
+            }
+        }
+        final List<WebElement> anchors = context.findElements(By.id(id));
+        return anchors.isEmpty() ? Collections.<WebElement>emptyList() : anchors.get(0).findElements(relative);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "By.idAnchored: " + description;
+    }
+
+    /**
+     * @return the number of operations that select the element with an ID, or 0 if the chain doesn't start with an ID.
+     */
+    private static int anchorLength(final Operation[] operations)
+    {
+        if (operations[0].type == OperationType.AN_ELEMENT_WITH_ID)
+        {
+            return 1;
+        }
+        if (operations[0].type == OperationType.AN_ELEMENT && operations.length > 1 && operations[1].type == OperationType.WITH_ID)
+        {
+            return 2;
+        }
+        return 0;
+    }
+
+    private static boolean isStep(final Operation operation)
+    {
+        return operation.type == OperationType.THAT_CONTAINS_A ||
+               operation.type == OperationType.THAT_CONTAINS_A_CHILD_OF_TYPE ||
+               operation.type == OperationType.THAT_CONTAINS_ANY_ELEMENT ||
+               operation.type == OperationType.ADD_SUB_SPECIFICATION;
+    }
+
+    private static String script(final String id, final ElementSpecification relative)
+    {
+        // By.id searches the descendants of an element context, so the anchor is ignored unless it's inside it.
+        final StringBuilder script = new StringBuilder();
+        script.append("var anchor = document.getElementById(").append(quote(id)).append(");\n");
+        script.append("if (!anchor || arguments[0] && (arguments[0] === anchor || !arguments[0].contains(anchor))) { return []; }\n");
+        if (LocatorFormat.of(relative) == LocatorFormat.CSS)
+        {
+            script.append("return Array.prototype.slice.call(anchor.querySelectorAll(").append(quote(LocatorFormat.CSS.selector(relative))).append("));");
+        }
+        else
+        {
+            script.append("var result = document.evaluate(").append(quote(LocatorFormat.XPATH.selector(relative)));
+            script.append(", anchor, null, XPathResult.ORDERED_NODE_SNAPSHOT_TYPE, null), found = [];\n");
+            script.append("for (var i = 0; i < result.snapshotLength; i++) { found.push(result.snapshotItem(i)); }\n");
+            script.append("return found;");
+        }
+        return script.toString();
+    }
+}
@@ -25,6 +25,9 @@ final class IdElementSpecification implements ElementSpecification
 {
     private final String id;
 
+    // Created lazily using the racy single-check idiom. By is immutable so at worst it is created more than once.
+    private By webDriverLocator;
+
     private IdElementSpecification(final String id)
     {
         this.id = id;
@@ -164,7 +167,25 @@ final class IdElementSpecification implements ElementSpecification
     @Override
     public By asWebDriverLocator()
     {
-        return By.id(id);
+        By locator = webDriverLocator;
+        if (locator == null)
+        {
+            locator = By.id(id);
+            webDriverLocator = locator;
+        }
+        return locator;
+    }
+
+    @Override
+    public boolean equals(final Object o)
+    {
+        return this == o || o instanceof IdElementSpecification && id.equals(((IdElementSpecification)o).id);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return id.hashCode();
     }
 
     @Override
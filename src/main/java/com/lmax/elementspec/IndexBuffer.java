@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import java.util.Arrays;
+
+/**
+ * A growable array of element indexes.
+ */
+final class IndexBuffer
+{
+    private int[] indexes;
+    private int size;
+
+    IndexBuffer()
+    {
+        this(16);
+    }
+
+    IndexBuffer(final int initialCapacity)
+    {
+        indexes = new int[Math.max(1, initialCapacity)];
+    }
+
+    void add(final int index)
+    {
+        if (size == indexes.length)
+        {
+            indexes = Arrays.copyOf(indexes, size * 2);
+        }
+        indexes[size++] = index;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    int last()
+    {
+        return indexes[size - 1];
+    }
+
+    int[] toArray()
+    {
+        return Arrays.copyOf(indexes, size);
+    }
+}
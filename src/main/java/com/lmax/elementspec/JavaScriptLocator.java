@@ -0,0 +1,282 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.WrapsDriver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.lmax.elementspec.InvalidElementSpecification.INVALID;
+
+/**
+ * A locator that finds elements with a script rather than a single CSS selector or XPath expression. Steps that CSS can express are found with the browser's native
+ * {@code querySelectorAll} and the refinements CSS can't express - text, numerical content and alternative classes - are applied by a generated filter function, all in
+ * a single script. This keeps specifications that only need one of those refinements off the browser's much slower XPath engine.
+ *
+ * <p>The script is split into stages wherever a step follows a filtered step: each stage searches within the elements left by the previous one using {@code :scope}.
+ * Refinements keep the meaning they have when rendered as CSS, so positions follow {@code :nth-child}, while the filters follow the XPath they replace. XPath counts a
+ * position that follows a filter amongst the elements the filter left, which {@code :nth-child} can't, so those specifications use their usual locator instead.</p>
+ *
+ * <p>Search contexts that can't execute scripts, such as a driver without JavaScript support, fall back to the specification's usual locator.</p>
+ */
+final class JavaScriptLocator extends By
+{
+    static final String HELPERS =
+            "function textRuns(e) {\n" +
+            "  var runs = [], text = null;\n" +
+            "  for (var n = e.firstChild; n; n = n.nextSibling) {\n" +
+            "    if (n.nodeType === 3 || n.nodeType === 4) { text = (text === null ? '' : text) + n.data; }\n" +
+            "    else if (text !== null) { runs.push(text); text = null; }\n" +
+            "  }\n" +
+            "  if (text !== null) { runs.push(text); }\n" +
+            "  return runs;\n" +
+            "}\n" +
+            "function hasText(e, t) { return textRuns(e).indexOf(t) >= 0; }\n" +
+            "function containsText(e, t) {\n" +
+            "  var runs = textRuns(e);\n" +
+            "  for (var i = 0; i < runs.length; i++) { if (runs[i].indexOf(t) >= 0) { return true; } }\n" +
+            "  return false;\n" +
+            "}\n" +
+            "function isNumber(e) { return /^[ \\t\\r\\n]*-?([0-9]+(\\.[0-9]*)?|\\.[0-9]+)[ \\t\\r\\n]*$/.test(e.textContent); }\n" +
+            "function hasAnyClass(e, classes) {\n" +
+            "  var value = ' ' + (e.getAttribute('class') || '') + ' ';\n" +
+            "  for (var i = 0; i < classes.length; i++) { if (value.indexOf(' ' + classes[i] + ' ') >= 0) { return true; } }\n" +
+            "  return false;\n" +
+            "}\n" +
+            "function find(contexts, selector, filter) {\n" +
+            "  var found = [], seen = contexts.length > 1 && typeof Set === 'function' ? new Set() : null;\n" +
+            "  for (var i = 0; i < contexts.length; i++) {\n" +
+            "    var matches = contexts[i].querySelectorAll(selector);\n" +
+            "    for (var j = 0; j < matches.length; j++) {\n" +
+            "      var e = matches[j];\n" +
+            "      if (filter && !filter(e)) { continue; }\n" +
+            "      if (seen) { if (seen.has(e)) { continue; } seen.add(e); }\n" +
+            "      else if (contexts.length > 1 && found.indexOf(e) >= 0) { continue; }\n" +
+            "      found.push(e);\n" +
+            "    }\n" +
+            "  }\n" +
+            "  if (contexts.length > 1) { found.sort(function (a, b) { return a.compareDocumentPosition(b) & 4 ? -1 : 1; }); }\n" +
+            "  return found;\n" +
+            "}\n";
+
+    private final String script;
+    private final String description;
+    private final By fallback;
+
+    private JavaScriptLocator(final String script, final String description, final By fallback)
+    {
+        this.script = script;
+        this.description = description;
+        this.fallback = fallback;
+    }
+
+    /**
+     * Compile a chain of operations into a script.
+     *
+     * @param operations the chain to compile. Every operation must either be supported by CSS or be one of the refinements the filter function supports.
+     * @param fallback the locator to use when the search context can't execute scripts.
+     * @return the new locator, or {@code fallback} if a position follows a filter on the same step.
+     */
+    static By compile(final Operation operations, final By fallback)
+    {
+        final List<Operation> flattened = new ArrayList<>();
+        flatten(operations.toArray(), flattened);
+
+        final StringBuilder script = new StringBuilder(HELPERS).append("var found = [arguments[0] || document];\n");
+        final StringBuilder description = new StringBuilder();
+        ElementSpecification css = INVALID;
+        final List<String> filters = new ArrayList<>();
+        for (final Operation operation : flattened)
+        {
+            final String filter = filter(operation);
+            if (filter != null)
+            {
+                filters.add(filter);
+                continue;
+            }
+            // Any step after a filter starts a new stage, so pending filters always refine the current step.
+            if ((operation.type == OperationType.IN_POSITION || operation.type == OperationType.IN_POSITION_OF_TYPE) && !filters.isEmpty())
+            {
+                return fallback;
+            }
+            if (isStep(operation) && !filters.isEmpty())
+            {
+                appendStage(script, description, css, filters);
+                css = CssElementSpecification.fromOldStyleSeleniumCssLocator(":scope");
+                filters.clear();
+            }
+            css = operation.type.apply(LocatorFormat.CSS, css, operation);
+        }
+        appendStage(script, description, css, filters);
+        script.append("return found;");
+        return new JavaScriptLocator(script.toString(), description.toString(), fallback);
+    }
+
+    String getScript()
+    {
+        return script;
+    }
+
+    @Override
+    public List<WebElement> findElements(final SearchContext context)
+    {
+        if (context instanceof JavascriptExecutor)
+        {
+            return toWebElements(((JavascriptExecutor)context).executeScript(script));
+        }
+        if (context instanceof WebElement && context instanceof WrapsDriver)
+        {
+            final WebDriver driver = ((WrapsDriver)context).getWrappedDriver();
+            if (driver instanceof JavascriptExecutor)
+            {
+                return toWebElements(((JavascriptExecutor)driver).executeScript(script, context));
+            }
+        }
+        return context.findElements(fallback);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "By.javaScript: " + description;
+    }
+
+    private static void flatten(final Operation[] operations, final List<Operation> flattened)
+    {
+        for (final Operation operation : operations)
+        {
+            if (operation.type != OperationType.ADD_SUB_SPECIFICATION)
+            {
+                flattened.add(operation);
+                continue;
+            }
+
+            // A sub specification searches the descendants of the current element, just as its rendered form is appended to the current selector.
+            final Operation[] subSpecification = operation.subSpecification.toArray();
+            final Operation start = subSpecification[0];
+            if (start.type == OperationType.AN_ELEMENT_OF_TYPE)
+            {
+                flattened.add(Operation.start(OperationType.THAT_CONTAINS_A, start.argument));
+            }
+            else
+            {
+                flattened.add(Operation.start(OperationType.THAT_CONTAINS_ANY_ELEMENT, null));
+                if (start.type == OperationType.AN_ELEMENT_WITH_ID)
+                {
+                    flattened.add(Operation.start(OperationType.WITH_ID, start.argument));
+                }
+            }
+            flatten(Arrays.copyOfRange(subSpecification, 1, subSpecification.length), flattened);
+        }
+    }
+
+    private static boolean isStep(final Operation operation)
+    {
+        return operation.type == OperationType.THAT_CONTAINS_A ||
+               operation.type == OperationType.THAT_CONTAINS_A_CHILD_OF_TYPE ||
+               operation.type == OperationType.THAT_CONTAINS_ANY_ELEMENT;
+    }
+
+    /**
+     * @return the filter expression for an operation CSS can't represent, or {@code null} if CSS can represent it.
+     */
+    private static String filter(final Operation operation)
+    {
+        switch (operation.type)
+        {
+            case WITH_TEXT:
+                return operation.argument.isEmpty() ? "!e.firstChild" : "hasText(e, " + quote(operation.argument) + ")";
+            case WITH_TEXT_CONTAINING:
+                return "containsText(e, " + quote(operation.argument) + ")";
+            case WITH_NUMERICAL_CONTENT:
+                return "isNumber(e)";
+            case WITH_ANY_OF_THESE_CLASSES:
+                final StringBuilder classes = new StringBuilder("hasAnyClass(e, [");
+                for (int i = 0; i < operation.arguments.length; i++)
+                {
+                    classes.append(i == 0 ? "" : ", ").append(quote(operation.arguments[i]));
+                }
+                return classes.append("])").toString();
+            default:
+                return null;
+        }
+    }
+
+    private static void appendStage(final StringBuilder script, final StringBuilder description, final ElementSpecification css, final List<String> filters)
+    {
+        final String selector = LocatorFormat.CSS.selector(css);
+        final String filter = String.join(" && ", filters);
+        script.append("found = find(found, ").append(quote(selector)).append(", ");
+        script.append(filters.isEmpty() ? "null" : "function (e) { return " + filter + "; }").append(");\n");
+
+        description.append(description.length() == 0 ? "" : " ").append(selector);
+        if (!filters.isEmpty())
+        {
+            description.append(" {").append(filter).append('}');
+        }
+    }
+
+    /**
+     * Quote a value as a JavaScript string literal.
+     */
+    static String quote(final String value)
+    {
+        final StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++)
+        {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+            {
+                quoted.append('\\').append(c);
+            }
+            else if (c < ' ' || c == '\u2028' || c == '\u2029')
+            {
+                quoted.append(String.format("\\u%04x", (int)c));
+            }
+            else
+            {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Convert the result of a script that returns elements.
+     */
+    static List<WebElement> toWebElements(final Object result)
+    {
+        if (!(result instanceof List))
+        {
+            return Collections.emptyList();
+        }
+        final List<WebElement> elements = new ArrayList<>(((List<?>)result).size());
+        for (final Object element : (List<?>)result)
+        {
+            elements.add((WebElement)element);
+        }
+        return elements;
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read only catalog of named {@link ElementSpecification}s, stored in a file that is memory mapped when opened. Looking up a specification only decodes that one
+ * specification, so a catalog of tens of thousands of locators costs next to nothing to open and each process only pays for the locators it actually uses.
+ *
+ * <p>Write a catalog once, e.g. at build time, with {@link #write(Path, Map)} and open it in each process with {@link #open(Path)}. Decoded specifications are
+ * cached, so repeated lookups of the same key return the same instance. A catalog is safe to use from multiple threads.</p>
+ *
+ * <p>The file is laid out as:</p>
+ * <pre>
+ * magic            int      {@link #MAGIC}
+ * version          int      {@link #VERSION}
+ * entry count      int
+ * index            entry count * (key hash int, key offset int, key length int, value offset int, value length int), sorted by key hash then key
+ * data             UTF-8 keys and specifications encoded by {@link SpecificationCodec}
+ * </pre>
+ */
+public final class LocatorCatalog
+{
+    /**
+     * The first four bytes of every catalog file, "ESCT".
+     */
+    public static final int MAGIC = 0x45534354;
+    /**
+     * The version written by {@link #write(Path, Map)}. Opening rejects any other version.
+     */
+    public static final int VERSION = 1;
+
+    private static final int HEADER_LENGTH = 12;
+    private static final int ENTRY_LENGTH = 20;
+    private static final Comparator<Entry> INDEX_ORDER = Comparator.<Entry>comparingInt(entry -> entry.hash).thenComparing(entry -> entry.key);
+
+    private final ByteBuffer buffer;
+    private final int size;
+    // Decoded lazily using the racy single-check idiom. Specifications are immutable so at worst one is decoded more than once.
+    private final ElementSpecification[] decoded;
+
+    private LocatorCatalog(final ByteBuffer buffer, final int size)
+    {
+        this.buffer = buffer;
+        this.size = size;
+        this.decoded = new ElementSpecification[size];
+    }
+
+    /**
+     * Write a catalog file, replacing any existing file.
+     *
+     * @param path the file to write.
+     * @param specifications the specifications to store, by key. Every specification must have been created through the static factories on
+     *                       {@code ElementSpecification}.
+     * @throws IOException if the file can't be written.
+     * @throws IllegalArgumentException if a specification can't be encoded.
+     */
+    public static void write(final Path path, final Map<String, ? extends ElementSpecification> specifications) throws IOException
+    {
+        final Entry[] entries = new Entry[specifications.size()];
+        int count = 0;
+        for (final Map.Entry<String, ? extends ElementSpecification> specification : specifications.entrySet())
+        {
+            entries[count++] = new Entry(specification.getKey(), SpecificationCodec.encode(specification.getValue()));
+        }
+        Arrays.sort(entries, INDEX_ORDER);
+
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH + entries.length * ENTRY_LENGTH);
+        header.putInt(MAGIC).putInt(VERSION).putInt(entries.length);
+        long offset = header.capacity();
+        for (final Entry entry : entries)
+        {
+            final long valueOffset = offset + entry.keyBytes.length;
+            offset = valueOffset + entry.value.length;
+            if (offset > Integer.MAX_VALUE)
+            {
+                throw new IllegalArgumentException("Catalog would exceed " + Integer.MAX_VALUE + " bytes");
+            }
+            header.putInt(entry.hash).putInt((int)(valueOffset - entry.keyBytes.length)).putInt(entry.keyBytes.length).putInt((int)valueOffset).putInt(entry.value.length);
+        }
+
+        try (OutputStream output = Files.newOutputStream(path))
+        {
+            output.write(header.array());
+            for (final Entry entry : entries)
+            {
+                output.write(entry.keyBytes);
+                output.write(entry.value);
+            }
+        }
+    }
+
+    /**
+     * Memory map a catalog file. Only the header is read, specifications are decoded as they are looked up.
+     *
+     * @param path the file written by {@link #write(Path, Map)}.
+     * @return the catalog.
+     * @throws IOException if the file can't be read.
+     * @throws IllegalArgumentException if the file isn't a catalog of this version.
+     */
+    public static LocatorCatalog open(final Path path) throws IOException
+    {
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            if (channel.size() > Integer.MAX_VALUE)
+            {
+                throw new IllegalArgumentException(path + " is too large to be a catalog");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.capacity() < HEADER_LENGTH || buffer.getInt(0) != MAGIC)
+        {
+            throw new IllegalArgumentException(path + " is not a catalog");
+        }
+        final int version = buffer.getInt(4);
+        if (version != VERSION)
+        {
+            throw new IllegalArgumentException("Unsupported catalog version " + version + " in " + path);
+        }
+        final int size = buffer.getInt(8);
+        if (size < 0 || HEADER_LENGTH + (long)size * ENTRY_LENGTH > buffer.capacity())
+        {
+            throw new IllegalArgumentException(path + " has a truncated index");
+        }
+        return new LocatorCatalog(buffer, size);
+    }
+
+    /**
+     * @param key the key the specification was written with.
+     * @return the specification, or null if the catalog has no specification for {@code key}.
+     * @throws IllegalArgumentException if the stored specification is corrupt.
+     */
+    public ElementSpecification get(final String key)
+    {
+        final int index = indexOf(key);
+        if (index < 0)
+        {
+            return null;
+        }
+
+        ElementSpecification specification = decoded[index];
+        if (specification == null)
+        {
+            final int entry = HEADER_LENGTH + index * ENTRY_LENGTH;
+            final ByteBuffer value = buffer.duplicate();
+            value.limit(buffer.getInt(entry + 12) + buffer.getInt(entry + 16));
+            value.position(buffer.getInt(entry + 12));
+            specification = SpecificationCodec.decode(value);
+            decoded[index] = specification;
+        }
+        return specification;
+    }
+
+    /**
+     * @param key a key.
+     * @return true if the catalog has a specification for {@code key}.
+     */
+    public boolean contains(final String key)
+    {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @return every key in the catalog, in the catalog's index order.
+     */
+    public List<String> keys()
+    {
+        final List<String> keys = new ArrayList<>(size);
+        for (int index = 0; index < size; index++)
+        {
+            final int entry = HEADER_LENGTH + index * ENTRY_LENGTH;
+            final byte[] key = new byte[buffer.getInt(entry + 8)];
+            final ByteBuffer keyBuffer = buffer.duplicate();
+            keyBuffer.position(buffer.getInt(entry + 4));
+            keyBuffer.get(key);
+            keys.add(new String(key, StandardCharsets.UTF_8));
+        }
+        return keys;
+    }
+
+    /**
+     * @return the number of specifications in the catalog.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    private int indexOf(final String key)
+    {
+        final int hash = key.hashCode();
+        int low = 0;
+        int high = size - 1;
+        while (low <= high)
+        {
+            final int middle = (low + high) >>> 1;
+            if (hashAt(middle) < hash)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle - 1;
+            }
+        }
+
+        byte[] keyBytes = null;
+        for (int index = low; index < size && hashAt(index) == hash; index++)
+        {
+            if (keyBytes == null)
+            {
+                keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            }
+            if (keyAt(index, keyBytes))
+            {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private int hashAt(final int index)
+    {
+        return buffer.getInt(HEADER_LENGTH + index * ENTRY_LENGTH);
+    }
+
+    private boolean keyAt(final int index, final byte[] keyBytes)
+    {
+        final int entry = HEADER_LENGTH + index * ENTRY_LENGTH;
+        final int keyOffset = buffer.getInt(entry + 4);
+        if (buffer.getInt(entry + 8) != keyBytes.length)
+        {
+            return false;
+        }
+        for (int i = 0; i < keyBytes.length; i++)
+        {
+            if (buffer.get(keyOffset + i) != keyBytes[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Entry
+    {
+        private final String key;
+        private final int hash;
+        private final byte[] keyBytes;
+        private final byte[] value;
+
+        private Entry(final String key, final byte[] value)
+        {
+            this.key = key;
+            this.hash = key.hashCode();
+            this.keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            this.value = value;
+        }
+    }
+}
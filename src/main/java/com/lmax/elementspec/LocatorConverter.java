@@ -0,0 +1,586 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Converts files of selenium 1 style locators with {@link ElementSpecification#fromOldStyleSeleniumLocator(String)}, reporting the format each one renders in.
+ *
+ * <p>Input files hold one locator per line, or are read as {@code key=value} pairs if their name ends with {@code .properties}. Lines are read in chunks which are
+ * converted in parallel on a {@link ForkJoinPool} while earlier chunks are written, so memory use stays bounded however large the input is. Each locator produces a
+ * tab separated line in input order:</p>
+ * <pre>
+ * source    original locator    format    converted locator
+ * </pre>
+ * <p>where the source is the file and line number or property key, and the format is {@code ID}, {@code CSS}, {@code XPATH}, or {@code INVALID} with the error in
+ * place of the converted locator. A property with a malformed unicode escape is reported as {@code INVALID} under its line number. Tabs, newlines and backslashes within fields are escaped with a backslash. XPath locators that couldn't be translated to CSS are
+ * counted in the summary, which is written once every file has been converted.</p>
+ *
+ * <pre>
+ * java -cp elementspec.jar com.lmax.elementspec.LocatorConverter [--threads n] [--output file] input...
+ * </pre>
+ */
+public final class LocatorConverter
+{
+    private static final int CHUNK_SIZE = 4096;
+
+    private final ForkJoinPool pool;
+    private final Writer output;
+    private final Report report = new Report();
+
+    /**
+     * @param pool the pool to convert locators on.
+     * @param output where to write the converted locators. Lines are written in the order the locators were read.
+     */
+    public LocatorConverter(final ForkJoinPool pool, final Writer output)
+    {
+        this.pool = pool;
+        this.output = output;
+    }
+
+    public static void main(final String[] args) throws IOException
+    {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String outputFile = null;
+        final List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++)
+        {
+            if ("--threads".equals(args[i]) && i + 1 < args.length)
+            {
+                threads = Integer.parseInt(args[++i]);
+            }
+            else if ("--output".equals(args[i]) && i + 1 < args.length)
+            {
+                outputFile = args[++i];
+            }
+            else
+            {
+                inputs.add(args[i]);
+            }
+        }
+
+        // SUPPRESS CHECKSTYLE RegexpSinglelineJava
+        final PrintWriter console = new PrintWriter(new OutputStreamWriter(outputFile == null ? System.err : System.out, StandardCharsets.UTF_8), true);
+        if (inputs.isEmpty())
+        {
+            console.println("Usage: LocatorConverter [--threads n] [--output file] input...");
+            return;
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        // SUPPRESS CHECKSTYLE RegexpSinglelineJava
+        try (final Writer output = outputFile == null ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)) :
+                                   Files.newBufferedWriter(Paths.get(outputFile), StandardCharsets.UTF_8))
+        {
+            final LocatorConverter converter = new LocatorConverter(pool, output);
+            for (final String input : inputs)
+            {
+                try (final BufferedReader reader = Files.newBufferedReader(Paths.get(input), StandardCharsets.UTF_8))
+                {
+                    converter.convert(reader, input, input.endsWith(".properties"));
+                }
+            }
+            output.flush();
+            console.println(converter.getReport());
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Convert every locator read from {@code input}, writing the results as each chunk completes.
+     *
+     * @param input the locators to convert.
+     * @param source the name of the input, used to identify each locator in the output.
+     * @param properties true to read {@code key=value} pairs, false to read one locator per line.
+     * @throws IOException if reading the input or writing the output fails.
+     */
+    public void convert(final Reader input, final String source, final boolean properties) throws IOException
+    {
+        final long start = System.nanoTime();
+        final LocatorReader reader = new LocatorReader(input instanceof BufferedReader ? (BufferedReader)input : new BufferedReader(input), source, properties);
+
+        // Keep enough chunks in flight to occupy every thread while the oldest is written, without reading the whole input into memory.
+        final int maximumInFlight = pool.getParallelism() * 2;
+        final Deque<CompletableFuture<Chunk>> inFlight = new ArrayDeque<>();
+        Chunk chunk = reader.nextChunk();
+        while (chunk != null)
+        {
+            final Chunk toConvert = chunk;
+            inFlight.addLast(CompletableFuture.supplyAsync(() -> toConvert.convert(), pool));
+            if (inFlight.size() >= maximumInFlight)
+            {
+                write(inFlight.removeFirst().join());
+            }
+            chunk = reader.nextChunk();
+        }
+        while (!inFlight.isEmpty())
+        {
+            write(inFlight.removeFirst().join());
+        }
+        report.addSource(System.nanoTime() - start);
+    }
+
+    /**
+     * @return the totals for everything converted so far.
+     */
+    public Report getReport()
+    {
+        return report;
+    }
+
+    private void write(final Chunk chunk) throws IOException
+    {
+        output.write(chunk.output.toString());
+        report.add(chunk);
+    }
+
+    /**
+     * Convert a single locator, or report it as invalid if it couldn't be read.
+     */
+    private static void convert(final String source, final String locator, final String readError, final Chunk chunk)
+    {
+        final LocatorFormat originalFormat = originalFormat(locator);
+        String format;
+        String converted;
+        try
+        {
+            if (readError != null)
+            {
+                throw new IllegalArgumentException(readError);
+            }
+            final ElementSpecification spec = ElementSpecification.fromOldStyleSeleniumLocator(locator);
+            final LocatorFormat renderedFormat = LocatorFormat.of(spec);
+            format = renderedFormat.name();
+            converted = spec.asSeleniumLocator();
+            if (spec instanceof MultiFormatElementSpecification && ((MultiFormatElementSpecification)spec).operations().uses(OperationType.XPATH_EXPRESSION))
+            {
+                chunk.xpathFallbacks++;
+            }
+            chunk.formatCounts[renderedFormat.ordinal()]++;
+        }
+        catch (final RuntimeException e)
+        {
+            format = "INVALID";
+            converted = String.valueOf(e.getMessage());
+            chunk.invalid++;
+        }
+        if (originalFormat == LocatorFormat.XPATH)
+        {
+            chunk.xpathInputs++;
+        }
+
+        final StringBuilder output = chunk.output;
+        appendField(output, source).append('\t');
+        appendField(output, locator).append('\t');
+        output.append(format).append('\t');
+        appendField(output, converted).append('\n');
+    }
+
+    private static LocatorFormat originalFormat(final String locator)
+    {
+        if (locator.startsWith("css="))
+        {
+            return LocatorFormat.CSS;
+        }
+        if (locator.startsWith("xpath=") || locator.startsWith("//") || locator.startsWith("(//"))
+        {
+            return LocatorFormat.XPATH;
+        }
+        return LocatorFormat.ID;
+    }
+
+    private static StringBuilder appendField(final StringBuilder output, final String field)
+    {
+        for (int i = 0; i < field.length(); i++)
+        {
+            final char c = field.charAt(i);
+            switch (c)
+            {
+                case '\t':
+                    output.append("\\t");
+                    break;
+                case '\n':
+                    output.append("\\n");
+                    break;
+                case '\r':
+                    output.append("\\r");
+                    break;
+                case '\\':
+                    output.append("\\\\");
+                    break;
+                default:
+                    output.append(c);
+                    break;
+            }
+        }
+        return output;
+    }
+
+    /**
+     * The locators read in one go, converted as a unit on the pool. The counts are only updated by the converting thread and read once the chunk is complete.
+     */
+    private static final class Chunk
+    {
+        private final String[] sources = new String[CHUNK_SIZE];
+        private final String[] locators = new String[CHUNK_SIZE];
+        private final String[] readErrors = new String[CHUNK_SIZE];
+        private int size;
+
+        private final StringBuilder output = new StringBuilder();
+        private final long[] formatCounts = new long[LocatorFormat.values().length];
+        private long invalid;
+        private long xpathInputs;
+        private long xpathFallbacks;
+
+        private Chunk convert()
+        {
+            for (int i = 0; i < size; i++)
+            {
+                LocatorConverter.convert(sources[i], locators[i], readErrors[i], this);
+                sources[i] = null;
+                locators[i] = null;
+                readErrors[i] = null;
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Reads locators either one per line or as the values of a properties file, using the same escapes and continuation lines as {@link java.util.Properties}.
+     */
+    private static final class LocatorReader
+    {
+        private final BufferedReader reader;
+        private final String source;
+        private final boolean properties;
+        private int lineNumber;
+
+        private LocatorReader(final BufferedReader reader, final String source, final boolean properties)
+        {
+            this.reader = reader;
+            this.source = source;
+            this.properties = properties;
+        }
+
+        private Chunk nextChunk() throws IOException
+        {
+            final Chunk chunk = new Chunk();
+            String line;
+            while (chunk.size < CHUNK_SIZE && (line = reader.readLine()) != null)
+            {
+                lineNumber++;
+                if (properties)
+                {
+                    readProperty(line, chunk);
+                }
+                else if (!line.trim().isEmpty())
+                {
+                    chunk.sources[chunk.size] = source + ":" + lineNumber;
+                    chunk.locators[chunk.size] = line.trim();
+                    chunk.size++;
+                }
+            }
+            return chunk.size == 0 ? null : chunk;
+        }
+
+        private void readProperty(final String firstLine, final Chunk chunk) throws IOException
+        {
+            final int firstLineNumber = lineNumber;
+            String line = stripLeadingWhitespace(firstLine);
+            if (line.isEmpty() || line.charAt(0) == '#' || line.charAt(0) == '!')
+            {
+                return;
+            }
+
+            final StringBuilder logicalLine = new StringBuilder();
+            while (endsWithContinuation(line))
+            {
+                logicalLine.append(line, 0, line.length() - 1);
+                final String next = reader.readLine();
+                if (next == null)
+                {
+                    line = "";
+                    break;
+                }
+                lineNumber++;
+                line = stripLeadingWhitespace(next);
+            }
+            logicalLine.append(line);
+
+            int keyEnd = 0;
+            while (keyEnd < logicalLine.length() && !isKeyTerminator(logicalLine.charAt(keyEnd)))
+            {
+                keyEnd += logicalLine.charAt(keyEnd) == '\\' ? 2 : 1;
+            }
+            keyEnd = Math.min(keyEnd, logicalLine.length());
+
+            int valueStart = keyEnd;
+            while (valueStart < logicalLine.length() && isWhitespace(logicalLine.charAt(valueStart)))
+            {
+                valueStart++;
+            }
+            if (valueStart < logicalLine.length() && (logicalLine.charAt(valueStart) == '=' || logicalLine.charAt(valueStart) == ':'))
+            {
+                valueStart++;
+            }
+            while (valueStart < logicalLine.length() && isWhitespace(logicalLine.charAt(valueStart)))
+            {
+                valueStart++;
+            }
+
+            final String key;
+            final String value;
+            try
+            {
+                key = unescape(logicalLine, 0, keyEnd);
+                value = unescape(logicalLine, valueStart, logicalLine.length());
+            }
+            catch (final IllegalArgumentException e)
+            {
+                // Properties.load would reject the whole file, so report the line as invalid like a locator that can't be parsed and carry on.
+                chunk.sources[chunk.size] = source + ":" + firstLineNumber;
+                chunk.locators[chunk.size] = logicalLine.substring(valueStart);
+                chunk.readErrors[chunk.size] = e.getMessage();
+                chunk.size++;
+                return;
+            }
+            if (!value.isEmpty())
+            {
+                chunk.sources[chunk.size] = source + ":" + key;
+                chunk.locators[chunk.size] = value;
+                chunk.size++;
+            }
+        }
+
+        private static boolean endsWithContinuation(final String line)
+        {
+            int backslashes = 0;
+            for (int i = line.length() - 1; i >= 0 && line.charAt(i) == '\\'; i--)
+            {
+                backslashes++;
+            }
+            return backslashes % 2 == 1;
+        }
+
+        private static String unescape(final CharSequence text, final int start, final int end)
+        {
+            final StringBuilder unescaped = new StringBuilder(end - start);
+            for (int i = start; i < end; i++)
+            {
+                final char c = text.charAt(i);
+                if (c != '\\' || i + 1 >= end)
+                {
+                    unescaped.append(c);
+                    continue;
+                }
+                final char escaped = text.charAt(++i);
+                switch (escaped)
+                {
+                    case 't':
+                        unescaped.append('\t');
+                        break;
+                    case 'n':
+                        unescaped.append('\n');
+                        break;
+                    case 'r':
+                        unescaped.append('\r');
+                        break;
+                    case 'f':
+                        unescaped.append('\f');
+                        break;
+                    case 'u':
+                        unescaped.append(unicodeEscape(text, i + 1, end));
+                        i += 4;
+                        break;
+                    default:
+                        unescaped.append(escaped);
+                        break;
+                }
+            }
+            return unescaped.toString();
+        }
+
+        private static char unicodeEscape(final CharSequence text, final int start, final int end)
+        {
+            if (start + 4 > end)
+            {
+                throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+            }
+            int value = 0;
+            for (int i = start; i < start + 4; i++)
+            {
+                final char c = text.charAt(i);
+                final int digit = c <= 'f' ? Character.digit(c, 16) : -1;
+                if (digit < 0)
+                {
+                    throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+                }
+                value = (value << 4) | digit;
+            }
+            return (char)value;
+        }
+
+        private static String stripLeadingWhitespace(final String line)
+        {
+            int start = 0;
+            while (start < line.length() && isWhitespace(line.charAt(start)))
+            {
+                start++;
+            }
+            return line.substring(start);
+        }
+
+        private static boolean isKeyTerminator(final char c)
+        {
+            return c == '=' || c == ':' || isWhitespace(c);
+        }
+
+        private static boolean isWhitespace(final char c)
+        {
+            return c == ' ' || c == '\t' || c == '\f';
+        }
+    }
+
+    /**
+     * Totals for the locators converted so far. Only updated by the thread writing the output.
+     */
+    public static final class Report
+    {
+        private final long[] formatCounts = new long[LocatorFormat.values().length];
+        private long invalid;
+        private long xpathInputs;
+        private long xpathFallbacks;
+        private int sources;
+        private long elapsedNanos;
+
+        private Report()
+        {
+        }
+
+        private void add(final Chunk chunk)
+        {
+            for (int i = 0; i < formatCounts.length; i++)
+            {
+                formatCounts[i] += chunk.formatCounts[i];
+            }
+            invalid += chunk.invalid;
+            xpathInputs += chunk.xpathInputs;
+            xpathFallbacks += chunk.xpathFallbacks;
+        }
+
+        private void addSource(final long nanos)
+        {
+            sources++;
+            elapsedNanos += nanos;
+        }
+
+        /**
+         * @return the number of locators read, including invalid ones.
+         */
+        public long getTotal()
+        {
+            long total = invalid;
+            for (final long count : formatCounts)
+            {
+                total += count;
+            }
+            return total;
+        }
+
+        /**
+         * @param format a locator format.
+         * @return the number of locators that render in {@code format}.
+         */
+        public long getCount(final LocatorFormat format)
+        {
+            return formatCounts[format.ordinal()];
+        }
+
+        /**
+         * @return the number of locators that couldn't be converted.
+         */
+        public long getInvalid()
+        {
+            return invalid;
+        }
+
+        /**
+         * @return the number of XPath locators read.
+         */
+        public long getXPathInputs()
+        {
+            return xpathInputs;
+        }
+
+        /**
+         * @return the number of XPath locators that couldn't be translated, so were kept as XPath.
+         */
+        public long getXPathFallbacks()
+        {
+            return xpathFallbacks;
+        }
+
+        /**
+         * @return the number of locators converted per second.
+         */
+        public double getThroughput()
+        {
+            return elapsedNanos == 0 ? 0 : getTotal() * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            final long total = getTotal();
+            final StringBuilder report = new StringBuilder();
+            report.append(String.format(Locale.ROOT, "Converted %,d locators from %d source(s) in %.2fs (%,.0f locators/s)%n",
+                                        total, sources, elapsedNanos / 1e9, getThroughput()));
+            for (final LocatorFormat format : LocatorFormat.values())
+            {
+                appendCount(report, format.name(), getCount(format), total);
+            }
+            appendCount(report, "INVALID", invalid, total);
+            report.append(String.format(Locale.ROOT, "XPath locators kept as XPath: %,d of %,d", xpathFallbacks, xpathInputs));
+            return report.toString();
+        }
+
+        private static void appendCount(final StringBuilder report, final String name, final long count, final long total)
+        {
+            report.append(String.format(Locale.ROOT, "  %-8s %,12d  %5.1f%%%n", name, count, total == 0 ? 0 : count * 100.0 / total));
+        }
+    }
+}
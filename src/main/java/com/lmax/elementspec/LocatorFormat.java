@@ -0,0 +1,273 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import static com.lmax.elementspec.InvalidElementSpecification.INVALID;
+
+/**
+ * The formats an {@link ElementSpecification} can be rendered in, in order of preference.
+ */
+public enum LocatorFormat
+{
+    /**
+     * A plain element ID, rendered with {@code By.id}.
+     */
+    ID
+    {
+        @Override
+        ElementSpecification anElement()
+        {
+            return INVALID;
+        }
+
+        @Override
+        ElementSpecification anElementOfType(final String tagName)
+        {
+            return INVALID;
+        }
+
+        @Override
+        ElementSpecification anElementWithId(final String id)
+        {
+            return IdElementSpecification.anElementWithId(id);
+        }
+
+        @Override
+        ElementSpecification scope()
+        {
+            return INVALID;
+        }
+    },
+    /**
+     * A CSS selector, rendered with {@code By.cssSelector}.
+     */
+    CSS
+    {
+        @Override
+        String selector(final ElementSpecification specification)
+        {
+            return specification.asSeleniumLocator().substring("css=".length());
+        }
+
+        @Override
+        ElementSpecification anElement()
+        {
+            return CssElementSpecification.anElement();
+        }
+
+        @Override
+        ElementSpecification anElementOfType(final String tagName)
+        {
+            return CssElementSpecification.anElementOfType(tagName);
+        }
+
+        @Override
+        ElementSpecification anElementWithId(final String id)
+        {
+            return CssElementSpecification.anElement().withId(id);
+        }
+
+        @Override
+        ElementSpecification scope()
+        {
+            return CssElementSpecification.fromOldStyleSeleniumCssLocator(":scope");
+        }
+    },
+    /**
+     * An XPath expression, rendered with {@code By.xpath}.
+     */
+    XPATH
+    {
+        @Override
+        String selector(final ElementSpecification specification)
+        {
+            final String locator = specification.asSeleniumLocator();
+            return locator.startsWith("xpath=") ? locator.substring("xpath=".length()) : locator;
+        }
+
+        @Override
+        ElementSpecification anElement()
+        {
+            return XPathElementSpecification.anElement();
+        }
+
+        @Override
+        ElementSpecification anElementOfType(final String tagName)
+        {
+            return XPathElementSpecification.anElementOfType(tagName);
+        }
+
+        @Override
+        ElementSpecification anElementWithId(final String id)
+        {
+            return XPathElementSpecification.anElement().withId(id);
+        }
+
+        @Override
+        ElementSpecification scope()
+        {
+            return XPathElementSpecification.fromOldStyleSeleniumXPathLocator(".");
+        }
+    };
+
+    static final int ALL_FORMATS = mask(ID, CSS, XPATH);
+    static final int CSS_OR_XPATH = mask(CSS, XPATH);
+
+    private static final LocatorFormat[] FORMATS = values();
+
+    final int mask = 1 << ordinal();
+
+    /**
+     * @param specification a valid specification in this format.
+     * @return the locator for {@code specification} without any selenium 1 prefix.
+     */
+    String selector(final ElementSpecification specification)
+    {
+        return specification.asSeleniumLocator();
+    }
+
+    abstract ElementSpecification anElement();
+
+    abstract ElementSpecification anElementOfType(String tagName);
+
+    abstract ElementSpecification anElementWithId(String id);
+
+    /**
+     * @return the element a relative search starts from, which must be followed by a step to one of its descendants.
+     */
+    abstract ElementSpecification scope();
+
+    static int mask(final LocatorFormat... formats)
+    {
+        int mask = 0;
+        for (final LocatorFormat format : formats)
+        {
+            mask |= format.mask;
+        }
+        return mask;
+    }
+
+    /**
+     * @param specification a valid specification.
+     * @return the format {@code specification} is rendered in.
+     */
+    static LocatorFormat of(final ElementSpecification specification)
+    {
+        if (specification instanceof MultiFormatElementSpecification)
+        {
+            return ((MultiFormatElementSpecification)specification).renderedFormat();
+        }
+        if (specification instanceof CssElementSpecification)
+        {
+            return CSS;
+        }
+        if (specification instanceof XPathElementSpecification)
+        {
+            return XPATH;
+        }
+        if (specification instanceof IdElementSpecification)
+        {
+            return ID;
+        }
+        throw new IllegalStateException("Unable to build a valid element specification.");
+    }
+
+    /**
+     * @param formats a bitmask of formats.
+     * @return the most preferred format in {@code formats}.
+     */
+    static LocatorFormat preferred(final int formats)
+    {
+        if (formats == 0)
+        {
+            throw new IllegalStateException("No valid specification could be created.");
+        }
+        return FORMATS[Integer.numberOfTrailingZeros(formats)];
+    }
+
+    /**
+     * Build {@code operations} in each of {@code formats} and choose the one {@code costModel} considers cheapest.
+     *
+     * @param operations the operations to build.
+     * @param formats a bitmask of the formats able to represent {@code operations}.
+     * @param costModel the model to score each candidate with.
+     * @param optimise whether each candidate should be {@link ElementSpecification#optimised() optimised} before it is scored.
+     * @return the cheapest specification.
+     */
+    static ElementSpecification cheapest(final Operation operations, final int formats, final SelectorCostModel costModel, final boolean optimise)
+    {
+        if (Integer.bitCount(formats) <= 1)
+        {
+            return build(operations, preferred(formats), optimise);
+        }
+
+        ElementSpecification cheapest = null;
+        LocatorFormat cheapestFormat = null;
+        double cheapestCost = Double.POSITIVE_INFINITY;
+        for (int remaining = formats; remaining != 0; remaining &= remaining - 1)
+        {
+            final LocatorFormat format = preferred(remaining);
+            final ElementSpecification candidate = build(operations, format, optimise);
+            final double cost = costModel.cost(format, format.selector(candidate));
+            if (cheapest == null || cost < cheapestCost)
+            {
+                cheapest = candidate;
+                cheapestFormat = format;
+                cheapestCost = cost;
+            }
+        }
+        SpecificationEvents.formatSelected(formats, cheapestFormat, cheapestCost, operations.length);
+        return cheapest;
+    }
+
+    /**
+     * Build {@code operations} in each of {@code formats}, ordered from the cheapest to the most expensive according to {@code costModel}.
+     *
+     * @param operations the operations to build.
+     * @param formats a bitmask of the formats able to represent {@code operations}.
+     * @param costModel the model to score each candidate with.
+     * @param optimise whether each candidate should be {@link ElementSpecification#optimised() optimised} before it is scored.
+     * @return a specification for each format, cheapest first. Formats with equal costs keep their order of preference.
+     */
+    static ElementSpecification[] ranked(final Operation operations, final int formats, final SelectorCostModel costModel, final boolean optimise)
+    {
+        final ElementSpecification[] ranked = new ElementSpecification[Integer.bitCount(formats)];
+        final double[] costs = new double[ranked.length];
+        int count = 0;
+        for (int remaining = formats; remaining != 0; remaining &= remaining - 1)
+        {
+            final LocatorFormat format = preferred(remaining);
+            final ElementSpecification candidate = build(operations, format, optimise);
+            final double cost = costModel.cost(format, format.selector(candidate));
+            int i = count++;
+            for (; i > 0 && costs[i - 1] > cost; i--)
+            {
+                ranked[i] = ranked[i - 1];
+                costs[i] = costs[i - 1];
+            }
+            ranked[i] = candidate;
+            costs[i] = cost;
+        }
+        return ranked;
+    }
+
+    private static ElementSpecification build(final Operation operations, final LocatorFormat format, final boolean optimise)
+    {
+        final ElementSpecification specification = operations.replay(format);
+        return optimise ? specification.optimised() : specification;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+/**
+ * Notified of every lookup made by the WebDriver locators of specifications, to find out which locators are slow or fail to match in the browser.
+ *
+ * <p>Timing is off by default. Once a listener is {@link #register(LookupListener) registered}, {@link ElementSpecification#asWebDriverLocator()} and
+ * {@link ElementSpecification#asJavaScriptLocator()} return locators that time each {@code findElement} and {@code findElements} call they make and report it to
+ * that listener. Locators keep reporting to the listener that was registered when they were created. {@link LookupStatistics} is a listener that aggregates the
+ * lookups for each locator.</p>
+ *
+ * <p>Listeners are called on the thread making the lookup, often many at once in parallel suites, so must be thread safe and fast.</p>
+ */
+public interface LookupListener
+{
+    /**
+     * Time the lookups of all WebDriver locators created from now on and report them to {@code listener}.
+     *
+     * @param listener the listener to report to.
+     */
+    static void register(final LookupListener listener)
+    {
+        if (listener == null)
+        {
+            throw new NullPointerException("listener must not be null");
+        }
+        LookupListenerRegistry.listener = listener;
+    }
+
+    /**
+     * Stop timing the lookups of WebDriver locators created from now on.
+     */
+    static void unregister()
+    {
+        LookupListenerRegistry.listener = null;
+    }
+
+    /**
+     * @return the currently registered listener, or null if lookups aren't being timed.
+     */
+    static LookupListener registered()
+    {
+        return LookupListenerRegistry.listener;
+    }
+
+    /**
+     * Called after each lookup, whether or not it succeeded.
+     *
+     * @param locator the specification's old style Selenium locator, which identifies it however it is rendered for WebDriver.
+     * @param elapsedNanos how long the lookup took.
+     * @param matches the number of elements found, zero when {@code findElement} found nothing.
+     * @param failure the exception the lookup threw, e.g. {@code NoSuchElementException} from {@code findElement}, or null if it succeeded.
+     */
+    void onLookup(String locator, long elapsedNanos, int matches, RuntimeException failure);
+}
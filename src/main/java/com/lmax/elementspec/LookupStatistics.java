@@ -0,0 +1,329 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.openqa.selenium.InvalidSelectorException;
+import org.openqa.selenium.NoSuchElementException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link LookupListener} that keeps a latency histogram, match counts and failure counts for each locator, and can write them as a table or as CSV.
+ *
+ * <p>Recording a lookup doesn't lock once its locator has been seen: counts are kept in {@link LongAdder}s and the histogram in an {@link AtomicLongArray} of
+ * log-linear buckets, each within an eighth of the latencies it counts. Percentiles are reported as the upper bound of the bucket they fall in.</p>
+ *
+ * <pre>
+ * LookupStatistics statistics = new LookupStatistics();
+ * LookupListener.register(statistics);
+ * ... run the suite ...
+ * statistics.writeCsv(writer);
+ * </pre>
+ */
+public final class LookupStatistics implements LookupListener
+{
+    // Latencies below 2^SUB_BUCKET_BITS nanoseconds get a bucket each, larger ones share 2^SUB_BUCKET_BITS buckets per power of two.
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final ConcurrentMap<String, LocatorStatistics> statistics = new ConcurrentHashMap<>();
+
+    @Override
+    public void onLookup(final String locator, final long elapsedNanos, final int matches, final RuntimeException failure)
+    {
+        LocatorStatistics locatorStatistics = statistics.get(locator);
+        if (locatorStatistics == null)
+        {
+            final LocatorStatistics created = new LocatorStatistics();
+            locatorStatistics = statistics.putIfAbsent(locator, created);
+            if (locatorStatistics == null)
+            {
+                locatorStatistics = created;
+            }
+        }
+        locatorStatistics.record(elapsedNanos, matches, failure);
+    }
+
+    /**
+     * @return a summary of each locator that has been looked up, slowest in total first.
+     */
+    public List<Summary> getSummaries()
+    {
+        final List<Summary> summaries = new ArrayList<>(statistics.size());
+        statistics.forEach((locator, locatorStatistics) -> summaries.add(locatorStatistics.summarise(locator)));
+        summaries.sort((a, b) -> Long.compare(b.getTotalNanos(), a.getTotalNanos()));
+        return summaries;
+    }
+
+    /**
+     * @param locator an old style Selenium locator.
+     * @return a summary of the lookups of {@code locator}, or null if it hasn't been looked up.
+     */
+    public Summary getSummary(final String locator)
+    {
+        final LocatorStatistics locatorStatistics = statistics.get(locator);
+        return locatorStatistics == null ? null : locatorStatistics.summarise(locator);
+    }
+
+    /**
+     * Forget every lookup recorded so far.
+     */
+    public void reset()
+    {
+        statistics.clear();
+    }
+
+    /**
+     * Write a table of the summaries, slowest in total first, with times in microseconds.
+     *
+     * @param output where to write the table.
+     * @throws IOException if {@code output} throws.
+     */
+    public void writeText(final Appendable output) throws IOException
+    {
+        output.append(String.format(Locale.ROOT, "%10s %10s %9s %10s %10s %10s %10s %10s %10s  %s%n",
+                                    "lookups", "not found", "errors", "matches", "mean us", "p50 us", "p90 us", "p99 us", "max us", "locator"));
+        for (final Summary summary : getSummaries())
+        {
+            output.append(String.format(Locale.ROOT, "%10d %9.1f%% %9d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f  %s%n",
+                                        summary.getLookups(), summary.getNotFoundRate() * 100, summary.getErrors(), summary.getMeanMatches(),
+                                        micros(summary.getMeanNanos()), micros(summary.getPercentileNanos(50)), micros(summary.getPercentileNanos(90)),
+                                        micros(summary.getPercentileNanos(99)), micros(summary.getMaxNanos()), summary.getLocator()));
+        }
+    }
+
+    /**
+     * Write the summaries as CSV with a header row, slowest in total first, with times in microseconds.
+     *
+     * @param output where to write the CSV.
+     * @throws IOException if {@code output} throws.
+     */
+    public void writeCsv(final Appendable output) throws IOException
+    {
+        output.append("locator,lookups,not_found,not_found_rate,errors,mean_matches,mean_us,p50_us,p90_us,p99_us,max_us,total_us\n");
+        for (final Summary summary : getSummaries())
+        {
+            output.append('"').append(summary.getLocator().replace("\"", "\"\"")).append('"');
+            output.append(String.format(Locale.ROOT, ",%d,%d,%.4f,%d,%.2f,%.1f,%.1f,%.1f,%.1f,%.1f,%.1f\n",
+                                        summary.getLookups(), summary.getNotFound(), summary.getNotFoundRate(), summary.getErrors(), summary.getMeanMatches(),
+                                        micros(summary.getMeanNanos()), micros(summary.getPercentileNanos(50)), micros(summary.getPercentileNanos(90)),
+                                        micros(summary.getPercentileNanos(99)), micros(summary.getMaxNanos()), micros(summary.getTotalNanos())));
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder text = new StringBuilder();
+        try
+        {
+            writeText(text);
+        }
+        catch (final IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        return text.toString();
+    }
+
+    static int bucket(final long nanos)
+    {
+        if (nanos < SUB_BUCKETS)
+        {
+            return (int)Math.max(nanos, 0);
+        }
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos);
+        final int subBucket = (int)(nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound(final int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+        {
+            return bucket;
+        }
+        final int shift = bucket / SUB_BUCKETS - 1;
+        final long lowerBound = (long)(SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    private static double micros(final double nanos)
+    {
+        return nanos / 1000;
+    }
+
+    private static final class LocatorStatistics
+    {
+        private final LongAdder lookups = new LongAdder();
+        private final LongAdder notFound = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder matches = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        private void record(final long elapsedNanos, final int matchCount, final RuntimeException failure)
+        {
+            lookups.increment();
+            // Selenium 2 makes an invalid selector a kind of missing element, but it's an error in the locator rather than the page.
+            if (failure instanceof NoSuchElementException && !(failure instanceof InvalidSelectorException))
+            {
+                notFound.increment();
+            }
+            else if (failure != null)
+            {
+                errors.increment();
+            }
+            else if (matchCount == 0)
+            {
+                notFound.increment();
+            }
+            matches.add(matchCount);
+            totalNanos.add(elapsedNanos);
+            maxNanos.accumulate(elapsedNanos);
+            histogram.incrementAndGet(bucket(elapsedNanos));
+        }
+
+        private Summary summarise(final String locator)
+        {
+            final long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++)
+            {
+                counts[i] = histogram.get(i);
+            }
+            return new Summary(locator, lookups.sum(), notFound.sum(), errors.sum(), matches.sum(), totalNanos.sum(), maxNanos.get(), counts);
+        }
+    }
+
+    /**
+     * The lookups of one locator. Taken while lookups continue, so counts may be a few lookups apart from each other.
+     */
+    public static final class Summary
+    {
+        private final String locator;
+        private final long lookups;
+        private final long notFound;
+        private final long errors;
+        private final long matches;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long[] histogram;
+
+        private Summary(final String locator, final long lookups, final long notFound, final long errors, final long matches, final long totalNanos,
+                        final long maxNanos, final long[] histogram)
+        {
+            this.locator = locator;
+            this.lookups = lookups;
+            this.notFound = notFound;
+            this.errors = errors;
+            this.matches = matches;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.histogram = histogram;
+        }
+
+        public String getLocator()
+        {
+            return locator;
+        }
+
+        public long getLookups()
+        {
+            return lookups;
+        }
+
+        /**
+         * @return the number of lookups that found nothing, either a {@code findElement} that threw {@link NoSuchElementException} or an empty {@code findElements}.
+         */
+        public long getNotFound()
+        {
+            return notFound;
+        }
+
+        public double getNotFoundRate()
+        {
+            return lookups == 0 ? 0 : (double)notFound / lookups;
+        }
+
+        /**
+         * @return the number of lookups that threw anything other than {@link NoSuchElementException}, including {@link InvalidSelectorException}.
+         */
+        public long getErrors()
+        {
+            return errors;
+        }
+
+        public double getMeanMatches()
+        {
+            return lookups == 0 ? 0 : (double)matches / lookups;
+        }
+
+        public long getTotalNanos()
+        {
+            return totalNanos;
+        }
+
+        public double getMeanNanos()
+        {
+            return lookups == 0 ? 0 : (double)totalNanos / lookups;
+        }
+
+        public long getMaxNanos()
+        {
+            return maxNanos;
+        }
+
+        /**
+         * @param percentile the percentile, from 0 to 100.
+         * @return the latency below which {@code percentile} percent of lookups completed, to within the histogram's precision, or zero if there were no lookups.
+         */
+        public long getPercentileNanos(final double percentile)
+        {
+            long total = 0;
+            for (final long count : histogram)
+            {
+                total += count;
+            }
+            if (total == 0)
+            {
+                return 0;
+            }
+
+            final long rank = Math.max(1, (long)Math.ceil(total * percentile / 100));
+            long seen = 0;
+            for (int bucket = 0; bucket < histogram.length; bucket++)
+            {
+                seen += histogram[bucket];
+                if (seen >= rank)
+                {
+                    return Math.min(upperBound(bucket), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+    }
+}
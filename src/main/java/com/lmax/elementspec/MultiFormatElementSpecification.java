@@ -18,50 +18,133 @@ package com.lmax.elementspec;
 
 import org.openqa.selenium.By;
 
-import java.util.Collection;
-import java.util.function.UnaryOperator;
-
 import static com.lmax.elementspec.InvalidElementSpecification.INVALID;
-import static java.util.Arrays.asList;
-import static java.util.stream.Collectors.toList;
+import static com.lmax.elementspec.LocatorFormat.ALL_FORMATS;
+import static com.lmax.elementspec.LocatorFormat.CSS_OR_XPATH;
 
+/**
+ * Records the chain of operations once and only builds it in a concrete format when a locator is requested. The formats that can still represent the chain are tracked
+ * as a bitmask as operations are added, and the most preferred of them is used for rendering.
+ */
 final class MultiFormatElementSpecification implements ElementSpecification
 {
-    private final Collection<ElementSpecification> builders;
+    private final Operation operations;
+    private final int formats;
+    private final boolean optimised;
+
+    // Built lazily using the racy single-check idiom. The specification caches its own rendered locators and can safely be built more than once.
+    // The cost model it was chosen with is kept alongside so registering a different model takes effect for specifications that have already been rendered.
+    private Rendering rendering;
+    // The equal specification SpecificationCache interned when this one was first rendered, which renders on its behalf. Itself when the cache is disabled.
+    private MultiFormatElementSpecification canonical;
+    private By javaScriptLocator;
+    private By idAnchoredLocator;
+    private By adaptiveLocator;
+
+    private MultiFormatElementSpecification(final Operation operations, final int formats, final boolean optimised)
+    {
+        this.operations = operations;
+        this.formats = formats;
+        this.optimised = optimised;
+    }
+
+    static MultiFormatElementSpecification anElement()
+    {
+        return start(Operation.start(OperationType.AN_ELEMENT, null));
+    }
+
+    static MultiFormatElementSpecification anElementOfType(final String tagName)
+    {
+        return start(Operation.start(OperationType.AN_ELEMENT_OF_TYPE, tagName));
+    }
+
+    static MultiFormatElementSpecification anElementWithId(final String id)
+    {
+        return start(Operation.start(OperationType.AN_ELEMENT_WITH_ID, id));
+    }
+
+    /**
+     * Parse a CSS selector into the equivalent operations so it can be refined and rendered like any other specification. Selectors outside the subset
+     * {@link CssSelectorParser} understands are kept verbatim and can only be rendered as CSS.
+     */
+    static MultiFormatElementSpecification fromCssSelector(final String selector)
+    {
+        final ElementSpecification parsed = CssSelectorParser.parse(selector);
+        if (!(parsed instanceof MultiFormatElementSpecification))
+        {
+            return start(Operation.start(OperationType.CSS_SELECTOR, selector));
+        }
+
+        // XPath counts positions differently to :nth-child, so a selector that uses them only keeps its meaning while it's rendered as CSS.
+        final MultiFormatElementSpecification spec = (MultiFormatElementSpecification)parsed;
+        for (final Operation operation : spec.operations.toArray())
+        {
+            if (operation.type == OperationType.IN_POSITION || operation.type == OperationType.IN_POSITION_OF_TYPE)
+            {
+                return new MultiFormatElementSpecification(spec.operations, spec.formats & LocatorFormat.CSS.mask, false);
+            }
+        }
+        return spec;
+    }
+
+    /**
+     * Parse an XPath locator into the equivalent operations when it only uses the patterns {@link XPathLocatorParser} can translate exactly, so it can be rendered
+     * as CSS. Any other locator is kept verbatim and can only be rendered as XPath.
+     */
+    static MultiFormatElementSpecification fromXPath(final String xpath)
+    {
+        final ElementSpecification parsed = XPathLocatorParser.parse(xpath);
+        if (parsed instanceof MultiFormatElementSpecification)
+        {
+            return (MultiFormatElementSpecification)parsed;
+        }
+        return start(Operation.start(OperationType.XPATH_EXPRESSION, xpath));
+    }
 
-    MultiFormatElementSpecification(final ElementSpecification... builders)
+    /**
+     * @param operations a complete chain of operations.
+     * @param formats the formats able to represent {@code operations}, as tracked while it was recorded.
+     */
+    static MultiFormatElementSpecification create(final Operation operations, final int formats)
     {
-        this.builders = asList(builders);
+        return new MultiFormatElementSpecification(operations, formats, false);
     }
 
-    private MultiFormatElementSpecification(final Collection<ElementSpecification> builders)
+    private static MultiFormatElementSpecification start(final Operation operation)
     {
-        this.builders = builders;
+        return new MultiFormatElementSpecification(operation, operation.type.supportedFormats, false);
     }
 
     @Override
     public ElementSpecification withId(final String id)
     {
-        return each(builder -> builder.withId(id));
+        return then(operations.then(OperationType.WITH_ID, id));
     }
 
     @Override
     public ElementSpecification thatContainsA(final String tagName)
     {
-        return each(builder -> builder.thatContainsA(tagName));
+        return then(operations.then(OperationType.THAT_CONTAINS_A, tagName));
     }
 
     @Override
-    @SuppressWarnings("Convert2MethodRef")
     public ElementSpecification addSubSpecification(final ElementSpecification specification)
     {
         if (specification instanceof MultiFormatElementSpecification)
         {
-            return each(builder -> ((MultiFormatElementSpecification)specification).builders.stream()
-                    .filter(builderToAppend -> builder.getClass() == builderToAppend.getClass())
-                    .findFirst()
-                    .map(builderToAppend -> builder.addSubSpecification(builderToAppend))
-                    .orElse(INVALID));
+            final MultiFormatElementSpecification subSpecification = (MultiFormatElementSpecification)specification;
+            final Operation[] subOperations = subSpecification.operations.toArray();
+            if (subOperations[0].type == OperationType.SCOPE)
+            {
+                // A relative specification already starts with a step to a descendant, so it continues this chain directly.
+                Operation chain = operations;
+                for (int i = 1; i < subOperations.length; i++)
+                {
+                    chain = chain.then(subOperations[i]);
+                }
+                return then(chain, subSpecification.formats);
+            }
+            return then(operations.then(OperationType.ADD_SUB_SPECIFICATION, subSpecification.operations), subSpecification.formats & CSS_OR_XPATH);
         }
         return INVALID;
     }
@@ -69,115 +152,216 @@ final class MultiFormatElementSpecification implements ElementSpecification
     @Override
     public ElementSpecification thatContainsAnyElement()
     {
-        return each(ElementSpecification::thatContainsAnyElement);
+        return then(operations.then(OperationType.THAT_CONTAINS_ANY_ELEMENT));
     }
 
     @Override
     public ElementSpecification withAttribute(final String attributeName)
     {
-        return each(builder -> builder.withAttribute(attributeName));
+        return then(operations.then(OperationType.WITH_ATTRIBUTE, attributeName));
     }
 
     @Override
     public ElementSpecification withoutAttribute(final String attributeName)
     {
-        return each(builder -> builder.withoutAttribute(attributeName));
+        return then(operations.then(OperationType.WITHOUT_ATTRIBUTE, attributeName));
     }
 
     @Override
     public ElementSpecification thatContainsAChildOfType(final String tagName)
     {
-        return each(builder -> builder.thatContainsAChildOfType(tagName));
+        return then(operations.then(OperationType.THAT_CONTAINS_A_CHILD_OF_TYPE, tagName));
     }
 
     @Override
     public ElementSpecification withClass(final String classname)
     {
-        return each(builder -> builder.withClass(classname));
+        return then(operations.then(OperationType.WITH_CLASS, classname));
     }
 
     @Override
     public ElementSpecification withoutClass(final String classname)
     {
-        return each(builder -> builder.withoutClass(classname));
+        return then(operations.then(OperationType.WITHOUT_CLASS, classname));
     }
 
     @Override
     public ElementSpecification withAnyOfTheseClasses(final String... classnames)
     {
-        return each(builder -> builder.withAnyOfTheseClasses(classnames));
+        return then(operations.then(OperationType.WITH_ANY_OF_THESE_CLASSES, classnames));
     }
 
     @Override
     public ElementSpecification inPosition(final int position)
     {
-        return each(builder -> builder.inPosition(position));
+        return then(operations.then(OperationType.IN_POSITION, position));
     }
 
     @Override
     public ElementSpecification inPositionOfType(int position)
     {
-        return each(builder -> builder.inPositionOfType(position));
+        return then(operations.then(OperationType.IN_POSITION_OF_TYPE, position));
     }
 
     @Override
     public ElementSpecification withText(final String text)
     {
-        return each(builder -> builder.withText(text));
+        return then(operations.then(OperationType.WITH_TEXT, text));
     }
 
     @Override
     public ElementSpecification withTextContaining(final String text)
     {
-        return each(builder -> builder.withTextContaining(text));
+        return then(operations.then(OperationType.WITH_TEXT_CONTAINING, text));
     }
 
     @Override
     public ElementSpecification withAttributeContaining(final String attributeName, final String expectedSubstring)
     {
-        return each(builder -> builder.withAttributeContaining(attributeName, expectedSubstring));
+        return then(operations.then(OperationType.WITH_ATTRIBUTE_CONTAINING, attributeName, expectedSubstring));
     }
 
     @Override
     public ElementSpecification withAttributeValue(final String attributeName, final String value)
     {
-        return each(builder -> builder.withAttributeValue(attributeName, value));
+        return then(operations.then(OperationType.WITH_ATTRIBUTE_VALUE, attributeName, value));
     }
 
     @Override
     public ElementSpecification withNumericalContent()
     {
-        return each(ElementSpecification::withNumericalContent);
+        return then(operations.then(OperationType.WITH_NUMERICAL_CONTENT));
     }
 
     @Override
     public ElementSpecification withNoChildren()
     {
-        return each(ElementSpecification::withNoChildren);
+        return then(operations.then(OperationType.WITH_NO_CHILDREN));
     }
 
     @Override
     public ElementSpecification thatIsChecked()
     {
-        return each(ElementSpecification::thatIsChecked);
+        return then(operations.then(OperationType.THAT_IS_CHECKED));
+    }
+
+    @Override
+    public ElementSpecification relative()
+    {
+        final Operation start = operations.toArray()[0];
+        if (formats == 0 || start.type == OperationType.SCOPE)
+        {
+            return this;
+        }
+
+        final Operation scope = Operation.start(OperationType.SCOPE, null);
+        switch (start.type)
+        {
+            case AN_ELEMENT:
+                return relative(scope.then(OperationType.THAT_CONTAINS_ANY_ELEMENT), 1, formats & CSS_OR_XPATH);
+            case AN_ELEMENT_OF_TYPE:
+                return relative(scope.then(OperationType.THAT_CONTAINS_A, start.argument), 1, formats & CSS_OR_XPATH);
+            case AN_ELEMENT_WITH_ID:
+                return relative(scope.then(OperationType.THAT_CONTAINS_ANY_ELEMENT).then(OperationType.WITH_ID, start.argument), 1, formats & CSS_OR_XPATH);
+            default:
+                // Verbatim locators are appended to the scope as they are, which only keeps their meaning for a single descendant path.
+                return relative(scope.then(OperationType.ADD_SUB_SPECIFICATION, start), 1, formats & relativeFormats(start.argument));
+        }
+    }
+
+    @Override
+    public ElementSpecification optimised()
+    {
+        if (optimised || formats == 0)
+        {
+            return this;
+        }
+        return new MultiFormatElementSpecification(operations, formats, true);
     }
 
     @Override
     public String asSeleniumLocator()
     {
-        return getFirstValidBuilder().asSeleniumLocator();
+        return getPreferredSpecification().asSeleniumLocator();
     }
 
     @Override
     public boolean isValid()
     {
-        return !builders.isEmpty();
+        return formats != 0;
     }
 
     @Override
     public By asWebDriverLocator()
     {
-        return getFirstValidBuilder().asWebDriverLocator();
+        return TimedBy.timed(this, getPreferredSpecification().asWebDriverLocator());
+    }
+
+    @Override
+    public By asJavaScriptLocator()
+    {
+        // A verbatim XPath locator can't be split into CSS and filters.
+        if ((formats & LocatorFormat.CSS.mask) != 0 || formats == 0 || operations.uses(OperationType.XPATH_EXPRESSION))
+        {
+            return asWebDriverLocator();
+        }
+        By locator = javaScriptLocator;
+        if (locator == null)
+        {
+            locator = JavaScriptLocator.compile(operations, getPreferredSpecification().asWebDriverLocator());
+            javaScriptLocator = locator;
+        }
+        return TimedBy.timed(this, locator);
+    }
+
+    @Override
+    public By asIdAnchoredLocator()
+    {
+        By locator = idAnchoredLocator;
+        if (locator == null)
+        {
+            locator = IdAnchoredLocator.compile(this);
+            idAnchoredLocator = locator;
+        }
+        return TimedBy.timed(this, locator);
+    }
+
+    @Override
+    public By asAdaptiveLocator()
+    {
+        // An ID is always valid syntax, so there's nothing to fall back from.
+        if (Integer.bitCount(formats) < 2 || (formats & LocatorFormat.ID.mask) != 0)
+        {
+            return asWebDriverLocator();
+        }
+        By locator = adaptiveLocator;
+        if (locator == null)
+        {
+            locator = AdaptiveLocator.compile(operations, formats, optimised);
+            adaptiveLocator = locator;
+        }
+        return TimedBy.timed(this, locator);
+    }
+
+    @Override
+    public boolean equals(final Object o)
+    {
+        if (this == o)
+        {
+            return true;
+        }
+        if (!(o instanceof MultiFormatElementSpecification))
+        {
+            return false;
+        }
+        final MultiFormatElementSpecification other = (MultiFormatElementSpecification)o;
+        return formats == other.formats && optimised == other.optimised && operations.equals(other.operations);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return operations.hashCode();
     }
 
     @Override
@@ -186,19 +370,130 @@ final class MultiFormatElementSpecification implements ElementSpecification
         return asSeleniumLocator();
     }
 
-    private ElementSpecification getFirstValidBuilder()
+    Operation operations()
+    {
+        return operations;
+    }
+
+    int formats()
+    {
+        return formats;
+    }
+
+    boolean isOptimised()
+    {
+        return optimised;
+    }
+
+    /**
+     * @return the specification in the format it is rendered in.
+     */
+    ElementSpecification rendered()
+    {
+        return getPreferredSpecification();
+    }
+
+    /**
+     * Search for the end of this chain from whichever element the search is made from, rather than from the document.
+     *
+     * @param from the index of the first operation to keep, which must step to a descendant.
+     * @return a specification starting at the search context and continuing with the operations from {@code from} onwards.
+     */
+    MultiFormatElementSpecification relativeFrom(final int from)
+    {
+        return relative(Operation.start(OperationType.SCOPE, null), from, formats & CSS_OR_XPATH);
+    }
+
+    /**
+     * @return the format this specification is rendered in.
+     */
+    LocatorFormat renderedFormat()
+    {
+        return LocatorFormat.of(getPreferredSpecification());
+    }
+
+    private ElementSpecification getPreferredSpecification()
+    {
+        MultiFormatElementSpecification shared = canonical;
+        if (shared == null)
+        {
+            // Specifications are only interned once they're rendered, so the prefixes of a chain never push finished specifications out of the cache.
+            shared = SpecificationCache.intern(this);
+            canonical = shared;
+        }
+        return shared.currentRendering().specification;
+    }
+
+    private Rendering currentRendering()
+    {
+        final SelectorCostModel costModel = SelectorCostModel.registered();
+        Rendering current = rendering;
+        if (current == null || current.costModel != costModel)
+        {
+            final Object event = SpecificationEvents.beginRender();
+            current = new Rendering(costModel, LocatorFormat.cheapest(operations, formats, costModel, optimised));
+            rendering = current;
+            SpecificationEvents.endRender(event, current.specification, formats, operations.length);
+        }
+        return current;
+    }
+
+    private MultiFormatElementSpecification relative(final Operation scope, final int from, final int relativeFormats)
     {
-        return builders.stream()
-                .filter(ElementSpecification::isValid)
-                .findFirst()
-                .orElseThrow(() -> new IllegalStateException("No valid specification could be created."));
+        final Operation[] chain = operations.toArray();
+        Operation relative = scope;
+        for (int i = from; i < chain.length; i++)
+        {
+            relative = relative.then(chain[i]);
+        }
+        return new MultiFormatElementSpecification(relative, relativeFormats, optimised);
     }
 
-    private ElementSpecification each(final UnaryOperator<ElementSpecification> operation)
+    /**
+     * @return the formats that can append a verbatim locator to a scope without changing its meaning.
+     */
+    private static int relativeFormats(final String locator)
     {
-        return new MultiFormatElementSpecification(builders.stream()
-                .map(operation)
-                .filter(ElementSpecification::isValid)
-                .collect(toList()));
+        int relativeFormats = 0;
+        if (locator.indexOf(',') < 0)
+        {
+            relativeFormats |= LocatorFormat.CSS.mask;
+        }
+        if (locator.startsWith("//") && locator.indexOf('|') < 0)
+        {
+            relativeFormats |= LocatorFormat.XPATH.mask;
+        }
+        return relativeFormats;
+    }
+
+    private ElementSpecification then(final Operation operation)
+    {
+        return then(operation, ALL_FORMATS);
+    }
+
+    private ElementSpecification then(final Operation operation, final int additionalFormatRestriction)
+    {
+        if (formats == 0)
+        {
+            return this;
+        }
+        final int remainingFormats = formats & operation.type.supportedFormats & additionalFormatRestriction;
+        if (remainingFormats != formats)
+        {
+            SpecificationEvents.formatsDropped(operation, formats, remainingFormats);
+        }
+        return new MultiFormatElementSpecification(operation, remainingFormats, optimised);
+    }
+
+    private static final class Rendering
+    {
+        private final SelectorCostModel costModel;
+        private final ElementSpecification specification;
+
+        private Rendering(final SelectorCostModel costModel, final ElementSpecification specification)
+        {
+            this.costModel = costModel;
+            this.specification = specification;
+        }
     }
 }
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import static com.lmax.elementspec.InvalidElementSpecification.INVALID;
+
+/**
+ * An immutable record of a single step in building an {@link ElementSpecification}. Each operation links to the one before it so chains that are refined in different ways
+ * share their common prefix. Sub specifications are held as a nested chain, making the whole structure a small tree.
+ */
+final class Operation
+{
+    final Operation previous;
+    final OperationType type;
+    final String argument;
+    final String secondArgument;
+    final String[] arguments;
+    final int position;
+    final Operation subSpecification;
+    final int length;
+    private final int hash;
+
+    private Operation(final Operation previous, final OperationType type, final String argument, final String secondArgument, final String[] arguments, final int position,
+                      final Operation subSpecification)
+    {
+        this.previous = previous;
+        this.type = type;
+        this.argument = argument;
+        this.secondArgument = secondArgument;
+        this.arguments = arguments;
+        this.position = position;
+        this.subSpecification = subSpecification;
+        this.length = previous == null ? 1 : previous.length + 1;
+        this.hash = computeHash();
+    }
+
+    static Operation start(final OperationType type, final String argument)
+    {
+        return new Operation(null, type, argument, null, null, 0, null);
+    }
+
+    Operation then(final OperationType type)
+    {
+        return new Operation(this, type, null, null, null, 0, null);
+    }
+
+    Operation then(final OperationType type, final String argument)
+    {
+        return new Operation(this, type, argument, null, null, 0, null);
+    }
+
+    Operation then(final OperationType type, final String argument, final String secondArgument)
+    {
+        return new Operation(this, type, argument, secondArgument, null, 0, null);
+    }
+
+    Operation then(final OperationType type, final String[] arguments)
+    {
+        return new Operation(this, type, null, null, arguments.clone(), 0, null);
+    }
+
+    Operation then(final OperationType type, final int position)
+    {
+        return new Operation(this, type, null, null, null, position, null);
+    }
+
+    Operation then(final OperationType type, final Operation subSpecification)
+    {
+        return new Operation(this, type, null, null, null, 0, subSpecification);
+    }
+
+    /**
+     * @param operation an operation from another chain.
+     * @return a copy of {@code operation} that follows this one.
+     */
+    Operation then(final Operation operation)
+    {
+        return new Operation(this, operation.type, operation.argument, operation.secondArgument, operation.arguments, operation.position, operation.subSpecification);
+    }
+
+    /**
+     * @return the operations in this chain, starting with the first.
+     */
+    Operation[] toArray()
+    {
+        final Operation[] operations = new Operation[length];
+        for (Operation operation = this; operation != null; operation = operation.previous)
+        {
+            operations[operation.length - 1] = operation;
+        }
+        return operations;
+    }
+
+    /**
+     * @param type the type of operation to look for.
+     * @return true if this chain or any of its sub specifications includes an operation of {@code type}.
+     */
+    boolean uses(final OperationType type)
+    {
+        for (Operation operation = this; operation != null; operation = operation.previous)
+        {
+            if (operation.type == type || operation.subSpecification != null && operation.subSpecification.uses(type))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Build the chain in a single format.
+     *
+     * @param format the format to build.
+     * @return the specification in {@code format}, which will be invalid if the format can't represent every operation.
+     */
+    ElementSpecification replay(final LocatorFormat format)
+    {
+        ElementSpecification spec = INVALID;
+        for (final Operation operation : toArray())
+        {
+            spec = operation.type.apply(format, spec, operation);
+        }
+        return spec;
+    }
+
+    @Override
+    public boolean equals(final Object o)
+    {
+        if (this == o)
+        {
+            return true;
+        }
+        if (!(o instanceof Operation))
+        {
+            return false;
+        }
+
+        // Walk both chains together, stopping as soon as they share a prefix. Interned chains share everything but the newest operation so this is usually a single step.
+        Operation operation = this;
+        Operation other = (Operation)o;
+        while (operation != other)
+        {
+            if (operation == null || other == null || !operation.hasSameStepAs(other))
+            {
+                return false;
+            }
+            operation = operation.previous;
+            other = other.previous;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+
+    private boolean hasSameStepAs(final Operation other)
+    {
+        return hash == other.hash &&
+               length == other.length &&
+               type == other.type &&
+               position == other.position &&
+               Objects.equals(argument, other.argument) &&
+               Objects.equals(secondArgument, other.secondArgument) &&
+               Arrays.equals(arguments, other.arguments) &&
+               Objects.equals(subSpecification, other.subSpecification);
+    }
+
+    private int computeHash()
+    {
+        int result = previous == null ? 0 : previous.hash;
+        result = 31 * result + type.ordinal();
+        result = 31 * result + Objects.hashCode(argument);
+        result = 31 * result + Objects.hashCode(secondArgument);
+        result = 31 * result + Arrays.hashCode(arguments);
+        result = 31 * result + position;
+        result = 31 * result + Objects.hashCode(subSpecification);
+        return result;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import static com.lmax.elementspec.LocatorFormat.ALL_FORMATS;
+import static com.lmax.elementspec.LocatorFormat.CSS;
+import static com.lmax.elementspec.LocatorFormat.CSS_OR_XPATH;
+import static com.lmax.elementspec.LocatorFormat.XPATH;
+
+/**
+ * The individual steps recorded by an {@link Operation} chain, along with the formats that can represent each of them.
+ */
+enum OperationType
+{
+    AN_ELEMENT(CSS_OR_XPATH, (format, spec, operation) -> format.anElement()),
+    AN_ELEMENT_OF_TYPE(CSS_OR_XPATH, (format, spec, operation) -> format.anElementOfType(operation.argument)),
+    AN_ELEMENT_WITH_ID(ALL_FORMATS, (format, spec, operation) -> format.anElementWithId(operation.argument)),
+    CSS_SELECTOR(CSS.mask, (format, spec, operation) -> CssElementSpecification.fromOldStyleSeleniumCssLocator(operation.argument)),
+    XPATH_EXPRESSION(XPATH.mask, (format, spec, operation) -> XPathElementSpecification.fromOldStyleSeleniumXPathLocator(operation.argument)),
+    SCOPE(CSS_OR_XPATH, (format, spec, operation) -> format.scope()),
+    THAT_CONTAINS_A(CSS_OR_XPATH, (format, spec, operation) -> spec.thatContainsA(operation.argument)),
+    THAT_CONTAINS_A_CHILD_OF_TYPE(CSS_OR_XPATH, (format, spec, operation) -> spec.thatContainsAChildOfType(operation.argument)),
+    THAT_CONTAINS_ANY_ELEMENT(CSS_OR_XPATH, (format, spec, operation) -> spec.thatContainsAnyElement()),
+    ADD_SUB_SPECIFICATION(CSS_OR_XPATH, (format, spec, operation) -> spec.addSubSpecification(operation.subSpecification.replay(format))),
+    WITH_ID(ALL_FORMATS, (format, spec, operation) -> spec.withId(operation.argument)),
+    WITH_CLASS(CSS_OR_XPATH, (format, spec, operation) -> spec.withClass(operation.argument)),
+    WITH_ANY_OF_THESE_CLASSES(XPATH.mask, (format, spec, operation) -> spec.withAnyOfTheseClasses(operation.arguments)),
+    WITHOUT_CLASS(CSS_OR_XPATH, (format, spec, operation) -> spec.withoutClass(operation.argument)),
+    WITH_ATTRIBUTE(CSS_OR_XPATH, (format, spec, operation) -> spec.withAttribute(operation.argument)),
+    WITHOUT_ATTRIBUTE(CSS_OR_XPATH, (format, spec, operation) -> spec.withoutAttribute(operation.argument)),
+    WITH_ATTRIBUTE_CONTAINING(CSS_OR_XPATH, (format, spec, operation) -> spec.withAttributeContaining(operation.argument, operation.secondArgument)),
+    WITH_ATTRIBUTE_VALUE(CSS_OR_XPATH, (format, spec, operation) -> spec.withAttributeValue(operation.argument, operation.secondArgument)),
+    IN_POSITION(CSS_OR_XPATH, (format, spec, operation) -> spec.inPosition(operation.position)),
+    IN_POSITION_OF_TYPE(CSS_OR_XPATH, (format, spec, operation) -> spec.inPositionOfType(operation.position)),
+    WITH_TEXT(XPATH.mask, (format, spec, operation) -> spec.withText(operation.argument)),
+    WITH_TEXT_CONTAINING(XPATH.mask, (format, spec, operation) -> spec.withTextContaining(operation.argument)),
+    WITH_NUMERICAL_CONTENT(XPATH.mask, (format, spec, operation) -> spec.withNumericalContent()),
+    WITH_NO_CHILDREN(CSS_OR_XPATH, (format, spec, operation) -> spec.withNoChildren()),
+    THAT_IS_CHECKED(CSS.mask, (format, spec, operation) -> spec.thatIsChecked());
+
+    final int supportedFormats;
+    private final Replay replay;
+
+    OperationType(final int supportedFormats, final Replay replay)
+    {
+        this.supportedFormats = supportedFormats;
+        this.replay = replay;
+    }
+
+    ElementSpecification apply(final LocatorFormat format, final ElementSpecification spec, final Operation operation)
+    {
+        return replay.apply(format, spec, operation);
+    }
+
+    @FunctionalInterface
+    private interface Replay
+    {
+        ElementSpecification apply(LocatorFormat format, ElementSpecification spec, Operation operation);
+    }
+}
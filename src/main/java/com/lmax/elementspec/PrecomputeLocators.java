@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a page object whose {@code static final ElementSpecification} fields should be rendered at compile time by the {@code elementspec-processor} annotation
+ * processor.
+ *
+ * <p>For a class {@code LoginPage} the processor generates {@code LoginPageLocators} in the same package, with a {@code String} constant holding the old style
+ * Selenium locator and a method returning the WebDriver {@code By} for each field, e.g. {@code LOGIN_BUTTON} and {@code loginButton()}. Code that uses the generated
+ * class never initializes the page object, so never builds its specifications at runtime.</p>
+ *
+ * <p>Each field must be initialized with a chain of calls on {@link ElementSpecification} whose arguments are compile time constants, or other such fields of
+ * classes being compiled. Fields that can't be evaluated, or that evaluate to an invalid specification, are reported as compile errors.</p>
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface PrecomputeLocators
+{
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+/**
+ * Estimates how expensive a browser will find it to evaluate a rendered locator, allowing multi-format specifications to choose the cheapest format that can represent
+ * them rather than simply the first.
+ *
+ * <p>The registered model is consulted the first time each specification is rendered with it. A model tuned for a particular browser can be registered with
+ * {@link #register(SelectorCostModel)}, typically once before a test run starts. Formats with equal costs are chosen in the order ID, CSS, XPath.</p>
+ */
+public interface SelectorCostModel
+{
+    /**
+     * The default model, which prefers ID lookups, then CSS, then XPath and penalises constructs that force browsers to examine large parts of the document.
+     */
+    SelectorCostModel DEFAULT = new DefaultSelectorCostModel();
+
+    /**
+     * Register the model used to choose between formats for all specifications rendered from now on.
+     *
+     * @param model the model to use.
+     */
+    static void register(final SelectorCostModel model)
+    {
+        if (model == null)
+        {
+            throw new NullPointerException("model must not be null");
+        }
+        SelectorCostModelRegistry.model = model;
+    }
+
+    /**
+     * @return the currently registered model, which is {@link #DEFAULT} unless another model has been registered.
+     */
+    static SelectorCostModel registered()
+    {
+        return SelectorCostModelRegistry.model;
+    }
+
+    /**
+     * Estimate the cost of evaluating a rendered locator. Only relative costs matter.
+     *
+     * @param format the format of the locator.
+     * @param selector the locator without any selenium 1 prefix, i.e. an id, a CSS selector or an XPath expression.
+     * @return the estimated cost, lower is cheaper.
+     */
+    double cost(LocatorFormat format, String selector);
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An opt-in, bounded cache that interns {@link ElementSpecification}s created through the static factories on {@code ElementSpecification} when they're first
+ * rendered, so identical chains share a single set of rendered locators. The specifications a chain was refined from aren't cached unless they're rendered
+ * themselves.
+ *
+ * <p>The cache is disabled by default. Enable it by calling {@link #enable(int)} or by setting the {@code elementspec.cache.maximumSize} system property. Entries are
+ * spread by hash across independently locked segments, each evicting its least recently used entry when full, so the cache is safe to use from many test threads at
+ * once. The maximum size is divided between the segments, so the cache never holds more than it, but may evict before reaching it if entries hash unevenly.</p>
+ */
+public final class SpecificationCache
+{
+    /**
+     * System property that enables the cache with the given maximum size when this class is loaded.
+     */
+    public static final String MAXIMUM_SIZE_PROPERTY = "elementspec.cache.maximumSize";
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private static volatile SpecificationCache instance = create(Integer.getInteger(MAXIMUM_SIZE_PROPERTY, 0));
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private SpecificationCache(final int maximumSize)
+    {
+        for (int i = 0; i < SEGMENT_COUNT; i++)
+        {
+            segments[i] = new Segment(maximumSize / SEGMENT_COUNT + (i < maximumSize % SEGMENT_COUNT ? 1 : 0), evictions);
+        }
+    }
+
+    /**
+     * Enable the cache, replacing any existing cache and its statistics.
+     *
+     * @param maximumSize the maximum number of specifications to retain.
+     */
+    public static void enable(final int maximumSize)
+    {
+        if (maximumSize <= 0)
+        {
+            throw new IllegalArgumentException("Maximum size must be positive but was " + maximumSize);
+        }
+        instance = create(maximumSize);
+    }
+
+    /**
+     * Disable the cache and discard its contents.
+     */
+    public static void disable()
+    {
+        instance = null;
+    }
+
+    /**
+     * @return {@code true} if and only if specifications are currently being interned.
+     */
+    public static boolean isEnabled()
+    {
+        return instance != null;
+    }
+
+    /**
+     * @return the number of lookups that found an existing specification since the cache was enabled.
+     */
+    public static long hits()
+    {
+        final SpecificationCache cache = instance;
+        return cache != null ? cache.hits.sum() : 0;
+    }
+
+    /**
+     * @return the number of lookups that added a new specification since the cache was enabled.
+     */
+    public static long misses()
+    {
+        final SpecificationCache cache = instance;
+        return cache != null ? cache.misses.sum() : 0;
+    }
+
+    /**
+     * @return the number of specifications evicted to keep within the maximum size since the cache was enabled.
+     */
+    public static long evictions()
+    {
+        final SpecificationCache cache = instance;
+        return cache != null ? cache.evictions.sum() : 0;
+    }
+
+    /**
+     * @return the number of specifications currently cached.
+     */
+    public static int size()
+    {
+        final SpecificationCache cache = instance;
+        int size = 0;
+        if (cache != null)
+        {
+            for (final Segment segment : cache.segments)
+            {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    static <T extends ElementSpecification> T intern(final T specification)
+    {
+        final SpecificationCache cache = instance;
+        return cache != null ? cache.lookup(specification) : specification;
+    }
+
+    private static SpecificationCache create(final int maximumSize)
+    {
+        return maximumSize > 0 ? new SpecificationCache(maximumSize) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends ElementSpecification> T lookup(final T specification)
+    {
+        final int hash = specification.hashCode();
+        final Segment segment = segments[(hash ^ (hash >>> 16)) & (SEGMENT_COUNT - 1)];
+        final ElementSpecification existing = segment.putIfAbsent(specification);
+        if (existing != null)
+        {
+            hits.increment();
+            return (T)existing;
+        }
+        misses.increment();
+        return specification;
+    }
+
+    private static final class Segment
+    {
+        private final Map<ElementSpecification, ElementSpecification> entries;
+
+        private Segment(final int maximumSize, final LongAdder evictions)
+        {
+            entries = new LeastRecentlyUsed(maximumSize, evictions);
+        }
+
+        synchronized ElementSpecification putIfAbsent(final ElementSpecification specification)
+        {
+            return entries.putIfAbsent(specification, specification);
+        }
+
+        synchronized int size()
+        {
+            return entries.size();
+        }
+    }
+
+    /**
+     * A map in access order that evicts its least recently used entry once it holds more than its maximum size.
+     */
+    private static final class LeastRecentlyUsed extends LinkedHashMap<ElementSpecification, ElementSpecification>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int maximumSize;
+        private final LongAdder evictions;
+
+        private LeastRecentlyUsed(final int maximumSize, final LongAdder evictions)
+        {
+            super(16, 0.75f, true);
+            this.maximumSize = maximumSize;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<ElementSpecification, ElementSpecification> eldest)
+        {
+            final boolean evict = size() > maximumSize;
+            if (evict)
+            {
+                evictions.increment();
+            }
+            return evict;
+        }
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A compact, versioned binary encoding of {@link ElementSpecification}s built with the static factories on {@code ElementSpecification}, for storing them in files
+ * such as a {@link LocatorCatalog}.
+ *
+ * <p>An encoded specification is laid out as:</p>
+ * <pre>
+ * version          byte     {@link #VERSION}
+ * flags            byte     bit 0 set if the specification is optimised
+ * formats          byte     bitmask of the formats able to render it, by {@link LocatorFormat} ordinal
+ * string count     varint
+ * strings          varint byte length followed by UTF-8 bytes, for each string
+ * operations       chain
+ * </pre>
+ * <p>where a chain is a varint count followed by each operation's opcode byte, a byte flagging which operands follow, then the operands in order: the argument and
+ * second argument as varint string indexes, the argument list as a varint count of string indexes, the position as a zigzag varint and the sub specification as a
+ * nested chain. Every string is stored once however often it's used. Opcodes are fixed, so new operation types must be given new opcodes rather than reuse old ones.</p>
+ */
+public final class SpecificationCodec
+{
+    /**
+     * The version written by {@link #encode(ElementSpecification)}. Decoding rejects any other version.
+     */
+    public static final int VERSION = 1;
+
+    // Opcodes are the index in this table. Only ever append to it.
+    private static final OperationType[] OPCODES =
+    {
+        OperationType.AN_ELEMENT,
+        OperationType.AN_ELEMENT_OF_TYPE,
+        OperationType.AN_ELEMENT_WITH_ID,
+        OperationType.THAT_CONTAINS_A,
+        OperationType.THAT_CONTAINS_A_CHILD_OF_TYPE,
+        OperationType.THAT_CONTAINS_ANY_ELEMENT,
+        OperationType.ADD_SUB_SPECIFICATION,
+        OperationType.WITH_ID,
+        OperationType.WITH_CLASS,
+        OperationType.WITH_ANY_OF_THESE_CLASSES,
+        OperationType.WITHOUT_CLASS,
+        OperationType.WITH_ATTRIBUTE,
+        OperationType.WITHOUT_ATTRIBUTE,
+        OperationType.WITH_ATTRIBUTE_CONTAINING,
+        OperationType.WITH_ATTRIBUTE_VALUE,
+        OperationType.IN_POSITION,
+        OperationType.IN_POSITION_OF_TYPE,
+        OperationType.WITH_TEXT,
+        OperationType.WITH_TEXT_CONTAINING,
+        OperationType.WITH_NUMERICAL_CONTENT,
+        OperationType.WITH_NO_CHILDREN,
+        OperationType.THAT_IS_CHECKED,
+        OperationType.CSS_SELECTOR,
+        OperationType.XPATH_EXPRESSION,
+        OperationType.SCOPE
+    };
+    private static final Map<OperationType, Integer> OPCODE_BY_TYPE = new EnumMap<>(OperationType.class);
+
+    private static final int OPTIMISED = 1;
+
+    private static final int HAS_ARGUMENT = 1;
+    private static final int HAS_SECOND_ARGUMENT = 1 << 1;
+    private static final int HAS_ARGUMENTS = 1 << 2;
+    private static final int HAS_POSITION = 1 << 3;
+    private static final int HAS_SUB_SPECIFICATION = 1 << 4;
+
+    static
+    {
+        for (int opcode = 0; opcode < OPCODES.length; opcode++)
+        {
+            OPCODE_BY_TYPE.put(OPCODES[opcode], opcode);
+        }
+    }
+
+    private SpecificationCodec()
+    {
+    }
+
+    /**
+     * @param specification a specification created through the static factories on {@code ElementSpecification}.
+     * @return the encoded specification.
+     * @throws IllegalArgumentException if {@code specification} wasn't created through the static factories, so has no operations to encode.
+     */
+    public static byte[] encode(final ElementSpecification specification)
+    {
+        if (!(specification instanceof MultiFormatElementSpecification))
+        {
+            throw new IllegalArgumentException("Unable to encode " + specification);
+        }
+        final MultiFormatElementSpecification multiFormat = (MultiFormatElementSpecification)specification;
+
+        final Map<String, Integer> strings = new LinkedHashMap<>();
+        collectStrings(multiFormat.operations(), strings);
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(64);
+        output.write(VERSION);
+        output.write(multiFormat.isOptimised() ? OPTIMISED : 0);
+        output.write(multiFormat.formats());
+        writeVarint(output, strings.size());
+        for (final String string : strings.keySet())
+        {
+            final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarint(output, bytes.length);
+            output.write(bytes, 0, bytes.length);
+        }
+        writeChain(output, multiFormat.operations(), strings);
+        return output.toByteArray();
+    }
+
+    /**
+     * @param encoded a specification encoded by {@link #encode(ElementSpecification)}.
+     * @return the decoded specification, equal to the one that was encoded.
+     * @throws IllegalArgumentException if {@code encoded} isn't a valid encoding of this version.
+     */
+    public static ElementSpecification decode(final byte[] encoded)
+    {
+        return decode(ByteBuffer.wrap(encoded));
+    }
+
+    /**
+     * Decode a specification from the remaining bytes of {@code buffer}, e.g. a slice of a memory mapped file. The buffer's position is advanced past the
+     * specification.
+     *
+     * @param buffer the buffer to read from.
+     * @return the decoded specification.
+     * @throws IllegalArgumentException if the buffer doesn't hold a valid encoding of this version.
+     */
+    public static ElementSpecification decode(final ByteBuffer buffer)
+    {
+        try
+        {
+            final int version = buffer.get() & 0xFF;
+            if (version != VERSION)
+            {
+                throw new IllegalArgumentException("Unsupported specification encoding version " + version);
+            }
+            final int flags = buffer.get() & 0xFF;
+            final int formats = buffer.get() & 0xFF;
+            if ((formats & ~LocatorFormat.ALL_FORMATS) != 0)
+            {
+                throw new IllegalArgumentException("Invalid formats " + formats);
+            }
+
+            final String[] strings = new String[readCount(buffer)];
+            for (int i = 0; i < strings.length; i++)
+            {
+                final int length = readCount(buffer);
+                if (buffer.hasArray())
+                {
+                    strings[i] = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+                    buffer.position(buffer.position() + length);
+                }
+                else
+                {
+                    final byte[] bytes = new byte[length];
+                    buffer.get(bytes);
+                    strings[i] = new String(bytes, StandardCharsets.UTF_8);
+                }
+            }
+
+            final MultiFormatElementSpecification specification = MultiFormatElementSpecification.create(readChain(buffer, strings), formats);
+            return (flags & OPTIMISED) != 0 ? specification.optimised() : specification;
+        }
+        catch (final BufferUnderflowException | IndexOutOfBoundsException e)
+        {
+            throw new IllegalArgumentException("Truncated or corrupt specification encoding", e);
+        }
+    }
+
+    private static void collectStrings(final Operation chain, final Map<String, Integer> strings)
+    {
+        for (final Operation operation : chain.toArray())
+        {
+            addString(operation.argument, strings);
+            addString(operation.secondArgument, strings);
+            if (operation.arguments != null)
+            {
+                for (final String argument : operation.arguments)
+                {
+                    addString(argument, strings);
+                }
+            }
+            if (operation.subSpecification != null)
+            {
+                collectStrings(operation.subSpecification, strings);
+            }
+        }
+    }
+
+    private static void addString(final String string, final Map<String, Integer> strings)
+    {
+        if (string != null && !strings.containsKey(string))
+        {
+            strings.put(string, strings.size());
+        }
+    }
+
+    private static void writeChain(final ByteArrayOutputStream output, final Operation chain, final Map<String, Integer> strings)
+    {
+        final Operation[] operations = chain.toArray();
+        writeVarint(output, operations.length);
+        for (final Operation operation : operations)
+        {
+            final Integer opcode = OPCODE_BY_TYPE.get(operation.type);
+            if (opcode == null)
+            {
+                throw new IllegalStateException("No opcode for " + operation.type);
+            }
+            output.write(opcode);
+
+            final int operands = (operation.argument != null ? HAS_ARGUMENT : 0) |
+                                 (operation.secondArgument != null ? HAS_SECOND_ARGUMENT : 0) |
+                                 (operation.arguments != null ? HAS_ARGUMENTS : 0) |
+                                 (operation.position != 0 ? HAS_POSITION : 0) |
+                                 (operation.subSpecification != null ? HAS_SUB_SPECIFICATION : 0);
+            output.write(operands);
+            if (operation.argument != null)
+            {
+                writeVarint(output, strings.get(operation.argument));
+            }
+            if (operation.secondArgument != null)
+            {
+                writeVarint(output, strings.get(operation.secondArgument));
+            }
+            if (operation.arguments != null)
+            {
+                writeVarint(output, operation.arguments.length);
+                for (final String argument : operation.arguments)
+                {
+                    writeVarint(output, strings.get(argument));
+                }
+            }
+            if (operation.position != 0)
+            {
+                writeVarint(output, operation.position << 1 ^ operation.position >> 31);
+            }
+            if (operation.subSpecification != null)
+            {
+                writeChain(output, operation.subSpecification, strings);
+            }
+        }
+    }
+
+    private static Operation readChain(final ByteBuffer buffer, final String[] strings)
+    {
+        final int length = readCount(buffer);
+        if (length == 0)
+        {
+            throw new IllegalArgumentException("Empty operation chain");
+        }
+
+        Operation chain = null;
+        for (int i = 0; i < length; i++)
+        {
+            final int opcode = buffer.get() & 0xFF;
+            if (opcode >= OPCODES.length)
+            {
+                throw new IllegalArgumentException("Unknown opcode " + opcode);
+            }
+            final OperationType type = OPCODES[opcode];
+            final int operands = buffer.get() & 0xFF;
+
+            final String argument = (operands & HAS_ARGUMENT) != 0 ? strings[readVarint(buffer)] : null;
+            final String secondArgument = (operands & HAS_SECOND_ARGUMENT) != 0 ? strings[readVarint(buffer)] : null;
+            String[] arguments = null;
+            if ((operands & HAS_ARGUMENTS) != 0)
+            {
+                arguments = new String[readCount(buffer)];
+                for (int j = 0; j < arguments.length; j++)
+                {
+                    arguments[j] = strings[readVarint(buffer)];
+                }
+            }
+            final int zigzag = (operands & HAS_POSITION) != 0 ? readVarint(buffer) : 0;
+            final int position = (zigzag >>> 1) ^ -(zigzag & 1);
+            final Operation subSpecification = (operands & HAS_SUB_SPECIFICATION) != 0 ? readChain(buffer, strings) : null;
+
+            if (chain == null)
+            {
+                chain = Operation.start(type, argument);
+            }
+            else if (subSpecification != null)
+            {
+                chain = chain.then(type, subSpecification);
+            }
+            else if (arguments != null)
+            {
+                chain = chain.then(type, arguments);
+            }
+            else if ((operands & HAS_POSITION) != 0)
+            {
+                chain = chain.then(type, position);
+            }
+            else
+            {
+                chain = chain.then(type, argument, secondArgument);
+            }
+        }
+        return chain;
+    }
+
+    private static void writeVarint(final ByteArrayOutputStream output, final int value)
+    {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0)
+        {
+            output.write((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        output.write(remaining);
+    }
+
+    private static int readVarint(final ByteBuffer buffer)
+    {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7)
+        {
+            final int b = buffer.get() & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private static int readCount(final ByteBuffer buffer)
+    {
+        final int count = readVarint(buffer);
+        if (count < 0 || count > buffer.remaining() + 1)
+        {
+            throw new IllegalArgumentException("Invalid length " + count);
+        }
+        return count;
+    }
+}
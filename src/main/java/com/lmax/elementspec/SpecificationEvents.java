@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+/**
+ * Reports what specifications are doing as Java Flight Recorder events, when the running JVM has Flight Recorder.
+ *
+ * <p>{@code jdk.jfr} isn't part of the Java SE 8 API, so the events are compiled separately, from {@code src/jfr}, into {@code FlightRecorderEvents}. That class
+ * is only loaded once {@code jdk.jfr.Event} is known to exist, so the library still runs on JVMs without it. All the events are disabled by default. Enable them
+ * in a recording's settings, e.g. {@code com.lmax.elementspec.Render#enabled=true}, to see them.</p>
+ */
+final class SpecificationEvents
+{
+    private static final Recorder RECORDER = loadRecorder();
+
+    private SpecificationEvents()
+    {
+    }
+
+    /**
+     * Start timing the rendering of a specification.
+     *
+     * @return a handle to pass to {@link #endRender(Object, ElementSpecification, int, int)}, or null if the event isn't being recorded.
+     */
+    static Object beginRender()
+    {
+        return RECORDER != null ? RECORDER.beginRender() : null;
+    }
+
+    /**
+     * @param handle the handle returned by {@link #beginRender()}.
+     * @param rendered the specification in the format chosen to render it.
+     * @param formats the formats that could have rendered it.
+     * @param depth the number of operations in the specification.
+     */
+    static void endRender(final Object handle, final ElementSpecification rendered, final int formats, final int depth)
+    {
+        if (handle != null)
+        {
+            RECORDER.endRender(handle, rendered, formats, depth);
+        }
+    }
+
+    /**
+     * @param candidates the formats that were compared.
+     * @param chosen the cheapest of {@code candidates}.
+     * @param cost the cost of {@code chosen}.
+     * @param depth the number of operations in the specification.
+     */
+    static void formatSelected(final int candidates, final LocatorFormat chosen, final double cost, final int depth)
+    {
+        if (RECORDER != null)
+        {
+            RECORDER.formatSelected(candidates, chosen, cost, depth);
+        }
+    }
+
+    /**
+     * @param operation the operation that couldn't be represented in every format.
+     * @param before the formats able to represent the specification before {@code operation}.
+     * @param after the formats able to represent it after {@code operation}, which is zero if it's now invalid.
+     */
+    static void formatsDropped(final Operation operation, final int before, final int after)
+    {
+        if (RECORDER != null)
+        {
+            RECORDER.formatsDropped(operation, before, after);
+        }
+    }
+
+    /**
+     * @param formats a bitmask of formats.
+     * @return the names of the formats, e.g. {@code CSS,XPATH}.
+     */
+    static String describe(final int formats)
+    {
+        final StringBuilder names = new StringBuilder();
+        for (int remaining = formats; remaining != 0; remaining &= remaining - 1)
+        {
+            if (names.length() > 0)
+            {
+                names.append(',');
+            }
+            names.append(LocatorFormat.preferred(remaining).name());
+        }
+        return names.toString();
+    }
+
+    private static Recorder loadRecorder()
+    {
+        try
+        {
+            final ClassLoader classLoader = SpecificationEvents.class.getClassLoader();
+            Class.forName("jdk.jfr.Event", false, classLoader);
+            return Class.forName("com.lmax.elementspec.FlightRecorderEvents", true, classLoader).asSubclass(Recorder.class).newInstance();
+        }
+        catch (final ReflectiveOperationException | LinkageError e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Records the events, implemented by {@code FlightRecorderEvents} when it was compiled and Flight Recorder is available.
+     */
+    interface Recorder
+    {
+        Object beginRender();
+
+        void endRender(Object handle, ElementSpecification rendered, int formats, int depth);
+
+        void formatSelected(int candidates, LocatorFormat chosen, double cost, int depth);
+
+        void formatsDropped(Operation operation, int before, int after);
+    }
+}
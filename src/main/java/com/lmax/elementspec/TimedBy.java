@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebElement;
+
+import java.util.List;
+
+/**
+ * Wraps a WebDriver locator to time each lookup it makes and report it to a {@link LookupListener}. Described the same as the locator it wraps, but only equal to
+ * another timed locator wrapping an equal one, as the selenium locators only equal locators of their own class.
+ */
+final class TimedBy extends By
+{
+    private final String locator;
+    private final By delegate;
+    private final LookupListener listener;
+
+    private TimedBy(final String locator, final By delegate, final LookupListener listener)
+    {
+        this.locator = locator;
+        this.delegate = delegate;
+        this.listener = listener;
+    }
+
+    /**
+     * @param specification the specification {@code by} was rendered from.
+     * @param by the locator to time.
+     * @return {@code by}, timed if a {@link LookupListener} is registered.
+     */
+    static By timed(final ElementSpecification specification, final By by)
+    {
+        final LookupListener listener = LookupListenerRegistry.listener;
+        return listener == null ? by : new TimedBy(specification.asSeleniumLocator(), by, listener);
+    }
+
+    /**
+     * @param format the format {@code selector} is written in.
+     * @param selector the selector {@code by} was created from.
+     * @param by the locator to time.
+     * @return {@code by}, timed under the same selenium 1 style locator as the equivalent specification if a {@link LookupListener} is registered.
+     */
+    static By timed(final LocatorFormat format, final String selector, final By by)
+    {
+        final LookupListener listener = LookupListenerRegistry.listener;
+        return listener == null ? by : new TimedBy(format == LocatorFormat.CSS ? "css=" + selector : selector, by, listener);
+    }
+
+    @Override
+    public List<WebElement> findElements(final SearchContext context)
+    {
+        final long start = System.nanoTime();
+        final List<WebElement> found;
+        try
+        {
+            found = delegate.findElements(context);
+        }
+        catch (final RuntimeException e)
+        {
+            listener.onLookup(locator, System.nanoTime() - start, 0, e);
+            throw e;
+        }
+        listener.onLookup(locator, System.nanoTime() - start, found.size(), null);
+        return found;
+    }
+
+    @Override
+    public WebElement findElement(final SearchContext context)
+    {
+        final long start = System.nanoTime();
+        final WebElement found;
+        try
+        {
+            found = delegate.findElement(context);
+        }
+        catch (final RuntimeException e)
+        {
+            listener.onLookup(locator, System.nanoTime() - start, 0, e);
+            throw e;
+        }
+        listener.onLookup(locator, System.nanoTime() - start, 1, null);
+        return found;
+    }
+
+    @Override
+    public boolean equals(final Object o)
+    {
+        return o instanceof TimedBy && delegate.equals(((TimedBy)o).delegate);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return delegate.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return delegate.toString();
+    }
+}
@@ -18,45 +18,56 @@ package com.lmax.elementspec;
 
 import org.openqa.selenium.By;
 
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
 import static com.lmax.elementspec.InvalidElementSpecification.INVALID;
 
 final class XPathElementSpecification implements ElementSpecification
 {
-    private final String xpath;
+    // Each specification only holds the section it appended and shares everything before it with the specification it was refined from.
+    private final XPathElementSpecification previous;
+    private final String section;
+    private final Section sectionType;
+    private final boolean optimised;
+    private final int sectionCount;
+
+    // Rendered lazily using the racy single-check idiom. All are immutable so at worst they are computed more than once.
+    private String xpath;
+    private String seleniumLocator;
+    private By webDriverLocator;
 
-    private XPathElementSpecification(final String xpathSoFar)
+    private XPathElementSpecification(final XPathElementSpecification previous, final String section, final Section sectionType, final boolean optimised)
     {
-        xpath = xpathSoFar;
+        this.previous = previous;
+        this.section = section;
+        this.sectionType = sectionType;
+        this.optimised = optimised;
+        this.sectionCount = previous == null ? 1 : previous.sectionCount + 1;
     }
 
     static XPathElementSpecification fromOldStyleSeleniumXPathLocator(final String oldStyleSeleniumXPathLocator)
     {
-        return new XPathElementSpecification(oldStyleSeleniumXPathLocator);
+        return new XPathElementSpecification(null, oldStyleSeleniumXPathLocator, Section.STEP, false);
     }
 
     public static XPathElementSpecification anElementOfType(final String tagName)
     {
-        return new XPathElementSpecification("//" + tagName);
+        return new XPathElementSpecification(null, section(OperationType.AN_ELEMENT_OF_TYPE, tagName, null), Section.STEP, false);
     }
 
     public static XPathElementSpecification anElement()
     {
-        return new XPathElementSpecification("//*");
+        return new XPathElementSpecification(null, section(OperationType.AN_ELEMENT, null, null), Section.STEP, false);
     }
 
     @Override
     public ElementSpecification withId(final String id)
     {
-        return appendCondition("@id='%s'", id);
+        return appendCondition(Section.ID_CONDITION, OperationType.WITH_ID, id, null);
     }
 
     @Override
     public ElementSpecification thatContainsA(final String tagName)
     {
-        return appendAncestorSelector(tagName);
+        return appendStep(OperationType.THAT_CONTAINS_A, tagName);
     }
 
     @Override
@@ -64,7 +75,8 @@ final class XPathElementSpecification implements ElementSpecification
     {
         if (builder instanceof XPathElementSpecification && builder.isValid())
         {
-            return append(((XPathElementSpecification)builder).getCurrentXPath());
+            // Always use the unoptimised form as a leading id() step only makes sense at the start of an expression.
+            return append(((XPathElementSpecification)builder).render(false), Section.STEP);
         }
         return INVALID;
     }
@@ -72,101 +84,91 @@ final class XPathElementSpecification implements ElementSpecification
     @Override
     public ElementSpecification thatContainsAnyElement()
     {
-        return appendAncestorSelector("*");
+        return appendStep(OperationType.THAT_CONTAINS_ANY_ELEMENT, null);
     }
 
     @Override
     public ElementSpecification withAttribute(final String attributeName)
     {
-        return appendCondition("@" + attributeName);
+        return appendCondition(Section.ATTRIBUTE_CONDITION, OperationType.WITH_ATTRIBUTE, attributeName, null);
     }
 
     @Override
     public ElementSpecification withoutAttribute(final String attributeName)
     {
-        return appendCondition("not(@" + attributeName + ")");
+        return appendCondition(Section.ATTRIBUTE_CONDITION, OperationType.WITHOUT_ATTRIBUTE, attributeName, null);
     }
 
     @Override
     public ElementSpecification thatContainsAChildOfType(final String tagName)
     {
-        return append("/" + tagName);
+        return appendStep(OperationType.THAT_CONTAINS_A_CHILD_OF_TYPE, tagName);
     }
 
     @Override
     public ElementSpecification withClass(final String classname)
     {
-        return appendCondition(hasClassCondition(classname));
+        return appendCondition(Section.CLASS_CONDITION, OperationType.WITH_CLASS, classname, null);
     }
 
     @Override
     public ElementSpecification withAnyOfTheseClasses(final String... classnames)
     {
-        return appendCondition(Stream.of(classnames)
-                                       .map(this::hasClassCondition)
-                                       .collect(Collectors.joining(" or ")));
+        return append(appendCondition(new StringBuilder(), OperationType.WITH_ANY_OF_THESE_CLASSES, null, null, classnames, 0).toString(), Section.ANY_CLASS_CONDITION);
     }
 
     @Override
     public ElementSpecification withoutClass(final String classname)
     {
-        return appendCondition("not(" + hasClassCondition(classname) + ")");
+        return appendCondition(Section.CLASS_CONDITION, OperationType.WITHOUT_CLASS, classname, null);
     }
 
     @Override
     public ElementSpecification inPosition(final int position)
     {
-        return appendCondition(Integer.toString(position));
+        return append(Integer.toString(position), Section.POSITION);
     }
 
     @Override
     public ElementSpecification inPositionOfType(int position)
     {
-        return appendCondition(Integer.toString(position));
+        return append(Integer.toString(position), Section.POSITION);
     }
 
     @Override
     public ElementSpecification withText(final String text)
     {
-        if (text.isEmpty())
-        {
-            return withNoChildren();
-        }
-        else
-        {
-            return appendCondition("text() = '" + text + "'");
-        }
+        return appendCondition(Section.CONTENT_CONDITION, OperationType.WITH_TEXT, text, null);
     }
 
     @Override
     public ElementSpecification withTextContaining(final String text)
     {
-        return appendCondition("text()[contains(.,'" + text + "')]");
+        return appendCondition(Section.CONTENT_CONDITION, OperationType.WITH_TEXT_CONTAINING, text, null);
     }
 
     @Override
     public ElementSpecification withAttributeContaining(final String attributeName, final String expectedSubstring)
     {
-        return appendCondition("contains(@" + attributeName + ", '" + expectedSubstring + "')");
+        return appendCondition(Section.CONTAINS_CONDITION, OperationType.WITH_ATTRIBUTE_CONTAINING, attributeName, expectedSubstring);
     }
 
     @Override
     public ElementSpecification withAttributeValue(final String attributeName, final String value)
     {
-        return appendCondition("@" + attributeName + "='%s'", value);
+        return appendCondition(Section.VALUE_CONDITION, OperationType.WITH_ATTRIBUTE_VALUE, attributeName, value);
     }
 
     @Override
     public ElementSpecification withNumericalContent()
     {
-        // Because if it's not a number number(.) will be NaN and that isn't equal to anything. If it is a number then the plain . will be cast to a number and the comparison succeeds.
-        return appendCondition("number(.)=.");
+        return appendCondition(Section.CONTENT_CONDITION, OperationType.WITH_NUMERICAL_CONTENT, null, null);
     }
 
     @Override
     public ElementSpecification withNoChildren()
     {
-        return appendCondition("not(node())");
+        return appendCondition(Section.CONTENT_CONDITION, OperationType.WITH_NO_CHILDREN, null, null);
     }
 
     @Override
@@ -175,21 +177,50 @@ final class XPathElementSpecification implements ElementSpecification
         return INVALID;
     }
 
+    @Override
+    public ElementSpecification optimised()
+    {
+        return optimised ? this : new XPathElementSpecification(previous, section, sectionType, true);
+    }
+
     public String getCurrentXPath()
     {
-        return xpath;
+        String currentXPath = xpath;
+        if (currentXPath == null)
+        {
+            currentXPath = render(optimised);
+            xpath = currentXPath;
+        }
+        return currentXPath;
     }
 
+    /**
+     * @return the XPath, prefixed with {@code xpath=} unless it starts with {@code //} or {@code (//}, which is all selenium 1 reads as XPath without a prefix. An
+     * optimised expression starting {@code id('x')} would otherwise be read back as an ID.
+     */
     @Override
     public String asSeleniumLocator()
     {
-        return getCurrentXPath();
+        String locator = seleniumLocator;
+        if (locator == null)
+        {
+            final String currentXPath = getCurrentXPath();
+            locator = currentXPath.startsWith("//") || currentXPath.startsWith("(//") ? currentXPath : "xpath=" + currentXPath;
+            seleniumLocator = locator;
+        }
+        return locator;
     }
 
     @Override
     public By asWebDriverLocator()
     {
-        return By.xpath(getCurrentXPath());
+        By locator = webDriverLocator;
+        if (locator == null)
+        {
+            locator = By.xpath(getCurrentXPath());
+            webDriverLocator = locator;
+        }
+        return locator;
     }
 
     @Override
@@ -198,36 +229,289 @@ final class XPathElementSpecification implements ElementSpecification
         return true;
     }
 
+    @Override
+    public boolean equals(final Object o)
+    {
+        return this == o || o instanceof XPathElementSpecification && getCurrentXPath().equals(((XPathElementSpecification)o).getCurrentXPath());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return getCurrentXPath().hashCode();
+    }
+
     @Override
     public String toString()
     {
         return asSeleniumLocator();
     }
 
-    private String hasClassCondition(final String classname)
+    private String render(final boolean optimise)
     {
-        return "contains(concat(' ', @class, ' '), ' " + classname + " ')";
+        final XPathElementSpecification[] sections = new XPathElementSpecification[sectionCount];
+        int length = 0;
+        for (XPathElementSpecification spec = this; spec != null; spec = spec.previous)
+        {
+            sections[spec.sectionCount - 1] = spec;
+            length += spec.section.length() + 2;
+        }
+
+        final StringBuilder rendered = new StringBuilder(length);
+        if (optimise)
+        {
+            XPathOptimiser.render(sections, rendered);
+        }
+        else
+        {
+            for (final XPathElementSpecification part : sections)
+            {
+                part.appendTo(rendered);
+            }
+        }
+        return rendered.toString();
     }
 
-    private ElementSpecification appendCondition(final String condition, final Object... args)
+    private void appendTo(final StringBuilder rendered)
     {
-        if (args.length == 0)
+        if (sectionType == Section.STEP)
         {
-            return append("[" + condition + "]");
+            rendered.append(section);
         }
         else
         {
-            return append("[" + String.format(condition, args) + "]");
+            rendered.append('[').append(section).append(']');
         }
     }
 
-    private ElementSpecification appendAncestorSelector(final String tagName)
+    /**
+     * Append the section an operation adds when rendered without optimisation: a step, or a predicate holding the operation's condition. Shared with
+     * {@link ElementSpecificationBuilder} so both render the same expression.
+     *
+     * @param position the position, for {@link OperationType#IN_POSITION} and {@link OperationType#IN_POSITION_OF_TYPE}.
+     * @return {@code xpath}.
+     * @throws IllegalStateException if {@code type} isn't rendered from its arguments alone, e.g. a sub specification.
+     */
+    static StringBuilder appendSection(final StringBuilder xpath, final OperationType type, final String argument, final String secondArgument,
+                                       final String[] arguments, final int position)
     {
-        return append("//" + tagName);
+        switch (type)
+        {
+            case AN_ELEMENT:
+            case THAT_CONTAINS_ANY_ELEMENT:
+                return xpath.append("//*");
+            case AN_ELEMENT_OF_TYPE:
+            case THAT_CONTAINS_A:
+                return xpath.append("//").append(argument);
+            case THAT_CONTAINS_A_CHILD_OF_TYPE:
+                return xpath.append('/').append(argument);
+            case AN_ELEMENT_WITH_ID:
+                return appendCondition(xpath.append("//*["), OperationType.WITH_ID, argument, null, null, 0).append(']');
+            default:
+                return appendCondition(xpath.append('['), type, argument, secondArgument, arguments, position).append(']');
+        }
     }
 
-    private ElementSpecification append(final String section)
+    /**
+     * Append the condition a refinement tests, without the brackets of its predicate.
+     *
+     * @return {@code xpath}.
+     * @throws IllegalStateException if {@code type} isn't a refinement.
+     */
+    private static StringBuilder appendCondition(final StringBuilder xpath, final OperationType type, final String argument, final String secondArgument,
+                                                 final String[] arguments, final int position)
     {
-        return new XPathElementSpecification(xpath + section);
+        switch (type)
+        {
+            case WITH_ID:
+                return xpath.append("@id='").append(argument).append('\'');
+            case WITH_CLASS:
+                return appendHasClass(xpath, argument);
+            case WITH_ANY_OF_THESE_CLASSES:
+                for (int i = 0; i < arguments.length; i++)
+                {
+                    appendHasClass(i == 0 ? xpath : xpath.append(" or "), arguments[i]);
+                }
+                return xpath;
+            case WITHOUT_CLASS:
+                return appendHasClass(xpath.append("not("), argument).append(')');
+            case WITH_ATTRIBUTE:
+                return xpath.append('@').append(argument);
+            case WITHOUT_ATTRIBUTE:
+                return xpath.append("not(@").append(argument).append(')');
+            case WITH_ATTRIBUTE_CONTAINING:
+                return xpath.append("contains(@").append(argument).append(", '").append(secondArgument).append("')");
+            case WITH_ATTRIBUTE_VALUE:
+                return xpath.append('@').append(argument).append("='").append(secondArgument).append('\'');
+            case IN_POSITION:
+            case IN_POSITION_OF_TYPE:
+                return xpath.append(position);
+            case WITH_TEXT:
+                return argument.isEmpty() ? xpath.append("not(node())") : xpath.append("text() = '").append(argument).append('\'');
+            case WITH_TEXT_CONTAINING:
+                return xpath.append("text()[contains(.,'").append(argument).append("')]");
+            case WITH_NUMERICAL_CONTENT:
+                // Because if it's not a number number(.) will be NaN and that isn't equal to anything. If it is a number then the plain . will be cast to a number and the comparison succeeds.
+                return xpath.append("number(.)=.");
+            case WITH_NO_CHILDREN:
+                return xpath.append("not(node())");
+            default:
+                throw new IllegalStateException("Unable to render " + type + " as XPath");
+        }
+    }
+
+    private static StringBuilder appendHasClass(final StringBuilder xpath, final String classname)
+    {
+        return xpath.append("contains(concat(' ', @class, ' '), ' ").append(classname).append(" ')");
+    }
+
+    private static String section(final OperationType type, final String argument, final String secondArgument)
+    {
+        return appendSection(new StringBuilder(), type, argument, secondArgument, null, 0).toString();
+    }
+
+    private ElementSpecification appendStep(final OperationType type, final String tagName)
+    {
+        return append(section(type, tagName, null), Section.STEP);
+    }
+
+    private ElementSpecification appendCondition(final Section sectionType, final OperationType type, final String argument, final String secondArgument)
+    {
+        return append(appendCondition(new StringBuilder(), type, argument, secondArgument, null, 0).toString(), sectionType);
+    }
+
+    private ElementSpecification append(final String newSection, final Section type)
+    {
+        return new XPathElementSpecification(this, newSection, type, optimised);
+    }
+
+    /**
+     * The kinds of section in an XPath expression. Conditions are listed from most to least selective, which is the order they are tested in once optimised.
+     */
+    private enum Section
+    {
+        STEP,
+        POSITION,
+        ID_CONDITION,
+        VALUE_CONDITION,
+        ATTRIBUTE_CONDITION,
+        CLASS_CONDITION,
+        ANY_CLASS_CONDITION,
+        CONTAINS_CONDITION,
+        CONTENT_CONDITION
+    }
+
+    /**
+     * Renders an equivalent but cheaper expression by rewriting the predicates of each step:
+     * <ul>
+     * <li>Consecutive predicates are merged into a single {@code [a and b]} predicate, ordered so the most selective conditions are tested first.</li>
+     * <li>A leading {@code //*[@id='x']} is replaced by {@code id('x')}, which browsers resolve through their id lookup.</li>
+     * </ul>
+     * Positional predicates depend on the predicates before them so conditions are never moved or merged across them, and a step with a positional predicate is never
+     * replaced by {@code id()}.
+     */
+    private static final class XPathOptimiser
+    {
+        private static void render(final XPathElementSpecification[] sections, final StringBuilder rendered)
+        {
+            int index = 0;
+            while (index < sections.length)
+            {
+                XPathElementSpecification idCondition = null;
+                if (sections[index].sectionType == Section.STEP)
+                {
+                    idCondition = index == 0 && "//*".equals(sections[index].section) ? findIdConditionToCollapse(sections, 1) : null;
+                    if (idCondition != null)
+                    {
+                        rendered.append("id(").append(idCondition.section, "@id=".length(), idCondition.section.length()).append(')');
+                    }
+                    else
+                    {
+                        rendered.append(sections[index].section);
+                    }
+                    index++;
+                }
+
+                while (index < sections.length && sections[index].sectionType != Section.STEP)
+                {
+                    if (sections[index].sectionType == Section.POSITION)
+                    {
+                        sections[index].appendTo(rendered);
+                        index++;
+                    }
+                    else
+                    {
+                        index = appendMergedConditions(sections, index, idCondition, rendered);
+                    }
+                }
+            }
+        }
+
+        private static XPathElementSpecification findIdConditionToCollapse(final XPathElementSpecification[] sections, final int start)
+        {
+            XPathElementSpecification idCondition = null;
+            for (int index = start; index < sections.length && sections[index].sectionType != Section.STEP; index++)
+            {
+                if (sections[index].sectionType == Section.POSITION)
+                {
+                    return null;
+                }
+                // id() treats its argument as a whitespace separated list of ids so only plain ids can be collapsed.
+                if (idCondition == null && sections[index].sectionType == Section.ID_CONDITION && !containsWhitespace(sections[index].section))
+                {
+                    idCondition = sections[index];
+                }
+            }
+            return idCondition;
+        }
+
+        private static boolean containsWhitespace(final String condition)
+        {
+            for (int index = 0; index < condition.length(); index++)
+            {
+                if (Character.isWhitespace(condition.charAt(index)))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static int appendMergedConditions(final XPathElementSpecification[] sections, final int start, final XPathElementSpecification skip, final StringBuilder rendered)
+        {
+            int end = start;
+            while (end < sections.length && sections[end].sectionType != Section.STEP && sections[end].sectionType != Section.POSITION)
+            {
+                end++;
+            }
+
+            boolean first = true;
+            for (final Section type : Section.values())
+            {
+                for (int index = start; index < end; index++)
+                {
+                    final XPathElementSpecification condition = sections[index];
+                    if (condition.sectionType != type || condition == skip)
+                    {
+                        continue;
+                    }
+                    rendered.append(first ? "[" : " and ");
+                    first = false;
+                    if (type == Section.ANY_CLASS_CONDITION && end - start > 1)
+                    {
+                        rendered.append('(').append(condition.section).append(')');
+                    }
+                    else
+                    {
+                        rendered.append(condition.section);
+                    }
+                }
+            }
+            if (!first)
+            {
+                rendered.append(']');
+            }
+            return end;
+        }
     }
 }
@@ -0,0 +1,553 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses XPath locators back into {@link ElementSpecification} steps when they use only the patterns {@code XPathElementSpecification} generates, so that they can be
+ * rendered as CSS wherever that is exactly equivalent.
+ *
+ * <p>The recognised subset is a leading {@code //} step or {@code id('x')} followed by {@code //} and {@code /} steps with predicates made of {@code @id='x'},
+ * {@code @attr}, {@code @attr='value'}, {@code not(@attr)}, {@code contains(@attr, 'value')}, the {@code contains(concat(' ', @class, ' '), ' name ')} class test, its
+ * negation and alternatives joined by {@code or}, the text conditions and positional predicates, either separately or merged with {@code and}. Names are restricted
+ * to lower case so they match the same elements in CSS.</p>
+ *
+ * <p>A positional predicate only has a CSS equivalent when it's the first predicate on its step: {@code //td[2]} is {@code td:nth-of-type(2)} and {@code //*[2]} is
+ * {@code *:nth-child(2)}, but {@code //td[@title][2]} counts only the cells with a title and is reported as unsupported.</p>
+ */
+final class XPathLocatorParser
+{
+    // Thrown to abandon parsing. It's shared and has no stack trace as unsupported locators are expected and only ever reported as a null result.
+    private static final UnsupportedLocatorException UNSUPPORTED = new UnsupportedLocatorException();
+
+    private final String xpath;
+    private int position;
+
+    private XPathLocatorParser(final String xpath)
+    {
+        this.xpath = xpath;
+    }
+
+    /**
+     * @param xpath an XPath locator.
+     * @return the equivalent specification, or {@code null} if the locator uses anything outside the supported subset.
+     */
+    static ElementSpecification parse(final String xpath)
+    {
+        try
+        {
+            return new XPathLocatorParser(xpath).parsePath();
+        }
+        catch (final UnsupportedLocatorException e)
+        {
+            return null;
+        }
+    }
+
+    private ElementSpecification parsePath()
+    {
+        ElementSpecification spec;
+        if (function("id"))
+        {
+            final String id = literal();
+            skipWhitespace();
+            expect(')');
+            // id() treats its argument as a whitespace separated list of ids.
+            if (id.isEmpty() || containsWhitespace(id))
+            {
+                throw UNSUPPORTED;
+            }
+            spec = parsePredicates(ElementSpecification.anElementWithId(id), null);
+        }
+        else
+        {
+            expect('/');
+            expect('/');
+            final String tagName = nameTest();
+            spec = parsePredicates("*".equals(tagName) ? ElementSpecification.anElement() : ElementSpecification.anElementOfType(tagName), tagName);
+        }
+
+        while (!atEnd())
+        {
+            expect('/');
+            final boolean descendant = consume('/');
+            final String tagName = nameTest();
+            if (!descendant)
+            {
+                spec = spec.thatContainsAChildOfType(tagName);
+            }
+            else
+            {
+                spec = "*".equals(tagName) ? spec.thatContainsAnyElement() : spec.thatContainsA(tagName);
+            }
+            spec = parsePredicates(spec, tagName);
+        }
+        return spec;
+    }
+
+    /**
+     * @param tagName the name test of the step the predicates belong to, or {@code null} if positions can't be translated for it.
+     */
+    private ElementSpecification parsePredicates(final ElementSpecification start, final String tagName)
+    {
+        ElementSpecification spec = start;
+        boolean filtered = false;
+        while (consume('['))
+        {
+            skipWhitespace();
+            if (isDigit(peek()))
+            {
+                // Positions count whatever the earlier predicates on the step left, which CSS can't express.
+                if (filtered || tagName == null)
+                {
+                    throw UNSUPPORTED;
+                }
+                final int index = integer();
+                spec = "*".equals(tagName) ? spec.inPosition(index) : spec.inPositionOfType(index);
+            }
+            else
+            {
+                spec = parseExpression(spec);
+            }
+            skipWhitespace();
+            expect(']');
+            filtered = true;
+        }
+        return spec;
+    }
+
+    /**
+     * Parse either alternative classes joined by {@code or} or conditions joined by {@code and}. Anything mixing the two must be parenthesised the way the XPath format
+     * renders it.
+     */
+    private ElementSpecification parseExpression(final ElementSpecification start)
+    {
+        final String[] classnames = classAlternatives();
+        if (classnames != null)
+        {
+            return start.withAnyOfTheseClasses(classnames);
+        }
+
+        ElementSpecification spec = parseTerm(start);
+        while (keyword("and"))
+        {
+            spec = parseTerm(spec);
+        }
+        return spec;
+    }
+
+    private ElementSpecification parseTerm(final ElementSpecification spec)
+    {
+        skipWhitespace();
+        if (consume('('))
+        {
+            final ElementSpecification result = parseExpression(spec);
+            skipWhitespace();
+            expect(')');
+            return result;
+        }
+        return parseCondition(spec);
+    }
+
+    private ElementSpecification parseCondition(final ElementSpecification spec)
+    {
+        if (consume('@'))
+        {
+            final String name = attributeName();
+            skipWhitespace();
+            if (!consume('='))
+            {
+                return spec.withAttribute(name);
+            }
+            final String value = literal();
+            if ("id".equals(name))
+            {
+                if (value.isEmpty())
+                {
+                    throw UNSUPPORTED;
+                }
+                return spec.withId(value);
+            }
+            return spec.withAttributeValue(name, value);
+        }
+        if (function("not"))
+        {
+            final ElementSpecification result;
+            skipWhitespace();
+            if (consume('@'))
+            {
+                result = spec.withoutAttribute(attributeName());
+            }
+            else if (function("node"))
+            {
+                skipWhitespace();
+                expect(')');
+                // The XPath format renders withText("") the same way, and unlike withNoChildren it never becomes :empty, which ignores comments.
+                result = spec.withText("");
+            }
+            else
+            {
+                expectFunction("contains");
+                result = spec.withoutClass(classTest());
+            }
+            skipWhitespace();
+            expect(')');
+            return result;
+        }
+        if (function("contains"))
+        {
+            if (lookingAtFunction("concat"))
+            {
+                return spec.withClass(classTest());
+            }
+            skipWhitespace();
+            expect('@');
+            final String name = attributeName();
+            skipWhitespace();
+            expect(',');
+            final String value = literal();
+            skipWhitespace();
+            expect(')');
+            // contains(@attr, '') matches every element with the attribute but [attr*=''] never matches.
+            if (value.isEmpty())
+            {
+                throw UNSUPPORTED;
+            }
+            return spec.withAttributeContaining(name, value);
+        }
+        if (function("text"))
+        {
+            skipWhitespace();
+            expect(')');
+            skipWhitespace();
+            if (consume('='))
+            {
+                final String text = literal();
+                if (text.isEmpty())
+                {
+                    throw UNSUPPORTED;
+                }
+                return spec.withText(text);
+            }
+            expect('[');
+            expectFunction("contains");
+            skipWhitespace();
+            expect('.');
+            skipWhitespace();
+            expect(',');
+            final String text = literal();
+            skipWhitespace();
+            expect(')');
+            skipWhitespace();
+            expect(']');
+            return spec.withTextContaining(text);
+        }
+        if (function("number"))
+        {
+            skipWhitespace();
+            expect('.');
+            skipWhitespace();
+            expect(')');
+            skipWhitespace();
+            expect('=');
+            skipWhitespace();
+            expect('.');
+            return spec.withNumericalContent();
+        }
+        throw UNSUPPORTED;
+    }
+
+    /**
+     * @return the classes tested by two or more class tests joined by {@code or}, or {@code null} without consuming anything if that's not what follows.
+     */
+    private String[] classAlternatives()
+    {
+        final int start = position;
+        try
+        {
+            final List<String> classnames = new ArrayList<>();
+            do
+            {
+                skipWhitespace();
+                expectFunction("contains");
+                classnames.add(classTest());
+            }
+            while (keyword("or"));
+
+            if (classnames.size() > 1)
+            {
+                return classnames.toArray(new String[classnames.size()]);
+            }
+        }
+        catch (final UnsupportedLocatorException e)
+        {
+            // Not alternatives, so parse it as conditions instead.
+        }
+        position = start;
+        return null;
+    }
+
+    /**
+     * Parse the rest of {@code contains(concat(' ', @class, ' '), ' name ')} following {@code contains(}.
+     */
+    private String classTest()
+    {
+        expectFunction("concat");
+        expectLiteral(" ");
+        skipWhitespace();
+        expect(',');
+        skipWhitespace();
+        expect('@');
+        if (!"class".equals(attributeName()))
+        {
+            throw UNSUPPORTED;
+        }
+        skipWhitespace();
+        expect(',');
+        expectLiteral(" ");
+        skipWhitespace();
+        expect(')');
+        skipWhitespace();
+        expect(',');
+        final String padded = literal();
+        skipWhitespace();
+        expect(')');
+
+        if (padded.length() < 3 || padded.charAt(0) != ' ' || padded.charAt(padded.length() - 1) != ' ')
+        {
+            throw UNSUPPORTED;
+        }
+        final String classname = padded.substring(1, padded.length() - 1);
+        if (containsWhitespace(classname))
+        {
+            throw UNSUPPORTED;
+        }
+        return classname;
+    }
+
+    private String nameTest()
+    {
+        if (consume('*'))
+        {
+            return "*";
+        }
+        final int start = position;
+        if (atEnd() || !(peek() >= 'a' && peek() <= 'z' || peek() == '_'))
+        {
+            throw UNSUPPORTED;
+        }
+        while (!atEnd() && (peek() >= 'a' && peek() <= 'z' || isDigit(peek()) || peek() == '_' || peek() == '-'))
+        {
+            position++;
+        }
+        return xpath.substring(start, position);
+    }
+
+    private String attributeName()
+    {
+        final int start = position;
+        if (atEnd() || !(peek() >= 'a' && peek() <= 'z' || peek() == '_'))
+        {
+            throw UNSUPPORTED;
+        }
+        while (!atEnd() && (peek() >= 'a' && peek() <= 'z' || isDigit(peek()) || peek() == '_' || peek() == '-' || peek() == '.'))
+        {
+            position++;
+        }
+        return xpath.substring(start, position);
+    }
+
+    /**
+     * Parse a string literal, which XPath 1.0 can't escape. Literals containing an apostrophe are unsupported as the XPath format would quote them incorrectly.
+     */
+    private String literal()
+    {
+        skipWhitespace();
+        final char quote = next();
+        if (quote != '\'' && quote != '"')
+        {
+            throw UNSUPPORTED;
+        }
+        final int end = xpath.indexOf(quote, position);
+        if (end < 0)
+        {
+            throw UNSUPPORTED;
+        }
+        final String value = xpath.substring(position, end);
+        if (value.indexOf('\'') >= 0)
+        {
+            throw UNSUPPORTED;
+        }
+        position = end + 1;
+        return value;
+    }
+
+    private void expectLiteral(final String expected)
+    {
+        if (!expected.equals(literal()))
+        {
+            throw UNSUPPORTED;
+        }
+    }
+
+    private int integer()
+    {
+        final int start = position;
+        while (!atEnd() && isDigit(peek()) && position - start < 9)
+        {
+            position++;
+        }
+        final int value = Integer.parseInt(xpath.substring(start, position));
+        if (value == 0)
+        {
+            throw UNSUPPORTED;
+        }
+        return value;
+    }
+
+    /**
+     * Consume {@code name(} if it's next, allowing whitespace before the parenthesis.
+     */
+    private boolean function(final String name)
+    {
+        skipWhitespace();
+        if (!lookingAtFunction(name))
+        {
+            return false;
+        }
+        position += name.length();
+        skipWhitespace();
+        position++;
+        return true;
+    }
+
+    private void expectFunction(final String name)
+    {
+        if (!function(name))
+        {
+            throw UNSUPPORTED;
+        }
+    }
+
+    private boolean lookingAtFunction(final String name)
+    {
+        skipWhitespace();
+        if (!xpath.startsWith(name, position))
+        {
+            return false;
+        }
+        int index = position + name.length();
+        while (index < xpath.length() && Character.isWhitespace(xpath.charAt(index)))
+        {
+            index++;
+        }
+        return index < xpath.length() && xpath.charAt(index) == '(';
+    }
+
+    /**
+     * Consume the operator {@code keyword} if it's next.
+     */
+    private boolean keyword(final String keyword)
+    {
+        final int start = position;
+        skipWhitespace();
+        final int end = position + keyword.length();
+        if (xpath.startsWith(keyword, position) && (end == xpath.length() || !Character.isLetterOrDigit(xpath.charAt(end)) && xpath.charAt(end) != '-'))
+        {
+            position = end;
+            return true;
+        }
+        position = start;
+        return false;
+    }
+
+    private void skipWhitespace()
+    {
+        while (!atEnd() && Character.isWhitespace(peek()))
+        {
+            position++;
+        }
+    }
+
+    private boolean consume(final char expected)
+    {
+        if (!atEnd() && peek() == expected)
+        {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(final char expected)
+    {
+        if (!consume(expected))
+        {
+            throw UNSUPPORTED;
+        }
+    }
+
+    private boolean atEnd()
+    {
+        return position >= xpath.length();
+    }
+
+    private char peek()
+    {
+        if (atEnd())
+        {
+            throw UNSUPPORTED;
+        }
+        return xpath.charAt(position);
+    }
+
+    private char next()
+    {
+        final char c = peek();
+        position++;
+        return c;
+    }
+
+    private static boolean isDigit(final char c)
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean containsWhitespace(final String value)
+    {
+        for (int i = 0; i < value.length(); i++)
+        {
+            if (Character.isWhitespace(value.charAt(i)))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class UnsupportedLocatorException extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        private UnsupportedLocatorException()
+        {
+            super("Unsupported XPath locator", null, false, false);
+        }
+    }
+}
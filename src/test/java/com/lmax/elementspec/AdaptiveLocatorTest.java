@@ -0,0 +1,205 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.elementspec;
+
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.InvalidSelectorException;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import static com.lmax.elementspec.ElementSpecification.anElementOfType;
+import static com.lmax.elementspec.ElementSpecification.anElementWithId;
+
+public class AdaptiveLocatorTest
+{
+    private static final WebElement CELL = StubWebDriver.element("cell");
+    private static final ElementSpecification SPEC = anElementOfType("tr").withClass("row").thatContainsAChildOfType("td");
+    private static final By CSS = By.cssSelector("tr.row > td");
+    private static final By XPATH = By.xpath("//tr[contains(concat(' ', @class, ' '), ' row ')]/td");
+
+    @Test
+    public void shouldHoldEveryRenderingCheapestFirst() throws Exception
+    {
+        assertThat(SPEC.asAdaptiveLocator().toString(), is("By.adaptive: css=tr.row > td, //tr[contains(concat(' ', @class, ' '), ' row ')]/td"));
+    }
+
+    @Test
+    public void shouldUseTheUsualLocatorWhenThereIsNothingToFallBackTo() throws Exception
+    {
+        assertThat(anElementWithId("grid").asAdaptiveLocator(), is(By.id("grid")));
+        assertThat(anElementOfType("td").withText("1.5").asAdaptiveLocator(), is(By.xpath("//td[text() = '1.5']")));
+        assertThat(anElementOfType("input").thatIsChecked().asAdaptiveLocator(), is(By.cssSelector("input:checked")));
+    }
+
+    @Test
+    public void shouldRetryWithTheNextFormatWhenTheBrowserRejectsTheSyntax() throws Exception
+    {
+        final StubWebDriver stub = new StubWebDriver().onFindElements(rejecting(CSS, new InvalidSelectorException("An invalid or illegal selector was specified")));
+        final WebDriver driver = stub.browser("firefox", "3.5");
+
+        assertThat(SPEC.asAdaptiveLocator().findElements(driver), is(Collections.singletonList(CELL)));
+        assertThat(stub.findElementsCalls, is(Arrays.asList(CSS, XPATH)));
+    }
+
+    @Test
+    public void shouldRememberWhichFormatEachBrowserAccepted() throws Exception
+    {
+        final AdaptiveLocator locator = adaptive(SPEC);
+        final StubWebDriver oldBrowser = new StubWebDriver().onFindElements(rejecting(CSS, new WebDriverException("SyntaxError: An invalid or illegal string was specified")));
+        final StubWebDriver newBrowser = new StubWebDriver().onFindElements(by -> Collections.singletonList(CELL));
+
+        locator.findElements(oldBrowser.browser("firefox", "3.6"));
+        locator.findElements(oldBrowser.browser("firefox", "3.6"));
+        locator.findElements(newBrowser.browser("firefox", "45"));
+
+        assertThat(oldBrowser.findElementsCalls, is(Arrays.asList(CSS, XPATH, XPATH)));
+        assertThat(newBrowser.findElementsCalls, is(Collections.singletonList(CSS)));
+        assertThat(locator.preferredFormat("firefox 3.6"), is(LocatorFormat.XPATH));
+        assertThat(locator.isUnsupported("firefox 3.6", LocatorFormat.CSS), is(true));
+        assertThat(locator.averageNanos("firefox 3.6", LocatorFormat.XPATH) >= 0, is(true));
+        assertThat(locator.averageNanos("firefox 3.6", LocatorFormat.CSS), is(-1L));
+        assertThat(locator.preferredFormat("firefox 45"), is(LocatorFormat.CSS));
+        assertThat(locator.preferredFormat("opera 12"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldSampleTheOtherRenderingsAndSwitchToAQuickerOne() throws Exception
+    {
+        final AdaptiveLocator locator = adaptive(anElementOfType("tbody").withClass("prices").thatContainsAChildOfType("tr"));
+        final StubWebDriver stub = new StubWebDriver().onFindElements(by ->
+        {
+            if (by.toString().startsWith("By.selector"))
+            {
+                pause();
+            }
+            return Collections.singletonList(CELL);
+        });
+        final WebDriver driver = stub.browser("safari", "9");
+
+        locator.findElements(driver);
+        assertThat(locator.preferredFormat("safari 9"), is(LocatorFormat.CSS));
+        for (int i = 0; i < 64; i++)
+        {
+            locator.findElements(driver);
+        }
+
+        assertThat(locator.preferredFormat("safari 9"), is(LocatorFormat.XPATH));
+        assertThat(locator.averageNanos("safari 9", LocatorFormat.XPATH) < locator.averageNanos("safari 9", LocatorFormat.CSS), is(true));
+    }
+
+    @Test
+    public void shouldNotTimeLookupsThatFindNothing() throws Exception
+    {
+        final AdaptiveLocator locator = adaptive(SPEC);
+        final StubWebDriver stub = new StubWebDriver();
+
+        assertThat(locator.findElements(stub.browser("edge", "12")).isEmpty(), is(true));
+
+        assertThat(locator.preferredFormat("edge 12"), is(LocatorFormat.CSS));
+        assertThat(locator.averageNanos("edge 12", LocatorFormat.CSS), is(-1L));
+    }
+
+    @Test
+    public void shouldNotRetryWhenAValidRenderingFindsNothing() throws Exception
+    {
+        final StubWebDriver stub = new StubWebDriver().onFindElements(rejecting(CSS, new NoSuchElementException("Unable to locate element")));
+
+        try
+        {
+            adaptive(SPEC).findElement(stub.browser("chrome", "50"));
+            fail("Expected the missing element to be reported");
+        }
+        catch (final NoSuchElementException e)
+        {
+            assertThat(e, is(instanceOf(NoSuchElementException.class)));
+        }
+        assertThat(stub.findElementsCalls, is(Collections.singletonList(CSS)));
+    }
+
+    @Test
+    public void shouldReportTheLastRejectionWhenEveryFormatIsRejected() throws Exception
+    {
+        final InvalidSelectorException rejection = new InvalidSelectorException("invalid selector");
+        final StubWebDriver stub = new StubWebDriver().onFindElements(by ->
+        {
+            throw rejection;
+        });
+
+        try
+        {
+            SPEC.asAdaptiveLocator().findElements(stub.browser("ie", "6"));
+            fail("Expected the rejection to be reported");
+        }
+        catch (final InvalidSelectorException e)
+        {
+            assertThat(e == rejection, is(true));
+        }
+        assertThat(stub.findElementsCalls, is(Arrays.asList(CSS, XPATH)));
+    }
+
+    @Test
+    public void shouldIdentifyBrowsersWithoutCapabilitiesByTheirDriver() throws Exception
+    {
+        final WebDriver driver = new StubWebDriver().plainDriver();
+
+        assertThat(AdaptiveLocator.browserOf(driver), is(driver.getClass().getName()));
+        assertThat(AdaptiveLocator.browserOf(new StubWebDriver().browser("chrome", "50")), is("chrome 50"));
+    }
+
+    private static AdaptiveLocator adaptive(final ElementSpecification spec)
+    {
+        final By locator = spec.asAdaptiveLocator();
+        assertThat(locator, instanceOf(AdaptiveLocator.class));
+        return (AdaptiveLocator)locator;
+    }
+
+    private static void pause()
+    {
+        try
+        {
+            Thread.sleep(2);
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static java.util.function.Function<By, List<WebElement>> rejecting(final By rejected, final RuntimeException failure)
+    {
+        return by ->
+        {
+            if (by.equals(rejected))
+            {
+                throw failure;
+            }
+            return Collections.singletonList(CELL);
+        };
+    }
+}
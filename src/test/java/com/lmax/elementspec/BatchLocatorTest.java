@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import javax.script.ScriptEngine;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static com.lmax.elementspec.ElementSpecification.anElementOfType;
+import static com.lmax.elementspec.ElementSpecification.anElementWithId;
+import static com.lmax.elementspec.ElementSpecification.fromOldStyleSeleniumLocator;
+
+public class BatchLocatorTest
+{
+    private static final WebElement GRID = StubWebDriver.element("grid");
+    private static final WebElement ROW = StubWebDriver.element("row");
+    private static final WebElement CELL = StubWebDriver.element("cell");
+
+    private final ElementSpecification grid = anElementWithId("grid");
+    private final ElementSpecification rows = anElementWithId("grid").thatContainsA("tr");
+    private final ElementSpecification cells = anElementOfType("td").withText("EUR/USD");
+
+    @Test
+    public void shouldFindAllSpecificationsInASingleScript() throws Exception
+    {
+        final StubWebDriver stub = new StubWebDriver().onExecuteScript((script, arguments) -> Arrays.asList(Collections.singletonList(GRID), Arrays.asList(ROW, ROW), Collections.emptyList()));
+
+        final Map<ElementSpecification, List<WebElement>> found = BatchLocator.findAll(stub.javascriptDriver(), Arrays.asList(grid, rows, cells));
+
+        assertThat(stub.scripts.size(), is(1));
+        assertThat(stub.scriptArguments.get(0)[0], is((Object)Arrays.asList("ID", "grid", "CSS", "#grid tr", "XPATH", "//td[text() = 'EUR/USD']")));
+        assertThat(found.get(grid), is(Collections.singletonList(GRID)));
+        assertThat(found.get(rows), is(Arrays.asList(ROW, ROW)));
+        assertThat(found.get(cells), is(Collections.<WebElement>emptyList()));
+        assertTrue(stub.findElementsCalls.isEmpty());
+    }
+
+    @Test
+    public void shouldQueryEqualSpecificationsOnce() throws Exception
+    {
+        final StubWebDriver stub = new StubWebDriver().onExecuteScript((script, arguments) -> Collections.singletonList(Collections.singletonList(GRID)));
+
+        final Map<ElementSpecification, List<WebElement>> found = BatchLocator.findAll(stub.javascriptDriver(), Arrays.asList(grid, anElementWithId("grid")));
+
+        assertThat(stub.scriptArguments.get(0)[0], is((Object)Arrays.asList("ID", "grid")));
+        assertThat(found.size(), is(1));
+    }
+
+    @Test
+    public void shouldStripTheSeleniumPrefixFromOldStyleCssLocators() throws Exception
+    {
+        final StubWebDriver stub = new StubWebDriver().onExecuteScript((script, arguments) -> Collections.singletonList(Collections.singletonList(CELL)));
+
+        BatchLocator.findAll(stub.javascriptDriver(), Collections.singletonList(fromOldStyleSeleniumLocator("css=tr > td")));
+
+        assertThat(stub.scriptArguments.get(0)[0], is((Object)Arrays.asList("CSS", "tr > td")));
+    }
+
+    @Test
+    public void shouldFindLocatorsTheScriptCouldNotEvaluateIndividually() throws Exception
+    {
+        final StubWebDriver stub = new StubWebDriver()
+                .onExecuteScript((script, arguments) -> Arrays.asList(Collections.singletonList(GRID), null))
+                .onFindElements(by -> Collections.singletonList(ROW));
+
+        final Map<ElementSpecification, List<WebElement>> found = BatchLocator.findAll(stub.javascriptDriver(), Arrays.asList(grid, rows));
+
+        assertThat(found.get(grid), is(Collections.singletonList(GRID)));
+        assertThat(found.get(rows), is(Collections.singletonList(ROW)));
+        assertThat(stub.findElementsCalls, is(Collections.singletonList(By.cssSelector("#grid tr"))));
+    }
+
+    @Test
+    public void shouldFindEachSpecificationIndividuallyWithoutJavaScript() throws Exception
+    {
+        final StubWebDriver stub = new StubWebDriver().onFindElements(by -> Collections.singletonList(CELL));
+        final WebDriver driver = stub.plainDriver();
+
+        final Map<ElementSpecification, List<WebElement>> found = BatchLocator.findAll(driver, Arrays.asList(grid, cells));
+
+        assertThat(found.get(cells), is(Collections.singletonList(CELL)));
+        assertThat(stub.findElementsCalls, is(Arrays.asList(By.id("grid"), By.xpath("//td[text() = 'EUR/USD']"))));
+    }
+
+    @Test
+    public void shouldFindEveryElementSharingAnIdLikeById() throws Exception
+    {
+        final ScriptEngine engine = StubWebDriver.javaScriptEngine();
+        engine.eval("var CSS = {escape: function (value) { return value.replace(/\"/g, '\\\\\"'); }}, selectors = [];\n" +
+                    "var document = {querySelectorAll: function (selector) { selectors.push(selector); return ['first', 'second']; }};\n" +
+                    "function batch() {\n" + BatchLocator.SCRIPT + "\n}");
+
+        assertThat(engine.eval("batch.call(null, ['ID', 'a\"b']).join('|')"), is((Object)"first,second"));
+        assertThat(engine.eval("selectors.join('|')"), is((Object)"[id=\"a\\\"b\"]"));
+    }
+
+    @Test
+    public void shouldNotExecuteAScriptForNoSpecifications() throws Exception
+    {
+        final StubWebDriver stub = new StubWebDriver();
+
+        assertTrue(BatchLocator.findAll(stub.javascriptDriver(), Collections.<ElementSpecification>emptyList()).isEmpty());
+        assertTrue(stub.scripts.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectInvalidSpecifications() throws Exception
+    {
+        BatchLocator.findAll(new StubWebDriver().javascriptDriver(), Collections.singletonList(anElementOfType("td").withText("a").thatIsChecked()));
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import static com.lmax.elementspec.ElementSpecification.anElement;
+import static com.lmax.elementspec.ElementSpecification.anElementOfType;
+import static com.lmax.elementspec.ElementSpecification.anElementWithId;
+import static com.lmax.elementspec.ElementSpecification.fromOldStyleSeleniumLocator;
+
+public class ComplexityAnalyzerTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldNotWarnAboutAnchoredSpecifications()
+    {
+        final ComplexityReport report = anElementWithId("grid").thatContainsA("tr").withClass("row").thatContainsAChildOfType("td").inPosition(2).analyseComplexity();
+
+        assertThat(report.getLocator(), is("css=#grid tr.row > td:nth-child(2)"));
+        assertThat(report.getFormat(), is(LocatorFormat.CSS));
+        assertThat(report.getCost(), is(SelectorCostModel.DEFAULT.cost(LocatorFormat.CSS, "#grid tr.row > td:nth-child(2)")));
+        assertThat(report.getWarnings().isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldWarnAboutUnanchoredLeadingAndDescendantWildcards()
+    {
+        assertThat(warnings(anElement().withClass("row")), is("UNANCHORED_DESCENDANT: step 1: anElement() starts by examining every element in the document\n"));
+        assertThat(warnings(anElement().withId("grid").thatContainsAnyElement().withClass("row")),
+                   is("UNANCHORED_DESCENDANT: step 2: thatContainsAnyElement() examines every descendant without an id to narrow it\n"));
+        assertThat(warnings(fromOldStyleSeleniumLocator("//*[@id='grid']//td")), is(""));
+        assertThat(warnings(fromOldStyleSeleniumLocator("css=*")), is("UNANCHORED_DESCENDANT: step 1: anElement() starts by examining every element in the document\n"));
+    }
+
+    @Test
+    public void shouldWarnAboutChainsOfAnyElement()
+    {
+        assertThat(warnings(anElementWithId("grid").thatContainsAnyElement().withId("row").thatContainsAnyElement().withId("a").thatContainsAnyElement().withId("b")),
+                   is("DEEP_ANY_ELEMENT_CHAIN: step 3: thatContainsAnyElement() follows another, multiplying the elements examined\n"));
+    }
+
+    @Test
+    public void shouldWarnAboutTextSearchesOnAnyElement()
+    {
+        assertThat(warnings(anElementWithId("grid").thatContainsAnyElement().withTextContaining("EUR")), containsString(
+                "TEXT_SEARCH_ON_LARGE_SCOPE: step 2: withTextContaining(\"EUR\") examines the text of every element in scope\n"));
+        assertThat(warnings(anElementWithId("grid").thatContainsA("td").withTextContaining("EUR")), containsString("XPATH_ONLY"));
+        assertThat(warnings(anElementWithId("grid").thatContainsA("td").withTextContaining("EUR")).contains("TEXT_SEARCH"), is(false));
+    }
+
+    @Test
+    public void shouldWarnAboutStackedNegations()
+    {
+        assertThat(warnings(anElementOfType("tr").withoutClass("hidden").withoutAttribute("disabled")),
+                   is("NEGATION_STACK: step 1: withoutAttribute(\"disabled\") is the second negated condition on one step\n"));
+        assertThat(warnings(anElementOfType("tr").withoutClass("hidden").thatContainsA("td").withoutClass("empty")), is(""));
+    }
+
+    @Test
+    public void shouldWarnAboutRefinementsThatForceXPath()
+    {
+        assertThat(warnings(anElementWithId("grid").thatContainsA("td").withAnyOfTheseClasses("bid", "ask")),
+                   is("XPATH_ONLY: withAnyOfTheseClasses(\"bid\", \"ask\") can't be represented in CSS, so the locator is XPath\n"));
+        assertThat(warnings(fromOldStyleSeleniumLocator("(//td)[2]")), is(""));
+    }
+
+    @Test
+    public void shouldWalkSubSpecifications()
+    {
+        assertThat(warnings(anElementWithId("grid").addSubSpecification(anElementOfType("tr").withoutClass("a").withoutClass("b"))),
+                   is("NEGATION_STACK: step 2: withoutClass(\"b\") is the second negated condition on one step\n"));
+    }
+
+    @Test
+    public void shouldReportInvalidSpecificationsAsInfinitelyExpensive()
+    {
+        final ComplexityReport report = anElementOfType("td").withText("a").thatIsChecked().analyseComplexity();
+
+        assertThat(report.getLocator(), is("anElementOfType(\"td\").withText(\"a\").thatIsChecked()"));
+        assertThat(report.getFormat(), nullValue());
+        assertThat(report.getCost(), is(Double.POSITIVE_INFINITY));
+        assertThat(report.getWarnings().get(0).getKind(), is(ComplexityWarning.INVALID));
+    }
+
+    @Test
+    public void shouldCheckBudgets()
+    {
+        final ComplexityReport report = anElement().withoutClass("a").withoutClass("b").analyseComplexity();
+
+        assertThat(report.isWithin(ComplexityBudget.maxCost(100)), is(false));
+        assertThat(report.isWithin(ComplexityBudget.maxCost(100).allowing(ComplexityWarning.UNANCHORED_DESCENDANT, ComplexityWarning.NEGATION_STACK)), is(true));
+        assertThat(report.isWithin(ComplexityBudget.maxCost(1).allowing(ComplexityWarning.values())), is(false));
+        try
+        {
+            report.requireWithin(ComplexityBudget.maxCost(1).allowing(ComplexityWarning.UNANCHORED_DESCENDANT));
+            fail();
+        }
+        catch (final IllegalStateException e)
+        {
+            assertThat(e.getMessage(), is("css=:not(.a):not(.b) exceeds its complexity budget (cost <= 1.0 allowing [UNANCHORED_DESCENDANT]):\n" +
+                                          "  cost " + report.getCost() + " exceeds 1.0\n" +
+                                          "  NEGATION_STACK: step 1: withoutClass(\"b\") is the second negated condition on one step"));
+        }
+    }
+
+    @Test
+    public void shouldFindSpecificationsOverBudgetInACatalog() throws Exception
+    {
+        final Map<String, ElementSpecification> specifications = new LinkedHashMap<>();
+        specifications.put("grid.row", anElementWithId("grid").thatContainsA("tr").withClass("row"));
+        specifications.put("grid.price", anElementWithId("grid").thatContainsA("td").withAnyOfTheseClasses("bid", "ask"));
+        specifications.put("any.row", anElement().withClass("row"));
+        final Path path = folder.newFile().toPath();
+        LocatorCatalog.write(path, specifications);
+
+        final Map<String, ComplexityReport> overBudget = ComplexityAnalyzer.overBudget(LocatorCatalog.open(path), ComplexityBudget.maxCost(100));
+
+        final List<String> keys = new ArrayList<>(overBudget.keySet());
+        keys.sort(null);
+        assertThat(keys.toString(), is("[any.row, grid.price]"));
+        assertThat(ComplexityAnalyzer.overBudget(specifications, ComplexityBudget.maxCost(100)).keySet().toString(), is("[grid.price, any.row]"));
+    }
+
+    private static String warnings(final ElementSpecification specification)
+    {
+        final StringBuilder warnings = new StringBuilder();
+        for (final ComplexityReport.Warning warning : specification.analyseComplexity().getWarnings())
+        {
+            warnings.append(warning).append('\n');
+        }
+        return warnings.toString();
+    }
+}
@@ -224,9 +224,27 @@ public class CssElementSpecificationTest
     }
 
     @Test
-    public void shouldCreateCssForElementWithInvalidId() throws Exception
+    public void shouldEscapeIdThatIsNotAValidIdentifier() throws Exception
     {
-        assertCss(anElement().withId("EUR/USD"), "*[id=\"EUR/USD\"]");
+        assertCss(anElement().withId("EUR/USD"), "#EUR\\/USD");
+    }
+
+    @Test
+    public void shouldEscapeIdStartingWithADigit() throws Exception
+    {
+        assertCss(anElement().withId("3ADF8"), "#\\33 ADF8");
+    }
+
+    @Test
+    public void shouldEscapeGeneratedIdsAndClasses() throws Exception
+    {
+        assertCss(anElementOfType("tr").withId("grid:row.12").withClass("col-1").withoutClass("2nd"), "tr#grid\\:row\\.12.col-1:not(.\\32 nd)");
+    }
+
+    @Test
+    public void shouldQuoteAttributeValues() throws Exception
+    {
+        assertCss(anElement().withAttributeValue("title", "say \"hi\"").withAttributeContaining("data-path", "C:\\temp"), "*[title=\"say \\\"hi\\\"\"][data-path*=\"C:\\\\temp\"]");
     }
 
     @Test
@@ -241,6 +259,44 @@ public class CssElementSpecificationTest
         assertCss(anElementOfType("span").withClass("foo").withoutAttribute("title"), "span.foo:not([title])");
     }
 
+    @Test
+    public void shouldNotShareRefinementsBetweenSpecificationsBuiltFromTheSameParent() throws Exception
+    {
+        final ElementSpecification row = anElementOfType("table").thatContainsA("tr");
+        final ElementSpecification firstCell = row.thatContainsAChildOfType("td").inPosition(1);
+        final ElementSpecification selectedRow = row.withClass("selected");
+
+        assertCss(firstCell, "table tr > td:nth-child(1)");
+        assertCss(selectedRow, "table tr.selected");
+        assertCss(row, "table tr");
+    }
+
+    @Test
+    public void shouldAppendRefinementsToOldStyleLocator() throws Exception
+    {
+        assertCss(CssElementSpecification.fromOldStyleSeleniumCssLocator("div.grid").thatContainsA("tr").withClass("selected"), "div.grid tr.selected");
+    }
+
+    @Test
+    public void shouldAppendSubSpecification() throws Exception
+    {
+        assertCss(anElementOfType("table").withClass("grid").addSubSpecification(anElementOfType("tr").withAttribute("data-id")).thatContainsA("td"), "table.grid tr[data-id] td");
+    }
+
+    @Test
+    public void shouldDropUniversalSelectorBeforeAttributesWhenOptimised() throws Exception
+    {
+        assertCss(anElement().withAttribute("name").thatContainsAnyElement().withAttributeValue("a", "b").optimised(), "[name] [a=\"b\"]");
+        assertCss(anElementOfType("ul").thatContainsAChildOfType("li").optimised().thatContainsAnyElement().withAttribute("x"), "ul > li [x]");
+    }
+
+    @Test
+    public void shouldKeepUniversalSelectorWhenItIsTheOnlyCondition() throws Exception
+    {
+        assertCss(anElementOfType("p").thatContainsAnyElement().optimised(), "p *");
+        assertCss(anElement().withClass("a").withAttribute("b").optimised(), ".a[b]");
+    }
+
     private void assertCss(final ElementSpecification builder, final String expectedCss)
     {
         assertTrue("Should have been valid", builder.isValid());
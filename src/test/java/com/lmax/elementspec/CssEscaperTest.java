@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import static com.lmax.elementspec.CssEscaper.escapeIdentifier;
+import static com.lmax.elementspec.CssEscaper.quoteString;
+
+public class CssEscaperTest
+{
+    @Test
+    public void shouldReturnValidIdentifiersUnchanged() throws Exception
+    {
+        final String identifier = "valid-identifier_2";
+        assertThat(escapeIdentifier(identifier), sameInstance(identifier));
+        assertThat(escapeIdentifier("--a"), is("--a"));
+        assertThat(escapeIdentifier(""), is(""));
+    }
+
+    @Test
+    public void shouldEscapeLeadingDigits() throws Exception
+    {
+        assertThat(escapeIdentifier("1a"), is("\\31 a"));
+        assertThat(escapeIdentifier("-1a"), is("-\\31 a"));
+        assertThat(escapeIdentifier("a1"), is("a1"));
+    }
+
+    @Test
+    public void shouldEscapeALoneHyphen() throws Exception
+    {
+        assertThat(escapeIdentifier("-"), is("\\-"));
+    }
+
+    @Test
+    public void shouldEscapePunctuationWithABackslash() throws Exception
+    {
+        assertThat(escapeIdentifier("a b#c.d:e/f[g]"), is("a\\ b\\#c\\.d\\:e\\/f\\[g\\]"));
+    }
+
+    @Test
+    public void shouldEscapeControlCharactersAsCodePoints() throws Exception
+    {
+        assertThat(escapeIdentifier("a\u0001b\u001Fc\u007F"), is("a\\1 b\\1f c\\7f "));
+        assertThat(escapeIdentifier("a\u0000b"), is("a\uFFFDb"));
+    }
+
+    @Test
+    public void shouldNotEscapeNonAsciiCharacters() throws Exception
+    {
+        assertThat(escapeIdentifier("\u00e9t\u00e9-\u20ac"), is("\u00e9t\u00e9-\u20ac"));
+    }
+
+    @Test
+    public void shouldQuoteStrings() throws Exception
+    {
+        assertThat(quoteString("plain"), is("\"plain\""));
+        assertThat(quoteString("say \"hi\" \\o/"), is("\"say \\\"hi\\\" \\\\o/\""));
+        assertThat(quoteString("line\nbreak"), is("\"line\\a break\""));
+    }
+}
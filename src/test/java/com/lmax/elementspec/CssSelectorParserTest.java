@@ -0,0 +1,184 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import static com.lmax.elementspec.CssEscaper.escapeIdentifier;
+import static com.lmax.elementspec.CssEscaper.quoteString;
+import static com.lmax.elementspec.ElementSpecification.anElement;
+import static com.lmax.elementspec.ElementSpecification.anElementOfType;
+import static com.lmax.elementspec.ElementSpecification.anElementWithId;
+import static com.lmax.elementspec.ElementSpecification.fromOldStyleSeleniumLocator;
+
+public class CssSelectorParserTest
+{
+    @Test
+    public void shouldParseTypeAndUniversalSelectors() throws Exception
+    {
+        assertParsed("div", anElementOfType("div"));
+        assertParsed("*", anElement());
+        assertParsed("  div  ", anElementOfType("div"));
+    }
+
+    @Test
+    public void shouldParseAnIdOnItsOwnAsAnElementWithId() throws Exception
+    {
+        assertParsed("#grid", anElementWithId("grid"));
+        assertParsed("div#grid", anElementOfType("div").withId("grid"));
+    }
+
+    @Test
+    public void shouldParseCombinators() throws Exception
+    {
+        assertParsed("table tr", anElementOfType("table").thatContainsA("tr"));
+        assertParsed("table\n\t*", anElementOfType("table").thatContainsAnyElement());
+        assertParsed("tr>td", anElementOfType("tr").thatContainsAChildOfType("td"));
+        assertParsed("tr > *", anElementOfType("tr").thatContainsAChildOfType("*"));
+        assertParsed("#grid .row", anElementWithId("grid").thatContainsAnyElement().withClass("row"));
+    }
+
+    @Test
+    public void shouldParseClassesAndAttributes() throws Exception
+    {
+        assertParsed(".a.b", anElement().withClass("a").withClass("b"));
+        assertParsed("[name]", anElement().withAttribute("name"));
+        assertParsed("[ name = 'x' ]", anElement().withAttributeValue("name", "x"));
+        assertParsed("[name=x]", anElement().withAttributeValue("name", "x"));
+        assertParsed("[title*=\"a b\"]", anElement().withAttributeContaining("title", "a b"));
+        assertParsed("[class~=selected]", anElement().withClass("selected"));
+    }
+
+    @Test
+    public void shouldParsePseudoClasses() throws Exception
+    {
+        assertParsed("td:nth-child(2)", anElementOfType("td").inPosition(2));
+        assertParsed("td:NTH-OF-TYPE( 3 )", anElementOfType("td").inPositionOfType(3));
+        assertParsed("td:first-child", anElementOfType("td").inPosition(1));
+        assertParsed("td:first-of-type", anElementOfType("td").inPositionOfType(1));
+        assertParsed("td:empty", anElementOfType("td").withNoChildren());
+        assertParsed("input:checked", anElementOfType("input").thatIsChecked());
+        assertParsed("tr:not(.selected)", anElementOfType("tr").withoutClass("selected"));
+        assertParsed("tr:not( [title] )", anElementOfType("tr").withoutAttribute("title"));
+    }
+
+    @Test
+    public void shouldDecodeEscapesProducedByTheCssFormat() throws Exception
+    {
+        final String id = "1 a#b.c";
+        final String value = "a \"quoted\"\\";
+
+        assertParsed("#" + escapeIdentifier(id), anElementWithId(id));
+        assertParsed("[title=" + quoteString(value) + "]", anElement().withAttributeValue("title", value));
+        assertParsed("#\\31 23", anElementWithId("123"));
+        assertParsed("[title='a\\\nb']", anElement().withAttributeValue("title", "ab"));
+        assertParsed("#a\\0 b", anElementWithId("a\uFFFDb"));
+    }
+
+    @Test
+    public void shouldNotParseSelectorsItCannotRepresentExactly() throws Exception
+    {
+        assertUnsupported("th + td");
+        assertUnsupported("th ~ td");
+        assertUnsupported("th, td");
+        assertUnsupported("td:nth-child(2n+1)");
+        assertUnsupported("td:last-child");
+        assertUnsupported("p::before");
+        assertUnsupported("[title^=a]");
+        assertUnsupported("[title*='']");
+        assertUnsupported("[title=a i]");
+        assertUnsupported("[class~='a b']");
+        assertUnsupported(":not(td)");
+        assertUnsupported("td.");
+        assertUnsupported("#1a");
+        assertUnsupported("[title='a");
+        assertUnsupported("tr >");
+        assertUnsupported("");
+    }
+
+    @Test
+    public void shouldRenderTheSameCssForRandomSpecifications() throws Exception
+    {
+        final RandomSpecifications random = new RandomSpecifications(7);
+        for (int i = 0; i < 500; i++)
+        {
+            final ElementSpecification expected = random.specification(CssSelectorParserTest::cssElementOfType, true);
+            if (expected.isValid())
+            {
+                final String css = expected.asSeleniumLocator().substring("css=".length());
+                final ElementSpecification parsed = CssSelectorParser.parse(css);
+
+                assertThat(css, ((MultiFormatElementSpecification)parsed).operations().replay(LocatorFormat.CSS).asSeleniumLocator(), is(expected.asSeleniumLocator()));
+            }
+        }
+    }
+
+    @Test
+    public void shouldAllowOldStyleCssLocatorsToBeRefinedInAnyFormat() throws Exception
+    {
+        final ElementSpecification spec = fromOldStyleSeleniumLocator("css=#grid tr.row").thatContainsA("td").withText("EUR/USD");
+
+        assertThat(spec.asSeleniumLocator(), is(anElementWithId("grid").thatContainsA("tr").withClass("row").thatContainsA("td").withText("EUR/USD").asSeleniumLocator()));
+    }
+
+    @Test
+    public void shouldOnlyRenderParsedPositionsAsCss() throws Exception
+    {
+        assertThat(fromOldStyleSeleniumLocator("css=tr:nth-child(2)").withText("a").isValid(), is(false));
+        assertThat(anElementOfType("tr").inPosition(2).withText("a").isValid(), is(true));
+    }
+
+    @Test
+    public void shouldKeepSelectorsThatCannotBeParsedVerbatim() throws Exception
+    {
+        final ElementSpecification spec = fromOldStyleSeleniumLocator("css=th + td");
+
+        assertThat(spec, instanceOf(MultiFormatElementSpecification.class));
+        assertThat(spec.asSeleniumLocator(), is("css=th + td"));
+        assertThat(spec.withText("a").isValid(), is(false));
+    }
+
+    @Test
+    public void shouldKeepSelectorsWithApostrophesVerbatimSoTheyNeverRenderAsXPath() throws Exception
+    {
+        assertUnsupported("div[title=\"it's\"]");
+        assertUnsupported("#it\\'s td");
+        assertUnsupported("td.it\\'s");
+        assertUnsupported("td:not(.it\\'s)");
+        assertThat(fromOldStyleSeleniumLocator("css=div[title=\"it's\"]").withText("x").isValid(), is(false));
+    }
+
+    private static ElementSpecification cssElementOfType(final String tagName)
+    {
+        return "*".equals(tagName) ? CssElementSpecification.anElement() : CssElementSpecification.anElementOfType(tagName);
+    }
+
+    private static void assertParsed(final String selector, final ElementSpecification expected)
+    {
+        assertThat(selector, CssSelectorParser.parse(selector), is(expected));
+    }
+
+    private static void assertUnsupported(final String selector)
+    {
+        assertThat(selector, CssSelectorParser.parse(selector), nullValue());
+    }
+}
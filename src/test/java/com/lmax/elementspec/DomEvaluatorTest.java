@@ -0,0 +1,239 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.junit.After;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import static com.lmax.elementspec.ElementSpecification.anElement;
+import static com.lmax.elementspec.ElementSpecification.anElementOfType;
+import static com.lmax.elementspec.ElementSpecification.anElementWithClass;
+import static com.lmax.elementspec.ElementSpecification.anElementWithId;
+import static com.lmax.elementspec.ElementSpecification.fromOldStyleSeleniumLocator;
+
+public class DomEvaluatorTest
+{
+    private static final SelectorCostModel PREFER_XPATH = (format, selector) -> format == LocatorFormat.XPATH ? 0 : 1;
+
+    private static final String PAGE =
+            "<html>" +
+            "<body>" +
+            "<table id='grid'>" +
+            "<tr id='r1' class='row selected'><td id='c1'>EUR/USD</td><td id='c2'>1.0850</td></tr>" +
+            "<tr id='r2' class='row'><th id='h1'>Header</th><td id='c3' title='price: bid'>-.5</td><td id='c4'>n/a</td></tr>" +
+            "</table>" +
+            "<div id='d1' class='row&#9;selected'><span id='s1'/><span id='s2'><!-- note --></span></div>" +
+            "<input id='i1' type='checkbox' checked='checked'/><input id='i2' type='checkbox'/><select><option id='o1' selected='selected'>A</option></select>" +
+            "</body>" +
+            "</html>";
+
+    private final Document document = parse(PAGE);
+
+    @After
+    public void tearDown()
+    {
+        SelectorCostModel.register(SelectorCostModel.DEFAULT);
+    }
+
+    @Test
+    public void shouldFindElementsById() throws Exception
+    {
+        assertIds(anElementWithId("grid"), "grid");
+        assertIds(anElementWithId("grid").thatContainsA("td"), "c1", "c2", "c3", "c4");
+        assertIds(anElementWithId("missing"));
+    }
+
+    @Test
+    public void shouldFindChildrenAndDescendants() throws Exception
+    {
+        assertIds(anElementOfType("tr").thatContainsAChildOfType("th"), "h1");
+        assertIds(anElementOfType("body").thatContainsAnyElement().withAttribute("title"), "c3");
+        assertIds(anElementOfType("table").addSubSpecification(anElementOfType("tr").withClass("selected")).thatContainsA("td"), "c1", "c2");
+    }
+
+    @Test
+    public void shouldReturnNestedMatchesOnceInDocumentOrder() throws Exception
+    {
+        assertIds(anElementOfType("html").thatContainsAnyElement().thatContainsAnyElement().thatContainsA("td"), "c1", "c2", "c3", "c4");
+    }
+
+    @Test
+    public void shouldMatchClassTokensOnWhitespaceInCss() throws Exception
+    {
+        assertIds(anElementWithClass("selected"), "r1", "d1");
+        assertIds(anElement().withClass("row").withoutClass("selected"), "r2");
+    }
+
+    @Test
+    public void shouldMatchClassesOnlyBetweenSpacesInXPath() throws Exception
+    {
+        assertIds(anElementWithClass("selected").withAnyOfTheseClasses("row", "other"), "r1");
+    }
+
+    @Test
+    public void shouldUseNthChildSemanticsWhenRenderedAsCss() throws Exception
+    {
+        assertIds(anElementOfType("td").inPosition(2), "c2", "c3");
+        assertIds(anElementOfType("td").inPositionOfType(2), "c2", "c4");
+    }
+
+    @Test
+    public void shouldCountMatchingElementsWithinEachParentWhenRenderedAsXPath() throws Exception
+    {
+        SelectorCostModel.register(PREFER_XPATH);
+
+        assertIds(anElementOfType("td").inPosition(2), "c2", "c4");
+        assertIds(anElementOfType("td").withAttribute("id").inPosition(1).withAttribute("title"), "c3");
+    }
+
+    @Test
+    public void shouldMatchTextContent() throws Exception
+    {
+        assertIds(anElementOfType("td").withText("EUR/USD"), "c1");
+        assertIds(anElementOfType("td").withTextContaining("USD"), "c1");
+        assertIds(anElementOfType("td").withNumericalContent(), "c2", "c3");
+    }
+
+    @Test
+    public void shouldTreatCommentsAsChildrenOnlyInXPath() throws Exception
+    {
+        assertIds(anElementOfType("span").withNoChildren(), "s1", "s2");
+        assertIds(anElementOfType("span").withText(""), "s1");
+    }
+
+    @Test
+    public void shouldFindCheckedInputsAndSelectedOptions() throws Exception
+    {
+        assertIds(anElement().thatIsChecked(), "i1", "o1");
+    }
+
+    @Test
+    public void shouldMatchSubstringsOfAttributes() throws Exception
+    {
+        assertIds(anElementOfType("td").withAttributeContaining("title", "bid"), "c3");
+        assertIds(anElementOfType("td").withAttributeValue("title", "price: bid"), "c3");
+    }
+
+    @Test
+    public void shouldEvaluateOldStyleXPathLocators() throws Exception
+    {
+        assertIds(fromOldStyleSeleniumLocator("//tr[2]/td"), "c3", "c4");
+    }
+
+    @Test
+    public void shouldEvaluateParsedOldStyleCssLocators() throws Exception
+    {
+        SelectorCostModel.register(PREFER_XPATH);
+
+        assertIds(fromOldStyleSeleniumLocator("css=#grid tr.row > td[title*='bid']"), "c3");
+        assertIds(fromOldStyleSeleniumLocator("css=tr > td:nth-child(2)"), "c2", "c3");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectOldStyleCssLocatorsThatCannotBeParsed() throws Exception
+    {
+        DomEvaluator.findElements(document, fromOldStyleSeleniumLocator("css=th + td"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectInvalidSpecifications() throws Exception
+    {
+        DomEvaluator.findElements(document, anElement().withText("a").thatIsChecked());
+    }
+
+    @Test
+    public void shouldMatchTheRenderedXPath() throws Exception
+    {
+        SelectorCostModel.register(PREFER_XPATH);
+        final RandomSpecifications random = new RandomSpecifications(11);
+        final Document randomDocument = random.document();
+        final DomSnapshot snapshot = DomSnapshot.of(randomDocument);
+
+        for (int i = 0; i < 2000; i++)
+        {
+            final ElementSpecification spec = random.specification(DomEvaluatorTest::anElementOfTypeOrAny, true);
+            if (spec.isValid())
+            {
+                assertEquals(spec.toString(), evaluateXPath(randomDocument, spec), DomEvaluator.findElements(snapshot, spec));
+            }
+        }
+    }
+
+    @Test
+    public void shouldMatchTheRenderedXPathWhenStartingFromAnIndex() throws Exception
+    {
+        SelectorCostModel.register(PREFER_XPATH);
+        final DomSnapshot snapshot = DomSnapshot.of(document);
+
+        final ElementSpecification secondRow = anElementWithClass("row").withAttribute("id").inPosition(2);
+        final ElementSpecification cellWithTitle = anElementWithId("grid").thatContainsA("td").withAttribute("title");
+
+        assertThat(DomEvaluator.findElements(snapshot, secondRow), is(evaluateXPath(document, secondRow)));
+        assertThat(DomEvaluator.findElements(snapshot, cellWithTitle), is(evaluateXPath(document, cellWithTitle)));
+    }
+
+    private static List<Element> evaluateXPath(final Document document, final ElementSpecification spec) throws Exception
+    {
+        final NodeList nodes = (NodeList)XPathFactory.newInstance().newXPath().evaluate(spec.asSeleniumLocator(), document, XPathConstants.NODESET);
+        final List<Element> elements = new ArrayList<>();
+        for (int node = 0; node < nodes.getLength(); node++)
+        {
+            elements.add((Element)nodes.item(node));
+        }
+        return elements;
+    }
+
+    private static ElementSpecification anElementOfTypeOrAny(final String tagName)
+    {
+        return "*".equals(tagName) ? anElement() : anElementOfType(tagName);
+    }
+
+    private void assertIds(final ElementSpecification spec, final String... expectedIds)
+    {
+        final List<String> ids = DomEvaluator.findElements(document, spec).stream().map(element -> element.getAttribute("id")).collect(Collectors.toList());
+        assertThat(spec.toString(), ids, is(Arrays.asList(expectedIds)));
+    }
+
+    private static Document parse(final String page)
+    {
+        try
+        {
+            return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new InputSource(new StringReader(page)));
+        }
+        catch (final Exception e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+}
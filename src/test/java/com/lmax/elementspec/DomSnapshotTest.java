@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.StringReader;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class DomSnapshotTest
+{
+    private final DomSnapshot snapshot = DomSnapshot.of(parse("<html><body id='b' class='page'><p class='a  b a'/><div><p title='x' class='b'>t</p></div><p id='b'/></body></html>"));
+
+    @Test
+    public void shouldFlattenElementsInDocumentOrder() throws Exception
+    {
+        assertThat(snapshot.getElementCount(), is(6));
+        assertThat(snapshot.tagName(0), is("html"));
+        assertThat(snapshot.tagName(3), is("div"));
+        assertThat(snapshot.parent(4), is(3));
+        assertThat(snapshot.subtreeEnd(1), is(6));
+        assertThat(snapshot.subtreeEnd(3), is(5));
+        assertThat(snapshot.childPosition(5), is(3));
+    }
+
+    @Test
+    public void shouldIndexElementsById() throws Exception
+    {
+        assertArrayEquals(new int[] {1, 5}, snapshot.elementsWithId("b"));
+        assertArrayEquals(new int[0], snapshot.elementsWithId("missing"));
+    }
+
+    @Test
+    public void shouldIndexElementsByTagName() throws Exception
+    {
+        assertArrayEquals(new int[] {2, 4, 5}, snapshot.elementsWithTagName("p"));
+    }
+
+    @Test
+    public void shouldIndexEachClassOncePerElement() throws Exception
+    {
+        assertArrayEquals(new int[] {2}, snapshot.elementsWithClass("a"));
+        assertArrayEquals(new int[] {2, 4}, snapshot.elementsWithClass("b"));
+    }
+
+    @Test
+    public void shouldIndexElementsByAttributeName() throws Exception
+    {
+        assertArrayEquals(new int[] {4}, snapshot.elementsWithAttribute("title"));
+        assertArrayEquals(new int[] {1, 2, 4}, snapshot.elementsWithAttribute("class"));
+    }
+
+    @Test
+    public void shouldReportBuildMetrics() throws Exception
+    {
+        assertTrue(snapshot.getBuildTimeNanos() > 0);
+        assertTrue(snapshot.getEstimatedSizeInBytes() > 0);
+    }
+
+    @Test
+    public void shouldHandleDocumentsWithoutElements() throws Exception
+    {
+        final DomSnapshot empty = DomSnapshot.of(DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument());
+
+        assertThat(empty.getElementCount(), is(0));
+        assertThat(DomEvaluator.findElements(empty, ElementSpecification.anElement()).isEmpty(), is(true));
+    }
+
+    private static Document parse(final String page)
+    {
+        try
+        {
+            return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new InputSource(new StringReader(page)));
+        }
+        catch (final Exception e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+}
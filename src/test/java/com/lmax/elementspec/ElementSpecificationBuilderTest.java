@@ -0,0 +1,227 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openqa.selenium.By;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import static com.lmax.elementspec.ElementSpecification.anElement;
+import static com.lmax.elementspec.ElementSpecification.anElementOfType;
+import static com.lmax.elementspec.ElementSpecification.anElementWithId;
+
+public class ElementSpecificationBuilderTest
+{
+    private static final SelectorCostModel PREFER_XPATH = (format, selector) -> format == LocatorFormat.XPATH ? 0 : 1;
+
+    private final ElementSpecificationBuilder builder = new ElementSpecificationBuilder();
+
+    @After
+    public void tearDown()
+    {
+        SelectorCostModel.register(SelectorCostModel.DEFAULT);
+    }
+
+    @Test
+    public void shouldRenderTheSameLocatorsAsTheFluentApi() throws Exception
+    {
+        assertThat(builder.anElementWithId("grid").asWebDriverLocator(), is(By.id("grid")));
+        assertThat(builder.anElementWithId("grid").thatContainsA("tr").inPosition(2).asSeleniumLocator(), is("css=#grid tr:nth-child(2)"));
+        assertThat(builder.anElementOfType("tr").withAnyOfTheseClasses("a", "b").asWebDriverLocator(),
+                   is(anElementOfType("tr").withAnyOfTheseClasses("a", "b").asWebDriverLocator()));
+    }
+
+    @Test
+    public void shouldResetWhenStartingANewSpecification() throws Exception
+    {
+        builder.anElementOfType("table").withText("a");
+
+        assertThat(builder.anElement().withClass("row").asSeleniumLocator(), is("css=.row"));
+        assertThat(builder.reset().anElementOfType("td").isValid(), is(true));
+    }
+
+    @Test
+    public void shouldFreezeIntoAnEqualSpecification() throws Exception
+    {
+        final ElementSpecification expected = anElementWithId("grid").addSubSpecification(anElementOfType("tr").withClass("row")).thatContainsA("td").inPositionOfType(3);
+
+        final ElementSpecification frozen = builder.anElementWithId("grid").addSubSpecification(anElementOfType("tr").withClass("row")).thatContainsA("td").inPositionOfType(3)
+                                                   .toSpecification();
+
+        assertThat(frozen, is(expected));
+        assertThat(frozen.asSeleniumLocator(), is(expected.asSeleniumLocator()));
+    }
+
+    @Test
+    public void shouldShareInternedLocatorsWhenFrozen() throws Exception
+    {
+        SpecificationCache.enable(16);
+        try
+        {
+            final By locator = anElement().withClass("row").asWebDriverLocator();
+            assertThat(builder.anElement().withClass("row").toSpecification().asWebDriverLocator(), sameInstance(locator));
+        }
+        finally
+        {
+            SpecificationCache.disable();
+        }
+    }
+
+    @Test
+    public void shouldBecomeInvalidLikeTheFluentApi() throws Exception
+    {
+        builder.anElement().withText("a").thatIsChecked().withClass("row");
+
+        assertThat(builder.isValid(), is(false));
+        assertThat(builder.toSpecification(), is(anElement().withText("a").thatIsChecked()));
+        assertThat(builder.toString(), is("<INVALID SELECTOR>"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotRenderInvalidSpecifications() throws Exception
+    {
+        builder.anElement().withText("a").thatIsChecked().asSeleniumLocator();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRequireASpecificationToBeStarted() throws Exception
+    {
+        builder.withClass("row");
+    }
+
+    @Test
+    public void shouldMatchTheFluentApiForRandomSpecifications() throws Exception
+    {
+        assertMatchesFluentApi(new RandomSpecifications(13));
+    }
+
+    @Test
+    public void shouldMatchTheFluentApiWhenPreferringXPath() throws Exception
+    {
+        SelectorCostModel.register(PREFER_XPATH);
+        assertMatchesFluentApi(new RandomSpecifications(17));
+    }
+
+    private void assertMatchesFluentApi(final RandomSpecifications random)
+    {
+        for (int i = 0; i < 2000; i++)
+        {
+            final ElementSpecification expected = random.specification(tagName -> "*".equals(tagName) ? anElement() : anElementOfType(tagName), true);
+            replay(((MultiFormatElementSpecification)expected).operations().toArray());
+
+            assertThat(expected.toString(), builder.isValid(), is(expected.isValid()));
+            assertThat(builder.toSpecification(), is(expected));
+            if (expected.isValid())
+            {
+                assertThat(builder.asSeleniumLocator(), is(expected.asSeleniumLocator()));
+                assertThat(builder.asWebDriverLocator(), is(expected.asWebDriverLocator()));
+            }
+        }
+    }
+
+    private void replay(final Operation[] operations)
+    {
+        for (final Operation operation : operations)
+        {
+            switch (operation.type)
+            {
+                case AN_ELEMENT:
+                    builder.anElement();
+                    break;
+                case AN_ELEMENT_OF_TYPE:
+                    builder.anElementOfType(operation.argument);
+                    break;
+                case AN_ELEMENT_WITH_ID:
+                    builder.anElementWithId(operation.argument);
+                    break;
+                case THAT_CONTAINS_A:
+                    builder.thatContainsA(operation.argument);
+                    break;
+                case THAT_CONTAINS_A_CHILD_OF_TYPE:
+                    builder.thatContainsAChildOfType(operation.argument);
+                    break;
+                case THAT_CONTAINS_ANY_ELEMENT:
+                    builder.thatContainsAnyElement();
+                    break;
+                case ADD_SUB_SPECIFICATION:
+                    builder.addSubSpecification(MultiFormatElementSpecification.create(operation.subSpecification, subSpecificationFormats(operation.subSpecification)));
+                    break;
+                case WITH_ID:
+                    builder.withId(operation.argument);
+                    break;
+                case WITH_CLASS:
+                    builder.withClass(operation.argument);
+                    break;
+                case WITH_ANY_OF_THESE_CLASSES:
+                    builder.withAnyOfTheseClasses(operation.arguments);
+                    break;
+                case WITHOUT_CLASS:
+                    builder.withoutClass(operation.argument);
+                    break;
+                case WITH_ATTRIBUTE:
+                    builder.withAttribute(operation.argument);
+                    break;
+                case WITHOUT_ATTRIBUTE:
+                    builder.withoutAttribute(operation.argument);
+                    break;
+                case WITH_ATTRIBUTE_CONTAINING:
+                    builder.withAttributeContaining(operation.argument, operation.secondArgument);
+                    break;
+                case WITH_ATTRIBUTE_VALUE:
+                    builder.withAttributeValue(operation.argument, operation.secondArgument);
+                    break;
+                case IN_POSITION:
+                    builder.inPosition(operation.position);
+                    break;
+                case IN_POSITION_OF_TYPE:
+                    builder.inPositionOfType(operation.position);
+                    break;
+                case WITH_TEXT:
+                    builder.withText(operation.argument);
+                    break;
+                case WITH_TEXT_CONTAINING:
+                    builder.withTextContaining(operation.argument);
+                    break;
+                case WITH_NUMERICAL_CONTENT:
+                    builder.withNumericalContent();
+                    break;
+                case WITH_NO_CHILDREN:
+                    builder.withNoChildren();
+                    break;
+                case THAT_IS_CHECKED:
+                    builder.thatIsChecked();
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected " + operation.type);
+            }
+        }
+    }
+
+    private static int subSpecificationFormats(final Operation operations)
+    {
+        int formats = LocatorFormat.ALL_FORMATS;
+        for (final Operation operation : operations.toArray())
+        {
+            formats &= operation.type.supportedFormats;
+        }
+        return formats;
+    }
+}
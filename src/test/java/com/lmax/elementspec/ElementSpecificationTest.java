@@ -17,10 +17,19 @@
 package com.lmax.elementspec;
 
 import org.junit.Test;
+import org.openqa.selenium.By;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 
+import static com.lmax.elementspec.ElementSpecification.anElement;
+import static com.lmax.elementspec.ElementSpecification.anElementOfType;
+import static com.lmax.elementspec.ElementSpecification.anElementWithId;
+import static com.lmax.elementspec.ElementSpecification.fromOldStyleSeleniumLocator;
+
 public class ElementSpecificationTest
 {
     @Test
@@ -41,4 +50,90 @@ public class ElementSpecificationTest
         assertThat(withBarClass, not(withDifferentChild));
         assertThat(withBarClass, not(baseSpec));
     }
+
+    @Test
+    public void shouldUseIdLocatorForAnElementWithId() throws Exception
+    {
+        assertThat(anElementWithId("foo").asSeleniumLocator(), is("foo"));
+        assertThat(anElementWithId("foo").asWebDriverLocator(), is(By.id("foo")));
+    }
+
+    @Test
+    public void shouldUseCssOnceAnIdIsRefined() throws Exception
+    {
+        assertThat(anElementWithId("foo").thatContainsA("a").asSeleniumLocator(), is("css=#foo a"));
+        assertThat(anElementWithId("foo").thatContainsA("a").asWebDriverLocator(), is(By.cssSelector("#foo a")));
+    }
+
+    @Test
+    public void shouldFallBackToXPathWhenCssCannotRepresentTheSpecification() throws Exception
+    {
+        assertThat(anElementWithId("foo").thatContainsA("td").withText("EUR/USD").asSeleniumLocator(), is("//*[@id='foo']//td[text() = 'EUR/USD']"));
+    }
+
+    @Test
+    public void shouldBeInvalidWhenNoFormatCanRepresentTheSpecification() throws Exception
+    {
+        assertFalse(anElement().withText("foo").thatIsChecked().isValid());
+    }
+
+    @Test
+    public void shouldAddSubSpecificationInAFormatBothSupport() throws Exception
+    {
+        assertThat(anElementOfType("table").addSubSpecification(anElementOfType("tr").withClass("row")).asSeleniumLocator(), is("css=table tr.row"));
+        assertThat(anElementOfType("table").addSubSpecification(anElementOfType("tr").withTextContaining("EUR")).asSeleniumLocator(),
+                   is("//table//tr[text()[contains(.,'EUR')]]"));
+    }
+
+    @Test
+    public void shouldOnlyRenderEachLocatorOnce() throws Exception
+    {
+        final ElementSpecification css = anElementWithId("foo").thatContainsA("a");
+        final ElementSpecification xpath = anElementWithId("foo").withText("a");
+        final ElementSpecification id = anElementWithId("foo");
+
+        assertThat(css.asWebDriverLocator(), sameInstance(css.asWebDriverLocator()));
+        assertThat(css.asSeleniumLocator(), sameInstance(css.asSeleniumLocator()));
+        assertThat(xpath.asWebDriverLocator(), sameInstance(xpath.asWebDriverLocator()));
+        assertThat(xpath.asSeleniumLocator(), sameInstance(xpath.asSeleniumLocator()));
+        assertThat(id.asWebDriverLocator(), sameInstance(id.asWebDriverLocator()));
+    }
+
+    @Test
+    public void shouldBeEqualToSpecificationBuiltTheSameWay() throws Exception
+    {
+        final ElementSpecification spec = anElementWithId("grid").thatContainsA("tr").withAttributeValue("data-id", "7").withAnyOfTheseClasses("a", "b");
+        final ElementSpecification sameSpec = anElementWithId("grid").thatContainsA("tr").withAttributeValue("data-id", "7").withAnyOfTheseClasses("a", "b");
+
+        assertThat(sameSpec, is(spec));
+        assertThat(sameSpec.hashCode(), is(spec.hashCode()));
+        assertThat(anElementWithId("grid").thatContainsA("td"), not(spec));
+        assertThat(anElementWithId("grid").thatContainsA("tr").withAttributeValue("data-id", "8").withAnyOfTheseClasses("a", "b"), not(spec));
+    }
+
+    @Test
+    public void shouldCompareSubSpecificationsStructurally() throws Exception
+    {
+        assertThat(anElementOfType("table").addSubSpecification(anElementOfType("tr").withClass("row")),
+                   is(anElementOfType("table").addSubSpecification(anElementOfType("tr").withClass("row"))));
+        assertThat(anElementOfType("table").addSubSpecification(anElementOfType("tr").withClass("row")),
+                   not(anElementOfType("table").addSubSpecification(anElementOfType("tr").withClass("other"))));
+    }
+
+    @Test
+    public void shouldReadOptimisedXPathLocatorsBackAsXPath() throws Exception
+    {
+        final ElementSpecification spec = anElementWithId("grid").thatContainsA("td").withAnyOfTheseClasses("a", "b").optimised();
+
+        assertThat(spec.asSeleniumLocator(), is("xpath=id('grid')//td[contains(concat(' ', @class, ' '), ' a ') or contains(concat(' ', @class, ' '), ' b ')]"));
+        assertThat(fromOldStyleSeleniumLocator(spec.asSeleniumLocator()).optimised().asWebDriverLocator(), is(spec.asWebDriverLocator()));
+    }
+
+    @Test
+    public void shouldRenderOptimisedSpecificationsInTheCheapestFormat() throws Exception
+    {
+        assertThat(anElement().withAttribute("name").optimised().asSeleniumLocator(), is("css=[name]"));
+        assertThat(anElementWithId("foo").withText("a").withAttribute("b").optimised().asSeleniumLocator(), is("xpath=id('foo')[@b and text() = 'a']"));
+        assertThat(anElement().withAttribute("name").optimised(), not(anElement().withAttribute("name")));
+    }
 }
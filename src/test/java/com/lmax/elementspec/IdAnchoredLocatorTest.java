@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.elementspec;
+
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+
+import javax.script.ScriptEngine;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import static com.lmax.elementspec.ElementSpecification.anElement;
+import static com.lmax.elementspec.ElementSpecification.anElementOfType;
+import static com.lmax.elementspec.ElementSpecification.anElementWithId;
+
+public class IdAnchoredLocatorTest
+{
+    private static final WebElement CELL = StubWebDriver.element("cell");
+
+    @Test
+    public void shouldUseTheUsualLocatorWhenTheSpecificationDoesNotStartWithAnId() throws Exception
+    {
+        assertThat(anElementOfType("table").thatContainsA("td").asIdAnchoredLocator(), is(By.cssSelector("table td")));
+        assertThat(anElementWithId("grid").asIdAnchoredLocator(), is(By.id("grid")));
+        assertThat(anElementWithId("grid").withClass("wide").thatContainsA("td").asIdAnchoredLocator(), is(By.cssSelector("#grid.wide td")));
+    }
+
+    @Test
+    public void shouldSearchForTheRestOfTheSpecificationWithinTheElementWithTheId() throws Exception
+    {
+        assertThat(anElementWithId("grid").thatContainsA("tr").withClass("row").thatContainsAChildOfType("td").asIdAnchoredLocator().toString(),
+                   is("By.idAnchored: id=grid css=:scope tr.row > td"));
+        assertThat(anElement().withId("grid").thatContainsAChildOfType("tr").asIdAnchoredLocator().toString(), is("By.idAnchored: id=grid css=:scope > tr"));
+        assertThat(anElementWithId("grid").addSubSpecification(anElementOfType("tr").withClass("row")).asIdAnchoredLocator().toString(),
+                   is("By.idAnchored: id=grid css=:scope tr.row"));
+    }
+
+    @Test
+    public void shouldSearchWithRelativeXPathWhenCssCannotRepresentTheRest() throws Exception
+    {
+        final ElementSpecification spec = anElementWithId("grid").thatContainsA("td").withText("EUR/USD");
+
+        assertThat(spec.asIdAnchoredLocator().toString(), is("By.idAnchored: id=grid xpath=.//td[text() = 'EUR/USD']"));
+        assertThat(script(spec), containsString("document.evaluate(\".//td[text() = 'EUR/USD']\", anchor, null, XPathResult.ORDERED_NODE_SNAPSHOT_TYPE, null)"));
+    }
+
+    @Test
+    public void shouldFindElementsWithASingleScript() throws Exception
+    {
+        final ElementSpecification spec = anElementWithId("grid").thatContainsA("td");
+        final StubWebDriver stub = new StubWebDriver().onExecuteScript((script, arguments) -> Collections.singletonList(CELL));
+
+        assertThat(spec.asIdAnchoredLocator().findElements(stub.javascriptDriver()), is(Collections.singletonList(CELL)));
+        assertThat(stub.scripts, is(Collections.singletonList(script(spec))));
+        assertThat(stub.findElementsCalls.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldFindTheAnchorByIdWhenScriptsCannotBeExecuted() throws Exception
+    {
+        final List<By> anchorSearches = new ArrayList<>();
+        final WebElement anchor = StubWebDriver.elementFinding("grid", anchorSearches, Collections.singletonList(CELL));
+        final StubWebDriver stub = new StubWebDriver().onFindElements(by -> Collections.singletonList(anchor));
+
+        assertThat(anElementWithId("grid").thatContainsA("td").asIdAnchoredLocator().findElements(stub.plainDriver()), is(Collections.singletonList(CELL)));
+        assertThat(stub.findElementsCalls, is(Collections.singletonList(By.id("grid"))));
+        assertThat(anchorSearches, is(Collections.singletonList(By.cssSelector(":scope td"))));
+    }
+
+    @Test
+    public void shouldFindNothingWhenThereIsNoElementWithTheId() throws Exception
+    {
+        final StubWebDriver stub = new StubWebDriver();
+
+        assertThat(anElementWithId("grid").thatContainsA("td").asIdAnchoredLocator().findElements(stub.plainDriver()).isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldOnlySearchWithinAnAnchorInsideTheSearchContext() throws Exception
+    {
+        final ScriptEngine engine = StubWebDriver.javaScriptEngine();
+        engine.eval("var cells = ['a', 'b'];\n" +
+                    "var grid = {querySelectorAll: function (selector) { return selector === ':scope td' ? cells : []; }};\n" +
+                    "var document = {getElementById: function (id) { return id === 'grid' ? grid : null; }};\n" +
+                    "var inside = {contains: function (e) { return e === grid; }}, outside = {contains: function () { return false; }};\n" +
+                    "function locate() {\n" + script(anElementWithId("grid").thatContainsA("td")) + "\n}");
+
+        assertThat(engine.eval("locate().join()"), is((Object)"a,b"));
+        assertThat(engine.eval("locate(inside).join()"), is((Object)"a,b"));
+        assertThat(engine.eval("locate(outside).length"), is((Object)0));
+        assertThat(engine.eval("locate(grid).length"), is((Object)0));
+    }
+
+    private static String script(final ElementSpecification spec)
+    {
+        final By locator = spec.asIdAnchoredLocator();
+        assertThat(locator, instanceOf(IdAnchoredLocator.class));
+        return ((IdAnchoredLocator)locator).getScript();
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+
+import javax.script.ScriptEngine;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import static com.lmax.elementspec.ElementSpecification.anElementOfType;
+import static com.lmax.elementspec.ElementSpecification.anElementWithId;
+
+public class JavaScriptLocatorTest
+{
+    private static final WebElement CELL = StubWebDriver.element("cell");
+
+    @Test
+    public void shouldUseTheCssLocatorWhenCssCanRepresentTheSpecification() throws Exception
+    {
+        assertThat(anElementWithId("grid").thatContainsA("td").asJavaScriptLocator(), is(By.cssSelector("#grid td")));
+        assertThat(anElementWithId("grid").asJavaScriptLocator(), is(By.id("grid")));
+    }
+
+    @Test
+    public void shouldQueryTheCssPrefixAndFilterTheRest() throws Exception
+    {
+        final ElementSpecification spec = anElementWithId("grid").thatContainsA("tr").withClass("row").thatContainsA("td").inPosition(1).withText("EUR/USD");
+
+        assertThat(spec.asJavaScriptLocator().toString(), is("By.javaScript: #grid tr.row td:nth-child(1) {hasText(e, \"EUR/USD\")}"));
+        assertThat(script(spec), containsString("found = find(found, \"#grid tr.row td:nth-child(1)\", function (e) { return hasText(e, \"EUR/USD\"); });\n"));
+    }
+
+    @Test
+    public void shouldUseTheUsualLocatorWhenAPositionFollowsAFilter() throws Exception
+    {
+        final ElementSpecification spec = anElementWithId("grid").thatContainsA("td").withText("EUR/USD").inPosition(2);
+
+        assertThat(spec.asJavaScriptLocator(), is(spec.asWebDriverLocator()));
+        assertThat(anElementOfType("td").withAnyOfTheseClasses("a", "b").inPositionOfType(1).asJavaScriptLocator(), instanceOf(By.ByXPath.class));
+    }
+
+    @Test
+    public void shouldSearchWithinFilteredElementsInLaterStages() throws Exception
+    {
+        final ElementSpecification spec = anElementOfType("tr").withAnyOfTheseClasses("a", "b").thatContainsAChildOfType("td").withNumericalContent().thatContainsAnyElement();
+
+        assertThat(spec.asJavaScriptLocator().toString(), is("By.javaScript: tr {hasAnyClass(e, [\"a\", \"b\"])} :scope > td {isNumber(e)} :scope *"));
+    }
+
+    @Test
+    public void shouldFlattenSubSpecifications() throws Exception
+    {
+        final ElementSpecification spec = anElementOfType("table").withTextContaining("x").addSubSpecification(anElementWithId("r").withClass("row").withText(""));
+
+        assertThat(spec.asJavaScriptLocator().toString(), is("By.javaScript: table {containsText(e, \"x\")} :scope #r.row {!e.firstChild}"));
+    }
+
+    @Test
+    public void shouldQuoteValuesAsJavaScriptStrings() throws Exception
+    {
+        assertThat(JavaScriptLocator.quote("a\"b\\c\nd\u2028"), is("\"a\\\"b\\\\c\\u000ad\\u2028\""));
+    }
+
+    @Test
+    public void shouldFindElementsWithASingleScript() throws Exception
+    {
+        final ElementSpecification spec = anElementOfType("td").withText("EUR/USD");
+        final StubWebDriver stub = new StubWebDriver().onExecuteScript((script, arguments) -> Collections.singletonList(CELL));
+
+        final List<WebElement> found = spec.asJavaScriptLocator().findElements(stub.javascriptDriver());
+
+        assertThat(found, is(Collections.singletonList(CELL)));
+        assertThat(stub.scripts, is(Collections.singletonList(script(spec))));
+        assertThat(stub.scriptArguments.get(0).length, is(0));
+    }
+
+    @Test
+    public void shouldSearchWithinAnElementUsingItsDriver() throws Exception
+    {
+        final ElementSpecification spec = anElementOfType("td").withText("EUR/USD");
+        final StubWebDriver stub = new StubWebDriver().onExecuteScript((script, arguments) -> Collections.singletonList(CELL));
+        final WebElement row = StubWebDriver.elementWrapping("row", stub.javascriptDriver());
+
+        assertThat(spec.asJavaScriptLocator().findElements(row), is(Collections.singletonList(CELL)));
+        assertThat(stub.scriptArguments.get(0)[0], sameInstance((Object)row));
+    }
+
+    @Test
+    public void shouldFallBackToXPathWhenScriptsCannotBeExecuted() throws Exception
+    {
+        final StubWebDriver stub = new StubWebDriver().onFindElements(by -> Collections.singletonList(CELL));
+
+        assertThat(anElementOfType("td").withText("EUR/USD").asJavaScriptLocator().findElements(stub.plainDriver()), is(Collections.singletonList(CELL)));
+        assertThat(stub.findElementsCalls, is(Collections.singletonList(By.xpath("//td[text() = 'EUR/USD']"))));
+    }
+
+    @Test
+    public void shouldGenerateValidJavaScript() throws Exception
+    {
+        final ScriptEngine engine = StubWebDriver.javaScriptEngine();
+        engine.eval("function check() {\n" + script(anElementOfType("tr").withAnyOfTheseClasses("a").thatContainsA("td").withText("x").withNumericalContent()) + "\n}");
+    }
+
+    @Test
+    public void shouldMatchTextLikeXPath() throws Exception
+    {
+        final ScriptEngine engine = StubWebDriver.javaScriptEngine();
+        engine.eval(JavaScriptLocator.HELPERS);
+        engine.eval("function node(type, data, next) { return {nodeType: type, data: data, nextSibling: next}; }\n" +
+                    "var cell = {firstChild: node(3, 'EUR', node(3, '/USD', node(1, null, node(3, ' 1.5 ', null)))), textContent: ' -1.5\\n'};");
+
+        assertThat(engine.eval("hasText(cell, 'EUR/USD')"), is((Object)true));
+        assertThat(engine.eval("hasText(cell, 'EUR')"), is((Object)false));
+        assertThat(engine.eval("containsText(cell, '1.5')"), is((Object)true));
+        assertThat(engine.eval("isNumber(cell)"), is((Object)true));
+        assertThat(engine.eval("isNumber({textContent: '1e5'})"), is((Object)false));
+        assertThat(engine.eval("hasAnyClass({getAttribute: function () { return 'row selected'; }}, ['x', 'selected'])"), is((Object)true));
+        assertThat(engine.eval("hasAnyClass({getAttribute: function () { return null; }}, ['row'])"), is((Object)false));
+    }
+
+    @Test
+    public void shouldMergeMatchesFromEachContextOnceInDocumentOrder() throws Exception
+    {
+        final ScriptEngine engine = StubWebDriver.javaScriptEngine();
+        engine.eval(JavaScriptLocator.HELPERS);
+        engine.eval("function element(order) { return {order: order, compareDocumentPosition: function (other) { return other.order > order ? 4 : 2; }}; }\n" +
+                    "var a = element(1), b = element(2), c = element(3);\n" +
+                    "var outer = {querySelectorAll: function () { return [a, b, c]; }}, inner = {querySelectorAll: function () { return [b]; }};");
+
+        assertThat(engine.eval("find([inner, outer], ':scope td', function (e) { return e !== a; }).map(function (e) { return e.order; }).join()"), is((Object)"2,3"));
+    }
+
+    private static String script(final ElementSpecification spec)
+    {
+        final By locator = spec.asJavaScriptLocator();
+        assertThat(locator, instanceOf(JavaScriptLocator.class));
+        return ((JavaScriptLocator)locator).getScript();
+    }
+}
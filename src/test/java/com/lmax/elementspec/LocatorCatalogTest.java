@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import static com.lmax.elementspec.ElementSpecification.anElementOfType;
+import static com.lmax.elementspec.ElementSpecification.anElementWithId;
+import static com.lmax.elementspec.ElementSpecification.fromOldStyleSeleniumLocator;
+
+public class LocatorCatalogTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldLookUpSpecificationsByKey() throws Exception
+    {
+        final Map<String, ElementSpecification> specifications = new LinkedHashMap<>();
+        specifications.put("login.button", anElementWithId("login"));
+        specifications.put("grid.row", anElementWithId("grid").thatContainsA("tr").withClass("row"));
+        specifications.put("grid.cell.\u00dcn\u00efc\u00f6d\u00e9", fromOldStyleSeleniumLocator("css=#grid td:nth-child(2)"));
+
+        final LocatorCatalog catalog = LocatorCatalog.open(write(specifications));
+
+        assertThat(catalog.size(), is(3));
+        for (final Map.Entry<String, ElementSpecification> entry : specifications.entrySet())
+        {
+            assertThat(catalog.get(entry.getKey()), is(entry.getValue()));
+        }
+        assertThat(new TreeSet<>(catalog.keys()), is(new TreeSet<>(specifications.keySet())));
+        assertThat(catalog.get("grid"), nullValue());
+        assertThat(catalog.contains("grid.row"), is(true));
+        assertThat(catalog.contains("grid.rows"), is(false));
+    }
+
+    @Test
+    public void shouldFindKeysWithCollidingHashes() throws Exception
+    {
+        final Map<String, ElementSpecification> specifications = new LinkedHashMap<>();
+        specifications.put("Aa", anElementOfType("td"));
+        specifications.put("BB", anElementOfType("th"));
+
+        final LocatorCatalog catalog = LocatorCatalog.open(write(specifications));
+
+        assertThat(catalog.get("Aa"), is(anElementOfType("td")));
+        assertThat(catalog.get("BB"), is(anElementOfType("th")));
+    }
+
+    @Test
+    public void shouldFindEveryKeyInALargeCatalog() throws Exception
+    {
+        final Map<String, ElementSpecification> specifications = new LinkedHashMap<>();
+        for (int i = 0; i < 10000; i++)
+        {
+            specifications.put("row." + i, anElementWithId("grid").thatContainsA("tr").inPosition(i));
+        }
+
+        final LocatorCatalog catalog = LocatorCatalog.open(write(specifications));
+
+        for (int i = 0; i < 10000; i++)
+        {
+            assertThat(catalog.get("row." + i).asSeleniumLocator(), is("css=#grid tr:nth-child(" + i + ")"));
+        }
+    }
+
+    @Test
+    public void shouldReturnTheSameInstanceForRepeatedLookups() throws Exception
+    {
+        final LocatorCatalog catalog = LocatorCatalog.open(write(Collections.singletonMap("row", anElementOfType("tr").withClass("row"))));
+
+        assertThat(catalog.get("row"), sameInstance(catalog.get("row")));
+    }
+
+    @Test
+    public void shouldOpenAnEmptyCatalog() throws Exception
+    {
+        final LocatorCatalog catalog = LocatorCatalog.open(write(Collections.emptyMap()));
+
+        assertThat(catalog.size(), is(0));
+        assertThat(catalog.get("row"), nullValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectFilesThatAreNotCatalogs() throws Exception
+    {
+        final Path path = folder.newFile().toPath();
+        Files.write(path, "login.button=login\n".getBytes("UTF-8"));
+        LocatorCatalog.open(path);
+    }
+
+    private Path write(final Map<String, ElementSpecification> specifications) throws Exception
+    {
+        final Path path = folder.newFile().toPath();
+        LocatorCatalog.write(path, specifications);
+        return path;
+    }
+}
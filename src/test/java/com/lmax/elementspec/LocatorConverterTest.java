@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+public class LocatorConverterTest
+{
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private final StringWriter output = new StringWriter();
+    private final LocatorConverter converter = new LocatorConverter(pool, output);
+
+    @After
+    public void tearDown()
+    {
+        pool.shutdown();
+    }
+
+    @Test
+    public void shouldWriteTheFormatAndConvertedLocatorForEachLine() throws Exception
+    {
+        converter.convert(new StringReader("login\n\ncss=#grid tr.row\n//td[@title]\n(//td)[2]\n"), "locators.txt", false);
+
+        assertThat(output.toString(), is(
+                "locators.txt:1\tlogin\tID\tlogin\n" +
+                "locators.txt:3\tcss=#grid tr.row\tCSS\tcss=#grid tr.row\n" +
+                "locators.txt:4\t//td[@title]\tCSS\tcss=td[title]\n" +
+                "locators.txt:5\t(//td)[2]\tXPATH\t(//td)[2]\n"));
+    }
+
+    @Test
+    public void shouldReportFormatsAndXPathFallbacks() throws Exception
+    {
+        converter.convert(new StringReader("login\ncss=th + td\n//td[@title]\n(//td)[2]\n"), "locators.txt", false);
+
+        final LocatorConverter.Report report = converter.getReport();
+        assertThat(report.getTotal(), is(4L));
+        assertThat(report.getCount(LocatorFormat.ID), is(1L));
+        assertThat(report.getCount(LocatorFormat.CSS), is(2L));
+        assertThat(report.getCount(LocatorFormat.XPATH), is(1L));
+        assertThat(report.getXPathInputs(), is(2L));
+        assertThat(report.getXPathFallbacks(), is(1L));
+        assertThat(report.toString(), startsWith("Converted 4 locators from 1 source(s)"));
+    }
+
+    @Test
+    public void shouldReadTheValuesOfPropertiesFiles() throws Exception
+    {
+        converter.convert(new StringReader("# Grid\nlogin.button = login\ngrid.row:css=#grid \\\n    tr.row\n! done\nescaped\\ key=css=[title\\=\"a\"]\n"), "page.properties", true);
+
+        assertThat(output.toString(), is(
+                "page.properties:login.button\tlogin\tID\tlogin\n" +
+                "page.properties:grid.row\tcss=#grid tr.row\tCSS\tcss=#grid tr.row\n" +
+                "page.properties:escaped key\tcss=[title=\"a\"]\tCSS\tcss=*[title=\"a\"]\n"));
+    }
+
+    @Test
+    public void shouldReportPropertiesWithMalformedUnicodeEscapesAsInvalid() throws Exception
+    {
+        converter.convert(new StringReader("login.button = login\ngrid.cell = css=td.\\u00zz\ngrid.row = css=tr.\\u+041\ngrid = grid\\u\n"), "page.properties", true);
+
+        assertThat(output.toString(), is(
+                "page.properties:login.button\tlogin\tID\tlogin\n" +
+                "page.properties:2\tcss=td.\\\\u00zz\tINVALID\tMalformed \\\\uxxxx encoding.\n" +
+                "page.properties:3\tcss=tr.\\\\u+041\tINVALID\tMalformed \\\\uxxxx encoding.\n" +
+                "page.properties:4\tgrid\\\\u\tINVALID\tMalformed \\\\uxxxx encoding.\n"));
+        assertThat(converter.getReport().getInvalid(), is(3L));
+    }
+
+    @Test
+    public void shouldEscapeTabsAndBackslashesInFields() throws Exception
+    {
+        converter.convert(new StringReader("a\tb\nc\\d\n"), "locators.txt", false);
+
+        assertThat(output.toString(), is("locators.txt:1\ta\\tb\tID\ta\\tb\nlocators.txt:2\tc\\\\d\tID\tc\\\\d\n"));
+    }
+
+    @Test
+    public void shouldKeepTheInputOrderAcrossChunks() throws Exception
+    {
+        final StringBuilder input = new StringBuilder();
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 1; i <= 20000; i++)
+        {
+            input.append("id").append(i).append('\n');
+            expected.append("ids.txt:").append(i).append("\tid").append(i).append("\tID\tid").append(i).append('\n');
+        }
+
+        converter.convert(new StringReader(input.toString()), "ids.txt", false);
+
+        assertThat(output.toString(), is(expected.toString()));
+        assertThat(converter.getReport().getTotal(), is(20000L));
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.InvalidSelectorException;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.FindsByCssSelector;
+
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import static com.lmax.elementspec.ElementSpecification.anElementOfType;
+import static com.lmax.elementspec.ElementSpecification.anElementWithId;
+
+public class LookupStatisticsTest
+{
+    private static final WebElement CELL = StubWebDriver.element("cell");
+
+    private final LookupStatistics statistics = new LookupStatistics();
+
+    @After
+    public void tearDown()
+    {
+        LookupListener.unregister();
+    }
+
+    @Test
+    public void shouldOnlyTimeLocatorsWhileAListenerIsRegistered()
+    {
+        final ElementSpecification spec = anElementWithId("grid").thatContainsA("td");
+        assertThat(spec.asWebDriverLocator(), not(instanceOf(TimedBy.class)));
+
+        LookupListener.register(statistics);
+        assertThat(spec.asWebDriverLocator(), instanceOf(TimedBy.class));
+        assertThat(spec.asWebDriverLocator(), is(TimedBy.timed(spec, By.cssSelector("#grid td"))));
+        assertThat(spec.asWebDriverLocator(), not(By.cssSelector("#grid td")));
+        assertThat(By.cssSelector("#grid td"), not(spec.asWebDriverLocator()));
+        assertThat(spec.asWebDriverLocator().toString(), is(By.cssSelector("#grid td").toString()));
+        assertThat(anElementOfType("td").withText("1.1").asJavaScriptLocator(), instanceOf(TimedBy.class));
+
+        LookupListener.unregister();
+        assertThat(spec.asWebDriverLocator(), not(instanceOf(TimedBy.class)));
+    }
+
+    @Test
+    public void shouldRecordMatchesAndMissesForEachLocator()
+    {
+        LookupListener.register(statistics);
+        final ElementSpecification spec = anElementWithId("timed-grid").thatContainsA("td");
+
+        lookUp(spec, Arrays.asList(CELL, CELL)).findElements(null);
+        lookUp(spec, Collections.<WebElement>emptyList()).findElements(null);
+        lookUp(spec, Collections.singletonList(CELL)).findElement(null);
+        try
+        {
+            lookUp(spec, Collections.<WebElement>emptyList()).findElement(null);
+            fail();
+        }
+        catch (final NoSuchElementException expected)
+        {
+            // expected
+        }
+
+        final LookupStatistics.Summary summary = statistics.getSummary("css=#timed-grid td");
+        assertThat(summary.getLookups(), is(4L));
+        assertThat(summary.getNotFound(), is(2L));
+        assertThat(summary.getNotFoundRate(), is(0.5));
+        assertThat(summary.getErrors(), is(0L));
+        assertThat(summary.getMeanMatches(), is(0.75));
+        assertThat(statistics.getSummary("css=#grid td"), nullValue());
+    }
+
+    @Test
+    public void shouldTimeBuilderLocatorsUnderTheSameLocatorAsTheEquivalentSpecification()
+    {
+        final ElementSpecificationBuilder builder = new ElementSpecificationBuilder().anElementWithId("built-grid").thatContainsA("td");
+        assertThat(builder.asWebDriverLocator(), not(instanceOf(TimedBy.class)));
+
+        LookupListener.register(statistics);
+        final By locator = builder.asWebDriverLocator();
+        assertThat(locator, instanceOf(TimedBy.class));
+        assertThat(locator, is(anElementWithId("built-grid").thatContainsA("td").asWebDriverLocator()));
+
+        final SearchContext context = (SearchContext)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {SearchContext.class, FindsByCssSelector.class},
+                (proxy, method, arguments) -> Collections.singletonList(CELL));
+        locator.findElements(context);
+        assertThat(statistics.getSummary(builder.toSpecification().asSeleniumLocator()).getLookups(), is(1L));
+    }
+
+    @Test
+    public void shouldCountOtherFailuresAsErrors()
+    {
+        statistics.onLookup("css=td[", 10, 0, new InvalidSelectorException("td["));
+
+        assertThat(statistics.getSummary("css=td[").getErrors(), is(1L));
+        assertThat(statistics.getSummary("css=td[").getNotFound(), is(0L));
+    }
+
+    @Test
+    public void shouldReportPercentilesWithinAnEighth()
+    {
+        for (long nanos = 1; nanos <= 1000; nanos++)
+        {
+            statistics.onLookup("td", TimeUnit.MICROSECONDS.toNanos(nanos), 1, null);
+        }
+
+        final LookupStatistics.Summary summary = statistics.getSummary("td");
+        assertWithinAnEighth(summary.getPercentileNanos(50), 500_000);
+        assertWithinAnEighth(summary.getPercentileNanos(90), 900_000);
+        assertWithinAnEighth(summary.getPercentileNanos(99), 990_000);
+        assertThat(summary.getPercentileNanos(100), is(1_000_000L));
+        assertThat(summary.getMaxNanos(), is(1_000_000L));
+        assertThat(summary.getMeanNanos(), is(500_500.0));
+    }
+
+    @Test
+    public void shouldPlaceEveryLatencyInABucketThatBoundsIt()
+    {
+        for (long nanos = 0; nanos < 100_000; nanos += 7)
+        {
+            final int bucket = LookupStatistics.bucket(nanos);
+            assertThat(nanos + " > " + LookupStatistics.upperBound(bucket), nanos <= LookupStatistics.upperBound(bucket), is(true));
+            assertThat(nanos + " <= " + LookupStatistics.upperBound(bucket - 1), bucket == 0 || nanos > LookupStatistics.upperBound(bucket - 1), is(true));
+        }
+        assertThat(LookupStatistics.upperBound(LookupStatistics.bucket(Long.MAX_VALUE)), is(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void shouldCountEveryLookupFromParallelThreads() throws Exception
+    {
+        final ForkJoinPool pool = new ForkJoinPool(8);
+        try
+        {
+            pool.submit(() -> IntStream.range(0, 80_000).parallel().forEach(i -> statistics.onLookup("locator" + i % 8, i, 1, null))).get();
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        assertThat(statistics.getSummaries().size(), is(8));
+        for (final LookupStatistics.Summary summary : statistics.getSummaries())
+        {
+            assertThat(summary.getLookups(), is(10_000L));
+        }
+    }
+
+    @Test
+    public void shouldWriteTextAndCsvSlowestFirst() throws Exception
+    {
+        statistics.onLookup("css=td", 2_000, 1, null);
+        statistics.onLookup("//td[text()=\"a\"]", 5_000, 0, new NoSuchElementException("//td"));
+
+        final StringWriter csv = new StringWriter();
+        statistics.writeCsv(csv);
+        assertThat(csv.toString(), is(
+                "locator,lookups,not_found,not_found_rate,errors,mean_matches,mean_us,p50_us,p90_us,p99_us,max_us,total_us\n" +
+                "\"//td[text()=\"\"a\"\"]\",1,1,1.0000,0,0.00,5.0,5.0,5.0,5.0,5.0,5.0\n" +
+                "\"css=td\",1,0,0.0000,0,1.00,2.0,2.0,2.0,2.0,2.0,2.0\n"));
+
+        final String[] lines = statistics.toString().split("\n");
+        assertThat(lines.length, is(3));
+        assertThat(lines[1].endsWith("  //td[text()=\"a\"]"), is(true));
+        assertThat(lines[2].endsWith("  css=td"), is(true));
+    }
+
+    private static By lookUp(final ElementSpecification spec, final List<WebElement> found)
+    {
+        return TimedBy.timed(spec, new By()
+        {
+            @Override
+            public List<WebElement> findElements(final SearchContext context)
+            {
+                return found;
+            }
+        });
+    }
+
+    private static void assertWithinAnEighth(final long actual, final long expected)
+    {
+        assertThat(actual + " vs " + expected, Math.abs(actual - expected) <= expected / 8, is(true));
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class OptimisedXPathEquivalenceTest
+{
+    private static final RandomSpecifications RANDOM = new RandomSpecifications(42);
+
+    private static Document document;
+
+    private final XPath xpath = XPathFactory.newInstance().newXPath();
+
+    @BeforeClass
+    public static void createDocument() throws Exception
+    {
+        document = RANDOM.document();
+    }
+
+    @Test
+    public void shouldSelectTheSameElementsWhenOptimised() throws Exception
+    {
+        for (int i = 0; i < 2000; i++)
+        {
+            final ElementSpecification spec = RANDOM.specification(OptimisedXPathEquivalenceTest::anElementOfType, false);
+            final NodeList expected = evaluate(LocatorFormat.XPATH.selector(spec));
+            final String optimised = LocatorFormat.XPATH.selector(spec.optimised());
+            final NodeList actual = evaluate(optimised);
+
+            assertEquals(spec + " => " + optimised, expected.getLength(), actual.getLength());
+            for (int node = 0; node < expected.getLength(); node++)
+            {
+                assertSame(spec + " => " + optimised, expected.item(node), actual.item(node));
+            }
+        }
+    }
+
+    private static ElementSpecification anElementOfType(final String tagName)
+    {
+        return "*".equals(tagName) ? XPathElementSpecification.anElement() : XPathElementSpecification.anElementOfType(tagName);
+    }
+
+    private NodeList evaluate(final String expression) throws Exception
+    {
+        return (NodeList)xpath.evaluate(expression, document, XPathConstants.NODESET);
+    }
+}
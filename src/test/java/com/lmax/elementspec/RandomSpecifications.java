@@ -0,0 +1,154 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Generates random documents and specifications from a fixed seed, for tests that check two ways of finding elements agree.
+ */
+final class RandomSpecifications
+{
+    private static final String[] TAG_NAMES = {"div", "table", "tr", "td", "span"};
+    private static final String[] CLASS_NAMES = {"a", "b", "c"};
+    private static final String[] ATTRIBUTE_NAMES = {"name", "title"};
+    private static final String[] VALUES = {"x", "y"};
+    private static final String[] TEXTS = {"1", "2.5", "foo", "foo bar", ""};
+
+    private final Random random;
+    private int elementCount;
+
+    RandomSpecifications(final long seed)
+    {
+        random = new Random(seed);
+    }
+
+    /**
+     * Create a document whose elements have a mixture of ids, classes, attributes and text. Ids are registered as DOM ids so {@code id()} can find them.
+     */
+    Document document() throws Exception
+    {
+        final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        final Element root = document.createElement("html");
+        document.appendChild(root);
+        populate(document, root, 0);
+        return document;
+    }
+
+    ElementSpecification specification(final Function<String, ElementSpecification> elementOfType, final boolean includeSubSpecifications)
+    {
+        ElementSpecification spec = start(elementOfType);
+        final int length = 1 + random.nextInt(6);
+        for (int i = 0; i < length; i++)
+        {
+            if (includeSubSpecifications && random.nextInt(10) == 0)
+            {
+                spec = spec.addSubSpecification(refine(start(elementOfType)));
+            }
+            else
+            {
+                spec = refine(spec);
+            }
+        }
+        return spec;
+    }
+
+    private ElementSpecification start(final Function<String, ElementSpecification> elementOfType)
+    {
+        return elementOfType.apply(random.nextBoolean() ? "*" : pick(TAG_NAMES));
+    }
+
+    private void populate(final Document document, final Element parent, final int depth)
+    {
+        final int children = depth == 0 ? 4 : random.nextInt(5 - depth);
+        for (int i = 0; i < children; i++)
+        {
+            final Element element = document.createElement(pick(TAG_NAMES));
+            if (random.nextInt(3) == 0)
+            {
+                element.setAttribute("id", "e" + elementCount);
+                element.setIdAttribute("id", true);
+            }
+            elementCount++;
+            if (random.nextBoolean())
+            {
+                element.setAttribute("class", pick(CLASS_NAMES) + (random.nextBoolean() ? " " + pick(CLASS_NAMES) : ""));
+            }
+            if (random.nextBoolean())
+            {
+                element.setAttribute(pick(ATTRIBUTE_NAMES), pick(VALUES));
+            }
+            parent.appendChild(element);
+            if (depth < 3 && random.nextBoolean())
+            {
+                populate(document, element, depth + 1);
+            }
+            else
+            {
+                element.setTextContent(pick(TEXTS));
+            }
+        }
+    }
+
+    private ElementSpecification refine(final ElementSpecification spec)
+    {
+        switch (random.nextInt(16))
+        {
+            case 0:
+                return spec.thatContainsA(pick(TAG_NAMES));
+            case 1:
+                return spec.thatContainsAChildOfType(pick(TAG_NAMES));
+            case 2:
+                return spec.thatContainsAnyElement();
+            case 3:
+            case 4:
+                return spec.withId("e" + random.nextInt(Math.max(1, elementCount)));
+            case 5:
+                return spec.withClass(pick(CLASS_NAMES));
+            case 6:
+                return spec.withoutClass(pick(CLASS_NAMES));
+            case 7:
+                return spec.withAnyOfTheseClasses(pick(CLASS_NAMES), pick(CLASS_NAMES));
+            case 8:
+                return spec.withAttribute(pick(ATTRIBUTE_NAMES));
+            case 9:
+                return spec.withoutAttribute(pick(ATTRIBUTE_NAMES));
+            case 10:
+                return spec.withAttributeValue(pick(ATTRIBUTE_NAMES), pick(VALUES));
+            case 11:
+                return spec.withAttributeContaining(pick(ATTRIBUTE_NAMES), pick(VALUES));
+            case 12:
+                return random.nextBoolean() ? spec.inPosition(1 + random.nextInt(3)) : spec.inPositionOfType(1 + random.nextInt(3));
+            case 13:
+                return spec.withText(pick(TEXTS));
+            case 14:
+                return spec.withTextContaining("foo");
+            default:
+                return random.nextBoolean() ? spec.withNumericalContent() : spec.withNoChildren();
+        }
+    }
+
+    private String pick(final String[] values)
+    {
+        return values[random.nextInt(values.length)];
+    }
+}
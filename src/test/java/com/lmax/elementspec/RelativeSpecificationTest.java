@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.elementspec;
+
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import static com.lmax.elementspec.ElementSpecification.anElement;
+import static com.lmax.elementspec.ElementSpecification.anElementOfType;
+import static com.lmax.elementspec.ElementSpecification.anElementWithId;
+import static com.lmax.elementspec.ElementSpecification.fromOldStyleSeleniumLocator;
+
+public class RelativeSpecificationTest
+{
+    private static final WebElement CELL = StubWebDriver.element("cell");
+
+    @Test
+    public void shouldRenderCssRelativeToTheScope() throws Exception
+    {
+        assertThat(anElementOfType("tr").withClass("row").thatContainsAChildOfType("td").relative().asSeleniumLocator(), is("css=:scope tr.row > td"));
+        assertThat(anElementWithId("price").relative().asSeleniumLocator(), is("css=:scope #price"));
+        assertThat(anElement().relative().asSeleniumLocator(), is("css=:scope *"));
+    }
+
+    @Test
+    public void shouldRenderXPathRelativeToTheContextNode() throws Exception
+    {
+        assertThat(anElementOfType("td").withText("EUR/USD").relative().asSeleniumLocator(), is("xpath=.//td[text() = 'EUR/USD']"));
+        assertThat(anElementOfType("tr").thatContainsAChildOfType("td").withTextContaining("1.").relative().asSeleniumLocator(), is("xpath=.//tr/td[text()[contains(.,'1.')]]"));
+    }
+
+    @Test
+    public void shouldNotMakeARelativeSpecificationRelativeAgain() throws Exception
+    {
+        final ElementSpecification relative = anElementOfType("td").relative();
+
+        assertThat(relative.relative(), is(relative));
+    }
+
+    @Test
+    public void shouldOnlyMakeVerbatimLocatorsRelativeWhenTheyKeepTheirMeaning() throws Exception
+    {
+        assertThat(fromOldStyleSeleniumLocator("css=label ~ input").relative().asSeleniumLocator(), is("css=:scope label ~ input"));
+        assertThat(fromOldStyleSeleniumLocator("//label/following-sibling::input").relative().asSeleniumLocator(), is("xpath=.//label/following-sibling::input"));
+        assertThat(fromOldStyleSeleniumLocator("css=td, th").relative().isValid(), is(false));
+        assertThat(fromOldStyleSeleniumLocator("(//td)[1]").relative().isValid(), is(false));
+    }
+
+    @Test
+    public void shouldContinueTheChainWhenARelativeSpecificationIsAdded() throws Exception
+    {
+        final ElementSpecification cell = anElementOfType("td").withText("EUR/USD").relative();
+
+        assertThat(anElementOfType("tr").addSubSpecification(cell), is(anElementOfType("tr").thatContainsA("td").withText("EUR/USD")));
+        assertThat(anElementOfType("td").within(anElementOfType("tr").withClass("row")).asSeleniumLocator(), is("css=tr.row td"));
+        assertThat(cell.within(anElementWithId("grid")).asSeleniumLocator(), is("//*[@id='grid']//td[text() = 'EUR/USD']"));
+    }
+
+    @Test
+    public void shouldSearchWithinAnElementWhateverTheSearchContext() throws Exception
+    {
+        final List<By> searches = new ArrayList<>();
+        final WebElement row = StubWebDriver.elementFinding("row", searches, Collections.singletonList(CELL));
+        final StubWebDriver stub = new StubWebDriver();
+
+        assertThat(anElementOfType("td").withText("EUR/USD").within(row).findElements(stub.plainDriver()), is(Collections.singletonList(CELL)));
+        assertThat(anElementOfType("td").within(row).findElements(stub.javascriptDriver()), is(Collections.singletonList(CELL)));
+        assertThat(searches.get(0), is(By.xpath(".//td[text() = 'EUR/USD']")));
+        assertThat(stub.findElementsCalls.isEmpty(), is(true));
+        assertThat(searches.get(1), is(By.cssSelector(":scope td")));
+    }
+
+    @Test
+    public void shouldScriptTheRelativeSearchWhenCssCannotRepresentIt() throws Exception
+    {
+        assertThat(anElementOfType("td").withText("EUR/USD").relative().asJavaScriptLocator().toString(), is("By.javaScript: :scope td {hasText(e, \"EUR/USD\")}"));
+    }
+
+    @Test
+    public void shouldEncodeRelativeSpecifications() throws Exception
+    {
+        final ElementSpecification relative = anElementOfType("tr").thatContainsA("td").withText("x").relative();
+
+        assertThat(SpecificationCodec.decode(SpecificationCodec.encode(relative)), is(relative));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openqa.selenium.By;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static com.lmax.elementspec.ElementSpecification.anElementOfType;
+import static com.lmax.elementspec.ElementSpecification.anElementWithId;
+
+public class SelectorCostModelTest
+{
+    private static final SelectorCostModel PREFER_XPATH = (format, selector) -> format == LocatorFormat.XPATH ? 0 : 1;
+
+    @After
+    public void tearDown()
+    {
+        SelectorCostModel.register(SelectorCostModel.DEFAULT);
+    }
+
+    @Test
+    public void shouldPreferIdThenCssThenXPathByDefault() throws Exception
+    {
+        assertThat(anElementWithId("grid").asWebDriverLocator(), is(By.id("grid")));
+        assertThat(anElementWithId("grid").thatContainsA("tr").asWebDriverLocator(), is(By.cssSelector("#grid tr")));
+        assertThat(anElementWithId("grid").thatContainsA("tr").withText("EUR").asWebDriverLocator(), is(By.xpath("//*[@id='grid']//tr[text() = 'EUR']")));
+    }
+
+    @Test
+    public void shouldChooseTheCheapestFormatAccordingToTheRegisteredModel() throws Exception
+    {
+        SelectorCostModel.register(PREFER_XPATH);
+
+        assertThat(anElementWithId("grid").thatContainsA("tr").asWebDriverLocator(), is(By.xpath("//*[@id='grid']//tr")));
+        assertThat(anElementWithId("grid").thatContainsA("tr").asSeleniumLocator(), is("//*[@id='grid']//tr"));
+    }
+
+    @Test
+    public void shouldNotChooseAFormatThatCannotRepresentTheSpecification() throws Exception
+    {
+        SelectorCostModel.register(PREFER_XPATH);
+
+        assertThat(anElementOfType("input").thatIsChecked().asWebDriverLocator(), is(By.cssSelector("input:checked")));
+    }
+
+    @Test
+    public void shouldReconsiderTheFormatWhenADifferentModelIsRegistered() throws Exception
+    {
+        final ElementSpecification spec = anElementOfType("table").thatContainsA("tr");
+        assertThat(spec.asSeleniumLocator(), is("css=table tr"));
+
+        SelectorCostModel.register(PREFER_XPATH);
+        assertThat(spec.asSeleniumLocator(), is("//table//tr"));
+    }
+
+    @Test
+    public void shouldPassSelectorsWithoutSeleniumPrefixToTheModel() throws Exception
+    {
+        final StringBuilder seen = new StringBuilder();
+        SelectorCostModel.register((format, selector) ->
+        {
+            seen.append(format).append('=').append(selector).append(';');
+            return 0;
+        });
+
+        anElementWithId("grid").asSeleniumLocator();
+
+        assertThat(seen.toString(), is("ID=grid;CSS=#grid;XPATH=//*[@id='grid'];"));
+    }
+
+    @Test
+    public void shouldPenaliseExpensiveConstructsInTheDefaultModel() throws Exception
+    {
+        final SelectorCostModel model = SelectorCostModel.DEFAULT;
+        assertTrue(model.cost(LocatorFormat.CSS, "* .price") > model.cost(LocatorFormat.CSS, "table .price"));
+        assertTrue(model.cost(LocatorFormat.CSS, ".a:not(.b):not(.c)") > model.cost(LocatorFormat.CSS, ".a"));
+        assertTrue(model.cost(LocatorFormat.XPATH, "//td[text() = 'x']") > model.cost(LocatorFormat.XPATH, "//td[@x]"));
+        assertTrue(model.cost(LocatorFormat.XPATH, "//td[contains(concat(' ', @class, ' '), ' a ')]") > model.cost(LocatorFormat.XPATH, "//td[@class]"));
+        assertTrue(model.cost(LocatorFormat.XPATH, "//td") > model.cost(LocatorFormat.CSS, "td"));
+    }
+
+    @Test
+    public void shouldOnlyCountWhitespaceBetweenStepsAsDescendantSteps() throws Exception
+    {
+        final SelectorCostModel model = SelectorCostModel.DEFAULT;
+        final double twoSteps = model.cost(LocatorFormat.CSS, "table td");
+        assertThat(model.cost(LocatorFormat.CSS, "table > td"), is(model.cost(LocatorFormat.CSS, "table>td")));
+        assertThat(model.cost(LocatorFormat.CSS, "table[title=\"a b c\"] td"), is(twoSteps));
+        assertThat(model.cost(LocatorFormat.CSS, "table:not([title='a b']) td") - model.cost(LocatorFormat.CSS, "table:not([title]) td"), is(0.0));
+        assertThat(model.cost(LocatorFormat.CSS, "#\\31 23 td"), is(model.cost(LocatorFormat.CSS, "#a td")));
+        assertTrue(model.cost(LocatorFormat.CSS, "table tr td") > twoSteps);
+        assertThat(anElementOfType("a").withAttributeValue("title", "a b c d e f g h i j k l m n").asWebDriverLocator(),
+                   is(By.cssSelector("a[title=\"a b c d e f g h i j k l m n\"]")));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static com.lmax.elementspec.ElementSpecification.anElementWithId;
+
+public class SpecificationCacheTest
+{
+    @After
+    public void tearDown()
+    {
+        SpecificationCache.disable();
+    }
+
+    @Test
+    public void shouldNotInternSpecificationsWhenDisabled() throws Exception
+    {
+        assertFalse(SpecificationCache.isEnabled());
+        assertThat(anElementWithId("grid").thatContainsA("tr").asWebDriverLocator(), not(sameInstance(anElementWithId("grid").thatContainsA("tr").asWebDriverLocator())));
+    }
+
+    @Test
+    public void shouldShareTheRenderedLocatorsOfIdenticalChains() throws Exception
+    {
+        SpecificationCache.enable(100);
+
+        final ElementSpecification first = anElementWithId("grid").thatContainsA("tr").inPosition(3);
+        final ElementSpecification second = anElementWithId("grid").thatContainsA("tr").inPosition(3);
+
+        assertTrue(SpecificationCache.isEnabled());
+        assertThat(second.asWebDriverLocator(), sameInstance(first.asWebDriverLocator()));
+        assertThat(second.asSeleniumLocator(), sameInstance(first.asSeleniumLocator()));
+        assertThat(SpecificationCache.misses(), is(1L));
+        assertThat(SpecificationCache.hits(), is(1L));
+    }
+
+    @Test
+    public void shouldOnlyCacheSpecificationsThatAreRendered() throws Exception
+    {
+        SpecificationCache.enable(100);
+
+        anElementWithId("grid").thatContainsA("tr").withClass("row").thatContainsA("td").asWebDriverLocator();
+
+        assertThat(SpecificationCache.size(), is(1));
+    }
+
+    @Test
+    public void shouldEvictEntriesToStayWithinMaximumSize() throws Exception
+    {
+        SpecificationCache.enable(32);
+
+        for (int i = 0; i < 1000; i++)
+        {
+            anElementWithId("row-" + i).asWebDriverLocator();
+        }
+
+        assertTrue(SpecificationCache.size() <= 32);
+        assertThat(SpecificationCache.evictions(), is(1000L - SpecificationCache.size()));
+    }
+
+    @Test
+    public void shouldNeverHoldMoreThanASmallMaximumSize() throws Exception
+    {
+        SpecificationCache.enable(3);
+
+        for (int i = 0; i < 1000; i++)
+        {
+            anElementWithId("cell-" + i).asWebDriverLocator();
+        }
+
+        assertTrue(SpecificationCache.size() <= 3);
+    }
+
+    @Test
+    public void shouldResolveToASingleInstanceWhenUsedConcurrently() throws Exception
+    {
+        SpecificationCache.enable(10_000);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try
+        {
+            final List<Future<List<ElementSpecification>>> results = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++)
+            {
+                results.add(executor.submit(buildSpecifications()));
+            }
+
+            final List<ElementSpecification> expected = results.get(0).get();
+            for (final Future<List<ElementSpecification>> result : results)
+            {
+                final List<ElementSpecification> actual = result.get();
+                for (int i = 0; i < expected.size(); i++)
+                {
+                    assertThat(actual.get(i).asWebDriverLocator(), sameInstance(expected.get(i).asWebDriverLocator()));
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private Callable<List<ElementSpecification>> buildSpecifications()
+    {
+        return () ->
+        {
+            final List<ElementSpecification> specifications = new ArrayList<>();
+            for (int i = 0; i < 500; i++)
+            {
+                specifications.add(anElementWithId("grid").thatContainsA("tr").inPosition(i).thatContainsAnElementWithClass("price"));
+            }
+            return specifications;
+        };
+    }
+}
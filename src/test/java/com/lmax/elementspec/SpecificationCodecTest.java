@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import static com.lmax.elementspec.ElementSpecification.anElement;
+import static com.lmax.elementspec.ElementSpecification.anElementOfType;
+import static com.lmax.elementspec.ElementSpecification.anElementWithId;
+import static com.lmax.elementspec.ElementSpecification.fromOldStyleSeleniumLocator;
+
+public class SpecificationCodecTest
+{
+    @Test
+    public void shouldDecodeTheSameSpecification()
+    {
+        final ElementSpecification spec = anElementWithId("grid").thatContainsA("tr").withAttributeValue("data-id", "EUR/USD").inPosition(2)
+                .thatContainsAChildOfType("td").withAnyOfTheseClasses("bid", "ask").withTextContaining("1.1");
+
+        assertDecodesTo(spec, "//*[@id='grid']//tr[@data-id='EUR/USD'][2]/td[contains(concat(' ', @class, ' '), ' bid ') or " +
+                              "contains(concat(' ', @class, ' '), ' ask ')][text()[contains(.,'1.1')]]");
+    }
+
+    @Test
+    public void shouldDecodeSubSpecificationsAndNegativePositions()
+    {
+        final ElementSpecification spec = anElementOfType("table").addSubSpecification(anElementOfType("tr").withClass("row")).inPositionOfType(-1);
+
+        assertThat(SpecificationCodec.decode(SpecificationCodec.encode(spec)), is(spec));
+    }
+
+    @Test
+    public void shouldPreserveOptimisation()
+    {
+        final ElementSpecification spec = anElementOfType("td").withClass("cell").withText("x").optimised();
+
+        assertThat(SpecificationCodec.decode(SpecificationCodec.encode(spec)).asSeleniumLocator(), is(spec.asSeleniumLocator()));
+    }
+
+    @Test
+    public void shouldPreserveFormatsRestrictedByOldStyleLocators()
+    {
+        assertDecodesTo(fromOldStyleSeleniumLocator("css=#grid td:nth-child(2)").withClass("a"), "css=#grid td.a:nth-child(2)");
+        assertDecodesTo(fromOldStyleSeleniumLocator("css=th + td").withClass("a"), "css=th + td .a");
+        assertDecodesTo(fromOldStyleSeleniumLocator("(//td)[2]"), "(//td)[2]");
+    }
+
+    @Test
+    public void shouldDecodeInvalidSpecificationsAsInvalid()
+    {
+        final ElementSpecification spec = SpecificationCodec.decode(SpecificationCodec.encode(anElement().withAnyOfTheseClasses("a").withClass("b").thatIsChecked()));
+
+        assertThat(spec.isValid(), is(false));
+    }
+
+    @Test
+    public void shouldStoreRepeatedStringsOnce()
+    {
+        final byte[] once = SpecificationCodec.encode(anElementOfType("a-long-tag-name"));
+        final byte[] twice = SpecificationCodec.encode(anElementOfType("a-long-tag-name").thatContainsA("a-long-tag-name"));
+
+        assertThat(twice.length - once.length, is(3));
+    }
+
+    @Test
+    public void shouldRoundTripRandomSpecifications() throws Exception
+    {
+        final RandomSpecifications random = new RandomSpecifications(19);
+        for (int i = 0; i < 2000; i++)
+        {
+            final ElementSpecification spec = random.specification(tagName -> "*".equals(tagName) ? anElement() : anElementOfType(tagName), true);
+
+            assertThat(spec.toString(), SpecificationCodec.decode(SpecificationCodec.encode(spec)), is(spec));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectSpecificationsNotCreatedThroughTheFactories()
+    {
+        SpecificationCodec.encode(CssElementSpecification.anElement());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectOtherVersions()
+    {
+        final byte[] encoded = SpecificationCodec.encode(anElementOfType("td"));
+        encoded[0] = 2;
+        SpecificationCodec.decode(encoded);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectTruncatedEncodings()
+    {
+        final byte[] encoded = SpecificationCodec.encode(anElementOfType("td").withClass("row"));
+        SpecificationCodec.decode(Arrays.copyOf(encoded, encoded.length - 1));
+    }
+
+    private static void assertDecodesTo(final ElementSpecification spec, final String expectedLocator)
+    {
+        final ElementSpecification decoded = SpecificationCodec.decode(SpecificationCodec.encode(spec));
+
+        assertThat(decoded, is(spec));
+        assertThat(decoded.asSeleniumLocator(), is(expectedLocator));
+    }
+}
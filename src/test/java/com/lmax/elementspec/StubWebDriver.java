@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.HasCapabilities;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.Platform;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.WrapsDriver;
+import org.openqa.selenium.remote.DesiredCapabilities;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import static org.junit.Assume.assumeNotNull;
+
+/**
+ * A {@link WebDriver} that answers {@code findElement}, {@code findElements} and {@code executeScript} calls from functions supplied by the test and records the calls it receives.
+ * Any other method throws {@link UnsupportedOperationException}. Also creates the stub elements and script engine tests use alongside it.
+ */
+final class StubWebDriver
+{
+    private static final InvocationHandler UNSUPPORTED = (proxy, method, arguments) ->
+    {
+        throw new UnsupportedOperationException(method.getName());
+    };
+
+    final List<By> findElementsCalls = new ArrayList<>();
+    final List<String> scripts = new ArrayList<>();
+    final List<Object[]> scriptArguments = new ArrayList<>();
+
+    private Function<By, List<WebElement>> findElements = by -> Collections.emptyList();
+    private BiFunction<String, Object[], Object> executeScript = (script, arguments) -> null;
+
+    StubWebDriver onFindElements(final Function<By, List<WebElement>> handler)
+    {
+        findElements = handler;
+        return this;
+    }
+
+    StubWebDriver onExecuteScript(final BiFunction<String, Object[], Object> handler)
+    {
+        executeScript = handler;
+        return this;
+    }
+
+    /**
+     * @return a driver that can also execute JavaScript.
+     */
+    WebDriver javascriptDriver()
+    {
+        return (WebDriver)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {WebDriver.class, JavascriptExecutor.class}, this::invoke);
+    }
+
+    /**
+     * @return a driver that can't execute JavaScript.
+     */
+    WebDriver plainDriver()
+    {
+        return (WebDriver)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {WebDriver.class}, this::invoke);
+    }
+
+    /**
+     * @return a driver that can't execute JavaScript and describes itself as {@code version} of {@code browserName}.
+     */
+    WebDriver browser(final String browserName, final String version)
+    {
+        final DesiredCapabilities capabilities = new DesiredCapabilities(browserName, version, Platform.ANY);
+        return (WebDriver)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {WebDriver.class, HasCapabilities.class}, (proxy, method, arguments) ->
+                "getCapabilities".equals(method.getName()) ? capabilities : invoke(proxy, method, arguments));
+    }
+
+    /**
+     * Create a placeholder element that is only equal to itself.
+     */
+    static WebElement element(final String name)
+    {
+        return element(name, new Class<?>[] {WebElement.class}, UNSUPPORTED);
+    }
+
+    /**
+     * Create an element that records the locators it's asked to {@code findElements} with and answers each with {@code found}.
+     */
+    static WebElement elementFinding(final String name, final List<By> searches, final List<WebElement> found)
+    {
+        return element(name, new Class<?>[] {WebElement.class}, (proxy, method, arguments) ->
+        {
+            if ("findElements".equals(method.getName()))
+            {
+                searches.add((By)arguments[0]);
+                return found;
+            }
+            return UNSUPPORTED.invoke(proxy, method, arguments);
+        });
+    }
+
+    /**
+     * Create an element found by {@code driver}, which it returns as its wrapped driver.
+     */
+    static WebElement elementWrapping(final String name, final WebDriver driver)
+    {
+        return element(name, new Class<?>[] {WebElement.class, WrapsDriver.class}, (proxy, method, arguments) ->
+                "getWrappedDriver".equals(method.getName()) ? driver : UNSUPPORTED.invoke(proxy, method, arguments));
+    }
+
+    /**
+     * @return the JVM's JavaScript engine, to run generated scripts against stub pages. Tests using it are skipped on JVMs without one.
+     */
+    static ScriptEngine javaScriptEngine()
+    {
+        final ScriptEngine engine = new ScriptEngineManager().getEngineByName("JavaScript");
+        assumeNotNull(engine);
+        return engine;
+    }
+
+    private static WebElement element(final String name, final Class<?>[] interfaces, final InvocationHandler handler)
+    {
+        return (WebElement)Proxy.newProxyInstance(StubWebDriver.class.getClassLoader(), interfaces, (proxy, method, arguments) ->
+        {
+            switch (method.getName())
+            {
+                case "toString":
+                    return name;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == arguments[0];
+                default:
+                    return handler.invoke(proxy, method, arguments);
+            }
+        });
+    }
+
+    private Object invoke(final Object proxy, final java.lang.reflect.Method method, final Object[] arguments)
+    {
+        switch (method.getName())
+        {
+            case "findElements":
+                findElementsCalls.add((By)arguments[0]);
+                return findElements.apply((By)arguments[0]);
+            case "findElement":
+                findElementsCalls.add((By)arguments[0]);
+                final List<WebElement> found = findElements.apply((By)arguments[0]);
+                if (found.isEmpty())
+                {
+                    throw new NoSuchElementException("Unable to locate element: " + arguments[0]);
+                }
+                return found.get(0);
+            case "executeScript":
+                scripts.add((String)arguments[0]);
+                scriptArguments.add((Object[])arguments[1]);
+                return executeScript.apply((String)arguments[0], (Object[])arguments[1]);
+            case "toString":
+                return "StubWebDriver";
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == arguments[0];
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+}
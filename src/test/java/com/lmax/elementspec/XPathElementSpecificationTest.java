@@ -269,14 +269,92 @@ public class XPathElementSpecificationTest
     }
 
 
+    @Test
+    public void shouldNotShareRefinementsBetweenSpecificationsBuiltFromTheSameParent() throws Exception
+    {
+        final ElementSpecification row = anElementOfType("table").thatContainsA("tr");
+        final ElementSpecification firstCell = row.thatContainsAChildOfType("td").inPosition(1);
+        final ElementSpecification selectedRow = row.withClass("selected");
+
+        assertXPath(firstCell, "//table//tr/td[1]");
+        assertXPath(selectedRow, "//table//tr[contains(concat(' ', @class, ' '), ' selected ')]");
+        assertXPath(row, "//table//tr");
+    }
+
+    @Test
+    public void shouldAppendRefinementsToOldStyleLocator() throws Exception
+    {
+        assertXPath(XPathElementSpecification.fromOldStyleSeleniumXPathLocator("//div[@id='grid']").thatContainsA("tr").inPosition(2), "//div[@id='grid']//tr[2]");
+    }
+
+    @Test
+    public void shouldAppendSubSpecification() throws Exception
+    {
+        assertXPath(anElementOfType("table").addSubSpecification(anElementOfType("tr").withAttribute("data-id")), "//table//tr[@data-id]");
+    }
+
+    @Test
+    public void shouldMergeConditionsWhenOptimised() throws Exception
+    {
+        assertXPath(anElementOfType("span").withClass("foo").withAttributeValue("name", "bar").withoutAttribute("title").optimised(),
+                    "//span[@name='bar' and not(@title) and contains(concat(' ', @class, ' '), ' foo ')]");
+    }
+
+    @Test
+    public void shouldNotMoveConditionsAcrossPositionsWhenOptimised() throws Exception
+    {
+        assertXPath(anElementOfType("td").withClass("a").inPosition(2).withAttribute("b").withId("c").optimised(), "//td[contains(concat(' ', @class, ' '), ' a ')][2][@id='c' and @b]");
+    }
+
+    @Test
+    public void shouldBracketAlternativeClassesWhenMerged() throws Exception
+    {
+        assertXPath(anElementOfType("span").withAnyOfTheseClasses("a", "b").withAttribute("c").optimised(),
+                    "//span[@c and (contains(concat(' ', @class, ' '), ' a ') or contains(concat(' ', @class, ' '), ' b '))]");
+    }
+
+    @Test
+    public void shouldUseIdFunctionForLeadingIdWhenOptimised() throws Exception
+    {
+        assertXPath(anElement().withClass("a").withId("grid").thatContainsA("tr").optimised(), "id('grid')[contains(concat(' ', @class, ' '), ' a ')]//tr");
+    }
+
+    @Test
+    public void shouldOnlyUseIdFunctionWhenSafe() throws Exception
+    {
+        assertXPath(anElement().withId("grid").inPosition(1).optimised(), "//*[@id='grid'][1]");
+        assertXPath(anElement().withId("two words").optimised(), "//*[@id='two words']");
+        assertXPath(anElementOfType("table").withId("grid").optimised(), "//table[@id='grid']");
+        assertXPath(anElementOfType("table").thatContainsAnyElement().withId("grid").optimised(), "//table//*[@id='grid']");
+    }
+
+    @Test
+    public void shouldOptimiseRefinementsOfOptimisedSpecification() throws Exception
+    {
+        assertXPath(anElementOfType("tr").optimised().withAttribute("a").withAttribute("b"), "//tr[@a and @b]");
+    }
+
+    @Test
+    public void shouldNotOptimiseSubSpecification() throws Exception
+    {
+        assertXPath(anElementOfType("table").addSubSpecification(anElement().withId("row").withAttribute("a").optimised()), "//table//*[@id='row'][@a]");
+    }
+
     private void assertInvalid(final ElementSpecification builder)
     {
         assertThat(builder.isValid(), is(false));
     }
 
 
+    @Test
+    public void shouldPrefixSeleniumLocatorsThatDoNotStartWithAStep() throws Exception
+    {
+        assertThat(anElement().withId("grid").thatContainsA("td").optimised().asSeleniumLocator(), is("xpath=id('grid')//td"));
+        assertThat(anElement().withId("grid").thatContainsA("td").asSeleniumLocator(), is("//*[@id='grid']//td"));
+    }
+
     private void assertXPath(final ElementSpecification builder, final String expected)
     {
-        assertThat(builder.asSeleniumLocator(), is(expected));
+        assertThat(((XPathElementSpecification)builder).getCurrentXPath(), is(expected));
     }
 }
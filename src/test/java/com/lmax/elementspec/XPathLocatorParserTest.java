@@ -0,0 +1,169 @@
+/*
+ * Copyright 2015 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lmax.elementspec;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import static com.lmax.elementspec.ElementSpecification.anElement;
+import static com.lmax.elementspec.ElementSpecification.anElementOfType;
+import static com.lmax.elementspec.ElementSpecification.anElementWithId;
+import static com.lmax.elementspec.ElementSpecification.fromOldStyleSeleniumLocator;
+
+public class XPathLocatorParserTest
+{
+    @Test
+    public void shouldParseSteps() throws Exception
+    {
+        assertParsed("//div", anElementOfType("div"));
+        assertParsed("//*", anElement());
+        assertParsed("//table//tr/td", anElementOfType("table").thatContainsA("tr").thatContainsAChildOfType("td"));
+        assertParsed("//table//*/*", anElementOfType("table").thatContainsAnyElement().thatContainsAChildOfType("*"));
+        assertParsed("id('grid')//tr", anElementWithId("grid").thatContainsA("tr"));
+    }
+
+    @Test
+    public void shouldParseTheConditionsTheXPathFormatGenerates() throws Exception
+    {
+        assertParsed("//*[@id='grid']", anElement().withId("grid"));
+        assertParsed("//tr[@name][not(@title)]", anElementOfType("tr").withAttribute("name").withoutAttribute("title"));
+        assertParsed("//tr[@name = \"x\"][contains(@title, 'a b')]", anElementOfType("tr").withAttributeValue("name", "x").withAttributeContaining("title", "a b"));
+        assertParsed("//tr[contains(concat(' ', @class, ' '), ' row ')]", anElementOfType("tr").withClass("row"));
+        assertParsed("//tr[not(contains(concat(' ', @class, ' '), ' row '))]", anElementOfType("tr").withoutClass("row"));
+        assertParsed("//td[text() = 'EUR/USD']", anElementOfType("td").withText("EUR/USD"));
+        assertParsed("//td[text()[contains(.,'USD')]]", anElementOfType("td").withTextContaining("USD"));
+        assertParsed("//td[number(.)=.]", anElementOfType("td").withNumericalContent());
+        assertParsed("//td[not(node())]", anElementOfType("td").withText(""));
+    }
+
+    @Test
+    public void shouldParseClassAlternatives() throws Exception
+    {
+        final String alternatives = "contains(concat(' ', @class, ' '), ' a ') or contains(concat(' ', @class, ' '), ' b ')";
+
+        assertParsed("//*[" + alternatives + "]", anElement().withAnyOfTheseClasses("a", "b"));
+        assertParsed("//*[@name and (" + alternatives + ")]", anElement().withAttribute("name").withAnyOfTheseClasses("a", "b"));
+        assertUnsupported("//*[@name and " + alternatives + "]");
+    }
+
+    @Test
+    public void shouldParseMergedConditions() throws Exception
+    {
+        assertParsed("//td[@id='c1' and @title and contains(@title, 'bid')]", anElementOfType("td").withId("c1").withAttribute("title").withAttributeContaining("title", "bid"));
+    }
+
+    @Test
+    public void shouldOnlyParsePositionsThatAreTheFirstPredicateOnTheirStep() throws Exception
+    {
+        assertParsed("//tr[2]/td", anElementOfType("tr").inPositionOfType(2).thatContainsAChildOfType("td"));
+        assertParsed("//tr/*[2][@title]", anElementOfType("tr").thatContainsAChildOfType("*").inPosition(2).withAttribute("title"));
+        assertUnsupported("//td[@title][2]");
+        assertUnsupported("//td[2][1]");
+        assertUnsupported("id('grid')[1]");
+        assertUnsupported("//td[0]");
+    }
+
+    @Test
+    public void shouldNotParseLocatorsWithoutAnExactCssEquivalent() throws Exception
+    {
+        assertUnsupported("(//td)[2]");
+        assertUnsupported("/html/body");
+        assertUnsupported("//td/..");
+        assertUnsupported("//TD");
+        assertUnsupported("//svg:rect");
+        assertUnsupported("//td[@title='a'] | //th");
+        assertUnsupported("//td[@*]");
+        assertUnsupported("//td[last()]");
+        assertUnsupported("//td[contains(@title, '')]");
+        assertUnsupported("//td[contains(concat(' ', @class, ' '), ' a b ')]");
+        assertUnsupported("//td[text() = '']");
+        assertUnsupported("//td[@title=\"it's\"]");
+        assertUnsupported("id('a b')");
+        assertUnsupported("//td[");
+        assertUnsupported("");
+    }
+
+    @Test
+    public void shouldRenderParsedLocatorsAsCss() throws Exception
+    {
+        assertThat(fromOldStyleSeleniumLocator("//*[@id='grid']//tr[contains(concat(' ', @class, ' '), ' row ')]/td[2]").asSeleniumLocator(), is("css=#grid tr.row > td:nth-of-type(2)"));
+        assertThat(fromOldStyleSeleniumLocator("xpath=id('grid')//td[not(@title)]").asSeleniumLocator(), is("css=#grid td:not([title])"));
+    }
+
+    @Test
+    public void shouldKeepLocatorsThatCannotBeParsedVerbatim() throws Exception
+    {
+        final ElementSpecification spec = fromOldStyleSeleniumLocator("(//td)[2]");
+
+        assertThat(spec.asSeleniumLocator(), is("(//td)[2]"));
+        assertThat(spec.withAttribute("title").asSeleniumLocator(), is("(//td)[2][@title]"));
+        assertThat(spec.thatIsChecked().isValid(), is(false));
+    }
+
+    @Test
+    public void shouldParseEveryLocatorTheXPathFormatGeneratesWithoutAFilteredPosition() throws Exception
+    {
+        final RandomSpecifications random = new RandomSpecifications(5);
+        for (int i = 0; i < 1000; i++)
+        {
+            final ElementSpecification spec = random.specification(XPathLocatorParserTest::xpathElementOfType, true);
+            if (!spec.toString().matches(".*\\]\\[\\d+\\].*"))
+            {
+                final String optimised = LocatorFormat.XPATH.selector(spec.optimised());
+                assertThat(spec.toString(), XPathLocatorParser.parse(spec.toString()), not(nullValue()));
+                assertThat(optimised, XPathLocatorParser.parse(optimised), not(nullValue()));
+            }
+        }
+    }
+
+    @Test
+    public void shouldMatchTheSameElementsAsTheOriginalXPath() throws Exception
+    {
+        final RandomSpecifications random = new RandomSpecifications(3);
+        final Document document = random.document();
+        final DomSnapshot snapshot = DomSnapshot.of(document);
+        for (int i = 0; i < 2000; i++)
+        {
+            final String xpath = LocatorFormat.XPATH.selector(random.specification(XPathLocatorParserTest::xpathElementOfType, true).optimised());
+            final ElementSpecification parsed = fromOldStyleSeleniumLocator("xpath=" + xpath);
+
+            assertEquals(xpath + " as " + parsed, DomEvaluator.findElements(snapshot, XPathElementSpecification.fromOldStyleSeleniumXPathLocator(xpath)),
+                         DomEvaluator.findElements(snapshot, parsed));
+        }
+    }
+
+    private static ElementSpecification xpathElementOfType(final String tagName)
+    {
+        return "*".equals(tagName) ? XPathElementSpecification.anElement() : XPathElementSpecification.anElementOfType(tagName);
+    }
+
+    private static void assertParsed(final String xpath, final ElementSpecification expected)
+    {
+        assertThat(xpath, XPathLocatorParser.parse(xpath), is(expected));
+    }
+
+    private static void assertUnsupported(final String xpath)
+    {
+        assertThat(xpath, XPathLocatorParser.parse(xpath), nullValue());
+    }
+}